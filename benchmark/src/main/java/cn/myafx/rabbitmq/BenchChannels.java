@@ -0,0 +1,125 @@
+package cn.myafx.rabbitmq;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import com.rabbitmq.client.*;
+
+/**
+ * 基准测试用的假通道
+ */
+final class BenchChannels {
+    private BenchChannels() {
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        return null;
+    }
+
+    /**
+     * 只处理 ack/nack/reject 的通道, 其余方法返回默认值
+     *
+     * @param onAck 收到 ack/nack/reject 时回调 deliveryTag
+     * @return Channel
+     */
+    static Channel ackChannel(LongConsumer onAck) {
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] { Channel.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "basicAck":
+                        case "basicNack":
+                        case "basicReject":
+                            onAck.accept((Long) args[0]);
+                            return null;
+                        case "isOpen":
+                            return true;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchChannel";
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    /**
+     * 进程内回环 ConnectionFactory, basicPublish 按 routingKey 找到 basicConsume 注册的同名队列,
+     * 在发布线程中直接调用 handleDelivery
+     *
+     * @return ConnectionFactory
+     */
+    static ConnectionFactory loopbackFactory() {
+        Map<String, Consumer> consumers = new ConcurrentHashMap<>();
+        return new ConnectionFactory() {
+            @Override
+            public Connection newConnection(String clientProvidedName) {
+                return loopbackConnection(consumers);
+            }
+        };
+    }
+
+    private static Connection loopbackConnection(Map<String, Consumer> consumers) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "createChannel":
+                            return loopbackChannel(consumers);
+                        case "isOpen":
+                            return true;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchConnection";
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Channel loopbackChannel(Map<String, Consumer> consumers) {
+        var tags = new AtomicLong();
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] { Channel.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "basicConsume":
+                            consumers.put((String) args[0], (Consumer) args[args.length - 1]);
+                            return "bench-" + args[0];
+                        case "basicPublish":
+                            if (args.length == 4) {
+                                var c = consumers.get((String) args[1]);
+                                if (c != null)
+                                    c.handleDelivery("bench-" + args[1],
+                                            new Envelope(tags.incrementAndGet(), false, (String) args[0],
+                                                    (String) args[1]),
+                                            (AMQP.BasicProperties) args[2], (byte[]) args[3]);
+                            }
+                            return null;
+                        case "isOpen":
+                            return true;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchChannel";
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+}
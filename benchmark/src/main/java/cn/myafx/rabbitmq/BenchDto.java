@@ -0,0 +1,32 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+
+/**
+ * 基准测试用的消息
+ */
+public class BenchDto {
+    public long Id;
+    public String Name;
+    public List<Integer> Values;
+    public String Text;
+
+    /**
+     * 生成 json 约为 size 字节的消息
+     *
+     * @param size 字节数
+     * @return BenchDto
+     */
+    static BenchDto of(int size) {
+        var m = new BenchDto();
+        m.Id = 123456789L;
+        m.Name = "bench";
+        m.Values = List.of(1, 2, 3, 4, 5, 6, 7, 8);
+        int len = Math.max(0, size - 80);
+        var sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++)
+            sb.append((char) ('a' + i % 26));
+        m.Text = sb.toString();
+        return m;
+    }
+}
@@ -0,0 +1,303 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.BasicProperties;
+
+/**
+ * 端到端压测工具, 按固定或线性爬升速率发布, 同进程消费, 输出吞吐量与延迟分位数.
+ * <p>
+ * 每条消息头写入计划发送时间与实际发送时间, 延迟按计划发送时间计算(修正协调遗漏, 发布落后时不少算排队时间),
+ * 同时输出按实际发送时间计算的未修正延迟作对比.
+ * <p>
+ * 用法: java -cp benchmarks.jar cn.myafx.rabbitmq.LoadGenerator [--参数 值]...
+ *
+ * <pre>
+ * --config      mq-config.xml 路径, 不设置时使用队列 afx.load(amq.direct)
+ * --name        Pub/Sub 配置名
+ * --host        mq服务器, 不设置时使用进程内 LocalConnectionFactory
+ * --port        mq端口, 默认 5672
+ * --user        登录账号, 默认 guest
+ * --password    密码, 默认 guest
+ * --vhost       virtualHost, 默认 /
+ * --rate        发布速率, 条/秒, 默认 1000
+ * --rampTo      爬升目标速率, 条/秒, 默认不爬升
+ * --ramp        爬升时长, 秒, 默认与 duration 相同
+ * --duration    测量时长, 秒, 默认 30
+ * --warmup      预热时长, 秒, 默认 5, 不计入结果
+ * --interval    报告间隔, 秒, 默认 1
+ * --size        消息 json 字节数, 逗号分隔轮流使用, 默认 256
+ * --threads     发布线程数, 默认 1
+ * --pushPool    push池大小, 默认 3
+ * --concurrency 消费并发数, 默认 1
+ * --prefetch    预取消息数, 默认 100
+ * </pre>
+ */
+public class LoadGenerator {
+    /**
+     * 计划发送时间, System.nanoTime
+     */
+    public static final String INTENDED_HEADER = "x-load-intended";
+    /**
+     * 实际发送时间, System.nanoTime
+     */
+    public static final String SEND_HEADER = "x-load-send";
+
+    private static final String DEFAULT_QUEUE = "afx.load";
+
+    private Map<String, String> options;
+    private double rate;
+    private double rampTo;
+    private long rampNanos;
+    private int threads;
+    private BenchDto[] msgs;
+
+    private volatile boolean running = true;
+    private LongAdder sent = new LongAdder();
+    private LongAdder pubErrors = new LongAdder();
+    private LongAdder received = new LongAdder();
+    private LatencyHistogram intervalLatency = new LatencyHistogram(5);
+    private LatencyHistogram intervalService = new LatencyHistogram(5);
+    private LatencyHistogram totalLatency = new LatencyHistogram(5);
+    private LatencyHistogram totalService = new LatencyHistogram(5);
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String key = args[i];
+            if (!key.startsWith("--") || i + 1 >= args.length)
+                throw new Exception("arg(" + key + ") is error!");
+            options.put(key.substring(2), args[++i]);
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private String get(String key, String def) {
+        return this.options.getOrDefault(key, def);
+    }
+
+    private int getInt(String key, int def) {
+        var v = this.options.get(key);
+        return v != null ? Integer.parseInt(v) : def;
+    }
+
+    private double getDouble(String key, double def) {
+        var v = this.options.get(key);
+        return v != null ? Double.parseDouble(v) : def;
+    }
+
+    private MQPool createPool(LocalConnectionFactory[] local) throws Exception {
+        var mapper = new JacksonBytesMapper(new ObjectMapper());
+        int pushPool = this.getInt("pushPool", 3);
+        var host = this.options.get("host");
+        if (host == null) {
+            local[0] = new LocalConnectionFactory();
+            return new MQPool(local[0], pushPool, "load", mapper);
+        }
+        return new MQPool(host, this.getInt("port", 5672), this.get("user", "guest"), this.get("password", "guest"),
+                this.get("vhost", "/"), pushPool, 15, "load", mapper);
+    }
+
+    private void run() throws Exception {
+        this.rate = this.getDouble("rate", 1000);
+        this.rampTo = this.getDouble("rampTo", this.rate);
+        int duration = this.getInt("duration", 30);
+        int warmup = this.getInt("warmup", 5);
+        int interval = this.getInt("interval", 1);
+        this.rampNanos = TimeUnit.SECONDS.toNanos(this.getInt("ramp", duration));
+        this.threads = this.getInt("threads", 1);
+        if (this.rate <= 0 || this.rampTo <= 0)
+            throw new Exception("rate is error!");
+        if (this.threads < 1)
+            throw new Exception("threads(" + this.threads + ") is error!");
+        var sizes = this.get("size", "256").split(",");
+        this.msgs = new BenchDto[sizes.length];
+        for (int i = 0; i < sizes.length; i++)
+            this.msgs[i] = BenchDto.of(Integer.parseInt(sizes[i].trim()));
+
+        LocalConnectionFactory[] local = new LocalConnectionFactory[1];
+        try (var pool = this.createPool(local)) {
+            PubConfig pc;
+            SubConfig sc;
+            var configFile = this.options.get("config");
+            if (configFile != null) {
+                String name = this.get("name", null);
+                if (name == null)
+                    throw new Exception("name is null!");
+                try (var config = new MQConfig(configFile)) {
+                    pool.exchangeDeclare(config.getExchanges());
+                    pool.queueDeclare(config.getQueues());
+                    pc = config.getPubConfig(name);
+                    sc = config.getSubConfig(name);
+                    if (pc == null || sc == null)
+                        throw new Exception("name(" + name + ") not found!");
+                    pc = pc.copy();
+                    sc = sc.copy();
+                }
+            } else {
+                var q = new QueueConfig();
+                q.Queue = DEFAULT_QUEUE;
+                q.RoutingKey = DEFAULT_QUEUE;
+                q.Exchange = "amq.direct";
+                pool.queueDeclare(q);
+                pc = new PubConfig();
+                pc.RoutingKey = DEFAULT_QUEUE;
+                sc = new SubConfig();
+                sc.Queue = DEFAULT_QUEUE;
+            }
+            sc.Concurrency = this.getInt("concurrency", 1);
+            sc.PrefetchCount = this.getInt("prefetch", 100);
+            pool.sub(new ISubHander<BenchDto>() {
+                @Override
+                public Class<BenchDto> getTClass() {
+                    return BenchDto.class;
+                }
+
+                @Override
+                public boolean hander(BenchDto m, BasicProperties properties) throws Exception {
+                    onReceive(properties);
+                    return true;
+                }
+            }, sc, false);
+
+            System.out.printf("broker %s, rate %.0f -> %.0f/s, threads %d, size %s, concurrency %d, prefetch %d%n",
+                    local[0] != null ? "local" : this.options.get("host"), this.rate, this.rampTo, this.threads,
+                    this.get("size", "256"), sc.Concurrency, sc.PrefetchCount);
+
+            long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+            var list = new ArrayList<Thread>(this.threads);
+            for (int i = 0; i < this.threads; i++) {
+                final var config = pc;
+                final int index = i;
+                var t = new Thread(() -> this.publish(pool, config, start, index), "load-pub-" + i);
+                t.setDaemon(true);
+                list.add(t);
+                t.start();
+            }
+            this.report(start, warmup, duration, interval);
+            this.running = false;
+            for (var t : list)
+                t.join();
+            // 等待在途消息消费完
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (this.received.sum() < this.sent.sum() && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            this.summary(duration);
+        } finally {
+            if (local[0] != null)
+                local[0].close();
+        }
+    }
+
+    private double rateAt(long elapsed) {
+        if (this.rampTo == this.rate || elapsed >= this.rampNanos)
+            return this.rampTo;
+        return this.rate + (this.rampTo - this.rate) * elapsed / this.rampNanos;
+    }
+
+    private void publish(MQPool pool, PubConfig config, long start, int index) {
+        long next = start;
+        long k = index;
+        while (this.running) {
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            // 落后时不跳过也不重新计时, 计划时间照常推进, 由消费端按计划时间计算延迟
+            Map<String, Object> headers = new HashMap<>(4);
+            headers.put(INTENDED_HEADER, next);
+            headers.put(SEND_HEADER, System.nanoTime());
+            try {
+                pool.pub(this.msgs[(int) (k % this.msgs.length)], config, null, null, headers);
+                this.sent.increment();
+            } catch (Exception ex) {
+                this.pubErrors.increment();
+            }
+            k += this.threads;
+            next += (long) (1e9 * this.threads / this.rateAt(next - start));
+        }
+    }
+
+    private void onReceive(BasicProperties properties) {
+        long now = System.nanoTime();
+        var headers = properties.getHeaders();
+        if (headers == null)
+            return;
+        if (headers.get(INTENDED_HEADER) instanceof Long intended) {
+            long latency = now - intended;
+            this.intervalLatency.record(latency);
+            this.totalLatency.record(latency);
+        }
+        if (headers.get(SEND_HEADER) instanceof Long send) {
+            long service = now - send;
+            this.intervalService.record(service);
+            this.totalService.record(service);
+        }
+        this.received.increment();
+    }
+
+    private void report(long start, int warmup, int duration, int interval) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(interval);
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(duration);
+        long lastSent = 0, lastReceived = 0, last = start;
+        boolean warm = warmup == 0;
+        long tick = start;
+        while (true) {
+            tick += intervalNanos;
+            long now = System.nanoTime();
+            if (tick > now)
+                TimeUnit.NANOSECONDS.sleep(tick - now);
+            now = System.nanoTime();
+            long s = this.sent.sum(), r = this.received.sum();
+            double secs = (now - last) / 1e9;
+            var lat = this.intervalLatency.snapshot();
+            var svc = this.intervalService.snapshot();
+            this.intervalLatency.reset();
+            this.intervalService.reset();
+            System.out.printf("%s%5.0fs pub %8.0f/s sub %8.0f/s  p50 %s p99 %s p99.9 %s max %s  (uncorrected p99 %s)%n",
+                    warm ? " " : "w", (now - start) / 1e9, (s - lastSent) / secs, (r - lastReceived) / secs,
+                    ms(lat.P50Nanos), ms(lat.P99Nanos), ms(lat.P999Nanos), ms(lat.MaxNanos), ms(svc.P99Nanos));
+            lastSent = s;
+            lastReceived = r;
+            last = now;
+            if (!warm && now >= warmupEnd) {
+                warm = true;
+                this.totalLatency.reset();
+                this.totalService.reset();
+                this.sent.reset();
+                this.received.reset();
+                this.pubErrors.reset();
+                lastSent = 0;
+                lastReceived = 0;
+            }
+            if (now >= end)
+                break;
+        }
+    }
+
+    private void summary(int duration) {
+        var lat = this.totalLatency.snapshot();
+        var svc = this.totalService.snapshot();
+        System.out.println("---------------- summary ----------------");
+        System.out.printf("sent %d, received %d, pub errors %d, throughput %.0f/s%n", this.sent.sum(),
+                this.received.sum(), this.pubErrors.sum(), this.received.sum() / (double) duration);
+        System.out.printf("latency     p50 %s p90 %s p99 %s p99.9 %s max %s mean %s%n", ms(lat.P50Nanos),
+                ms(lat.P90Nanos), ms(lat.P99Nanos), ms(lat.P999Nanos), ms(lat.MaxNanos), ms((long) lat.getMeanNanos()));
+        System.out.printf("uncorrected p50 %s p90 %s p99 %s p99.9 %s max %s mean %s%n", ms(svc.P50Nanos),
+                ms(svc.P90Nanos), ms(svc.P99Nanos), ms(svc.P999Nanos), ms(svc.MaxNanos), ms((long) svc.getMeanNanos()));
+    }
+
+    private static String ms(long nanos) {
+        return String.format("%8.3fms", nanos / 1e6);
+    }
+}
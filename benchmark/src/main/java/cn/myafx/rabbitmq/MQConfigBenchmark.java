@@ -0,0 +1,90 @@
+package cn.myafx.rabbitmq;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * MQConfig 解析与查找, keys 为 Exchange / Queue / Pub / Sub 各节点数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MQConfigBenchmark {
+    @Param({ "1", "100" })
+    public int keys;
+
+    private byte[] xml;
+    private MQConfig config;
+
+    @Setup
+    public void setup() throws Exception {
+        var sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<xml>\n<Exchange>\n");
+        for (int i = 0; i < this.keys; i++)
+            sb.append("<Key exchange=\"ex.").append(i)
+                    .append("\" type=\"direct\" durable=\"true\" autoDelete=\"false\" />\n");
+        sb.append("</Exchange>\n<Queue>\n");
+        for (int i = 0; i < this.keys; i++)
+            sb.append("<Key queue=\"q.").append(i).append("\" routingKey=\"q.").append(i)
+                    .append("\" delayQueue=\"q.").append(i).append(".delay\" delayRoutingKey=\"q.").append(i)
+                    .append(".delay\" durable=\"true\" exclusive=\"false\" autoDelete=\"false\" exchange=\"ex.")
+                    .append(i).append("\" />\n");
+        sb.append("</Queue>\n<Pub>\n");
+        for (int i = 0; i < this.keys; i++)
+            sb.append("<Key name=\"Dto").append(i).append("\" routingKey=\"q.").append(i)
+                    .append("\" delayRoutingKey=\"q.").append(i).append(".delay\" exchange=\"ex.").append(i)
+                    .append("\" />\n");
+        sb.append("</Pub>\n<Sub>\n");
+        for (int i = 0; i < this.keys; i++)
+            sb.append("<Key name=\"Dto").append(i).append("\" queue=\"q.").append(i)
+                    .append("\" prefetchCount=\"10\" />\n");
+        sb.append("</Sub>\n</xml>\n");
+        this.xml = sb.toString().getBytes(StandardCharsets.UTF_8);
+        this.config = new MQConfig(new ByteArrayInputStream(this.xml));
+    }
+
+    @Benchmark
+    public MQConfig parse() throws Exception {
+        return new MQConfig(new ByteArrayInputStream(this.xml));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public PubConfig getPubConfig() {
+        return this.config.getPubConfig("Dto0");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public PubHandle getPubHandle() {
+        return this.config.getPubHandle("Dto0");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public PubHandle getPubHandleByClass() {
+        return this.config.getPubHandle(BenchDto.class);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public SubHandle getSubHandle() {
+        return this.config.getSubHandle("Dto0");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object getQueues() {
+        return this.config.getQueues();
+    }
+}
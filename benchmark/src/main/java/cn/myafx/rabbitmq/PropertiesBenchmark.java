@@ -0,0 +1,54 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * BasicProperties 构造: 每次 Builder 新建 / PropertiesCache 模板 / 模板 + headers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertiesBenchmark {
+    private PropertiesCache cache;
+    private Map<String, Object> headers;
+
+    @Param({ "0", "60" })
+    public int expire;
+
+    @Setup
+    public void setup() {
+        this.cache = new PropertiesCache();
+        this.headers = new HashMap<>();
+        this.headers.put("traceId", "0123456789abcdef");
+    }
+
+    @Benchmark
+    public AMQP.BasicProperties builder() {
+        var builder = new AMQP.BasicProperties.Builder()
+                .contentType("application/json")
+                .contentEncoding("utf-8")
+                .deliveryMode(2);
+        if (this.expire > 0)
+            builder.expiration(String.valueOf(this.expire * 1000));
+        return builder.build();
+    }
+
+    @Benchmark
+    public AMQP.BasicProperties cached() {
+        return this.cache.get("application/json", "utf-8", this.expire > 0 ? this.expire : null, true);
+    }
+
+    @Benchmark
+    public AMQP.BasicProperties cachedWithHeaders() {
+        return this.cache.get("application/json", "utf-8", this.expire > 0 ? this.expire : null, true)
+                .builder().headers(this.headers).build();
+    }
+}
@@ -0,0 +1,103 @@
+package cn.myafx.rabbitmq;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * 发布通道池借出/归还: 原 synchronized LinkedList 池(legacy) 对比无锁分槽池(striped).
+ * createMicros 模拟打开通道的网络往返. 线程数用 -t 调整, 例如 -t 64
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class PubChannelPoolBenchmark {
+    @Param({ "legacy", "striped" })
+    public String pool;
+
+    @Param({ "3", "16" })
+    public int maxPushPool;
+
+    @Param({ "0", "100" })
+    public int createMicros;
+
+    private LegacyPool legacy;
+    private PubChannelPool striped;
+
+    @Setup
+    public void setup() {
+        if ("legacy".equals(this.pool))
+            this.legacy = new LegacyPool(this.maxPushPool, this::createChannel);
+        else
+            this.striped = new PubChannelPool(this::createChannel, this.maxPushPool);
+    }
+
+    private Channel createChannel() {
+        if (this.createMicros > 0)
+            LockSupport.parkNanos(this.createMicros * 1000L);
+        return BenchChannels.ackChannel(tag -> {
+        });
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (this.striped != null)
+            this.striped.close();
+    }
+
+    @Benchmark
+    public Channel borrowRelease() throws Exception {
+        if (this.legacy != null) {
+            var ch = this.legacy.borrow();
+            this.legacy.release(ch);
+            return ch;
+        }
+        var lease = this.striped.borrow();
+        this.striped.release(lease);
+        return lease.Channel;
+    }
+
+    /**
+     * 1.6.0 的 getPubChannel / PublishChannel.close 实现
+     */
+    private static class LegacyPool {
+        private final Object lock = new Object();
+        private final Queue<Channel> queue = new LinkedList<>();
+        private final int maxPushPool;
+        private final Callable<Channel> factory;
+
+        LegacyPool(int maxPushPool, Callable<Channel> factory) {
+            this.maxPushPool = maxPushPool;
+            this.factory = factory;
+        }
+
+        Channel borrow() throws Exception {
+            synchronized (this.lock) {
+                var ch = this.queue.poll();
+                if (ch == null)
+                    ch = this.factory.call();
+                return ch;
+            }
+        }
+
+        void release(Channel ch) throws Exception {
+            if (this.maxPushPool > this.queue.size()) {
+                synchronized (this.lock) {
+                    this.queue.add(ch);
+                }
+            } else {
+                ch.close();
+            }
+        }
+    }
+}
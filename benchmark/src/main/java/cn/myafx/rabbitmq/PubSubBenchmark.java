@@ -0,0 +1,85 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.BasicProperties;
+import com.rabbitmq.client.ConnectionFactory;
+
+/**
+ * 端到端 pub -> handleDelivery, 包括序列化, 借还通道, BasicProperties, 反序列化, hander, ack.
+ * broker 为 loopback(发布线程直接回调) 或 local(LocalConnectionFactory, 经交换器路由、队列、预取投递), metrics 为是否开启统计
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class PubSubBenchmark {
+    private static final String QUEUE = "bench.queue";
+
+    @Param({ "64", "1024" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    @Param({ "loopback", "local" })
+    public String broker;
+
+    private MQPool pool;
+    private LocalConnectionFactory localFactory;
+    private BenchDto msg;
+    private LongAdder received = new LongAdder();
+
+    @Setup
+    public void setup() throws Exception {
+        ConnectionFactory factory;
+        if ("local".equals(this.broker)) {
+            this.localFactory = new LocalConnectionFactory();
+            factory = this.localFactory;
+        } else {
+            factory = BenchChannels.loopbackFactory();
+        }
+        this.pool = new MQPool(factory, 16, "bench", new JacksonBytesMapper(new ObjectMapper()));
+        if (this.localFactory != null) {
+            var q = new QueueConfig();
+            q.Queue = QUEUE;
+            q.RoutingKey = QUEUE;
+            q.Exchange = "amq.direct";
+            this.pool.queueDeclare(q);
+        }
+        if (this.metrics)
+            this.pool.setMetrics(false, null);
+        this.msg = BenchDto.of(this.size);
+        this.pool.sub(new ISubHander<BenchDto>() {
+            @Override
+            public Class<BenchDto> getTClass() {
+                return BenchDto.class;
+            }
+
+            @Override
+            public boolean hander(BenchDto m, BasicProperties properties) throws Exception {
+                received.increment();
+                return true;
+            }
+        }, QUEUE, false);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.pool.close();
+        if (this.localFactory != null)
+            this.localFactory.close();
+    }
+
+    @Benchmark
+    public boolean pub() throws Exception {
+        return this.pool.pub(this.msg, QUEUE, null, null, null, null);
+    }
+}
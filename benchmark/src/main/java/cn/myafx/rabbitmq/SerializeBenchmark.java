@@ -0,0 +1,70 @@
+package cn.myafx.rabbitmq;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * MQPool.serialize / deserialize, 消息类型 byte[] / String / json 对象, 不同消息大小
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializeBenchmark {
+    @Param({ "bytes", "string", "json" })
+    public String type;
+
+    @Param({ "64", "1024", "16384" })
+    public int size;
+
+    private MQPool pool;
+    private Object msg;
+    private Class<?> clazz;
+    private MapperDto mapper;
+
+    @Setup
+    public void setup() throws Exception {
+        this.pool = new MQPool(BenchChannels.loopbackFactory(), null, "bench",
+                new JacksonBytesMapper(new ObjectMapper()));
+        var dto = BenchDto.of(this.size);
+        switch (this.type) {
+            case "bytes":
+                this.msg = new byte[this.size];
+                this.clazz = byte[].class;
+                break;
+            case "string":
+                this.msg = new String(new byte[this.size], StandardCharsets.ISO_8859_1).replace('\0', 'a');
+                this.clazz = String.class;
+                break;
+            case "json":
+                this.msg = dto;
+                this.clazz = BenchDto.class;
+                break;
+            default:
+                throw new IllegalArgumentException(this.type);
+        }
+        this.mapper = this.pool.serialize(this.msg, null);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.pool.close();
+    }
+
+    @Benchmark
+    public MapperDto serialize() throws Exception {
+        return this.pool.serialize(this.msg, null);
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception {
+        return this.pool.deserialize(this.mapper.body, this.mapper.contentType, this.mapper.contentEncoding,
+                this.clazz);
+    }
+}
@@ -0,0 +1,108 @@
+package cn.myafx.rabbitmq;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.rabbitmq.client.*;
+
+/**
+ * 订阅分发模式对比: 消费分发线程内处理(inline) / 固定线程池(pool) / 虚拟线程(virtual).
+ * handlerMillis 模拟 hander 阻塞在下游 IO 上的时间, 结果为每秒处理消息数.
+ * 用 Semaphore 模拟 broker 的 prefetch 窗口, ack 后才投递下一条.
+ * virtual 需要 java 21+, java 17 下请使用 -p mode=inline,pool
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubDispatchBenchmark {
+    private static final int BATCH = 256;
+
+    @Param({ "inline", "pool", "virtual" })
+    public String mode;
+
+    @Param({ "0", "1", "10" })
+    public int handlerMillis;
+
+    @Param({ "64" })
+    public int prefetch;
+
+    private MQPool pool;
+    private MQConsumer<String> consumer;
+    private Semaphore window;
+    private AMQP.BasicProperties props;
+    private byte[] body;
+
+    @Setup
+    public void setup() throws Exception {
+        this.pool = new MQPool("localhost", 5672, "guest", "guest", null, null, null, "bench",
+                new IJsonMapper() {
+                    @Override
+                    public <T> String serialize(T m) throws Exception {
+                        return m.toString();
+                    }
+
+                    @Override
+                    public <T> T deserialize(String json, Class<T> clazz) throws Exception {
+                        throw new UnsupportedOperationException();
+                    }
+                });
+        this.window = new Semaphore(this.prefetch);
+        var channel = BenchChannels.ackChannel(tag -> this.window.release());
+        ExecutorService executor;
+        switch (this.mode) {
+            case "inline":
+                executor = null;
+                break;
+            case "pool":
+                executor = new ThreadPoolExecutor(this.prefetch, this.prefetch, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(this.prefetch));
+                break;
+            case "virtual":
+                executor = MQPool.newVirtualThreadExecutor();
+                if (executor == null)
+                    throw new IllegalStateException("virtual mode requires java 21+");
+                break;
+            default:
+                throw new IllegalArgumentException(this.mode);
+        }
+        int sleep = this.handlerMillis;
+        this.consumer = new MQConsumer<>(channel, this.pool, new ISubHander<String>() {
+            @Override
+            public Class<String> getTClass() {
+                return String.class;
+            }
+
+            @Override
+            public boolean hander(String m, BasicProperties properties) throws Exception {
+                if (sleep > 0)
+                    Thread.sleep(sleep);
+                return true;
+            }
+        }, "bench", false, null, executor, SubRejectPolicy.CallerRuns);
+        this.props = new AMQP.BasicProperties.Builder().contentType("text/plain").build();
+        this.body = "hello".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.consumer.close();
+        this.pool.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatch() throws Exception {
+        for (int i = 1; i <= BATCH; i++) {
+            this.window.acquire();
+            this.consumer.handleDelivery("bench", new Envelope(i, false, "", "bench"), this.props, this.body);
+        }
+        // 等待全部 ack, 窗口回满
+        this.window.acquire(this.prefetch);
+        this.window.release(this.prefetch);
+    }
+}
@@ -0,0 +1,113 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 后台批量发布, pub 只入队, 发布线程攒够 maxBatchSize 条或等待 lingerMs 后借一次通道发布整批;
+ * 发布失败时开启落盘队列的由 MQPool.publish 写入落盘队列, 否则回调 onPoolException 后丢弃
+ */
+class AsyncPublisher implements AutoCloseable {
+    private MQPool pool;
+    private ArrayBlockingQueue<PubMessage> queue;
+    private Thread[] threads;
+    private int maxBatchSize;
+    private long lingerNanos;
+    private long offerTimeoutMs;
+    private volatile boolean closed = false;
+
+    /**
+     * 后台批量发布
+     * 
+     * @param pool           pool
+     * @param name           线程名前缀
+     * @param bufferSize     队列大小
+     * @param threadCount    发布线程数
+     * @param maxBatchSize   每批最大消息数
+     * @param lingerMs       第一条消息入队后最长等待时间, 毫秒
+     * @param offerTimeoutMs 队列已满时入队最长等待时间, 毫秒
+     */
+    public AsyncPublisher(MQPool pool, String name, int bufferSize, int threadCount, int maxBatchSize,
+            int lingerMs, int offerTimeoutMs) {
+        this.pool = pool;
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            var t = new Thread(this::run, name + (i + 1));
+            t.setDaemon(true);
+            this.threads[i] = t;
+            t.start();
+        }
+    }
+
+    /**
+     * 队列中等待发布的消息数
+     * 
+     * @return int
+     */
+    public int size() {
+        return this.queue.size();
+    }
+
+    /**
+     * 入队, 队列已满且超时抛出异常
+     * 
+     * @param m PubMessage
+     * @throws Exception Exception
+     */
+    public void enqueue(PubMessage m) throws Exception {
+        if (this.closed)
+            throw new Exception("MQPool is closed!");
+        if (!this.queue.offer(m) && !this.queue.offer(m, this.offerTimeoutMs, TimeUnit.MILLISECONDS))
+            throw new Exception("publish buffer is full!");
+    }
+
+    private void run() {
+        var batch = new ArrayList<PubMessage>(this.maxBatchSize);
+        while (!this.closed || !this.queue.isEmpty()) {
+            try {
+                var first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + this.lingerNanos;
+                while (batch.size() < this.maxBatchSize) {
+                    if (this.queue.drainTo(batch, this.maxBatchSize - batch.size()) > 0)
+                        continue;
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0 || this.closed)
+                        break;
+                    var m = this.queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (m == null)
+                        break;
+                    batch.add(m);
+                }
+                this.pool.publish(batch);
+            } catch (InterruptedException ex) {
+                if (this.closed)
+                    break;
+            } catch (Exception ex) {
+                this.pool.onPoolException(ex, batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 停止入队, 等待队列中的消息发布完成
+     */
+    @Override
+    public void close() throws Exception {
+        this.closed = true;
+        for (var t : this.threads) {
+            t.join(10000);
+            if (t.isAlive())
+                t.interrupt();
+        }
+        this.queue.clear();
+    }
+}
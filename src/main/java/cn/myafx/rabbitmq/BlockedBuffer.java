@@ -0,0 +1,124 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+
+/**
+ * 连接被阻塞时的发布缓冲, 按消息体字节数限制, 解除阻塞后由后台线程按顺序发布
+ */
+class BlockedBuffer implements AutoCloseable {
+    private MQPool pool;
+    private ArrayDeque<PubMessage> queue = new ArrayDeque<>();
+    private long maxBytes;
+    private long bytes = 0;
+    private volatile int count = 0;
+    private volatile boolean closed = false;
+    private Thread thread;
+
+    /**
+     * 发布缓冲
+     * 
+     * @param pool     pool
+     * @param name     线程名
+     * @param maxBytes 最大消息体字节数
+     */
+    public BlockedBuffer(MQPool pool, String name, long maxBytes) {
+        this.pool = pool;
+        this.maxBytes = maxBytes;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 是否为空, 包括正在发布的消息, 非空时新消息也需写入, 保证顺序
+     * 
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * 缓冲中的消息体字节数
+     * 
+     * @return long
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * 入队, 超出字节数上限抛出异常, 整批要么全部入队要么全部不入队
+     * 
+     * @param batch 消息
+     * @throws Exception Exception
+     */
+    public synchronized void offer(List<PubMessage> batch) throws Exception {
+        if (this.closed)
+            throw new Exception("MQPool is closed!");
+        long size = 0;
+        for (var m : batch)
+            size += m.body.length;
+        if (this.bytes + size > this.maxBytes)
+            throw new Exception("blocked buffer is full!");
+        this.queue.addAll(batch);
+        this.bytes += size;
+        if (this.count == 0)
+            this.notifyAll();
+        this.count += batch.size();
+    }
+
+    private synchronized void poll(List<PubMessage> batch, int max) throws InterruptedException {
+        while (this.queue.isEmpty() && !this.closed)
+            this.wait(1000);
+        PubMessage m;
+        while (batch.size() < max && (m = this.queue.poll()) != null)
+            batch.add(m);
+    }
+
+    private synchronized void done(List<PubMessage> batch) {
+        for (var m : batch)
+            this.bytes -= m.body.length;
+        this.count -= batch.size();
+    }
+
+    private void run() {
+        var batch = new ArrayList<PubMessage>(100);
+        while (!this.closed || this.count > 0) {
+            try {
+                if (this.pool.isBlocked()) {
+                    this.pool.awaitUnblocked(1000);
+                    // 关闭时仍被阻塞, 放弃缓冲中的消息
+                    if (this.closed)
+                        break;
+                    continue;
+                }
+                this.poll(batch, 100);
+                if (batch.size() > 0)
+                    this.pool.publish(batch);
+            } catch (InterruptedException ex) {
+                if (this.closed)
+                    break;
+            } catch (Exception ex) {
+                this.pool.onPoolException(ex, batch);
+            } finally {
+                this.done(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 停止入队, 等待缓冲中的消息发布完成
+     */
+    @Override
+    public void close() throws Exception {
+        this.closed = true;
+        synchronized (this) {
+            this.notifyAll();
+        }
+        this.thread.join(10000);
+        if (this.thread.isAlive())
+            this.thread.interrupt();
+    }
+}
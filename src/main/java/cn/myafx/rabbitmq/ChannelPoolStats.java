@@ -0,0 +1,43 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * 通道池统计
+ */
+public class ChannelPoolStats {
+    /**
+     * 借出次数
+     */
+    public long Borrows;
+    /**
+     * 从当前线程绑定槽位借出次数
+     */
+    public long StripeHits;
+    /**
+     * 从共享池借出次数
+     */
+    public long OverflowHits;
+    /**
+     * 新建通道次数
+     */
+    public long Creates;
+    /**
+     * 归还时池已满关闭通道次数
+     */
+    public long Closes;
+    /**
+     * 达到通道上限后等待次数
+     */
+    public long Waits;
+    /**
+     * 达到通道上限后等待总时间, 纳秒
+     */
+    public long WaitNanos;
+    /**
+     * 当前空闲通道数
+     */
+    public int Idle;
+    /**
+     * 当前借出通道数
+     */
+    public int InUse;
+}
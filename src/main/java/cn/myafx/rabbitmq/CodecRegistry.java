@@ -0,0 +1,96 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * contentType 编码器注册表
+ */
+class CodecRegistry {
+    /**
+     * application/json
+     */
+    public static final String JSON = "application/json";
+    /**
+     * text/plain
+     */
+    public static final String TEXT = "text/plain";
+    /**
+     * application/octet-stream
+     */
+    public static final String OCTET_STREAM = "application/octet-stream";
+
+    private ConcurrentHashMap<String, IBytesMapper> codecMap = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<Class<?>, String> typeMap = new ConcurrentHashMap<>();
+    private volatile IBytesMapper json;
+
+    /**
+     * contentType 编码器注册表
+     * 
+     * @param json 默认 json 编码器
+     */
+    public CodecRegistry(IBytesMapper json) {
+        this.register(JSON, json);
+    }
+
+    /**
+     * 注册编码器
+     * 
+     * @param contentType contentType
+     * @param mapper      编码器
+     */
+    public void register(String contentType, IBytesMapper mapper) {
+        this.codecMap.put(contentType, mapper);
+        if (JSON.equals(contentType))
+            this.json = mapper;
+    }
+
+    /**
+     * 类型默认 contentType
+     * 
+     * @param clazz       类型
+     * @param contentType contentType
+     */
+    public void register(Class<?> clazz, String contentType) {
+        this.typeMap.put(clazz, contentType);
+    }
+
+    /**
+     * 类型默认 contentType, 未注册返回 application/json
+     * 
+     * @param clazz 类型
+     * @return contentType
+     */
+    public String getContentType(Class<?> clazz) {
+        if (this.typeMap.isEmpty())
+            return JSON;
+        var contentType = this.typeMap.get(clazz);
+        return contentType != null ? contentType : JSON;
+    }
+
+    /**
+     * 获取编码器, 未注册抛出异常
+     * 
+     * @param contentType contentType
+     * @return IBytesMapper
+     * @throws Exception Exception
+     */
+    public IBytesMapper getCodec(String contentType) throws Exception {
+        var codec = this.codecMap.get(contentType);
+        if (codec == null)
+            throw new Exception("contentType(" + contentType + ") codec not found!");
+        return codec;
+    }
+
+    /**
+     * 获取编码器, 未注册返回 json 编码器
+     * 
+     * @param contentType contentType
+     * @return IBytesMapper
+     */
+    public IBytesMapper findCodec(String contentType) {
+        if (contentType == null)
+            return this.json;
+        var codec = this.codecMap.get(contentType);
+        return codec != null ? codec : this.json;
+    }
+}
@@ -0,0 +1,121 @@
+package cn.myafx.rabbitmq;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+
+import com.rabbitmq.client.*;
+
+/**
+ * 确认模式(confirmSelect)发布通道, 按发布序号跟踪未确认消息
+ */
+class ConfirmChannel implements ConfirmListener, ShutdownListener, AutoCloseable {
+    private Channel channel;
+    private ConcurrentNavigableMap<Long, CompletableFuture<Boolean>> outstanding;
+
+    /**
+     * 确认模式发布通道
+     *
+     * @param channel channel
+     * @throws IOException IOException
+     */
+    public ConfirmChannel(Channel channel) throws IOException {
+        this.channel = channel;
+        this.outstanding = new ConcurrentSkipListMap<>();
+        this.channel.confirmSelect();
+        this.channel.addConfirmListener(this);
+        this.channel.addShutdownListener(this);
+    }
+
+    /**
+     * 通道是否可用
+     *
+     * @return boolean
+     */
+    public boolean isOpen() {
+        return this.channel.isOpen();
+    }
+
+    /**
+     * 未确认消息数
+     *
+     * @return int
+     */
+    public int getOutstandingCount() {
+        return this.outstanding.size();
+    }
+
+    /**
+     * 发布消息, broker ack 时返回 true, nack 时返回 false
+     *
+     * @param exchange   exchange
+     * @param routingKey routingKey
+     * @param props      props
+     * @param body       body
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Boolean> publish(String exchange, String routingKey, AMQP.BasicProperties props,
+            byte[] body) {
+        var future = new CompletableFuture<Boolean>();
+        // 序号与 basicPublish 必须原子, 否则多线程下序号会错位
+        synchronized (this) {
+            long seqNo = this.channel.getNextPublishSeqNo();
+            this.outstanding.put(seqNo, future);
+            try {
+                this.channel.basicPublish(exchange, routingKey, props, body);
+            } catch (Exception ex) {
+                this.outstanding.remove(seqNo);
+                future.completeExceptionally(ex);
+            }
+        }
+
+        return future;
+    }
+
+    private void complete(long deliveryTag, boolean multiple, boolean ack) {
+        if (multiple) {
+            var head = this.outstanding.headMap(deliveryTag, true);
+            for (var f : head.values())
+                f.complete(ack);
+            head.clear();
+        } else {
+            var f = this.outstanding.remove(deliveryTag);
+            if (f != null)
+                f.complete(ack);
+        }
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) throws IOException {
+        this.complete(deliveryTag, multiple, true);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) throws IOException {
+        this.complete(deliveryTag, multiple, false);
+    }
+
+    @Override
+    public void shutdownCompleted(ShutdownSignalException cause) {
+        // 通道关闭后序号重置, 未确认的消息无法再得到确认
+        while (!this.outstanding.isEmpty()) {
+            var e = this.outstanding.pollFirstEntry();
+            if (e != null)
+                e.getValue().completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * close
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            if (this.channel.isOpen()) {
+                if (!this.outstanding.isEmpty())
+                    this.channel.waitForConfirms(5000);
+                this.channel.close();
+            }
+        } catch (Exception ex) {
+        }
+    }
+}
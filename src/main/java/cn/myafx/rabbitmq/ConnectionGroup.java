@@ -0,0 +1,244 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+import com.rabbitmq.client.*;
+
+/**
+ * 一组延迟创建的连接, 按 IConnectionSelector 分配通道
+ */
+class ConnectionGroup implements AutoCloseable {
+    private ConnectionFactory factory;
+    private String[] names;
+    private AtomicReferenceArray<Connection> connections;
+    private AtomicIntegerArray loads;
+    private AtomicIntegerArray blocked;
+    private AtomicLongArray blockedSince;
+    private AtomicLong blockedNanos = new AtomicLong();
+    private Object lockBlocked = new Object();
+    private IConnectionSelector selector;
+    private AtomicInteger next = new AtomicInteger();
+    private Object lockCreate = new Object();
+    private volatile Runnable shutdownHander;
+
+    /**
+     * 连接组
+     * 
+     * @param factory  ConnectionFactory
+     * @param names    每个连接的 clientName, 长度即连接数
+     * @param selector 连接选择策略
+     */
+    public ConnectionGroup(ConnectionFactory factory, String[] names, IConnectionSelector selector) {
+        this.factory = factory;
+        this.names = names;
+        this.connections = new AtomicReferenceArray<>(names.length);
+        this.loads = new AtomicIntegerArray(names.length);
+        this.blocked = new AtomicIntegerArray(names.length);
+        this.blockedSince = new AtomicLongArray(names.length);
+        this.selector = selector;
+    }
+
+    /**
+     * 连接断开回调
+     * 
+     * @param hander hander
+     */
+    public void setShutdownHander(Runnable hander) {
+        this.shutdownHander = hander;
+    }
+
+    /**
+     * 连接数
+     * 
+     * @return int
+     */
+    public int size() {
+        return this.names.length;
+    }
+
+    /**
+     * 选择连接
+     * 
+     * @param key routingKey / 队列名
+     * @return 连接序号
+     */
+    public int select(String key) {
+        if (this.names.length == 1)
+            return 0;
+        // 内置轮询的计数器为全局共享, 每组单独计数, 否则多组交替选择时分配不均
+        if (this.selector == ConnectionSelector.RoundRobin)
+            return Math.floorMod(this.next.getAndIncrement(), this.names.length);
+        int index = this.selector.select(key, this.names.length, this.loads);
+        return Math.floorMod(index, this.names.length);
+    }
+
+    /**
+     * 获取连接, 不存在时创建
+     * 
+     * @param index 连接序号
+     * @return Connection
+     * @throws Exception Exception
+     */
+    public Connection get(int index) throws Exception {
+        var con = this.connections.get(index);
+        if (con != null)
+            return con;
+        synchronized (this.lockCreate) {
+            con = this.connections.get(index);
+            if (con == null) {
+                con = this.factory.newConnection(this.names[index]);
+                con.addBlockedListener(reason -> this.onBlocked(index), () -> this.onUnblocked(index));
+                // 连接断开后不会再收到 unblocked
+                con.addShutdownListener(cause -> {
+                    this.onUnblocked(index);
+                    var hander = this.shutdownHander;
+                    if (hander != null)
+                        hander.run();
+                });
+                this.connections.set(index, con);
+            }
+        }
+        return con;
+    }
+
+    /**
+     * 已创建的连接, 未创建时返回 null
+     * 
+     * @param index 连接序号
+     * @return Connection
+     */
+    public Connection peek(int index) {
+        return this.connections.get(index);
+    }
+
+    /**
+     * 在指定连接上创建通道
+     * 
+     * @param index 连接序号
+     * @return Channel
+     * @throws Exception Exception
+     */
+    public Channel createChannel(int index) throws Exception {
+        var ch = this.get(index).createChannel();
+        this.loads.incrementAndGet(index);
+        // 连接断开(hard error)后通道会自动恢复, 只有通道本身关闭才减少
+        ch.addShutdownListener(cause -> {
+            if (!cause.isHardError())
+                this.loads.decrementAndGet(index);
+        });
+        return ch;
+    }
+
+    /**
+     * 是否已创建连接
+     * 
+     * @return boolean
+     */
+    public boolean hasConnection() {
+        for (int i = 0; i < this.connections.length(); i++) {
+            if (this.connections.get(i) != null)
+                return true;
+        }
+        return false;
+    }
+
+    private void onBlocked(int index) {
+        if (this.blocked.compareAndSet(index, 0, 1))
+            this.blockedSince.set(index, System.nanoTime());
+    }
+
+    private void onUnblocked(int index) {
+        if (this.blocked.compareAndSet(index, 1, 0)) {
+            this.blockedNanos.addAndGet(System.nanoTime() - this.blockedSince.get(index));
+            synchronized (this.lockBlocked) {
+                this.lockBlocked.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 等待所有连接解除阻塞
+     * 
+     * @param timeoutMs 最长等待时间, 毫秒
+     * @return 已解除返回 true, 超时返回 false
+     * @throws InterruptedException InterruptedException
+     */
+    public boolean awaitUnblocked(long timeoutMs) throws InterruptedException {
+        if (!this.isBlocked())
+            return true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (this.lockBlocked) {
+            while (this.isBlocked()) {
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(this.lockBlocked, wait);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 各连接累计被阻塞时间, 包括正在阻塞的时间, 纳秒
+     * 
+     * @return long
+     */
+    public long getBlockedNanos() {
+        long nanos = this.blockedNanos.get();
+        long now = System.nanoTime();
+        for (int i = 0; i < this.blocked.length(); i++) {
+            if (this.blocked.get(i) != 0)
+                nanos += now - this.blockedSince.get(i);
+        }
+        return nanos;
+    }
+
+    /**
+     * 是否有连接被 broker 阻塞(connection.blocked)
+     * 
+     * @return boolean
+     */
+    public boolean isBlocked() {
+        for (int i = 0; i < this.blocked.length(); i++) {
+            if (this.blocked.get(i) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有已创建的连接是否可用
+     * 
+     * @return boolean
+     */
+    public boolean isOpen() {
+        boolean created = false;
+        for (int i = 0; i < this.connections.length(); i++) {
+            var con = this.connections.get(i);
+            if (con != null) {
+                if (!con.isOpen())
+                    return false;
+                created = true;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * close
+     */
+    @Override
+    public void close() throws Exception {
+        for (int i = 0; i < this.connections.length(); i++) {
+            var con = this.connections.getAndSet(i, null);
+            if (con == null)
+                continue;
+            try {
+                if (con.isOpen())
+                    con.close();
+            } catch (Exception ex) {
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 内置连接选择策略
+ */
+public enum ConnectionSelector implements IConnectionSelector {
+    /**
+     * 轮询, 默认
+     */
+    RoundRobin {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public int select(String key, int count, AtomicIntegerArray loads) {
+            return Math.floorMod(this.index.getAndIncrement(), count);
+        }
+    },
+    /**
+     * 通道数最少的连接
+     */
+    LeastLoaded {
+        @Override
+        public int select(String key, int count, AtomicIntegerArray loads) {
+            int index = 0;
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                int v = loads.get(i);
+                if (v < min) {
+                    min = v;
+                    index = i;
+                }
+            }
+            return index;
+        }
+    },
+    /**
+     * 按 routingKey / 队列名 hash, 相同 key 固定在同一个连接上
+     */
+    KeyHash {
+        @Override
+        public int select(String key, int count, AtomicIntegerArray loads) {
+            if (key == null)
+                return 0;
+            return Math.floorMod(key.hashCode(), count);
+        }
+    }
+}
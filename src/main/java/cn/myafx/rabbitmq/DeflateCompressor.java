@@ -0,0 +1,75 @@
+package cn.myafx.rabbitmq;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * deflate(zlib) 压缩
+ */
+public class DeflateCompressor implements ICompressor {
+    /**
+     * deflate
+     */
+    public static final String ENCODING = "deflate";
+
+    private int level;
+
+    /**
+     * deflate 压缩, 默认压缩级别
+     */
+    public DeflateCompressor() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * deflate 压缩
+     * 
+     * @param level 压缩级别 0-9, -1 默认
+     */
+    public DeflateCompressor(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String getEncoding() {
+        return ENCODING;
+    }
+
+    @Override
+    public byte[] compress(byte[] buffer) throws Exception {
+        var deflater = new Deflater(this.level);
+        try {
+            deflater.setInput(buffer);
+            deflater.finish();
+            var output = new ByteArrayOutputStream(Math.max(buffer.length / 4, 64));
+            var buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                output.write(buf, 0, n);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] buffer) throws Exception {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(buffer);
+            var output = new ByteArrayOutputStream(buffer.length * 4);
+            var buf = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new Exception("deflate data is error!");
+                output.write(buf, 0, n);
+            }
+            return output.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * 分级延迟队列命名与路由
+ * <p>
+ * 第 L 级为 topic 交换器和队列 {DelayQueue}.{L}, 队列 x-message-ttl 为 2^L 秒, 同一队列内消息过期时间相同,
+ * 不会被队头长延迟消息阻塞. 延迟秒数按二进制拆分, routingKey 为 levels 个单词, 第 i 个单词为第 levels-1-i 级的位:
+ * 位为 1 进入该级队列, 过期后死信到下一级交换器; 位为 0 经交换器绑定直接进入下一级交换器;
+ * 第 0 级之后进入 DelayQueue(x-message-ttl 0), 立即死信到目标交换器/路由key
+ */
+final class DelayTiers {
+    /**
+     * 最大级数, x-message-ttl 最大 2^32-1 毫秒
+     */
+    public static final int MAX_LEVELS = 22;
+
+    private DelayTiers() {
+    }
+
+    /**
+     * 检查级数
+     *
+     * @param levels 级数
+     * @throws Exception Exception
+     */
+    public static void check(int levels) throws Exception {
+        if (levels < 1 || MAX_LEVELS < levels)
+            throw new Exception("delayLevels(" + levels + ") is error!");
+    }
+
+    /**
+     * 第 level 级交换器/队列名
+     *
+     * @param delayQueue 延迟队列
+     * @param level      级
+     * @return String
+     */
+    public static String name(String delayQueue, int level) {
+        return delayQueue + "." + level;
+    }
+
+    /**
+     * 第 level 级队列 x-message-ttl, 毫秒
+     *
+     * @param level 级
+     * @return long
+     */
+    public static long ttl(int level) {
+        return 1000L << level;
+    }
+
+    /**
+     * 第 level 级交换器绑定 routingKey
+     *
+     * @param levels 级数
+     * @param level  级
+     * @param bit    位
+     * @return String
+     */
+    public static String pattern(int levels, int level, boolean bit) {
+        var sb = new StringBuilder(2 * levels);
+        for (int i = levels - 1; i > level; i--)
+            sb.append("*.");
+        return sb.append(bit ? "1" : "0").append(".#").toString();
+    }
+
+    /**
+     * 最大延迟, 秒
+     *
+     * @param levels 级数
+     * @return long
+     */
+    public static long maxDelay(int levels) {
+        return (1L << levels) - 1;
+    }
+
+    /**
+     * 发布的交换器, 延迟最高位所在级, 跳过之前全为 0 的级
+     *
+     * @param delayQueue 延迟队列
+     * @param delay      延迟, 秒, 大于 0
+     * @return String
+     */
+    public static String exchange(String delayQueue, int delay) {
+        return name(delayQueue, 31 - Integer.numberOfLeadingZeros(delay));
+    }
+
+    /**
+     * 发布的 routingKey
+     *
+     * @param levels 级数
+     * @param delay  延迟, 秒
+     * @return String
+     */
+    public static String routingKey(int levels, int delay) {
+        var chars = new char[2 * levels - 1];
+        for (int i = 0; i < levels; i++) {
+            int level = levels - 1 - i;
+            chars[2 * i] = ((delay >>> level) & 1) == 1 ? '1' : '0';
+            if (level > 0)
+                chars[2 * i + 1] = '.';
+        }
+        return new String(chars);
+    }
+}
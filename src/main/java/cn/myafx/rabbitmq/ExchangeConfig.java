@@ -38,7 +38,7 @@ public class ExchangeConfig {
         m.Type = this.Type;
         m.Durable = this.Durable;
         m.AutoDelete = this.AutoDelete;
-        m.Arguments = new HashMap<>(this.Arguments);
+        m.Arguments = this.Arguments == null ? null : new HashMap<>(this.Arguments);
         return m;
     }
 }
@@ -0,0 +1,37 @@
+package cn.myafx.rabbitmq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip 压缩
+ */
+public class GzipCompressor implements ICompressor {
+    /**
+     * gzip
+     */
+    public static final String ENCODING = "gzip";
+
+    @Override
+    public String getEncoding() {
+        return ENCODING;
+    }
+
+    @Override
+    public byte[] compress(byte[] buffer) throws Exception {
+        var output = new ByteArrayOutputStream(Math.max(buffer.length / 4, 64));
+        try (var gzip = new GZIPOutputStream(output, 8192)) {
+            gzip.write(buffer);
+        }
+        return output.toByteArray();
+    }
+
+    @Override
+    public byte[] decompress(byte[] buffer) throws Exception {
+        try (var gzip = new GZIPInputStream(new ByteArrayInputStream(buffer), 8192)) {
+            return gzip.readAllBytes();
+        }
+    }
+}
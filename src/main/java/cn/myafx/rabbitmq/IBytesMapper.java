@@ -0,0 +1,54 @@
+package cn.myafx.rabbitmq;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 字节序列化接口, 直接读写 byte[], 避免 String 中转
+ */
+public interface IBytesMapper {
+
+    /**
+     * serialize
+     * 
+     * @param <T> T
+     * @param m   object
+     * @return byte[]
+     * @throws Exception Exception
+     */
+    <T> byte[] serializeBytes(T m) throws Exception;
+
+    /**
+     * serialize
+     * 
+     * @param <T>    T
+     * @param m      object
+     * @param stream 输出流
+     * @throws Exception Exception
+     */
+    <T> void serialize(T m, OutputStream stream) throws Exception;
+
+    /**
+     * deserialize
+     * 
+     * @param <T>    T
+     * @param buffer buffer
+     * @param offset 开始位置
+     * @param length 长度
+     * @param clazz  object clazz
+     * @return object
+     * @throws Exception Exception
+     */
+    <T> T deserialize(byte[] buffer, int offset, int length, Class<T> clazz) throws Exception;
+
+    /**
+     * deserialize
+     * 
+     * @param <T>    T
+     * @param stream 输入流
+     * @param clazz  object clazz
+     * @return object
+     * @throws Exception Exception
+     */
+    <T> T deserialize(InputStream stream, Class<T> clazz) throws Exception;
+}
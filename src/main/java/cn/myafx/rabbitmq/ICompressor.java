@@ -0,0 +1,31 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * 消息体压缩接口, getEncoding 写入 contentEncoding, 订阅时按 contentEncoding 解压
+ */
+public interface ICompressor {
+    /**
+     * contentEncoding, 例如 gzip
+     * 
+     * @return String
+     */
+    String getEncoding();
+
+    /**
+     * 压缩
+     * 
+     * @param buffer 原始数据
+     * @return 压缩数据
+     * @throws Exception Exception
+     */
+    byte[] compress(byte[] buffer) throws Exception;
+
+    /**
+     * 解压
+     * 
+     * @param buffer 压缩数据
+     * @return 原始数据
+     * @throws Exception Exception
+     */
+    byte[] decompress(byte[] buffer) throws Exception;
+}
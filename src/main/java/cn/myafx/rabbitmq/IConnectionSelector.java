@@ -0,0 +1,18 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 多连接时选择通道所在的连接
+ */
+public interface IConnectionSelector {
+    /**
+     * 选择连接
+     * 
+     * @param key   发布时为 routingKey, 订阅时为队列名, 定义交换器/队列时为 null
+     * @param count 连接数
+     * @param loads 每个连接当前打开的通道数
+     * @return 连接序号, 0 ~ count-1
+     */
+    int select(String key, int count, AtomicIntegerArray loads);
+}
@@ -35,4 +35,36 @@ public interface IMQConfig extends AutoCloseable {
      * @return SubConfig
      */
     SubConfig getSubConfig(String name);
+
+    /**
+     * 获取不可变生产配置
+     * 
+     * @param name 节点名称
+     * @return PubHandle
+     */
+    default PubHandle getPubHandle(String name) {
+        var pc = this.getPubConfig(name);
+        return pc != null ? new PubHandle(pc) : null;
+    }
+
+    /**
+     * 获取不可变生产配置, 节点名称为类名(getSimpleName)
+     * 
+     * @param clazz 消息类型
+     * @return PubHandle
+     */
+    default PubHandle getPubHandle(Class<?> clazz) {
+        return this.getPubHandle(clazz.getSimpleName());
+    }
+
+    /**
+     * 获取不可变消费配置
+     * 
+     * @param name 节点名称
+     * @return SubHandle
+     */
+    default SubHandle getSubHandle(String name) {
+        var sc = this.getSubConfig(name);
+        return sc != null ? new SubHandle(sc) : null;
+    }
 }
@@ -0,0 +1,14 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * 配置重新加载回调
+ */
+public interface IMQConfigReloadHander {
+    /**
+     * hander
+     * 
+     * @param diff 与上一版本的差异, 解析失败时为 null
+     * @param ex   解析或定义失败的异常, 成功时为 null, 失败时仍使用上一版本
+     */
+    void hander(MQConfigDiff diff, Exception ex);
+}
@@ -1,6 +1,7 @@
 package cn.myafx.rabbitmq;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * mq 应用池接口
@@ -29,6 +30,34 @@ public interface IMQPool extends AutoCloseable {
          */
         int getHeartbeat();
 
+        /**
+         * 发布通道池统计
+         * 
+         * @return ChannelPoolStats
+         */
+        ChannelPoolStats getPubChannelPoolStats();
+
+        /**
+         * 发布连接是否被 broker 阻塞(内存/磁盘告警)
+         * 
+         * @return boolean
+         */
+        boolean isBlocked();
+
+        /**
+         * 发布连接累计被阻塞时间, 毫秒
+         * 
+         * @return long
+         */
+        long getBlockedMillis();
+
+        /**
+         * 统计, 未开启时返回 null
+         * 
+         * @return IMQPoolMetrics
+         */
+        IMQPoolMetrics getMetrics();
+
         /**
          * 定义交换器
          * 
@@ -66,6 +95,15 @@ public interface IMQPool extends AutoCloseable {
          */
         void queueDeclare(QueueConfig config) throws Exception;
 
+        /**
+         * 定义队列, config.IsQueueParam 时队列名、config.IsRoutingKeyParam 时路由key按参数格式化
+         * 
+         * @param config QueueConfig
+         * @param params 参数
+         * @throws Exception Exception
+         */
+        void queueDeclare(QueueConfig config, Object[] params) throws Exception;
+
         /**
          * 批量定义队列
          * 
@@ -74,6 +112,40 @@ public interface IMQPool extends AutoCloseable {
          */
         void queueDeclare(List<QueueConfig> queues) throws Exception;
 
+        /**
+         * 解除队列绑定
+         * 
+         * @param queue      队列
+         * @param exchange   交换器
+         * @param routingKey 路由key
+         * @param arguments  绑定参数, 可为 null
+         * @throws Exception Exception
+         */
+        void queueUnbind(String queue, String exchange, String routingKey, Map<String, Object> arguments)
+                        throws Exception;
+
+        /**
+         * 多通道并行定义交换器和队列, 交换器全部完成后再定义队列, 主队列先于其延迟队列, 单个定义失败不影响其他定义
+         * 
+         * @param exchanges   交换器, 可为 null
+         * @param queues      队列, 可为 null
+         * @param parallelism 并行通道数, 默认 4
+         * @return TopologyReport 耗时与失败的定义
+         * @throws Exception Exception
+         */
+        TopologyReport declareTopology(List<ExchangeConfig> exchanges, List<QueueConfig> queues,
+                        Integer parallelism) throws Exception;
+
+        /**
+         * 多通道并行定义配置中的交换器和队列
+         * 
+         * @param config      mq配置
+         * @param parallelism 并行通道数, 默认 4
+         * @return TopologyReport 耗时与失败的定义
+         * @throws Exception Exception
+         */
+        TopologyReport declareTopology(IMQConfig config, Integer parallelism) throws Exception;
+
         /**
          * 发布消息
          * 
@@ -105,6 +177,38 @@ public interface IMQPool extends AutoCloseable {
         <T> boolean pub(T msg, PubConfig config, Integer expire, Boolean persistent, Map<String, Object> headers)
                         throws Exception;
 
+        /**
+         * 发布消息, config.IsRoutingKeyParam 时 routingKey 按参数格式化
+         * 
+         * @param <T>           T
+         * @param msg           消息
+         * @param config        路由配置
+         * @param routingParams routingKey 参数
+         * @param expire        消息过期时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pub(T msg, PubConfig config, Object[] routingParams, Integer expire, Boolean persistent,
+                        Map<String, Object> headers) throws Exception;
+
+        /**
+         * 发布消息, 使用不可变生产配置
+         * 
+         * @param <T>           T
+         * @param msg           消息
+         * @param handle        生产配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param expire        消息过期时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pub(T msg, PubHandle handle, Object[] routingParams, Integer expire,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
         /**
          * 发布消息
          * 
@@ -136,6 +240,164 @@ public interface IMQPool extends AutoCloseable {
         <T> boolean pub(List<T> msgList, PubConfig config, Integer expire, Boolean persistent,
                         Map<String, Object> headers) throws Exception;
 
+        /**
+         * 发布消息, config.IsRoutingKeyParam 时 routingKey 按参数格式化
+         * 
+         * @param <T>           T
+         * @param msgList       消息
+         * @param config        路由配置
+         * @param routingParams routingKey 参数
+         * @param expire        消息过期时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pub(List<T> msgList, PubConfig config, Object[] routingParams, Integer expire,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 发布消息, 使用不可变生产配置
+         * 
+         * @param <T>           T
+         * @param msgList       消息
+         * @param handle        生产配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param expire        消息过期时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pub(List<T> msgList, PubHandle handle, Object[] routingParams, Integer expire,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 确认模式发布消息, broker 确认(ack)后返回 true, 拒绝(nack)返回 false
+         * 
+         * @param <T>        T
+         * @param msg        消息
+         * @param routingKey routingKey
+         * @param expire     消息过期时间, 秒
+         * @param exchange   exchange， 默认 "amq.direct"
+         * @param persistent 消息是否持久化, 默认 false
+         * @param headers    headers
+         * @throws Exception Exception
+         * @return CompletableFuture
+         */
+        <T> CompletableFuture<Boolean> pubAsync(T msg, String routingKey, Integer expire, String exchange,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 确认模式发布消息, broker 确认(ack)后返回 true, 拒绝(nack)返回 false
+         * 
+         * @param <T>        T
+         * @param msg        消息
+         * @param config     路由配置
+         * @param expire     消息过期时间, 秒
+         * @param persistent 消息是否持久化, 默认 false
+         * @param headers    headers
+         * @throws Exception Exception
+         * @return CompletableFuture
+         */
+        <T> CompletableFuture<Boolean> pubAsync(T msg, PubConfig config, Integer expire, Boolean persistent,
+                        Map<String, Object> headers) throws Exception;
+
+        /**
+         * 确认模式发布消息, config.IsRoutingKeyParam 时 routingKey 按参数格式化
+         * 
+         * @param <T>           T
+         * @param msg           消息
+         * @param config        路由配置
+         * @param routingParams routingKey 参数
+         * @param expire        消息过期时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return CompletableFuture
+         */
+        <T> CompletableFuture<Boolean> pubAsync(T msg, PubConfig config, Object[] routingParams, Integer expire,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 确认模式发布消息, 使用不可变生产配置
+         * 
+         * @param <T>           T
+         * @param msg           消息
+         * @param handle        生产配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param expire        消息过期时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return CompletableFuture
+         */
+        <T> CompletableFuture<Boolean> pubAsync(T msg, PubHandle handle, Object[] routingParams,
+                        Integer expire, Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 确认模式发布消息, 全部消息被 broker 确认(ack)后返回 true, 任一被拒绝(nack)返回 false
+         * 
+         * @param <T>        T
+         * @param msgList    消息
+         * @param routingKey routingKey
+         * @param expire     消息过期时间, 秒
+         * @param exchange   exchange， 默认 "amq.direct"
+         * @param persistent 消息是否持久化, 默认 false
+         * @param headers    headers
+         * @throws Exception Exception
+         * @return CompletableFuture
+         */
+        <T> CompletableFuture<Boolean> pubAsync(List<T> msgList, String routingKey, Integer expire,
+                        String exchange, Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 确认模式发布消息, 全部消息被 broker 确认(ack)后返回 true, 任一被拒绝(nack)返回 false
+         * 
+         * @param <T>        T
+         * @param msgList    消息
+         * @param config     路由配置
+         * @param expire     消息过期时间, 秒
+         * @param persistent 消息是否持久化, 默认 false
+         * @param headers    headers
+         * @throws Exception Exception
+         * @return CompletableFuture
+         */
+        <T> CompletableFuture<Boolean> pubAsync(List<T> msgList, PubConfig config, Integer expire,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 确认模式发布消息, config.IsRoutingKeyParam 时 routingKey 按参数格式化
+         * 
+         * @param <T>           T
+         * @param msgList       消息
+         * @param config        路由配置
+         * @param routingParams routingKey 参数
+         * @param expire        消息过期时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return CompletableFuture
+         */
+        <T> CompletableFuture<Boolean> pubAsync(List<T> msgList, PubConfig config, Object[] routingParams,
+                        Integer expire, Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 确认模式发布消息, 使用不可变生产配置
+         * 
+         * @param <T>           T
+         * @param msgList       消息
+         * @param handle        生产配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param expire        消息过期时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return CompletableFuture
+         */
+        <T> CompletableFuture<Boolean> pubAsync(List<T> msgList, PubHandle handle, Object[] routingParams,
+                        Integer expire, Boolean persistent, Map<String, Object> headers) throws Exception;
+
         /**
          * 发布延迟消息
          * 
@@ -167,6 +429,40 @@ public interface IMQPool extends AutoCloseable {
         <T> boolean pubDelay(T msg, PubConfig config, Integer delay, Boolean persistent,
                         Map<String, Object> headers) throws Exception;
 
+        /**
+         * 发布延迟消息, config.IsRoutingKeyParam 时 delayRoutingKey 按参数格式化;
+         * config.DelayLevels 大于 0 时按二进制拆分延迟发布到分级延迟队列, DelayQueue 按参数格式化;
+         * 开启本地时间轮且延迟不超过阈值时在进程内到期后直接发布到 routingKey
+         * 
+         * @param <T>           T
+         * @param msg           消息
+         * @param config        路由配置
+         * @param routingParams delayRoutingKey 参数
+         * @param delay         延迟时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pubDelay(T msg, PubConfig config, Object[] routingParams, Integer delay, Boolean persistent,
+                        Map<String, Object> headers) throws Exception;
+
+        /**
+         * 发布延迟消息, 使用不可变生产配置
+         * 
+         * @param <T>           T
+         * @param msg           消息
+         * @param handle        生产配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param delay         延迟时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pubDelay(T msg, PubHandle handle, Object[] routingParams, Integer delay,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
         /**
          * 发布延迟消息
          * 
@@ -198,6 +494,106 @@ public interface IMQPool extends AutoCloseable {
         <T> boolean pubDelay(List<T> msgList, PubConfig config, Integer delay, Boolean persistent,
                         Map<String, Object> headers) throws Exception;
 
+        /**
+         * 发布延迟消息, config.IsRoutingKeyParam 时 delayRoutingKey 按参数格式化;
+         * config.DelayLevels 大于 0 时按二进制拆分延迟发布到分级延迟队列, DelayQueue 按参数格式化;
+         * 开启本地时间轮且延迟不超过阈值时在进程内到期后直接发布到 routingKey
+         * 
+         * @param <T>           T
+         * @param msgList       消息
+         * @param config        路由配置
+         * @param routingParams delayRoutingKey 参数
+         * @param delay         延迟时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pubDelay(List<T> msgList, PubConfig config, Object[] routingParams, Integer delay,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 发布延迟消息, 使用不可变生产配置
+         * 
+         * @param <T>           T
+         * @param msgList       消息
+         * @param handle        生产配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param delay         延迟时间, 秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pubDelay(List<T> msgList, PubHandle handle, Object[] routingParams, Integer delay,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 发布毫秒级延迟消息, 开启本地时间轮且延迟不超过阈值时在进程内到期后发布到 routingKey,
+         * 否则按秒(向上取整)走 broker 延迟队列
+         * 
+         * @param <T>           T
+         * @param msg           消息
+         * @param config        路由配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param delayMs       延迟时间, 毫秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pubDelayMillis(T msg, PubConfig config, Object[] routingParams, Long delayMs,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 发布毫秒级延迟消息, 使用不可变生产配置
+         * 
+         * @param <T>           T
+         * @param msg           消息
+         * @param handle        生产配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param delayMs       延迟时间, 毫秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pubDelayMillis(T msg, PubHandle handle, Object[] routingParams, Long delayMs,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 发布毫秒级延迟消息, 开启本地时间轮且延迟不超过阈值时在进程内到期后发布到 routingKey,
+         * 否则按秒(向上取整)走 broker 延迟队列
+         * 
+         * @param <T>           T
+         * @param msgList       消息
+         * @param config        路由配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param delayMs       延迟时间, 毫秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pubDelayMillis(List<T> msgList, PubConfig config, Object[] routingParams, Long delayMs,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
+        /**
+         * 发布毫秒级延迟消息, 使用不可变生产配置
+         * 
+         * @param <T>           T
+         * @param msgList       消息
+         * @param handle        生产配置
+         * @param routingParams routingKey 参数, 可为 null
+         * @param delayMs       延迟时间, 毫秒
+         * @param persistent    消息是否持久化, 默认 false
+         * @param headers       headers
+         * @throws Exception Exception
+         * @return boolean
+         */
+        <T> boolean pubDelayMillis(List<T> msgList, PubHandle handle, Object[] routingParams, Long delayMs,
+                        Boolean persistent, Map<String, Object> headers) throws Exception;
+
         /**
          * 消费消息
          * 
@@ -208,4 +604,112 @@ public interface IMQPool extends AutoCloseable {
          * @throws Exception Exception
          */
         <T> void sub(ISubHander<T> hander, String queue, Boolean autoAck) throws Exception;
+
+        /**
+         * 消费消息, 每个订阅独占一个通道
+         * 
+         * @param <T>           T
+         * @param hander        hander
+         * @param queue         queue
+         * @param autoAck       是否自动确认, 默认 false
+         * @param prefetchCount 预取消息数, 默认 1
+         * @throws Exception Exception
+         */
+        <T> void sub(ISubHander<T> hander, String queue, Boolean autoAck, Integer prefetchCount) throws Exception;
+
+        /**
+         * 消费消息, 使用固定大小线程池并发处理
+         * 
+         * @param <T>           T
+         * @param hander        hander
+         * @param queue         queue
+         * @param autoAck       是否自动确认, 默认 false
+         * @param prefetchCount 预取消息数, 默认与并发数相同
+         * @param concurrency   并发处理线程数, 默认 1 在消费分发线程中处理
+         * @throws Exception Exception
+         */
+        <T> void sub(ISubHander<T> hander, String queue, Boolean autoAck, Integer prefetchCount,
+                        Integer concurrency) throws Exception;
+
+        /**
+         * 消费消息
+         * 
+         * @param <T>     T
+         * @param hander  hander
+         * @param config  消费配置
+         * @param autoAck 是否自动确认, 默认 false
+         * @throws Exception Exception
+         */
+        <T> void sub(ISubHander<T> hander, SubConfig config, Boolean autoAck) throws Exception;
+
+        /**
+         * 消费消息, config.IsQueueParam 时队列名按参数格式化
+         * 
+         * @param <T>         T
+         * @param hander      hander
+         * @param config      消费配置
+         * @param queueParams 队列名参数
+         * @param autoAck     是否自动确认, 默认 false
+         * @throws Exception Exception
+         */
+        <T> void sub(ISubHander<T> hander, SubConfig config, Object[] queueParams, Boolean autoAck)
+                        throws Exception;
+
+        /**
+         * 消费消息, 使用不可变消费配置
+         * 
+         * @param <T>         T
+         * @param hander      hander
+         * @param handle      消费配置
+         * @param queueParams 队列名参数, 可为 null
+         * @param autoAck     是否自动确认, 默认 false
+         * @throws Exception Exception
+         */
+        <T> void sub(ISubHander<T> hander, SubHandle handle, Object[] queueParams, Boolean autoAck)
+                        throws Exception;
+
+        /**
+         * 批量消费消息, 每个订阅独占一个通道, 整批用一次 multiple ack 确认
+         * 
+         * @param <T>       T
+         * @param hander    hander
+         * @param queue     queue
+         * @param batchSize 每批最大消息数, 默认 100
+         * @param lingerMs  第一条消息到达后最长等待时间, 毫秒, 默认 100
+         * @throws Exception Exception
+         */
+        <T> void sub(ISubBatchHander<T> hander, String queue, Integer batchSize, Integer lingerMs)
+                        throws Exception;
+
+        /**
+         * 批量消费消息, 每个订阅独占一个通道, 整批用一次 multiple ack 确认
+         * 
+         * @param <T>    T
+         * @param hander hander
+         * @param config 消费配置
+         * @throws Exception Exception
+         */
+        <T> void sub(ISubBatchHander<T> hander, SubConfig config) throws Exception;
+
+        /**
+         * 批量消费消息, config.IsQueueParam 时队列名按参数格式化
+         * 
+         * @param <T>         T
+         * @param hander      hander
+         * @param config      消费配置
+         * @param queueParams 队列名参数
+         * @throws Exception Exception
+         */
+        <T> void sub(ISubBatchHander<T> hander, SubConfig config, Object[] queueParams) throws Exception;
+
+        /**
+         * 批量消费消息, 使用不可变消费配置
+         * 
+         * @param <T>         T
+         * @param hander      hander
+         * @param handle      消费配置
+         * @param queueParams 队列名参数, 可为 null
+         * @throws Exception Exception
+         */
+        <T> void sub(ISubBatchHander<T> hander, SubHandle handle, Object[] queueParams) throws Exception;
 }
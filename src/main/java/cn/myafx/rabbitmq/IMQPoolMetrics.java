@@ -0,0 +1,18 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * MQPool 统计
+ */
+public interface IMQPoolMetrics {
+    /**
+     * 统计快照
+     * 
+     * @return MQMetricsSnapshot
+     */
+    MQMetricsSnapshot snapshot();
+
+    /**
+     * 清零
+     */
+    void reset();
+}
@@ -0,0 +1,28 @@
+package cn.myafx.rabbitmq;
+
+import java.util.List;
+
+import com.rabbitmq.client.BasicProperties;
+
+/**
+ * 批量订阅消息处理
+ */
+public interface ISubBatchHander<T> {
+
+    /**
+     * T.class
+     * 
+     * @return T.class
+     */
+    Class<T> getTClass();
+
+    /**
+     * 批量订阅消息处理, 返回 true 时整批确认, false 时整批重新入队
+     * 
+     * @param list       消息
+     * @param properties 与消息一一对应的 properties
+     * @return boolean
+     * @throws Exception Exception
+     */
+    boolean hander(List<T> list, List<BasicProperties> properties) throws Exception;
+}
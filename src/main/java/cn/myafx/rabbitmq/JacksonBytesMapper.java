@@ -0,0 +1,55 @@
+package cn.myafx.rabbitmq;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * jackson 字节序列化, utf-8 json 直接读写 byte[]
+ */
+public class JacksonBytesMapper implements IJsonMapper, IBytesMapper {
+    private ObjectMapper mapper;
+
+    /**
+     * JacksonBytesMapper
+     * 
+     * @param mapper ObjectMapper
+     * @throws Exception Exception
+     */
+    public JacksonBytesMapper(ObjectMapper mapper) throws Exception {
+        if (mapper == null)
+            throw new Exception("mapper is null!");
+        this.mapper = mapper;
+    }
+
+    @Override
+    public <T> String serialize(T m) throws Exception {
+        return this.mapper.writeValueAsString(m);
+    }
+
+    @Override
+    public <T> T deserialize(String json, Class<T> clazz) throws Exception {
+        return this.mapper.readValue(json, clazz);
+    }
+
+    @Override
+    public <T> byte[] serializeBytes(T m) throws Exception {
+        return this.mapper.writeValueAsBytes(m);
+    }
+
+    @Override
+    public <T> void serialize(T m, OutputStream stream) throws Exception {
+        this.mapper.writeValue(stream, m);
+    }
+
+    @Override
+    public <T> T deserialize(byte[] buffer, int offset, int length, Class<T> clazz) throws Exception {
+        return this.mapper.readValue(buffer, offset, length, clazz);
+    }
+
+    @Override
+    public <T> T deserialize(InputStream stream, Class<T> clazz) throws Exception {
+        return this.mapper.readValue(stream, clazz);
+    }
+}
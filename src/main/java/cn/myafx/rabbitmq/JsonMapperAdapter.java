@@ -0,0 +1,47 @@
+package cn.myafx.rabbitmq;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * IJsonMapper 转 IBytesMapper, 经 utf-8 String 中转
+ */
+public class JsonMapperAdapter implements IBytesMapper {
+    private IJsonMapper mapper;
+
+    /**
+     * JsonMapperAdapter
+     * 
+     * @param mapper IJsonMapper
+     * @throws Exception Exception
+     */
+    public JsonMapperAdapter(IJsonMapper mapper) throws Exception {
+        if (mapper == null)
+            throw new Exception("mapper is null!");
+        this.mapper = mapper;
+    }
+
+    @Override
+    public <T> byte[] serializeBytes(T m) throws Exception {
+        var json = this.mapper.serialize(m);
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> void serialize(T m, OutputStream stream) throws Exception {
+        stream.write(this.serializeBytes(m));
+    }
+
+    @Override
+    public <T> T deserialize(byte[] buffer, int offset, int length, Class<T> clazz) throws Exception {
+        var json = new String(buffer, offset, length, StandardCharsets.UTF_8);
+        return this.mapper.deserialize(json, clazz);
+    }
+
+    @Override
+    public <T> T deserialize(InputStream stream, Class<T> clazz) throws Exception {
+        var buffer = stream.readAllBytes();
+        return this.deserialize(buffer, 0, buffer.length, clazz);
+    }
+}
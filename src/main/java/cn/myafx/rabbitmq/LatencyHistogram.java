@@ -0,0 +1,110 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * 无锁延迟直方图, 按 2 的幂分段, 每段 2^subBits 个子桶(默认 4 个, 相对误差 25% 以内), 记录不分配内存
+ */
+class LatencyHistogram {
+    private int subBits;
+    private int subCount;
+    private AtomicLongArray counts;
+    private LongAdder count = new LongAdder();
+    private LongAdder total = new LongAdder();
+    private LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * 无锁延迟直方图, 每段 4 个子桶
+     */
+    public LatencyHistogram() {
+        this(2);
+    }
+
+    /**
+     * 无锁延迟直方图
+     * 
+     * @param subBits 每段子桶数 2^subBits, 1 - 10, 相对误差 1/2^subBits 以内
+     */
+    public LatencyHistogram(int subBits) {
+        if (subBits < 1 || subBits > 10)
+            throw new IllegalArgumentException("subBits(" + subBits + ") is error!");
+        this.subBits = subBits;
+        this.subCount = 1 << subBits;
+        this.counts = new AtomicLongArray((64 - subBits) * this.subCount);
+    }
+
+    private int index(long nanos) {
+        if (nanos < this.subCount)
+            return nanos < 0 ? 0 : (int) nanos;
+        int msb = 63 - Long.numberOfLeadingZeros(nanos);
+        return (msb - this.subBits + 1) * this.subCount
+                + (int) ((nanos >>> (msb - this.subBits)) & (this.subCount - 1));
+    }
+
+    private long upper(int index) {
+        if (index < this.subCount)
+            return index;
+        int group = index / this.subCount;
+        long sub = index % this.subCount;
+        return ((this.subCount + sub + 1) << (group - 1)) - 1;
+    }
+
+    /**
+     * 记录
+     * 
+     * @param nanos 耗时, 纳秒
+     */
+    public void record(long nanos) {
+        this.counts.incrementAndGet(index(nanos));
+        this.count.increment();
+        this.total.add(nanos);
+        this.max.accumulate(nanos);
+    }
+
+    /**
+     * 快照
+     * 
+     * @return LatencyStats
+     */
+    public LatencyStats snapshot() {
+        var m = new LatencyStats();
+        long[] arr = new long[this.counts.length()];
+        long n = 0;
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = this.counts.get(i);
+            n += arr[i];
+        }
+        m.Count = this.count.sum();
+        m.TotalNanos = this.total.sum();
+        m.MaxNanos = this.max.get();
+        m.P50Nanos = percentile(arr, n, 0.5);
+        m.P90Nanos = percentile(arr, n, 0.9);
+        m.P99Nanos = percentile(arr, n, 0.99);
+        m.P999Nanos = percentile(arr, n, 0.999);
+        return m;
+    }
+
+    private long percentile(long[] arr, long n, double p) {
+        if (n == 0)
+            return 0;
+        long rank = (long) Math.ceil(n * p);
+        long sum = 0;
+        for (int i = 0; i < arr.length; i++) {
+            sum += arr[i];
+            if (sum >= rank)
+                return Math.min(upper(i), this.max.get());
+        }
+        return this.max.get();
+    }
+
+    /**
+     * 清零
+     */
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++)
+            this.counts.set(i, 0);
+        this.count.reset();
+        this.total.reset();
+        this.max.reset();
+    }
+}
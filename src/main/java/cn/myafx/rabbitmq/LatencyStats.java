@@ -0,0 +1,44 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * 延迟统计, 分位数为直方图桶上限估算值
+ */
+public class LatencyStats {
+    /**
+     * 次数
+     */
+    public long Count;
+    /**
+     * 总耗时, 纳秒
+     */
+    public long TotalNanos;
+    /**
+     * 最大耗时, 纳秒
+     */
+    public long MaxNanos;
+    /**
+     * 50 分位, 纳秒
+     */
+    public long P50Nanos;
+    /**
+     * 90 分位, 纳秒
+     */
+    public long P90Nanos;
+    /**
+     * 99 分位, 纳秒
+     */
+    public long P99Nanos;
+    /**
+     * 99.9 分位, 纳秒
+     */
+    public long P999Nanos;
+
+    /**
+     * 平均耗时, 纳秒
+     * 
+     * @return long
+     */
+    public long getMeanNanos() {
+        return this.Count > 0 ? this.TotalNanos / this.Count : 0;
+    }
+}
@@ -0,0 +1,378 @@
+package cn.myafx.rabbitmq;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * 进程内 broker, 实现 MQPool 用到的子集: exchange(direct/topic/fanout)、queue、bind、exchange 间 bind、
+ * x-message-ttl / expiration 过期与死信(x-dead-letter-exchange / x-dead-letter-routing-key)
+ */
+class LocalBroker {
+    private ConcurrentHashMap<String, LocalExchange> exchanges = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, LocalQueue> queues = new ConcurrentHashMap<>();
+    private ScheduledExecutorService timer;
+    private long queueIndex = 0;
+    private volatile boolean blocked = false;
+
+    /**
+     * 进程内 broker, 预定义 amq.direct / amq.topic / amq.fanout
+     */
+    public LocalBroker() {
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "LocalBroker-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.exchanges.put("amq.direct", new LocalExchange("amq.direct", "direct"));
+        this.exchanges.put("amq.topic", new LocalExchange("amq.topic", "topic"));
+        this.exchanges.put("amq.fanout", new LocalExchange("amq.fanout", "fanout"));
+    }
+
+    /**
+     * 定义交换器
+     *
+     * @param name 交换器
+     * @param type direct / topic / fanout
+     * @throws IOException 类型不支持或与已定义的不一致
+     */
+    public void exchangeDeclare(String name, String type) throws IOException {
+        if (!"direct".equals(type) && !"topic".equals(type) && !"fanout".equals(type))
+            throw new IOException("exchange type(" + type + ") is not supported!");
+        var ex = this.exchanges.computeIfAbsent(name, k -> new LocalExchange(name, type));
+        if (!ex.type.equals(type))
+            throw new IOException("PRECONDITION_FAILED - inequivalent arg 'type' for exchange '" + name + "'");
+    }
+
+    /**
+     * 交换器是否存在
+     *
+     * @param name 交换器
+     * @return boolean
+     */
+    public boolean exchangeExists(String name) {
+        return name.isEmpty() || this.exchanges.containsKey(name);
+    }
+
+    /**
+     * 删除交换器
+     *
+     * @param name 交换器
+     */
+    public void exchangeDelete(String name) {
+        this.exchanges.remove(name);
+        for (var ex : this.exchanges.values())
+            ex.unbind(name, true, null);
+    }
+
+    /**
+     * 定义队列
+     *
+     * @param name      队列, 空时生成
+     * @param arguments arguments
+     * @return 队列
+     */
+    public LocalQueue queueDeclare(String name, Map<String, Object> arguments) {
+        if (name == null || name.isEmpty()) {
+            synchronized (this) {
+                name = "amq.gen-" + (++this.queueIndex);
+            }
+        }
+        String queue = name;
+        return this.queues.computeIfAbsent(queue, k -> new LocalQueue(this, queue, arguments));
+    }
+
+    /**
+     * 获取队列
+     *
+     * @param name 队列
+     * @return 不存在返回 null
+     */
+    public LocalQueue getQueue(String name) {
+        return this.queues.get(name);
+    }
+
+    /**
+     * 删除队列
+     *
+     * @param name 队列
+     * @return 删除时的消息数
+     */
+    public int queueDelete(String name) {
+        var q = this.queues.remove(name);
+        if (q == null)
+            return 0;
+        for (var ex : this.exchanges.values())
+            ex.unbind(name, false, null);
+        return q.purge();
+    }
+
+    /**
+     * 绑定
+     *
+     * @param queue      队列
+     * @param exchange   交换器
+     * @param routingKey routingKey
+     * @throws IOException 队列或交换器不存在
+     */
+    public void queueBind(String queue, String exchange, String routingKey) throws IOException {
+        if (!this.queues.containsKey(queue))
+            throw new IOException("NOT_FOUND - no queue '" + queue + "'");
+        var ex = this.exchanges.get(exchange);
+        if (ex == null)
+            throw new IOException("NOT_FOUND - no exchange '" + exchange + "'");
+        ex.bind(queue, false, routingKey);
+    }
+
+    /**
+     * 交换器间绑定, 消息从 source 路由到 destination 后继续路由
+     *
+     * @param destination 目标交换器
+     * @param source      源交换器
+     * @param routingKey  routingKey
+     * @throws IOException 交换器不存在
+     */
+    public void exchangeBind(String destination, String source, String routingKey) throws IOException {
+        if (!this.exchanges.containsKey(destination))
+            throw new IOException("NOT_FOUND - no exchange '" + destination + "'");
+        var ex = this.exchanges.get(source);
+        if (ex == null)
+            throw new IOException("NOT_FOUND - no exchange '" + source + "'");
+        ex.bind(destination, true, routingKey);
+    }
+
+    /**
+     * 解除绑定
+     *
+     * @param queue      队列
+     * @param exchange   交换器
+     * @param routingKey routingKey
+     */
+    public void queueUnbind(String queue, String exchange, String routingKey) {
+        var ex = this.exchanges.get(exchange);
+        if (ex != null)
+            ex.unbind(queue, false, routingKey);
+    }
+
+    /**
+     * 是否阻塞发布(模拟内存/磁盘告警)
+     *
+     * @return boolean
+     */
+    public boolean isBlocked() {
+        return this.blocked;
+    }
+
+    /**
+     * 设置阻塞发布, 阻塞期间 basicPublish 等待解除
+     *
+     * @param blocked blocked
+     */
+    public void setBlocked(boolean blocked) {
+        synchronized (this) {
+            this.blocked = blocked;
+            if (!blocked)
+                this.notifyAll();
+        }
+    }
+
+    /**
+     * 阻塞期间等待
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    public void awaitUnblocked() throws InterruptedException {
+        if (!this.blocked)
+            return;
+        synchronized (this) {
+            while (this.blocked)
+                this.wait();
+        }
+    }
+
+    /**
+     * 发布, 无法路由的消息丢弃
+     *
+     * @param exchange   交换器, "" 为默认交换器(按队列名路由)
+     * @param routingKey routingKey
+     * @param props      props
+     * @param body       body
+     * @return 有队列拒绝(x-overflow=reject-publish)时返回 false, 确认模式下 nack
+     * @throws IOException 交换器不存在
+     */
+    public boolean publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        if (exchange == null || exchange.isEmpty()) {
+            var q = this.queues.get(routingKey);
+            return q == null || q.enqueue(new LocalMessage(exchange, routingKey, props, body));
+        }
+        var ex = this.exchanges.get(exchange);
+        if (ex == null)
+            throw new IOException("NOT_FOUND - no exchange '" + exchange + "'");
+        Set<String> names = new LinkedHashSet<>();
+        this.route(ex, routingKey, names, new HashSet<>());
+        boolean accepted = true;
+        for (var name : names) {
+            var q = this.queues.get(name);
+            if (q != null && !q.enqueue(new LocalMessage(exchange, routingKey, props, body)))
+                accepted = false;
+        }
+        return accepted;
+    }
+
+    private void route(LocalExchange ex, String routingKey, Set<String> queues, Set<String> visited) {
+        // 交换器间绑定可能成环, 每个交换器只路由一次
+        if (!visited.add(ex.name))
+            return;
+        for (var b : ex.route(routingKey)) {
+            if (!b.exchange) {
+                queues.add(b.queue);
+                continue;
+            }
+            var next = this.exchanges.get(b.queue);
+            if (next != null)
+                this.route(next, routingKey, queues, visited);
+        }
+    }
+
+    /**
+     * 定时检查队列过期消息
+     *
+     * @param queue   队列
+     * @param delayMs 延迟, 毫秒
+     */
+    void schedule(LocalQueue queue, long delayMs) {
+        this.timer.schedule(queue::dispatch, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 关闭定时器
+     */
+    public void close() {
+        this.timer.shutdownNow();
+    }
+
+    /**
+     * topic 匹配, * 匹配一个单词, # 匹配零个或多个单词
+     *
+     * @param pattern 绑定 routingKey 单词
+     * @param words   routingKey 单词
+     * @param i       pattern 位置
+     * @param j       words 位置
+     * @return boolean
+     */
+    static boolean topicMatch(String[] pattern, String[] words, int i, int j) {
+        while (i < pattern.length) {
+            String p = pattern[i];
+            if (p.equals("#")) {
+                if (i == pattern.length - 1)
+                    return true;
+                for (int k = j; k <= words.length; k++) {
+                    if (topicMatch(pattern, words, i + 1, k))
+                        return true;
+                }
+                return false;
+            }
+            if (j >= words.length || (!p.equals("*") && !p.equals(words[j])))
+                return false;
+            i++;
+            j++;
+        }
+        return j == words.length;
+    }
+
+    /**
+     * 交换器
+     */
+    static class LocalExchange {
+        public String name;
+        public String type;
+        private CopyOnWriteArrayList<Binding> bindings = new CopyOnWriteArrayList<>();
+
+        public LocalExchange(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public void bind(String queue, boolean exchange, String routingKey) {
+            if (routingKey == null)
+                routingKey = "";
+            for (var b : this.bindings) {
+                if (b.queue.equals(queue) && b.exchange == exchange && b.routingKey.equals(routingKey))
+                    return;
+            }
+            this.bindings.add(new Binding(queue, exchange, routingKey));
+        }
+
+        public void unbind(String queue, boolean exchange, String routingKey) {
+            this.bindings.removeIf(b -> b.queue.equals(queue) && b.exchange == exchange
+                    && (routingKey == null || b.routingKey.equals(routingKey)));
+        }
+
+        public Collection<Binding> route(String routingKey) {
+            if (routingKey == null)
+                routingKey = "";
+            List<Binding> result = new ArrayList<>();
+            String[] words = null;
+            for (var b : this.bindings) {
+                switch (this.type) {
+                    case "fanout":
+                        result.add(b);
+                        break;
+                    case "topic":
+                        if (words == null)
+                            words = routingKey.isEmpty() ? new String[0] : routingKey.split("\\.", -1);
+                        if (topicMatch(b.words, words, 0, 0))
+                            result.add(b);
+                        break;
+                    default:
+                        if (b.routingKey.equals(routingKey))
+                            result.add(b);
+                        break;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 绑定
+     */
+    static class Binding {
+        /**
+         * 目标队列, exchange 时为目标交换器
+         */
+        public String queue;
+        public boolean exchange;
+        public String routingKey;
+        public String[] words;
+
+        public Binding(String queue, boolean exchange, String routingKey) {
+            this.queue = queue;
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.words = routingKey.isEmpty() ? new String[0] : routingKey.split("\\.", -1);
+        }
+    }
+
+    /**
+     * 队列中的消息
+     */
+    static class LocalMessage {
+        public String exchange;
+        public String routingKey;
+        public AMQP.BasicProperties props;
+        public byte[] body;
+        public long expireAt = Long.MAX_VALUE;
+        public boolean redelivered = false;
+
+        public LocalMessage(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.props = props;
+            this.body = body;
+        }
+    }
+}
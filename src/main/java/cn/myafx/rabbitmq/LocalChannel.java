@@ -0,0 +1,450 @@
+package cn.myafx.rabbitmq;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.rabbitmq.client.*;
+import com.rabbitmq.client.impl.AMQImpl;
+
+import cn.myafx.rabbitmq.LocalBroker.LocalMessage;
+
+/**
+ * 进程内通道(Proxy 实现 Channel), 消费回调在每个通道一个线程中按顺序执行;
+ * 确认模式在 basicPublish 入队后同步回调 handleAck
+ */
+class LocalChannel implements InvocationHandler {
+    private LocalBroker broker;
+    private LocalConnection connection;
+    private int number;
+    private Channel proxy;
+    private volatile boolean open = true;
+    private ShutdownSignalException closeReason;
+    private ExecutorService executor;
+    private Object lockExecutor = new Object();
+    private AtomicLong deliveryTag = new AtomicLong();
+    private ConcurrentSkipListMap<Long, Unacked> unacked = new ConcurrentSkipListMap<>();
+    private Map<String, LocalConsumer> consumers = new ConcurrentHashMap<>();
+    private List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+    private int prefetchCount = 0;
+    private int globalPrefetchCount = 0;
+    private AtomicInteger inFlight = new AtomicInteger();
+    private boolean confirm = false;
+    private long publishSeqNo = 0;
+    private long consumerIndex = 0;
+
+    /**
+     * 进程内通道
+     *
+     * @param broker     broker
+     * @param connection connection
+     * @param number     通道号
+     */
+    public LocalChannel(LocalBroker broker, LocalConnection connection, int number) {
+        this.broker = broker;
+        this.connection = connection;
+        this.number = number;
+        this.proxy = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(),
+                new Class<?>[] { Channel.class }, this);
+    }
+
+    /**
+     * Channel
+     *
+     * @return Channel
+     */
+    public Channel getProxy() {
+        return this.proxy;
+    }
+
+    private ExecutorService getExecutor() {
+        // 投递时已持有队列锁, 不能用通道锁, 否则与 basicPublish 形成锁顺序反转
+        synchronized (this.lockExecutor) {
+            if (this.executor == null) {
+                String name = "LocalChannel-" + this.number;
+                this.executor = Executors.newSingleThreadExecutor(r -> {
+                    var t = new Thread(r, name);
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return this.executor;
+        }
+    }
+
+    @Override
+    public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        int n = args == null ? 0 : args.length;
+        switch (name) {
+            case "hashCode":
+                return System.identityHashCode(p);
+            case "equals":
+                return p == args[0];
+            case "toString":
+                return "LocalChannel(" + this.number + ")";
+            case "getChannelNumber":
+                return this.number;
+            case "getConnection":
+                return this.connection.getProxy();
+            case "isOpen":
+                return this.open;
+            case "getCloseReason":
+                return this.closeReason;
+            case "close":
+            case "abort":
+                this.close(true);
+                return null;
+            case "addShutdownListener":
+                this.shutdownListeners.add((ShutdownListener) args[0]);
+                return null;
+            case "removeShutdownListener":
+                this.shutdownListeners.remove(args[0]);
+                return null;
+            case "addReturnListener":
+            case "clearReturnListeners":
+            case "removeReturnListener":
+                return name.startsWith("add") ? null : false;
+        }
+        if (!this.open)
+            throw new AlreadyClosedException(this.closeReason);
+        try {
+            return this.invoke(name, n, args, method);
+        } catch (IOException ex) {
+            // 与 broker 一致, 通道级错误关闭通道
+            this.closeReason = new ShutdownSignalException(false, false, null, this.proxy);
+            this.close(false);
+            throw ex;
+        }
+    }
+
+    private Object invoke(String name, int n, Object[] args, Method method) throws Exception {
+        switch (name) {
+            case "basicQos": {
+                int count = n == 1 ? (Integer) args[0] : n == 2 ? (Integer) args[0] : (Integer) args[1];
+                boolean global = n == 2 ? (Boolean) args[1] : n == 3 ? (Boolean) args[2] : false;
+                if (global)
+                    this.globalPrefetchCount = count;
+                else
+                    this.prefetchCount = count;
+                return null;
+            }
+            case "basicPublish": {
+                this.broker.awaitUnblocked();
+                var props = (AMQP.BasicProperties) args[n - 2];
+                long seqNo = 0;
+                boolean accepted;
+                synchronized (this) {
+                    if (this.confirm)
+                        seqNo = ++this.publishSeqNo;
+                    accepted = this.broker.publish((String) args[0], (String) args[1], props,
+                            (byte[]) args[n - 1]);
+                }
+                if (seqNo > 0) {
+                    for (var l : this.confirmListeners) {
+                        if (accepted)
+                            l.handleAck(seqNo, false);
+                        else
+                            l.handleNack(seqNo, false);
+                    }
+                }
+                return null;
+            }
+            case "basicConsume":
+                return this.basicConsume(args);
+            case "basicCancel": {
+                var c = this.consumers.remove((String) args[0]);
+                if (c != null) {
+                    c.queue.removeConsumer(c);
+                    this.getExecutor().execute(() -> c.consumer.handleCancelOk(c.tag));
+                }
+                return null;
+            }
+            case "basicAck":
+                this.ack((Long) args[0], (Boolean) args[1]);
+                return null;
+            case "basicNack":
+                this.nack((Long) args[0], (Boolean) args[1], (Boolean) args[2]);
+                return null;
+            case "basicReject":
+                this.nack((Long) args[0], false, (Boolean) args[1]);
+                return null;
+            case "confirmSelect":
+                synchronized (this) {
+                    this.confirm = true;
+                }
+                return new AMQImpl.Confirm.SelectOk();
+            case "getNextPublishSeqNo":
+                synchronized (this) {
+                    return this.confirm ? this.publishSeqNo + 1 : 0L;
+                }
+            case "addConfirmListener":
+                if (n != 1)
+                    break;
+                this.confirmListeners.add((ConfirmListener) args[0]);
+                return args[0];
+            case "removeConfirmListener":
+                return this.confirmListeners.remove(args[0]);
+            case "waitForConfirms":
+                return true;
+            case "waitForConfirmsOrDie":
+                return null;
+            case "exchangeDeclare":
+            case "exchangeDeclareNoWait": {
+                var type = args[1];
+                this.broker.exchangeDeclare((String) args[0],
+                        type instanceof BuiltinExchangeType t ? t.getType() : (String) type);
+                return name.endsWith("NoWait") ? null : new AMQImpl.Exchange.DeclareOk();
+            }
+            case "exchangeDeclarePassive":
+                if (!this.broker.exchangeExists((String) args[0]))
+                    throw new IOException("NOT_FOUND - no exchange '" + args[0] + "'");
+                return new AMQImpl.Exchange.DeclareOk();
+            case "exchangeDelete":
+            case "exchangeDeleteNoWait":
+                this.broker.exchangeDelete((String) args[0]);
+                return name.endsWith("NoWait") ? null : new AMQImpl.Exchange.DeleteOk();
+            case "queueDeclare":
+            case "queueDeclareNoWait": {
+                @SuppressWarnings("unchecked")
+                var arguments = n == 5 ? (Map<String, Object>) args[4] : null;
+                var q = this.broker.queueDeclare(n > 0 ? (String) args[0] : null, arguments);
+                return name.endsWith("NoWait") ? null
+                        : new AMQImpl.Queue.DeclareOk(q.getName(), q.size(), q.consumerCount());
+            }
+            case "queueDeclarePassive": {
+                var q = this.broker.getQueue((String) args[0]);
+                if (q == null)
+                    throw new IOException("NOT_FOUND - no queue '" + args[0] + "'");
+                return new AMQImpl.Queue.DeclareOk(q.getName(), q.size(), q.consumerCount());
+            }
+            case "queueDelete":
+            case "queueDeleteNoWait": {
+                int count = this.broker.queueDelete((String) args[0]);
+                return name.endsWith("NoWait") ? null : new AMQImpl.Queue.DeleteOk(count);
+            }
+            case "queuePurge": {
+                var q = this.broker.getQueue((String) args[0]);
+                if (q == null)
+                    throw new IOException("NOT_FOUND - no queue '" + args[0] + "'");
+                return new AMQImpl.Queue.PurgeOk(q.purge());
+            }
+            case "queueBind":
+            case "queueBindNoWait":
+                this.broker.queueBind((String) args[0], (String) args[1], (String) args[2]);
+                return name.endsWith("NoWait") ? null : new AMQImpl.Queue.BindOk();
+            case "exchangeBind":
+            case "exchangeBindNoWait":
+                this.broker.exchangeBind((String) args[0], (String) args[1], (String) args[2]);
+                return name.endsWith("NoWait") ? null : new AMQImpl.Exchange.BindOk();
+            case "queueUnbind":
+                this.broker.queueUnbind((String) args[0], (String) args[1], (String) args[2]);
+                return new AMQImpl.Queue.UnbindOk();
+            case "messageCount": {
+                var q = this.broker.getQueue((String) args[0]);
+                return q != null ? (long) q.size() : 0L;
+            }
+            case "consumerCount": {
+                var q = this.broker.getQueue((String) args[0]);
+                return q != null ? (long) q.consumerCount() : 0L;
+            }
+        }
+        throw new UnsupportedOperationException("LocalChannel." + method);
+    }
+
+    private String basicConsume(Object[] args) throws IOException {
+        // basicConsume(queue, [autoAck], [consumerTag], ..., Consumer)
+        var last = args[args.length - 1];
+        if (!(last instanceof Consumer))
+            throw new UnsupportedOperationException("LocalChannel.basicConsume with callbacks");
+        String queue = (String) args[0];
+        boolean autoAck = args.length > 2 && args[1] instanceof Boolean b && b;
+        String tag = args.length > 3 && args[2] instanceof String s && !s.isEmpty() ? s : null;
+        var q = this.broker.getQueue(queue);
+        if (q == null)
+            throw new IOException("NOT_FOUND - no queue '" + queue + "'");
+        synchronized (this) {
+            if (tag == null)
+                tag = "amq.ctag-" + this.number + "-" + (++this.consumerIndex);
+        }
+        var c = new LocalConsumer(this, q, tag, (Consumer) last, autoAck, this.prefetchCount);
+        this.consumers.put(tag, c);
+        String consumerTag = tag;
+        this.getExecutor().execute(() -> c.consumer.handleConsumeOk(consumerTag));
+        q.addConsumer(c);
+        return tag;
+    }
+
+    /**
+     * 投递, 在 LocalQueue 锁内调用
+     *
+     * @param queue 队列
+     * @param c     消费者
+     * @param m     消息
+     */
+    void deliver(LocalQueue queue, LocalConsumer c, LocalMessage m) {
+        long tag = this.deliveryTag.incrementAndGet();
+        if (!c.autoAck) {
+            c.inFlight.incrementAndGet();
+            this.inFlight.incrementAndGet();
+            this.unacked.put(tag, new Unacked(queue, c, m));
+        }
+        var envelope = new Envelope(tag, m.redelivered, m.exchange, m.routingKey);
+        this.getExecutor().execute(() -> {
+            try {
+                c.consumer.handleDelivery(c.tag, envelope, m.props, m.body);
+            } catch (Throwable ex) {
+            }
+        });
+    }
+
+    private List<Unacked> remove(long tag, boolean multiple) {
+        List<Unacked> list = new ArrayList<>();
+        if (multiple) {
+            var head = this.unacked.headMap(tag, true);
+            list.addAll(head.values());
+            head.clear();
+        } else {
+            var u = this.unacked.remove(tag);
+            if (u != null)
+                list.add(u);
+        }
+        for (var u : list) {
+            u.consumer.inFlight.decrementAndGet();
+            this.inFlight.decrementAndGet();
+        }
+        return list;
+    }
+
+    private void ack(long tag, boolean multiple) throws IOException {
+        var list = this.remove(tag, multiple);
+        if (list.isEmpty() && !multiple)
+            throw new IOException("PRECONDITION_FAILED - unknown delivery tag " + tag);
+        Set<LocalQueue> queues = new LinkedHashSet<>();
+        for (var u : list)
+            queues.add(u.queue);
+        for (var q : queues)
+            q.dispatch();
+    }
+
+    private void nack(long tag, boolean multiple, boolean requeue) throws IOException {
+        var list = this.remove(tag, multiple);
+        if (list.isEmpty() && !multiple)
+            throw new IOException("PRECONDITION_FAILED - unknown delivery tag " + tag);
+        this.release(list, requeue);
+    }
+
+    private void release(List<Unacked> list, boolean requeue) {
+        Map<LocalQueue, List<LocalMessage>> map = new LinkedHashMap<>();
+        for (var u : list)
+            map.computeIfAbsent(u.queue, k -> new ArrayList<>()).add(u.message);
+        for (var kv : map.entrySet()) {
+            if (requeue) {
+                kv.getKey().requeue(kv.getValue());
+            } else {
+                for (var m : kv.getValue())
+                    kv.getKey().deadLetter(m, "rejected");
+                kv.getKey().dispatch();
+            }
+        }
+    }
+
+    /**
+     * 关闭通道, 未确认消息重新入队
+     *
+     * @param app 是否由应用关闭
+     */
+    void close(boolean app) {
+        synchronized (this) {
+            if (!this.open)
+                return;
+            this.open = false;
+            if (this.closeReason == null)
+                this.closeReason = new ShutdownSignalException(false, app, null, this.proxy);
+        }
+        var cause = this.closeReason;
+        for (var c : this.consumers.values()) {
+            c.queue.removeConsumer(c);
+            this.getExecutor().execute(() -> c.consumer.handleShutdownSignal(c.tag, cause));
+        }
+        this.consumers.clear();
+        List<Unacked> list = new ArrayList<>(this.unacked.values());
+        this.unacked.clear();
+        this.release(list, true);
+        this.connection.removeChannel(this.number);
+        for (var l : this.shutdownListeners) {
+            try {
+                l.shutdownCompleted(cause);
+            } catch (Exception ex) {
+            }
+        }
+        synchronized (this.lockExecutor) {
+            if (this.executor != null)
+                this.executor.shutdown();
+        }
+    }
+
+    /**
+     * 消费者
+     */
+    static class LocalConsumer {
+        public LocalChannel channel;
+        public LocalQueue queue;
+        public String tag;
+        public Consumer consumer;
+        public boolean autoAck;
+        public int prefetchCount;
+        public AtomicInteger inFlight = new AtomicInteger();
+
+        public LocalConsumer(LocalChannel channel, LocalQueue queue, String tag, Consumer consumer, boolean autoAck,
+                int prefetchCount) {
+            this.channel = channel;
+            this.queue = queue;
+            this.tag = tag;
+            this.consumer = consumer;
+            this.autoAck = autoAck;
+            this.prefetchCount = prefetchCount;
+        }
+
+        /**
+         * 是否有预取余量, autoAck 不限制
+         *
+         * @return boolean
+         */
+        public boolean hasCapacity() {
+            if (this.autoAck)
+                return this.channel.open;
+            if (this.prefetchCount > 0 && this.inFlight.get() >= this.prefetchCount)
+                return false;
+            int global = this.channel.globalPrefetchCount;
+            return this.channel.open && (global == 0 || this.channel.inFlight.get() < global);
+        }
+
+        /**
+         * 投递
+         *
+         * @param queue 队列
+         * @param m     消息
+         */
+        public void deliver(LocalQueue queue, LocalMessage m) {
+            this.channel.deliver(queue, this, m);
+        }
+    }
+
+    private static class Unacked {
+        public LocalQueue queue;
+        public LocalConsumer consumer;
+        public LocalMessage message;
+
+        public Unacked(LocalQueue queue, LocalConsumer consumer, LocalMessage message) {
+            this.queue = queue;
+            this.consumer = consumer;
+            this.message = message;
+        }
+    }
+}
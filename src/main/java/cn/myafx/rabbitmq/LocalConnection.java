@@ -0,0 +1,175 @@
+package cn.myafx.rabbitmq;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.rabbitmq.client.*;
+
+/**
+ * 进程内连接(Proxy 实现 Connection)
+ */
+class LocalConnection implements InvocationHandler {
+    private LocalConnectionFactory factory;
+    private LocalBroker broker;
+    private String clientProvidedName;
+    private Connection proxy;
+    private volatile boolean open = true;
+    private ShutdownSignalException closeReason;
+    private Map<Integer, LocalChannel> channels = new ConcurrentHashMap<>();
+    private List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private List<BlockedListener> blockedListeners = new CopyOnWriteArrayList<>();
+    private int channelNumber = 0;
+    private String id;
+
+    /**
+     * 进程内连接
+     *
+     * @param factory            factory
+     * @param broker             broker
+     * @param clientProvidedName clientProvidedName
+     */
+    public LocalConnection(LocalConnectionFactory factory, LocalBroker broker, String clientProvidedName) {
+        this.factory = factory;
+        this.broker = broker;
+        this.clientProvidedName = clientProvidedName;
+        this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, this);
+    }
+
+    /**
+     * Connection
+     *
+     * @return Connection
+     */
+    public Connection getProxy() {
+        return this.proxy;
+    }
+
+    /**
+     * 通知 connection.blocked / connection.unblocked
+     *
+     * @param blocked blocked
+     */
+    void notifyBlocked(boolean blocked) {
+        for (var l : this.blockedListeners) {
+            try {
+                if (blocked)
+                    l.handleBlocked("local resource alarm");
+                else
+                    l.handleUnblocked();
+            } catch (Exception ex) {
+            }
+        }
+    }
+
+    void removeChannel(int number) {
+        this.channels.remove(number);
+    }
+
+    @Override
+    public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+        int n = args == null ? 0 : args.length;
+        switch (method.getName()) {
+            case "hashCode":
+                return System.identityHashCode(p);
+            case "equals":
+                return p == args[0];
+            case "toString":
+                return "LocalConnection(" + this.clientProvidedName + ")";
+            case "isOpen":
+                return this.open;
+            case "getCloseReason":
+                return this.closeReason;
+            case "getClientProvidedName":
+                return this.clientProvidedName;
+            case "getId":
+                return this.id;
+            case "setId":
+                this.id = (String) args[0];
+                return null;
+            case "getHeartbeat":
+            case "getFrameMax":
+            case "getPort":
+                return 0;
+            case "getChannelMax":
+                return 2047;
+            case "getAddress":
+                return null;
+            case "getServerProperties":
+            case "getClientProperties":
+                return new HashMap<String, Object>();
+            case "createChannel": {
+                if (!this.open)
+                    throw new AlreadyClosedException(this.closeReason);
+                int number;
+                synchronized (this) {
+                    number = n == 1 ? (Integer) args[0] : ++this.channelNumber;
+                }
+                var ch = new LocalChannel(this.broker, this, number);
+                this.channels.put(number, ch);
+                return ch.getProxy();
+            }
+            case "openChannel":
+                return Optional.of(this.invoke(p, Connection.class.getMethod("createChannel"), null));
+            case "addShutdownListener":
+                this.shutdownListeners.add((ShutdownListener) args[0]);
+                return null;
+            case "removeShutdownListener":
+                this.shutdownListeners.remove(args[0]);
+                return null;
+            case "addBlockedListener": {
+                BlockedListener l;
+                if (n == 1) {
+                    l = (BlockedListener) args[0];
+                } else {
+                    var blocked = (BlockedCallback) args[0];
+                    var unblocked = (UnblockedCallback) args[1];
+                    l = new BlockedListener() {
+                        @Override
+                        public void handleBlocked(String reason) throws java.io.IOException {
+                            blocked.handle(reason);
+                        }
+
+                        @Override
+                        public void handleUnblocked() throws java.io.IOException {
+                            unblocked.handle();
+                        }
+                    };
+                }
+                this.blockedListeners.add(l);
+                return l;
+            }
+            case "removeBlockedListener":
+                return this.blockedListeners.remove(args[0]);
+            case "clearBlockedListeners":
+                this.blockedListeners.clear();
+                return null;
+            case "close":
+            case "abort":
+                this.close();
+                return null;
+        }
+        throw new UnsupportedOperationException("LocalConnection." + method);
+    }
+
+    private void close() {
+        synchronized (this) {
+            if (!this.open)
+                return;
+            this.open = false;
+            this.closeReason = new ShutdownSignalException(true, true, null, this.proxy);
+        }
+        for (var ch : new ArrayList<>(this.channels.values()))
+            ch.close(true);
+        this.factory.removeConnection(this);
+        for (var l : this.shutdownListeners) {
+            try {
+                l.shutdownCompleted(this.closeReason);
+            } catch (Exception ex) {
+            }
+        }
+    }
+}
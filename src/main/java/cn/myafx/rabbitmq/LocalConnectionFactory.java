@@ -0,0 +1,76 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.rabbitmq.client.*;
+
+/**
+ * 进程内 broker 的 ConnectionFactory, 不需要 rabbitmq 服务, 用于测试与基准测试.
+ * 支持 exchange(direct/topic/fanout)、queue、bind、x-message-ttl / expiration、死信、
+ * basicQos / basicConsume / ack / nack / reject、确认模式; 不支持 mandatory、headers 交换器、事务
+ * <p>
+ * new MQPool(new LocalConnectionFactory(), null, "test", mapper)
+ */
+public class LocalConnectionFactory extends ConnectionFactory {
+    private LocalBroker broker = new LocalBroker();
+    private List<LocalConnection> connections = new CopyOnWriteArrayList<>();
+
+    /**
+     * 创建进程内连接, 同一个 LocalConnectionFactory 的连接共享一个 broker
+     */
+    @Override
+    public Connection newConnection(ExecutorService executor, AddressResolver addressResolver,
+            String clientProvidedName) {
+        var con = new LocalConnection(this, this.broker, clientProvidedName);
+        this.connections.add(con);
+        return con.getProxy();
+    }
+
+    void removeConnection(LocalConnection con) {
+        this.connections.remove(con);
+    }
+
+    /**
+     * 模拟 broker 内存/磁盘告警, 通知 connection.blocked, 期间 basicPublish 等待解除
+     *
+     * @param blocked blocked
+     */
+    public void setBlocked(boolean blocked) {
+        this.broker.setBlocked(blocked);
+        for (var con : this.connections)
+            con.notifyBlocked(blocked);
+    }
+
+    /**
+     * 队列中待投递的消息数, 队列不存在返回 -1
+     *
+     * @param queue 队列
+     * @return int
+     */
+    public int getMessageCount(String queue) {
+        var q = this.broker.getQueue(queue);
+        return q != null ? q.size() : -1;
+    }
+
+    /**
+     * 未关闭连接的 clientProvidedName
+     *
+     * @return List
+     */
+    public List<String> getConnectionNames() {
+        List<String> names = new ArrayList<>(this.connections.size());
+        for (var con : this.connections)
+            names.add(con.getProxy().getClientProvidedName());
+        return names;
+    }
+
+    /**
+     * 关闭所有连接与 broker 定时器
+     */
+    public void close() {
+        for (var con : this.connections)
+            con.getProxy().abort();
+        this.broker.close();
+    }
+}
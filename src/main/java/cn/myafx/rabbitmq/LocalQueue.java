@@ -0,0 +1,225 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+
+import com.rabbitmq.client.AMQP;
+
+import cn.myafx.rabbitmq.LocalBroker.LocalMessage;
+
+/**
+ * 进程内队列, 按顺序轮询投递给有预取余量的消费者, 队首消息过期后死信或丢弃
+ */
+class LocalQueue {
+    private LocalBroker broker;
+    private String name;
+    private Long messageTtl;
+    private String deadLetterExchange;
+    private String deadLetterRoutingKey;
+    private int maxLength = -1;
+    private ArrayDeque<LocalMessage> messages = new ArrayDeque<>();
+    private ArrayList<LocalChannel.LocalConsumer> consumers = new ArrayList<>();
+    private int next = 0;
+
+    /**
+     * 进程内队列
+     *
+     * @param broker    broker
+     * @param name      队列名
+     * @param arguments x-message-ttl / x-dead-letter-exchange / x-dead-letter-routing-key,
+     *                  x-max-length 只支持 x-overflow=reject-publish
+     */
+    public LocalQueue(LocalBroker broker, String name, Map<String, Object> arguments) {
+        this.broker = broker;
+        this.name = name;
+        if (arguments != null) {
+            var ttl = arguments.get("x-message-ttl");
+            if (ttl instanceof Number n)
+                this.messageTtl = n.longValue();
+            var dlx = arguments.get("x-dead-letter-exchange");
+            if (dlx != null)
+                this.deadLetterExchange = dlx.toString();
+            var dlrk = arguments.get("x-dead-letter-routing-key");
+            if (dlrk != null)
+                this.deadLetterRoutingKey = dlrk.toString();
+            var maxLength = arguments.get("x-max-length");
+            if (maxLength instanceof Number n && "reject-publish".equals(arguments.get("x-overflow")))
+                this.maxLength = n.intValue();
+        }
+    }
+
+    /**
+     * 队列名
+     *
+     * @return String
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * 待投递消息数
+     *
+     * @return int
+     */
+    public synchronized int size() {
+        return this.messages.size();
+    }
+
+    /**
+     * 消费者数
+     *
+     * @return int
+     */
+    public synchronized int consumerCount() {
+        return this.consumers.size();
+    }
+
+    /**
+     * 清空
+     *
+     * @return 清空的消息数
+     */
+    public synchronized int purge() {
+        int count = this.messages.size();
+        this.messages.clear();
+        return count;
+    }
+
+    /**
+     * 入队
+     *
+     * @param m 消息
+     * @return 超出 x-max-length 被拒绝时返回 false
+     */
+    public boolean enqueue(LocalMessage m) {
+        if (this.maxLength >= 0) {
+            synchronized (this) {
+                if (this.messages.size() >= this.maxLength)
+                    return false;
+            }
+        }
+        long ttl = -1;
+        if (this.messageTtl != null)
+            ttl = this.messageTtl;
+        var expiration = m.props != null ? m.props.getExpiration() : null;
+        if (expiration != null) {
+            try {
+                long v = Long.parseLong(expiration);
+                ttl = ttl < 0 ? v : Math.min(ttl, v);
+            } catch (NumberFormatException ex) {
+            }
+        }
+        if (ttl >= 0) {
+            m.expireAt = System.currentTimeMillis() + ttl;
+            this.broker.schedule(this, ttl);
+        }
+        synchronized (this) {
+            this.messages.addLast(m);
+        }
+        this.dispatch();
+        return true;
+    }
+
+    /**
+     * 未确认消息重新入队, 放回队首
+     *
+     * @param list 消息, 按投递顺序
+     */
+    public void requeue(List<LocalMessage> list) {
+        synchronized (this) {
+            for (int i = list.size() - 1; i >= 0; i--) {
+                var m = list.get(i);
+                m.redelivered = true;
+                this.messages.addFirst(m);
+            }
+        }
+        this.dispatch();
+    }
+
+    /**
+     * 添加消费者
+     *
+     * @param c 消费者
+     */
+    public void addConsumer(LocalChannel.LocalConsumer c) {
+        synchronized (this) {
+            this.consumers.add(c);
+        }
+        this.dispatch();
+    }
+
+    /**
+     * 移除消费者
+     *
+     * @param c 消费者
+     */
+    public synchronized void removeConsumer(LocalChannel.LocalConsumer c) {
+        this.consumers.remove(c);
+    }
+
+    private LocalChannel.LocalConsumer nextConsumer() {
+        int count = this.consumers.size();
+        for (int i = 0; i < count; i++) {
+            var c = this.consumers.get(Math.floorMod(this.next + i, count));
+            if (c.hasCapacity()) {
+                this.next = Math.floorMod(this.next + i + 1, count);
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 过期队首消息, 投递给有余量的消费者
+     */
+    public void dispatch() {
+        List<LocalMessage> dead = null;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            while (!this.messages.isEmpty()) {
+                var m = this.messages.peekFirst();
+                if (m.expireAt <= now) {
+                    this.messages.pollFirst();
+                    if (dead == null)
+                        dead = new ArrayList<>();
+                    dead.add(m);
+                    continue;
+                }
+                var c = this.nextConsumer();
+                if (c == null)
+                    break;
+                this.messages.pollFirst();
+                c.deliver(this, m);
+            }
+        }
+        if (dead != null) {
+            for (var m : dead)
+                this.deadLetter(m, "expired");
+        }
+    }
+
+    /**
+     * 死信, 未设置 x-dead-letter-exchange 时丢弃
+     *
+     * @param m      消息
+     * @param reason expired / rejected
+     */
+    public void deadLetter(LocalMessage m, String reason) {
+        if (this.deadLetterExchange == null)
+            return;
+        Map<String, Object> headers = new HashMap<>();
+        if (m.props != null && m.props.getHeaders() != null)
+            headers.putAll(m.props.getHeaders());
+        headers.putIfAbsent("x-first-death-reason", reason);
+        headers.putIfAbsent("x-first-death-queue", this.name);
+        headers.putIfAbsent("x-first-death-exchange", m.exchange);
+        // 与 rabbitmq 一致, 死信去掉 expiration, 避免在目标队列再次过期
+        var builder = m.props != null ? m.props.builder() : new AMQP.BasicProperties.Builder();
+        var props = builder.expiration(null).headers(headers).build();
+        String routingKey = this.deadLetterRoutingKey != null ? this.deadLetterRoutingKey : m.routingKey;
+        try {
+            this.broker.publish(this.deadLetterExchange, routingKey, props, m.body);
+        } catch (Exception ex) {
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package cn.myafx.rabbitmq;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.rabbitmq.client.*;
+
+/**
+ * 批量订阅消费者, 攒够 batchSize 条或等待 lingerMs 后一次处理, 用 multiple=true 一次确认整批
+ * <p>
+ * 攒批只在 synchronized(this) 内取走当前批次, 处理与确认在 lockFlush 内按取走顺序串行执行;
+ * lingerMs 到期的批次在本订阅独占的定时线程中处理, 不阻塞其他订阅, 处理期间分发线程仍可继续攒批
+ */
+class MQBatchConsumer<T> extends DefaultConsumer implements AutoCloseable {
+    private MQPool pool;
+    private ISubBatchHander<T> subHander;
+    private String queue;
+    private ISubException exHander;
+    private ScheduledExecutorService scheduler;
+    private int batchSize;
+    private int lingerMs;
+    private boolean splitOnFail;
+
+    private List<T> list;
+    private List<BasicProperties> propList;
+    private long[] tags;
+    private long generation = 0;
+    private boolean closed = false;
+    private final Object lockFlush = new Object();
+
+    /**
+     * 批量订阅消费者
+     * 
+     * @param channel     独占通道
+     * @param pool        pool
+     * @param subHander   subHander
+     * @param queue       queue
+     * @param exHander    exHander
+     * @param scheduler   本订阅独占的 lingerMs 定时器, lingerMs 为 0 时可为 null, close 时关闭
+     * @param batchSize   每批最大消息数
+     * @param lingerMs    第一条消息到达后最长等待时间, 毫秒
+     * @param splitOnFail 整批处理失败时是否逐条重试
+     */
+    public MQBatchConsumer(Channel channel, MQPool pool, ISubBatchHander<T> subHander, String queue,
+            ISubException exHander, ScheduledExecutorService scheduler, int batchSize, int lingerMs,
+            boolean splitOnFail) {
+        super(channel);
+        this.pool = pool;
+        this.subHander = subHander;
+        this.queue = queue;
+        this.exHander = exHander;
+        this.scheduler = scheduler;
+        this.batchSize = batchSize;
+        this.lingerMs = lingerMs;
+        this.splitOnFail = splitOnFail;
+        this.list = new ArrayList<>(batchSize);
+        this.propList = new ArrayList<>(batchSize);
+        this.tags = new long[batchSize];
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+        var sm = this.subMetrics();
+        long start = sm != null ? System.nanoTime() : 0;
+        T m;
+        try {
+            m = this.pool.deserialize(body, properties.getContentType(), properties.getContentEncoding(),
+                    this.subHander.getTClass());
+        } catch (Exception ex) {
+            this.onException(ex);
+            if (sm != null) {
+                sm.count.increment();
+                sm.errors.increment();
+                sm.nacks.increment();
+            }
+            // 先确认之前的消息, 避免 multiple ack 覆盖这条
+            synchronized (this.lockFlush) {
+                this.flush();
+                getChannel().basicNack(envelope.getDeliveryTag(), false, true);
+            }
+            return;
+        }
+        if (sm != null) {
+            sm.deserialize.record(System.nanoTime() - start);
+            sm.count.increment();
+        }
+
+        if (m == null) {
+            // 与单条订阅一致, 空消息直接确认
+            synchronized (this.lockFlush) {
+                this.flush();
+                getChannel().basicAck(envelope.getDeliveryTag(), false);
+            }
+            if (sm != null)
+                sm.acks.increment();
+            return;
+        }
+        boolean full;
+        synchronized (this) {
+            this.tags[this.list.size()] = envelope.getDeliveryTag();
+            this.list.add(m);
+            this.propList.add(properties);
+            full = this.list.size() >= this.batchSize;
+            if (!full && this.list.size() == 1 && this.lingerMs > 0 && this.scheduler != null) {
+                long g = this.generation;
+                this.scheduler.schedule(() -> this.onLinger(g), this.lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            synchronized (this.lockFlush) {
+                this.flush();
+            }
+        }
+    }
+
+    private void onLinger(long g) {
+        synchronized (this.lockFlush) {
+            synchronized (this) {
+                // 已被攒满的批次处理
+                if (g != this.generation || this.closed)
+                    return;
+            }
+            try {
+                this.flush();
+            } catch (Exception ex) {
+                this.onException(ex);
+            }
+        }
+    }
+
+    /**
+     * 取走并处理当前批次, 需在 synchronized(lockFlush) 内调用
+     */
+    private void flush() throws IOException {
+        List<T> items;
+        List<BasicProperties> props;
+        long[] batchTags;
+        synchronized (this) {
+            int size = this.list.size();
+            if (size == 0 || this.closed)
+                return;
+            this.generation++;
+            items = this.list;
+            props = this.propList;
+            batchTags = this.tags;
+            this.list = new ArrayList<>(this.batchSize);
+            this.propList = new ArrayList<>(this.batchSize);
+            this.tags = new long[this.batchSize];
+        }
+        int count = items.size();
+        var channel = getChannel();
+        long lastTag = batchTags[count - 1];
+        var sm = this.subMetrics();
+        if (this.invoke(items, props, sm)) {
+            channel.basicAck(lastTag, true);
+            if (sm != null)
+                sm.acks.add(count);
+        } else if (this.splitOnFail && count > 1) {
+            for (int i = 0; i < count; i++) {
+                if (this.invoke(List.of(items.get(i)), List.of(props.get(i)), sm)) {
+                    channel.basicAck(batchTags[i], false);
+                    if (sm != null)
+                        sm.acks.increment();
+                } else {
+                    channel.basicNack(batchTags[i], false, true);
+                    if (sm != null)
+                        sm.nacks.increment();
+                }
+            }
+        } else {
+            channel.basicNack(lastTag, true, true);
+            if (sm != null)
+                sm.nacks.add(count);
+        }
+    }
+
+    private boolean invoke(List<T> items, List<BasicProperties> props, SubMetrics sm) {
+        long start = sm != null ? System.nanoTime() : 0;
+        try {
+            return this.subHander.hander(items, props);
+        } catch (Exception ex) {
+            if (sm != null)
+                sm.errors.increment();
+            this.onException(ex);
+            return false;
+        } finally {
+            if (sm != null)
+                sm.hander.record(System.nanoTime() - start);
+        }
+    }
+
+    private SubMetrics subMetrics() {
+        var pool = this.pool;
+        var metrics = pool != null ? pool.metrics() : null;
+        return metrics != null ? metrics.sub(this.queue) : null;
+    }
+
+    private void onException(Exception ex) {
+        if (this.exHander == null)
+            return;
+        try {
+            this.exHander.hander(this.queue, ex);
+        } catch (Exception ee) {
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        // 未确认的消息在通道关闭后由 broker 重新投递
+        synchronized (this) {
+            this.closed = true;
+            this.list.clear();
+            this.propList.clear();
+        }
+        // 等待正在处理的到期批次
+        if (this.scheduler != null) {
+            this.scheduler.shutdown();
+            try {
+                this.scheduler.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.scheduler = null;
+        this.pool = null;
+        this.subHander = null;
+        this.queue = null;
+    }
+}
@@ -1,24 +1,37 @@
 package cn.myafx.rabbitmq;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.*;
 
-import javax.xml.parsers.*;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 /**
- * mq配置
+ * mq配置, StAX 流式解析, 加载后不可修改; getExchanges/getQueues 按引用返回加载时创建的只读列表,
+ * getPubConfig/getSubConfig 返回可修改的副本, 不复制的访问使用不可变的 getPubHandle/getSubHandle
  */
 public class MQConfig implements IMQConfig {
     private Map<String, ExchangeConfig> exchangeMap;
     private Map<String, QueueConfig> queueMap;
     private Map<String, PubConfig> pubMsgMap;
     private Map<String, SubConfig> subMsgMap;
+    private List<ExchangeConfig> exchangeList;
+    private List<QueueConfig> queueList;
+    private List<ExchangeConfig> exchangeView;
+    private List<QueueConfig> queueView;
+    private Map<String, PubHandle> pubHandleMap;
+    private Map<String, SubHandle> subHandleMap;
+    private ClassValue<PubHandle> pubHandleClassMap = new ClassValue<>() {
+        @Override
+        protected PubHandle computeValue(Class<?> type) {
+            var map = pubHandleMap;
+            return map != null ? map.get(type.getSimpleName()) : null;
+        }
+    };
 
     /**
      * 判断是否为null or ""
@@ -42,10 +55,9 @@ public class MQConfig implements IMQConfig {
         File f = new File(xmlFile);
         if (!f.exists() || !f.isFile())
             throw new Exception("xmlFile(" + xmlFile + ") not found!");
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(f);
-        this.load(doc);
+        try (var stream = new FileInputStream(f)) {
+            this.load(stream);
+        }
     }
 
     /**
@@ -75,259 +87,361 @@ public class MQConfig implements IMQConfig {
     private void load(InputStream stream) throws Exception {
         if (stream == null)
             throw new Exception("stream is null!");
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(stream);
-        this.load(doc);
+        var factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        var reader = factory.createXMLStreamReader(stream);
+        try {
+            this.load(reader);
+        } finally {
+            reader.close();
+        }
+        // 对外返回的列表元素与内部配置分开, 调用方修改元素不影响重新加载时的差异比较
+        if (this.exchangeMap != null) {
+            this.exchangeList = List.copyOf(this.exchangeMap.values());
+            this.exchangeView = this.exchangeList.stream().map(ExchangeConfig::copy).toList();
+        }
+        if (this.queueMap != null) {
+            this.queueList = List.copyOf(this.queueMap.values());
+            this.queueView = this.queueList.stream().map(QueueConfig::copy).toList();
+        }
+        if (this.pubMsgMap != null) {
+            Map<String, PubHandle> map = new HashMap<>(this.pubMsgMap.size() * 2);
+            this.pubMsgMap.forEach((k, v) -> map.put(k, new PubHandle(v)));
+            this.pubHandleMap = map;
+        }
+        if (this.subMsgMap != null) {
+            Map<String, SubHandle> map = new HashMap<>(this.subMsgMap.size() * 2);
+            this.subMsgMap.forEach((k, v) -> map.put(k, new SubHandle(v)));
+            this.subHandleMap = map;
+        }
     }
 
-    private void load(Document doc) throws Exception {
-        var rootElement = doc.getDocumentElement();
-        var nodes = rootElement.getChildNodes();
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node n = nodes.item(i);
-            if (!(n instanceof Element node))
-                continue;
-            switch (node.getNodeName()) {
+    private static String attr(XMLStreamReader reader, String name) {
+        return reader.getAttributeValue(null, name);
+    }
+
+    /**
+     * 跳过当前节点及其子节点, 结束时位于当前节点的 END_ELEMENT
+     */
+    private static void skip(XMLStreamReader reader) throws Exception {
+        int depth = 1;
+        while (depth > 0) {
+            int e = reader.next();
+            if (e == XMLStreamConstants.START_ELEMENT)
+                depth++;
+            else if (e == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    /**
+     * 读取下一个子节点, 没有时返回 false 并位于当前节点的 END_ELEMENT
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws Exception {
+        while (true) {
+            int e = reader.next();
+            if (e == XMLStreamConstants.START_ELEMENT)
+                return true;
+            if (e == XMLStreamConstants.END_ELEMENT)
+                return false;
+        }
+    }
+
+    private void load(XMLStreamReader reader) throws Exception {
+        while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+        }
+        if (!reader.isStartElement())
+            return;
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
                 case "Exchange":
                 case "ExchangeConfig":
-                    this.loadExchangeConfig(node);
+                    this.loadExchangeConfig(reader);
                     break;
                 case "Queue":
                 case "QueueConfig":
-                    this.loadQueueConfig(node);
+                    this.loadQueueConfig(reader);
                     break;
                 case "Pub":
                 case "PubMsg":
                 case "PubConfig":
-                    this.loadPubConfig(node);
+                    this.loadPubConfig(reader);
                     break;
                 case "Sub":
                 case "SubMsg":
                 case "SubConfig":
-                    this.loadSubConfig(node);
+                    this.loadSubConfig(reader);
+                    break;
+                default:
+                    skip(reader);
                     break;
             }
         }
     }
 
-    private void loadExchangeConfig(Element rootElement) throws Exception {
-        var nodes = rootElement.getChildNodes();
-        exchangeMap = new HashMap<>(nodes.getLength());
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node in = nodes.item(i);
-            if (!(in instanceof Element item))
+    private void loadExchangeConfig(XMLStreamReader reader) throws Exception {
+        exchangeMap = new LinkedHashMap<>();
+        while (nextChild(reader)) {
+            if (!"Key".equals(reader.getLocalName())) {
+                skip(reader);
                 continue;
-            if (item.getNodeName() != "Key")
-                continue;
-            var s = item.getAttribute("exchange");
+            }
+            var s = attr(reader, "exchange");
             if (isNullOrEmpty(s))
                 throw new Exception("Exchange config is null!");
             if (exchangeMap.containsKey(s))
                 throw new Exception("Exchange config (" + s + ") is repeat！");
             var m = new ExchangeConfig();
             m.Exchange = s;
-            s = item.getAttribute("type");
+            s = attr(reader, "type");
             if (!isNullOrEmpty(s))
                 m.Type = s;
-            s = item.getAttribute("durable");
+            s = attr(reader, "durable");
             if (!isNullOrEmpty(s))
                 m.Durable = s.toLowerCase().equals("true") || s.equals("1");
-            s = item.getAttribute("autoDelete");
+            s = attr(reader, "autoDelete");
             if (!isNullOrEmpty(s))
                 m.AutoDelete = s.toLowerCase().equals("true") || s.equals("1");
 
-            var args = item.getChildNodes();
-            for (int j = 0; j < args.getLength(); j++) {
-                Node rnode = args.item(j);
-                if (!(rnode instanceof Element rel))
-                    continue;
-                if (rel.getNodeName() != "Arguments")
-                    continue;
-                var k = rel.getAttribute("key");
-                var v = rel.getAttribute("value");
-                if (!isNullOrEmpty(k) && !isNullOrEmpty(v)) {
-                    if (m.Arguments == null)
-                        m.Arguments = new HashMap<>(args.getLength());
-                    if (!m.Arguments.containsKey(k))
-                        m.Arguments.put(k, v);
+            while (nextChild(reader)) {
+                if ("Arguments".equals(reader.getLocalName())) {
+                    var k = attr(reader, "key");
+                    var v = attr(reader, "value");
+                    if (!isNullOrEmpty(k) && !isNullOrEmpty(v)) {
+                        if (m.Arguments == null)
+                            m.Arguments = new HashMap<>();
+                        if (!m.Arguments.containsKey(k))
+                            m.Arguments.put(k, v);
+                    }
                 }
+                skip(reader);
             }
 
             exchangeMap.put(m.Exchange, m);
         }
     }
 
-    private void loadQueueConfig(Element rootElement) throws Exception {
-        var nodes = rootElement.getChildNodes();
-        queueMap = new HashMap<>(nodes.getLength());
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node qn = nodes.item(i);
-            if (!(qn instanceof Element item))
+    private void loadQueueConfig(XMLStreamReader reader) throws Exception {
+        queueMap = new LinkedHashMap<>();
+        while (nextChild(reader)) {
+            if (!"Key".equals(reader.getLocalName())) {
+                skip(reader);
                 continue;
-            if (item.getNodeName() != "Key")
-                continue;
-            var s = item.getAttribute("queue");
+            }
+            var s = attr(reader, "queue");
             if (isNullOrEmpty(s))
                 throw new Exception("queue config is null!");
             if (queueMap.containsKey(s))
                 throw new Exception("queue config (" + s + ") is repeat!");
             var m = new QueueConfig();
             m.Queue = s;
-            s = item.getAttribute("routingKey");
+            s = attr(reader, "routingKey");
             if (!isNullOrEmpty(s))
                 m.RoutingKey = s;
 
-            s = item.getAttribute("delayQueue");
+            s = attr(reader, "delayQueue");
             if (!isNullOrEmpty(s)) {
                 m.DelayQueue = s;
-                s = item.getAttribute("delayRoutingKey");
+                s = attr(reader, "delayRoutingKey");
                 if (!isNullOrEmpty(s))
                     m.DelayRoutingKey = s;
+                s = attr(reader, "delayLevels");
+                if (!isNullOrEmpty(s)) {
+                    m.DelayLevels = Integer.parseInt(s);
+                    if (m.DelayLevels != 0)
+                        DelayTiers.check(m.DelayLevels);
+                }
             }
 
-            s = item.getAttribute("durable");
+            s = attr(reader, "durable");
             if (!isNullOrEmpty(s))
                 m.Durable = s.toLowerCase().equals("true") || s.equals("1");
-            s = item.getAttribute("exclusive");
+            s = attr(reader, "exclusive");
             if (!isNullOrEmpty(s))
                 m.Exclusive = s.toLowerCase().equals("true") || s.equals("1");
-            s = item.getAttribute("autoDelete");
+            s = attr(reader, "autoDelete");
             if (!isNullOrEmpty(s))
                 m.AutoDelete = s.toLowerCase().equals("true") || s.equals("1");
 
-            s = item.getAttribute("isQueueParam");
+            s = attr(reader, "isQueueParam");
             if (!isNullOrEmpty(s))
                 m.IsQueueParam = s.toLowerCase().equals("true") || s.equals("1");
 
-            s = item.getAttribute("isRoutingKeyParam");
+            s = attr(reader, "isRoutingKeyParam");
             if (!isNullOrEmpty(s))
                 m.IsRoutingKeyParam = s.toLowerCase().equals("true") || s.equals("1");
 
-            var args = item.getChildNodes();
-            for (int j = 0; j < args.getLength(); j++) {
-                Node an = args.item(j);
-                if (!(an instanceof Element rel))
-                    continue;
-                var n = rel.getNodeName();
-                if (!("QueueArguments".equals(n) || "BindArguments".equals(n)))
-                    continue;
-                var k = rel.getAttribute("key");
-                var v = rel.getAttribute("value");
-                if (!isNullOrEmpty(k) && !isNullOrEmpty(v)) {
-                    if ("QueueArguments".equals(n)) {
-                        if (m.QueueArguments == null)
-                            m.QueueArguments = new HashMap<>(args.getLength());
-                        if (!m.QueueArguments.containsKey(k))
-                            m.QueueArguments.put(k, v);
-                    } else {
-                        if (m.BindArguments == null)
-                            m.BindArguments = new HashMap<>(args.getLength());
-                        if (!m.BindArguments.containsKey(k))
-                            m.BindArguments.put(k, v);
+            while (nextChild(reader)) {
+                var n = reader.getLocalName();
+                if ("QueueArguments".equals(n) || "BindArguments".equals(n)) {
+                    var k = attr(reader, "key");
+                    var v = attr(reader, "value");
+                    if (!isNullOrEmpty(k) && !isNullOrEmpty(v)) {
+                        if ("QueueArguments".equals(n)) {
+                            if (m.QueueArguments == null)
+                                m.QueueArguments = new HashMap<>();
+                            if (!m.QueueArguments.containsKey(k))
+                                m.QueueArguments.put(k, v);
+                        } else {
+                            if (m.BindArguments == null)
+                                m.BindArguments = new HashMap<>();
+                            if (!m.BindArguments.containsKey(k))
+                                m.BindArguments.put(k, v);
+                        }
                     }
                 }
+                skip(reader);
             }
 
             queueMap.put(m.Queue, m);
         }
     }
 
-    private void loadPubConfig(Element rootElement) throws Exception {
-        var nodes = rootElement.getChildNodes();
-        pubMsgMap = new HashMap<>(nodes.getLength());
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node in = nodes.item(i);
-            if (!(in instanceof Element item))
+    private void loadPubConfig(XMLStreamReader reader) throws Exception {
+        pubMsgMap = new LinkedHashMap<>();
+        while (nextChild(reader)) {
+            if (!"Key".equals(reader.getLocalName())) {
+                skip(reader);
                 continue;
-            if (item.getNodeName() != "Key")
-                continue;
-            var s = item.getAttribute("name");
+            }
+            var s = attr(reader, "name");
             if (isNullOrEmpty(s))
                 throw new Exception("PubMsg name config is null!");
             if (pubMsgMap.containsKey(s))
                 throw new Exception("PubMsg name (" + s + ") is repeat！");
             var m = new PubConfig();
             m.Name = s;
-            s = item.getAttribute("routingKey");
+            s = attr(reader, "routingKey");
             if (!isNullOrEmpty(s))
                 m.RoutingKey = s;
-            s = item.getAttribute("delayRoutingKey");
+            s = attr(reader, "delayRoutingKey");
             if (!isNullOrEmpty(s))
                 m.DelayRoutingKey = s;
-            s = item.getAttribute("exchange");
+            s = attr(reader, "delayQueue");
+            if (!isNullOrEmpty(s)) {
+                m.DelayQueue = s;
+                s = attr(reader, "delayLevels");
+                if (!isNullOrEmpty(s)) {
+                    m.DelayLevels = Integer.parseInt(s);
+                    if (m.DelayLevels != 0)
+                        DelayTiers.check(m.DelayLevels);
+                }
+            }
+            s = attr(reader, "exchange");
             if (!isNullOrEmpty(s))
                 m.Exchange = s;
-            s = item.getAttribute("isRoutingKeyParam");
+            s = attr(reader, "isRoutingKeyParam");
             if (!isNullOrEmpty(s))
                 m.IsRoutingKeyParam = s.toLowerCase().equals("true") || s.equals("1");
+            s = attr(reader, "contentType");
+            if (!isNullOrEmpty(s))
+                m.ContentType = s;
 
+            skip(reader);
             pubMsgMap.put(m.Name, m);
         }
     }
 
-    private void loadSubConfig(Element rootElement) throws Exception {
-        var nodes = rootElement.getChildNodes();
-        subMsgMap = new HashMap<>(nodes.getLength());
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node in = nodes.item(i);
-            if (!(in instanceof Element item))
-                continue;
-            if (item.getNodeName() != "Key")
+    private void loadSubConfig(XMLStreamReader reader) throws Exception {
+        subMsgMap = new LinkedHashMap<>();
+        while (nextChild(reader)) {
+            if (!"Key".equals(reader.getLocalName())) {
+                skip(reader);
                 continue;
-            var s = item.getAttribute("name");
+            }
+            var s = attr(reader, "name");
             if (isNullOrEmpty(s))
                 throw new Exception("SubMsg name config is null!");
             if (subMsgMap.containsKey(s))
                 throw new Exception("SubMsg name (" + s + ") is repeat!");
             var m = new SubConfig();
             m.Name = s;
-            s = item.getAttribute("queue");
+            s = attr(reader, "queue");
             if (isNullOrEmpty(s))
                 throw new Exception("SubMsg queue config is null!");
             m.Queue = s;
-            s = item.getAttribute("isQueueParam");
+            s = attr(reader, "isQueueParam");
             if (!isNullOrEmpty(s))
                 m.IsQueueParam = s.toLowerCase().equals("true") || s.equals("1");
+            s = attr(reader, "prefetchCount");
+            if (!isNullOrEmpty(s))
+                m.PrefetchCount = Integer.parseInt(s);
+            s = attr(reader, "channelGroup");
+            if (!isNullOrEmpty(s))
+                m.ChannelGroup = s;
+            s = attr(reader, "channelPrefetchCount");
+            if (!isNullOrEmpty(s))
+                m.ChannelPrefetchCount = Integer.parseInt(s);
+            s = attr(reader, "concurrency");
+            if (!isNullOrEmpty(s))
+                m.Concurrency = Integer.parseInt(s);
+            s = attr(reader, "queueCapacity");
+            if (!isNullOrEmpty(s))
+                m.QueueCapacity = Integer.parseInt(s);
+            s = attr(reader, "rejectPolicy");
+            if (!isNullOrEmpty(s))
+                m.RejectPolicy = SubRejectPolicy.valueOf(s);
+            s = attr(reader, "virtualThread");
+            if (!isNullOrEmpty(s))
+                m.VirtualThread = s.toLowerCase().equals("true") || s.equals("1");
+            s = attr(reader, "batchSize");
+            if (!isNullOrEmpty(s))
+                m.BatchSize = Integer.parseInt(s);
+            s = attr(reader, "batchLingerMs");
+            if (!isNullOrEmpty(s))
+                m.BatchLingerMs = Integer.parseInt(s);
+            s = attr(reader, "batchSplitOnFail");
+            if (!isNullOrEmpty(s))
+                m.BatchSplitOnFail = s.toLowerCase().equals("true") || s.equals("1");
 
+            skip(reader);
             subMsgMap.put(m.Name, m);
         }
     }
 
     /**
-     * 获取配置交换器
+     * 获取配置交换器, 按配置顺序, 加载时创建的只读列表, 不复制, 元素为共享配置不应修改
      * 
      * @return ExchangeConfig
      */
     @Override
     public List<ExchangeConfig> getExchanges() {
-        if (this.exchangeMap == null)
-            return null;
-        var list = new ArrayList<ExchangeConfig>(this.exchangeMap.size());
-        this.exchangeMap.forEach((k, v) -> {
-            list.add(v);
-        });
-        return list;
+        return this.exchangeView;
     }
 
     /**
-     * 获取配置队列
+     * 获取配置队列, 按配置顺序, 加载时创建的只读列表, 不复制, 元素为共享配置不应修改
      * 
      * @return QueueConfig
      */
     @Override
     public List<QueueConfig> getQueues() {
-        if (this.queueMap == null)
-            return null;
-        var list = new ArrayList<QueueConfig>(this.queueMap.size());
-        this.queueMap.forEach((k, v) -> {
-            list.add(v);
-        });
-        return list;
+        return this.queueView;
+    }
+
+    /**
+     * 配置交换器, 不复制, 只读
+     * 
+     * @return ExchangeConfig
+     */
+    List<ExchangeConfig> exchanges() {
+        var list = this.exchangeList;
+        return list != null ? list : List.of();
+    }
+
+    /**
+     * 配置队列, 不复制, 只读
+     * 
+     * @return QueueConfig
+     */
+    List<QueueConfig> queues() {
+        var list = this.queueList;
+        return list != null ? list : List.of();
     }
 
     /**
-     * 获取配置生产者
+     * 获取配置生产者, 返回副本, 不复制的只读访问使用 getPubHandle
      * 
      * @param name 节点名称
      * @return PubMsgConfig
@@ -341,7 +455,7 @@ public class MQConfig implements IMQConfig {
     }
 
     /**
-     * 获取配置消费者
+     * 获取配置消费者, 返回副本, 不复制的只读访问使用 getSubHandle
      * 
      * @param name 节点名称
      * @return SubMsgConfig
@@ -354,6 +468,62 @@ public class MQConfig implements IMQConfig {
         return sc != null ? sc.copy() : null;
     }
 
+    /**
+     * 获取不可变生产配置, 不复制
+     * 
+     * @param name 节点名称
+     * @return PubHandle
+     */
+    @Override
+    public PubHandle getPubHandle(String name) {
+        var map = this.pubHandleMap;
+        return map != null ? map.get(name) : null;
+    }
+
+    /**
+     * 获取不可变生产配置, 节点名称为类名(getSimpleName), 按类缓存
+     * 
+     * @param clazz 消息类型
+     * @return PubHandle
+     */
+    @Override
+    public PubHandle getPubHandle(Class<?> clazz) {
+        // close 后 ClassValue 中已缓存的也不再返回
+        if (this.pubHandleMap == null)
+            return null;
+        return this.pubHandleClassMap.get(clazz);
+    }
+
+    /**
+     * 获取不可变消费配置, 不复制
+     * 
+     * @param name 节点名称
+     * @return SubHandle
+     */
+    @Override
+    public SubHandle getSubHandle(String name) {
+        var map = this.subHandleMap;
+        return map != null ? map.get(name) : null;
+    }
+
+    /**
+     * 生产配置名
+     * 
+     * @return Set
+     */
+    Set<String> getPubNames() {
+        return this.pubMsgMap != null ? this.pubMsgMap.keySet() : Set.of();
+    }
+
+    /**
+     * 消费配置名
+     * 
+     * @return Set
+     */
+    Set<String> getSubNames() {
+        return this.subMsgMap != null ? this.subMsgMap.keySet() : Set.of();
+    }
+
     /**
      * close
      */
@@ -363,5 +533,11 @@ public class MQConfig implements IMQConfig {
         this.queueMap = null;
         this.pubMsgMap = null;
         this.subMsgMap = null;
+        this.exchangeList = null;
+        this.queueList = null;
+        this.exchangeView = null;
+        this.queueView = null;
+        this.pubHandleMap = null;
+        this.subHandleMap = null;
     }
 }
@@ -0,0 +1,195 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+
+/**
+ * 两个版本配置的差异
+ */
+public class MQConfigDiff {
+    /**
+     * 新增的交换器
+     */
+    public List<ExchangeConfig> AddedExchanges = new ArrayList<>();
+    /**
+     * 参数变化的交换器
+     */
+    public List<ExchangeConfig> ChangedExchanges = new ArrayList<>();
+    /**
+     * 删除的交换器名, 不会在 broker 上删除
+     */
+    public List<String> RemovedExchanges = new ArrayList<>();
+    /**
+     * 新增的队列
+     */
+    public List<QueueConfig> AddedQueues = new ArrayList<>();
+    /**
+     * 参数或绑定变化的队列
+     */
+    public List<QueueConfig> ChangedQueues = new ArrayList<>();
+    /**
+     * 删除的队列名, 不会在 broker 上删除
+     */
+    public List<String> RemovedQueues = new ArrayList<>();
+    /**
+     * 无法在 broker 上直接修改的交换器名, 需删除后重新定义, 变化的交换器均在此列
+     */
+    public List<String> UnappliedExchanges = new ArrayList<>();
+    /**
+     * 无法在 broker 上直接修改的队列名, 需删除后重新定义:
+     * durable/exclusive/autoDelete/队列参数/延迟队列/延迟级数变化, 或有延迟队列时交换器/路由key变化
+     */
+    public List<String> UnappliedQueues = new ArrayList<>();
+    /**
+     * 新增、变化或删除的生产配置名
+     */
+    public List<String> ChangedPubs = new ArrayList<>();
+    /**
+     * 新增、变化或删除的消费配置名, 已有订阅不会自动重新订阅
+     */
+    public List<String> ChangedSubs = new ArrayList<>();
+
+    /**
+     * 是否无差异
+     *
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return this.AddedExchanges.isEmpty() && this.ChangedExchanges.isEmpty() && this.RemovedExchanges.isEmpty()
+                && this.AddedQueues.isEmpty() && this.ChangedQueues.isEmpty() && this.RemovedQueues.isEmpty()
+                && this.ChangedPubs.isEmpty() && this.ChangedSubs.isEmpty();
+    }
+
+    /**
+     * 计算差异
+     *
+     * @param oldConfig 上一版本, 可为 null
+     * @param newConfig 新版本
+     * @return MQConfigDiff
+     */
+    static MQConfigDiff of(MQConfig oldConfig, MQConfig newConfig) {
+        var diff = new MQConfigDiff();
+        Map<String, ExchangeConfig> oldExchanges = new HashMap<>();
+        if (oldConfig != null) {
+            for (var item : oldConfig.exchanges())
+                oldExchanges.put(item.Exchange, item);
+        }
+        // 差异中返回副本, 修改不影响配置快照
+        for (var item : newConfig.exchanges()) {
+            var old = oldExchanges.remove(item.Exchange);
+            if (old == null)
+                diff.AddedExchanges.add(item.copy());
+            else if (!equals(old, item)) {
+                diff.ChangedExchanges.add(item.copy());
+                diff.UnappliedExchanges.add(item.Exchange);
+            }
+        }
+        diff.RemovedExchanges.addAll(oldExchanges.keySet());
+
+        Map<String, QueueConfig> oldQueues = new HashMap<>();
+        if (oldConfig != null) {
+            for (var item : oldConfig.queues())
+                oldQueues.put(item.Queue, item);
+        }
+        // 差异中返回副本, 修改不影响配置快照
+        for (var item : newConfig.queues()) {
+            var old = oldQueues.remove(item.Queue);
+            if (old == null)
+                diff.AddedQueues.add(item.copy());
+            else if (!equals(old, item)) {
+                diff.ChangedQueues.add(item.copy());
+                if (!applicable(old, item))
+                    diff.UnappliedQueues.add(item.Queue);
+            }
+        }
+        diff.RemovedQueues.addAll(oldQueues.keySet());
+
+        Set<String> names = new LinkedHashSet<>(newConfig.getPubNames());
+        if (oldConfig != null)
+            names.addAll(oldConfig.getPubNames());
+        for (var name : names) {
+            var a = oldConfig != null ? oldConfig.getPubHandle(name) : null;
+            var b = newConfig.getPubHandle(name);
+            if (a == null || b == null || !equals(a, b))
+                diff.ChangedPubs.add(name);
+        }
+        names = new LinkedHashSet<>(newConfig.getSubNames());
+        if (oldConfig != null)
+            names.addAll(oldConfig.getSubNames());
+        for (var name : names) {
+            var a = oldConfig != null ? oldConfig.getSubHandle(name) : null;
+            var b = newConfig.getSubHandle(name);
+            if (a == null || b == null || !equals(a, b))
+                diff.ChangedSubs.add(name);
+        }
+        return diff;
+    }
+
+    /**
+     * null 与 "" 视为相同
+     */
+    static boolean same(String a, String b) {
+        return (a == null ? "" : a).equals(b == null ? "" : b);
+    }
+
+    /**
+     * null 与空 Map 视为相同
+     */
+    static boolean same(Map<String, Object> a, Map<String, Object> b) {
+        if (a == null || a.isEmpty())
+            return b == null || b.isEmpty();
+        return a.equals(b);
+    }
+
+    /**
+     * 变化是否只涉及绑定, 可重新绑定生效
+     */
+    private static boolean applicable(QueueConfig a, QueueConfig b) {
+        if (a.Durable != b.Durable || a.Exclusive != b.Exclusive || a.AutoDelete != b.AutoDelete
+                || !same(a.QueueArguments, b.QueueArguments) || !same(a.DelayQueue, b.DelayQueue)
+                || a.DelayLevels != b.DelayLevels)
+            return false;
+        // 延迟队列的死信交换器/路由key
+        return b.DelayQueue == null || b.DelayQueue.isEmpty()
+                || (Objects.equals(a.Exchange, b.Exchange) && same(a.RoutingKey, b.RoutingKey));
+    }
+
+    private static boolean equals(ExchangeConfig a, ExchangeConfig b) {
+        return Objects.equals(a.Type, b.Type) && a.Durable == b.Durable && a.AutoDelete == b.AutoDelete
+                && same(a.Arguments, b.Arguments);
+    }
+
+    private static boolean equals(QueueConfig a, QueueConfig b) {
+        return same(a.RoutingKey, b.RoutingKey) && same(a.DelayQueue, b.DelayQueue)
+                && same(a.DelayRoutingKey, b.DelayRoutingKey) && a.DelayLevels == b.DelayLevels
+                && a.Durable == b.Durable
+                && a.Exclusive == b.Exclusive && a.AutoDelete == b.AutoDelete
+                && Objects.equals(a.Exchange, b.Exchange) && same(a.QueueArguments, b.QueueArguments)
+                && same(a.BindArguments, b.BindArguments) && a.IsRoutingKeyParam == b.IsRoutingKeyParam
+                && a.IsQueueParam == b.IsQueueParam;
+    }
+
+    private static boolean equals(PubHandle a, PubHandle b) {
+        return same(a.RoutingKey, b.RoutingKey) && same(a.DelayRoutingKey, b.DelayRoutingKey)
+                && same(a.DelayQueue, b.DelayQueue) && a.DelayLevels == b.DelayLevels
+                && Objects.equals(a.Exchange, b.Exchange) && a.IsRoutingKeyParam == b.IsRoutingKeyParam
+                && Objects.equals(a.ContentType, b.ContentType);
+    }
+
+    private static boolean equals(SubHandle a, SubHandle b) {
+        return Objects.equals(a.Queue, b.Queue) && a.IsQueueParam == b.IsQueueParam
+                && a.PrefetchCount == b.PrefetchCount && Objects.equals(a.ChannelGroup, b.ChannelGroup)
+                && a.ChannelPrefetchCount == b.ChannelPrefetchCount && a.Concurrency == b.Concurrency
+                && a.QueueCapacity == b.QueueCapacity && a.RejectPolicy == b.RejectPolicy
+                && a.VirtualThread == b.VirtualThread && a.BatchSize == b.BatchSize
+                && a.BatchLingerMs == b.BatchLingerMs && a.BatchSplitOnFail == b.BatchSplitOnFail;
+    }
+
+    @Override
+    public String toString() {
+        return "exchanges +" + this.AddedExchanges.size() + " ~" + this.ChangedExchanges.size() + " -"
+                + this.RemovedExchanges.size() + ", queues +" + this.AddedQueues.size() + " ~"
+                + this.ChangedQueues.size() + " -" + this.RemovedQueues.size() + ", pubs ~" + this.ChangedPubs.size()
+                + ", subs ~" + this.ChangedSubs.size() + ", unapplied " + this.UnappliedExchanges.size() + "/"
+                + this.UnappliedQueues.size();
+    }
+}
@@ -0,0 +1,165 @@
+package cn.myafx.rabbitmq;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+
+import com.rabbitmq.client.*;
+
+/**
+ * 订阅消费者
+ */
+class MQConsumer<T> extends DefaultConsumer implements AutoCloseable {
+    private MQPool pool;
+    private ISubHander<T> subHander;
+    private String queue;
+    private boolean autoAck;
+    private ISubException exHander;
+    private ExecutorService executor;
+    private SubRejectPolicy rejectPolicy;
+
+    /**
+     * 订阅消费者, 在消费分发线程中处理消息
+     * 
+     * @param channel   channel
+     * @param pool      pool
+     * @param subHander subHander
+     * @param queue     queue
+     * @param autoAck   autoAck
+     * @param exHander  exHander
+     */
+    public MQConsumer(Channel channel, MQPool pool, ISubHander<T> subHander, String queue,
+            boolean autoAck, ISubException exHander) {
+        this(channel, pool, subHander, queue, autoAck, exHander, null, null);
+    }
+
+    /**
+     * 订阅消费者
+     * 
+     * @param channel      channel
+     * @param pool         pool
+     * @param subHander    subHander
+     * @param queue        queue
+     * @param autoAck      autoAck
+     * @param exHander     exHander
+     * @param executor     处理消息线程池, null 时在消费分发线程中处理
+     * @param rejectPolicy 线程池已满处理策略, 默认 CallerRuns
+     */
+    public MQConsumer(Channel channel, MQPool pool, ISubHander<T> subHander, String queue,
+            boolean autoAck, ISubException exHander, ExecutorService executor, SubRejectPolicy rejectPolicy) {
+        super(channel);
+        this.pool = pool;
+        this.subHander = subHander;
+        this.queue = queue;
+        this.autoAck = autoAck;
+        this.exHander = exHander;
+        this.executor = executor;
+        this.rejectPolicy = rejectPolicy != null ? rejectPolicy : SubRejectPolicy.CallerRuns;
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+        if (this.executor == null) {
+            this.process(envelope, properties, body);
+            return;
+        }
+        try {
+            this.executor.execute(() -> {
+                try {
+                    this.process(envelope, properties, body);
+                } catch (Exception ex) {
+                    this.onException(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.reject(envelope, properties, body);
+        }
+    }
+
+    private void reject(Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+        // autoAck 消息已被确认, 只能就地处理
+        if (this.autoAck || this.rejectPolicy == SubRejectPolicy.CallerRuns) {
+            this.process(envelope, properties, body);
+        } else if (this.rejectPolicy == SubRejectPolicy.Requeue) {
+            getChannel().basicNack(envelope.getDeliveryTag(), false, true);
+            var sm = this.subMetrics();
+            if (sm != null)
+                sm.nacks.increment();
+        } else {
+            getChannel().basicReject(envelope.getDeliveryTag(), false);
+            var sm = this.subMetrics();
+            if (sm != null)
+                sm.rejects.increment();
+        }
+    }
+
+    private SubMetrics subMetrics() {
+        var pool = this.pool;
+        var metrics = pool != null ? pool.metrics() : null;
+        return metrics != null ? metrics.sub(this.queue) : null;
+    }
+
+    private void process(Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+        var sm = this.subMetrics();
+        long start = sm != null ? System.nanoTime() : 0;
+        boolean handerOk = false;
+        try {
+            T m = this.pool.deserialize(body, properties.getContentType(), properties.getContentEncoding(),
+                    this.subHander.getTClass());
+            if (sm != null) {
+                long now = System.nanoTime();
+                sm.deserialize.record(now - start);
+                start = now;
+            }
+            if (m != null)
+                handerOk = subHander.hander(m, properties);
+            else
+                handerOk = true;
+        } catch (Exception ex) {
+            if (sm != null)
+                sm.errors.increment();
+            this.onException(ex);
+        }
+        if (sm != null) {
+            sm.hander.record(System.nanoTime() - start);
+            sm.count.increment();
+        }
+
+        if (!this.autoAck) {
+            if (handerOk) {
+                getChannel().basicAck(envelope.getDeliveryTag(), false);
+                if (sm != null)
+                    sm.acks.increment();
+            } else {
+                getChannel().basicNack(envelope.getDeliveryTag(), false, true);
+                if (sm != null)
+                    sm.nacks.increment();
+            }
+        }
+    }
+
+    private void onException(Exception ex) {
+        if (this.exHander == null)
+            return;
+        try {
+            this.exHander.hander(this.queue, ex);
+        } catch (Exception ee) {
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (this.executor != null) {
+            this.executor.shutdown();
+            try {
+                this.executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.executor = null;
+        this.pool = null;
+        this.subHander = null;
+        this.queue = null;
+    }
+}
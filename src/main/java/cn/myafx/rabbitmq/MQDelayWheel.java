@@ -0,0 +1,451 @@
+package cn.myafx.rabbitmq;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地分层时间轮, 短延迟消息在进程内到期后发布, 不经过 broker 延迟队列
+ * <p>
+ * 每层 WHEEL_SIZE 个槽, 第一层每槽 tickMs, 上层每槽为下层一圈, 按需创建; 只有非空槽进入 DelayQueue,
+ * 空闲时线程不按 tick 空转. 到期的槽中消息重新加入下层, 到达第一层且到期后批量发布
+ * <p>
+ * 可选分段内存映射(mmap)持久化, 分段格式: int MAGIC, int 保留, 之后每条记录 int 长度 + byte 状态(0 待发布, 1 已发布)
+ * + long 到期时间(currentTimeMillis) + OutboxCodec 记录, 长度 0 表示未写入; 持久化时以确认模式发布, 确认后标记已发布,
+ * 全部已发布的分段删除, 启动时加载未发布的消息
+ */
+class MQDelayWheel implements AutoCloseable {
+    private static final int WHEEL_SIZE = 64;
+    private static final int MAGIC = 0x4D514457;
+    private static final int HEADER_SIZE = 8;
+    private static final String SUFFIX = ".delay";
+    private static final int BATCH_SIZE = 100;
+    private static final long RETRY_MS = 1000;
+
+    private MQPool pool;
+    private long thresholdMs;
+    private long tickMs;
+    private int maxCount;
+    private Wheel wheel;
+    private DelayQueue<Bucket> queue = new DelayQueue<>();
+    private int count = 0;
+    private File dir;
+    private int segmentSize;
+    private int maxSegments;
+    private List<Segment> segments;
+    private volatile boolean closed = false;
+    private Thread thread;
+
+    /**
+     * 本地分层时间轮
+     *
+     * @param pool        pool
+     * @param name        线程名
+     * @param thresholdMs 最大延迟, 毫秒
+     * @param tickMs      第一层每槽时间, 毫秒
+     * @param maxCount    最大消息数
+     * @param dir         持久化目录, null 不持久化
+     * @param segmentSize 分段大小, 字节
+     * @param maxSegments 最大分段数
+     * @throws Exception Exception
+     */
+    public MQDelayWheel(MQPool pool, String name, int thresholdMs, int tickMs, int maxCount, String dir,
+            int segmentSize, int maxSegments) throws Exception {
+        this.pool = pool;
+        this.thresholdMs = thresholdMs;
+        this.tickMs = tickMs;
+        this.maxCount = maxCount;
+        this.wheel = new Wheel(tickMs, now());
+        if (dir != null) {
+            this.dir = new File(dir);
+            this.segmentSize = segmentSize;
+            this.maxSegments = maxSegments;
+            this.segments = new ArrayList<>();
+            if (!this.dir.exists() && !this.dir.mkdirs())
+                throw new Exception("delay wheel dir(" + dir + ") create fail!");
+            this.load();
+        }
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private void load() throws Exception {
+        var files = this.dir.listFiles((d, n) -> n.endsWith(SUFFIX));
+        if (files == null)
+            return;
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        long wall = System.currentTimeMillis();
+        long mono = now();
+        for (var f : files) {
+            String id = f.getName().substring(0, f.getName().length() - SUFFIX.length());
+            var seg = Segment.open(f, Long.parseLong(id));
+            if (seg == null)
+                throw new Exception("delay wheel file(" + f.getName() + ") is error!");
+            if (seg.live == 0) {
+                seg.delete();
+                continue;
+            }
+            this.segments.add(seg);
+            var buf = seg.buffer.duplicate();
+            int pos = HEADER_SIZE;
+            while (pos < seg.writePos) {
+                int len = buf.getInt(pos);
+                if (buf.get(pos + 4) == 0) {
+                    long at = buf.getLong(pos + 5);
+                    buf.limit(pos + 4 + len).position(pos + 13);
+                    var e = new Entry(OutboxCodec.read(buf), mono + Math.max(0, at - wall));
+                    buf.limit(buf.capacity());
+                    e.segment = seg;
+                    e.pos = pos;
+                    this.count++;
+                    // 停止期间已到期的消息启动后立即发布
+                    this.addOrNow(e);
+                }
+                pos += 4 + len;
+            }
+        }
+    }
+
+    /**
+     * 最大延迟, 毫秒
+     *
+     * @return long
+     */
+    public long getThresholdMs() {
+        return this.thresholdMs;
+    }
+
+    /**
+     * 未发布消息数, 正在发布的批次不计入, 发布失败时重新计入
+     *
+     * @return int
+     */
+    public synchronized int size() {
+        return this.count;
+    }
+
+    /**
+     * 加入时间轮, 超过最大延迟、消息数已满或持久化空间不足时返回 false, 由调用方走 broker 延迟
+     *
+     * @param batch   消息
+     * @param delayMs 延迟, 毫秒
+     * @return boolean
+     * @throws Exception Exception
+     */
+    public synchronized boolean schedule(List<PubMessage> batch, long delayMs) throws Exception {
+        if (this.closed)
+            throw new Exception("MQPool is closed!");
+        if (delayMs > this.thresholdMs || this.count + batch.size() > this.maxCount)
+            return false;
+        long due = now() + delayMs;
+        List<Entry> entries = new ArrayList<>(batch.size());
+        for (var m : batch)
+            entries.add(new Entry(m, due));
+        if (this.segments != null && !this.persist(entries, System.currentTimeMillis() + delayMs))
+            return false;
+        for (var e : entries) {
+            this.count++;
+            this.addOrNow(e);
+        }
+        return true;
+    }
+
+    private void addOrNow(Entry e) {
+        if (this.add(this.wheel, e))
+            return;
+        // 不足一个 tick, 放入当前槽由线程立即发布, 当前槽不会有未到期的消息
+        var b = this.wheel.buckets[(int) (this.wheel.currentTime / this.tickMs % WHEEL_SIZE)];
+        b.add(e);
+        if (b.setExpiration(this.wheel.currentTime))
+            this.queue.offer(b);
+    }
+
+    private boolean persist(List<Entry> entries, long at) throws Exception {
+        int written = 0;
+        try {
+            for (var e : entries) {
+                var seg = this.segments.isEmpty() ? null : this.segments.get(this.segments.size() - 1);
+                if (seg == null || !seg.tryAppend(e, at)) {
+                    if (seg != null && seg.writePos == HEADER_SIZE)
+                        throw new Exception("msg is too large for delay wheel segment!");
+                    if (this.segments.size() >= this.maxSegments)
+                        return false;
+                    long id = seg != null ? seg.id + 1 : System.currentTimeMillis() * 1000;
+                    seg = Segment.create(new File(this.dir, String.format("%020d", id) + SUFFIX), id,
+                            this.segmentSize);
+                    this.segments.add(seg);
+                    if (!seg.tryAppend(e, at))
+                        throw new Exception("msg is too large for delay wheel segment!");
+                }
+                written++;
+            }
+            return true;
+        } finally {
+            // 部分写入时标记已写入的为已发布, 整批不加入
+            if (written < entries.size()) {
+                for (int i = 0; i < written; i++)
+                    this.done(entries.get(i));
+            }
+        }
+    }
+
+    private boolean add(Wheel w, Entry e) {
+        if (e.due < w.currentTime + w.tick)
+            return false;
+        if (e.due < w.currentTime + w.interval) {
+            long id = e.due / w.tick;
+            var b = w.buckets[(int) (id % WHEEL_SIZE)];
+            b.add(e);
+            // 槽被复用时到期时间变化, 重新进入 DelayQueue
+            if (b.setExpiration(id * w.tick))
+                this.queue.offer(b);
+            return true;
+        }
+        if (w.overflow == null)
+            w.overflow = new Wheel(w.interval, w.currentTime);
+        return this.add(w.overflow, e);
+    }
+
+    private static void advance(Wheel w, long time) {
+        if (time >= w.currentTime + w.tick) {
+            w.currentTime = time - time % w.tick;
+            if (w.overflow != null)
+                advance(w.overflow, w.currentTime);
+        }
+    }
+
+    private void done(Entry e) {
+        var seg = e.segment;
+        if (seg == null)
+            return;
+        e.segment = null;
+        seg.buffer.put(e.pos + 4, (byte) 1);
+        // 不再写入的分段全部发布后删除
+        if (--seg.live == 0 && seg != this.segments.get(this.segments.size() - 1)) {
+            this.segments.remove(seg);
+            seg.delete();
+        }
+    }
+
+    private void run() {
+        List<Entry> due = new ArrayList<>();
+        while (!this.closed) {
+            try {
+                var b = this.queue.take();
+                synchronized (this) {
+                    while (b != null) {
+                        advance(this.wheel, b.expiration);
+                        for (var e : b.flush()) {
+                            if (!this.add(this.wheel, e))
+                                due.add(e);
+                        }
+                        b = this.queue.poll();
+                    }
+                }
+                for (int i = 0; i < due.size(); i += BATCH_SIZE)
+                    this.fire(due.subList(i, Math.min(i + BATCH_SIZE, due.size())));
+            } catch (InterruptedException ex) {
+                if (this.closed)
+                    break;
+            } finally {
+                due.clear();
+            }
+        }
+    }
+
+    private void fire(List<Entry> entries) {
+        List<PubMessage> batch = new ArrayList<>(entries.size());
+        for (var e : entries)
+            batch.add(e.msg);
+        // 发布前减少计数, 发布返回后消息可能已被消费, size() 不能仍计入
+        synchronized (this) {
+            this.count -= entries.size();
+        }
+        try {
+            if (this.segments != null) {
+                if (!this.pool.publishConfirm(batch))
+                    throw new Exception("delay wheel publish nack!");
+            } else {
+                this.pool.publish(batch);
+            }
+            synchronized (this) {
+                for (var e : entries)
+                    this.done(e);
+            }
+        } catch (Exception ex) {
+            this.pool.onPoolException(ex, batch);
+            // 发布失败稍后重试
+            synchronized (this) {
+                this.count += entries.size();
+                long due = now() + RETRY_MS;
+                for (var e : entries) {
+                    e.due = due;
+                    this.addOrNow(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止, 持久化时未发布的消息保留在文件中, 下次启动继续; 否则丢弃
+     */
+    @Override
+    public void close() throws Exception {
+        this.closed = true;
+        this.thread.interrupt();
+        this.thread.join(10000);
+        synchronized (this) {
+            if (this.segments != null) {
+                for (var seg : this.segments)
+                    seg.buffer.force();
+                this.segments.clear();
+            }
+            this.queue.clear();
+            this.count = 0;
+        }
+    }
+
+    private static class Entry {
+        public PubMessage msg;
+        public long due;
+        public Segment segment;
+        public int pos;
+
+        public Entry(PubMessage msg, long due) {
+            this.msg = msg;
+            this.due = due;
+        }
+    }
+
+    private static class Bucket implements Delayed {
+        private volatile long expiration = -1;
+        private List<Entry> entries = new ArrayList<>();
+
+        public void add(Entry e) {
+            this.entries.add(e);
+        }
+
+        public boolean setExpiration(long expiration) {
+            if (this.expiration == expiration)
+                return false;
+            this.expiration = expiration;
+            return true;
+        }
+
+        public List<Entry> flush() {
+            var list = this.entries;
+            this.entries = new ArrayList<>();
+            this.expiration = -1;
+            return list;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(this.expiration - now(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(this.expiration, ((Bucket) o).expiration);
+        }
+    }
+
+    private static class Wheel {
+        public long tick;
+        public long interval;
+        public long currentTime;
+        public Bucket[] buckets = new Bucket[WHEEL_SIZE];
+        public Wheel overflow;
+
+        public Wheel(long tick, long start) {
+            this.tick = tick;
+            this.interval = tick * WHEEL_SIZE;
+            this.currentTime = start - start % tick;
+            for (int i = 0; i < WHEEL_SIZE; i++)
+                this.buckets[i] = new Bucket();
+        }
+    }
+
+    private static class Segment {
+        public long id;
+        public File file;
+        public MappedByteBuffer buffer;
+        public int writePos;
+        public int live;
+
+        public static Segment create(File file, long id, int size) throws Exception {
+            var seg = new Segment();
+            seg.id = id;
+            seg.file = file;
+            try (var raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(size);
+                seg.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            seg.buffer.putInt(0, MAGIC);
+            seg.writePos = HEADER_SIZE;
+            return seg;
+        }
+
+        public static Segment open(File file, long id) throws Exception {
+            var seg = new Segment();
+            seg.id = id;
+            seg.file = file;
+            try (var raf = new RandomAccessFile(file, "rw")) {
+                seg.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            }
+            var buf = seg.buffer;
+            if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC)
+                return null;
+            // 长度最后写入, 未写完的记录长度为 0
+            int pos = HEADER_SIZE;
+            while (pos + 4 <= buf.capacity()) {
+                int len = buf.getInt(pos);
+                if (len < 9 || pos + 4 + len > buf.capacity())
+                    break;
+                if (buf.get(pos + 4) == 0)
+                    seg.live++;
+                pos += 4 + len;
+            }
+            seg.writePos = pos;
+            return seg;
+        }
+
+        public boolean tryAppend(Entry e, long at) {
+            var buf = this.buffer.duplicate();
+            int start = this.writePos + 4;
+            if (start + 9 > buf.capacity())
+                return false;
+            buf.position(start);
+            try {
+                buf.put((byte) 0);
+                buf.putLong(at);
+                OutboxCodec.write(buf, e.msg.exchange, e.msg.routingKey, e.msg.props, e.msg.body);
+            } catch (BufferOverflowException ex) {
+                return false;
+            }
+            int len = buf.position() - start;
+            this.buffer.putInt(this.writePos, len);
+            e.segment = this;
+            e.pos = this.writePos;
+            this.writePos = start + len;
+            this.live++;
+            return true;
+        }
+
+        public void delete() {
+            // 映射在 GC 后释放, 删除文件不影响
+            this.file.delete();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package cn.myafx.rabbitmq;
+
+import java.util.Map;
+
+/**
+ * 统计快照
+ */
+public class MQMetricsSnapshot {
+    /**
+     * 发布统计, key: exchange/routingKey
+     */
+    public Map<String, PubMetricsStats> Pub;
+    /**
+     * 订阅统计, key: queue
+     */
+    public Map<String, SubMetricsStats> Sub;
+    /**
+     * 借发布通道等待耗时
+     */
+    public LatencyStats ChannelWait;
+}
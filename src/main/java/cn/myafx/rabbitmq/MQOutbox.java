@@ -0,0 +1,278 @@
+package cn.myafx.rabbitmq;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * 本地落盘发布队列, 分段内存映射(mmap)顺序追加, 后台线程按顺序确认模式重发, 全部确认的分段删除
+ * <p>
+ * 分段格式: int MAGIC, int 已确认位置, 之后每条记录 int 长度 + OutboxCodec 记录, 长度 0 表示未写入
+ */
+class MQOutbox implements AutoCloseable {
+    private static final int MAGIC = 0x4D514F42;
+    private static final int HEADER_SIZE = 8;
+    private static final String SUFFIX = ".outbox";
+
+    private MQPool pool;
+    private File dir;
+    private int segmentSize;
+    private int maxSegments;
+    private long retryMs;
+    private int batchSize;
+    private ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private volatile long pending = 0;
+    private volatile boolean closed = false;
+    private Thread thread;
+
+    /**
+     * 本地落盘发布队列, 加载目录中未发布完成的分段
+     *
+     * @param pool        pool
+     * @param name        线程名
+     * @param dir         目录
+     * @param segmentSize 分段大小, 字节
+     * @param maxSegments 最大分段数
+     * @param retryMs     发布失败重试间隔, 毫秒
+     * @throws Exception Exception
+     */
+    public MQOutbox(MQPool pool, String name, String dir, int segmentSize, int maxSegments, int retryMs)
+            throws Exception {
+        this.pool = pool;
+        this.dir = new File(dir);
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.retryMs = retryMs;
+        this.batchSize = 100;
+        if (!this.dir.exists() && !this.dir.mkdirs())
+            throw new Exception("outbox dir(" + dir + ") create fail!");
+        this.load();
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void load() throws Exception {
+        var files = this.dir.listFiles((d, n) -> n.endsWith(SUFFIX));
+        if (files == null)
+            return;
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (var f : files) {
+            String id = f.getName().substring(0, f.getName().length() - SUFFIX.length());
+            var seg = Segment.open(f, Long.parseLong(id));
+            if (seg == null)
+                throw new Exception("outbox file(" + f.getName() + ") is error!");
+            this.segments.addLast(seg);
+            this.pending += seg.count;
+        }
+    }
+
+    /**
+     * 待发布消息数
+     *
+     * @return long
+     */
+    public long size() {
+        return this.pending;
+    }
+
+    /**
+     * 是否有待发布消息, 有则新消息也需写入, 保证顺序
+     *
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return this.pending == 0;
+    }
+
+    /**
+     * 追加消息
+     *
+     * @param exchange   exchange
+     * @param routingKey routingKey
+     * @param props      props
+     * @param body       body
+     * @throws Exception Exception
+     */
+    public synchronized void append(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws Exception {
+        if (this.closed)
+            throw new Exception("MQPool is closed!");
+        var seg = this.segments.peekLast();
+        if (seg == null || !seg.tryAppend(exchange, routingKey, props, body)) {
+            if (seg != null && seg.writePos == HEADER_SIZE)
+                throw new Exception("msg is too large for outbox segment!");
+            if (this.segments.size() >= this.maxSegments)
+                throw new Exception("outbox is full!");
+            long id = seg != null ? seg.id + 1 : System.currentTimeMillis() * 1000;
+            if (seg != null)
+                seg.buffer.force();
+            seg = Segment.create(new File(this.dir, String.format("%020d", id) + SUFFIX), id, this.segmentSize);
+            this.segments.addLast(seg);
+            if (!seg.tryAppend(exchange, routingKey, props, body))
+                throw new Exception("msg is too large for outbox segment!");
+        }
+        if (this.pending++ == 0)
+            this.notifyAll();
+    }
+
+    private synchronized List<PubMessage> peek(List<PubMessage> batch) throws InterruptedException {
+        while (this.pending == 0 && !this.closed)
+            this.wait(this.retryMs);
+        var seg = this.segments.peekFirst();
+        // 已读完且不再写入的分段删除
+        while (seg != null && seg.readPos >= seg.writePos && seg != this.segments.peekLast()) {
+            this.segments.pollFirst();
+            seg.delete();
+            seg = this.segments.peekFirst();
+        }
+        if (seg == null)
+            return batch;
+        var buf = seg.buffer.duplicate();
+        int pos = seg.readPos;
+        while (pos < seg.writePos && batch.size() < this.batchSize) {
+            int len = buf.getInt(pos);
+            buf.limit(pos + 4 + len).position(pos + 4);
+            batch.add(OutboxCodec.read(buf));
+            buf.limit(buf.capacity());
+            pos += 4 + len;
+        }
+        return batch;
+    }
+
+    private synchronized void commit(int count) throws Exception {
+        var seg = this.segments.peekFirst();
+        var buf = seg.buffer;
+        int pos = seg.readPos;
+        for (int i = 0; i < count; i++)
+            pos += 4 + buf.getInt(pos);
+        seg.readPos = pos;
+        buf.putInt(4, pos);
+        this.pending -= count;
+    }
+
+    private void run() {
+        var batch = new ArrayList<PubMessage>(this.batchSize);
+        while (!this.closed) {
+            try {
+                if (this.pool.isBlocked()) {
+                    Thread.sleep(this.retryMs);
+                    continue;
+                }
+                this.peek(batch);
+                if (batch.size() == 0)
+                    continue;
+                if (this.pool.publishConfirm(batch))
+                    this.commit(batch.size());
+                else
+                    throw new Exception("outbox publish nack!");
+            } catch (InterruptedException ex) {
+                if (this.closed)
+                    break;
+            } catch (Exception ex) {
+                this.pool.onPoolException(ex, batch);
+                try {
+                    Thread.sleep(this.retryMs);
+                } catch (InterruptedException ie) {
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 停止重发, 未发布的消息保留在文件中, 下次启动继续发布
+     */
+    @Override
+    public void close() throws Exception {
+        this.closed = true;
+        this.thread.interrupt();
+        this.thread.join(10000);
+        synchronized (this) {
+            for (var seg : this.segments)
+                seg.close();
+            this.segments.clear();
+        }
+    }
+
+    private static class Segment {
+        public long id;
+        public File file;
+        public MappedByteBuffer buffer;
+        public int readPos;
+        public int writePos;
+        public int count;
+
+        public static Segment create(File file, long id, int size) throws Exception {
+            var seg = new Segment();
+            seg.id = id;
+            seg.file = file;
+            try (var raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(size);
+                seg.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            seg.buffer.putInt(4, HEADER_SIZE);
+            seg.buffer.putInt(0, MAGIC);
+            seg.readPos = HEADER_SIZE;
+            seg.writePos = HEADER_SIZE;
+            return seg;
+        }
+
+        public static Segment open(File file, long id) throws Exception {
+            var seg = new Segment();
+            seg.id = id;
+            seg.file = file;
+            try (var raf = new RandomAccessFile(file, "rw")) {
+                seg.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            }
+            var buf = seg.buffer;
+            if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC)
+                return null;
+            seg.readPos = buf.getInt(4);
+            // 长度最后写入, 未写完的记录长度为 0
+            int pos = seg.readPos;
+            while (pos + 4 <= buf.capacity()) {
+                int len = buf.getInt(pos);
+                if (len <= 0 || pos + 4 + len > buf.capacity())
+                    break;
+                pos += 4 + len;
+                seg.count++;
+            }
+            seg.writePos = pos;
+            return seg;
+        }
+
+        public boolean tryAppend(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+            var buf = this.buffer.duplicate();
+            int start = this.writePos + 4;
+            if (start > buf.capacity())
+                return false;
+            buf.position(start);
+            try {
+                OutboxCodec.write(buf, exchange, routingKey, props, body);
+            } catch (BufferOverflowException ex) {
+                return false;
+            }
+            int len = buf.position() - start;
+            this.buffer.putInt(this.writePos, len);
+            this.writePos = start + len;
+            this.count++;
+            return true;
+        }
+
+        public void close() {
+            this.buffer.force();
+        }
+
+        public void delete() {
+            // 映射在 GC 后释放, 删除文件不影响
+            this.file.delete();
+        }
+    }
+}
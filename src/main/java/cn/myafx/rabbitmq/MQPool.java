@@ -1,7 +1,13 @@
 package cn.myafx.rabbitmq;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
 
 import com.rabbitmq.client.*;
 
@@ -11,21 +17,41 @@ import com.rabbitmq.client.*;
 public class MQPool implements IMQPool {
     private Object lockCreate = new Object();
     private ConnectionFactory connectionFactory;
-    private Connection connection;
+    private ConnectionGroup pubConnections;
+    private ConnectionGroup subConnections;
     private String clientName;
 
-    private Channel subChannel;
+    private Map<String, Channel> subChannelMap;
+    private List<Channel> subChannelList;
     private Object lockSubChannel = new Object();
-    private Object lockGetSubChannel = new Object();
 
     private int maxPushPool = 3;
-    private Queue<Channel> pubChannelQueue;
-    private IJsonMapper mapper;
-    private List<MQConsumer<?>> consumerList;
+    private PubChannelPool[] pubChannelPools;
+    private int pubChannelLimit = 0;
+    private AtomicReferenceArray<ConfirmChannel> confirmChannels;
+    private AtomicInteger confirmChannelIndex;
+    private CodecRegistry codecRegistry;
+    private PropertiesCache propertiesCache = new PropertiesCache();
+    private ICompressor compressor;
+    private int compressThreshold;
+    private Map<String, ICompressor> compressorMap;
+    private List<AutoCloseable> consumerList;
     /**
      * 异常回调
      */
     private ISubException subExceptionHander;
+    private IMQPoolExceptionHander poolExceptionHander;
+    private AsyncPublisher asyncPublisher;
+    private MQOutbox outbox;
+    private volatile MQDelayWheel delayWheel;
+    private volatile PubBlockedPolicy blockedPolicy = PubBlockedPolicy.Block;
+    private volatile long blockedTimeoutMs;
+    private BlockedBuffer blockedBuffer;
+    private volatile MQPoolMetrics metrics;
+    private ObjectName metricsName;
+    private ConcurrentHashMap<String, RoutingTemplate> routingTemplateMap = new ConcurrentHashMap<>();
+    private volatile int routingCacheSize = 1000;
+    private TopologyDeclarer topology = new TopologyDeclarer();
 
     /**
      * 异常回调
@@ -36,6 +62,595 @@ public class MQPool implements IMQPool {
         this.subExceptionHander = hander;
     }
 
+    /**
+     * 后台发布等异常回调
+     * 
+     * @param hander hander
+     */
+    public void setPoolExceptionHander(IMQPoolExceptionHander hander) {
+        this.poolExceptionHander = hander;
+    }
+
+    void onPoolException(Exception ex, List<PubMessage> batch) {
+        var hander = this.poolExceptionHander;
+        if (hander == null)
+            return;
+        try {
+            Map<String, Object> detail = new HashMap<>(4);
+            if (batch != null && batch.size() > 0) {
+                detail.put("exchange", batch.get(0).exchange);
+                detail.put("routingKey", batch.get(0).routingKey);
+                detail.put("count", batch.size());
+            }
+            hander.hander(ex, detail);
+        } catch (Exception ee) {
+        }
+    }
+
+    /**
+     * 开启后台批量发布, pub 只序列化并入队, 由发布线程批量发布, 需在首次发布前调用.
+     * 批次发布失败时: 开启 setOutbox 后未发布的消息写入本地落盘队列重发(至少一次);
+     * 未开启或落盘队列已满时丢弃该批次, 只通过 setPoolExceptionHander 回调通知(最多一次)
+     * 
+     * @param bufferSize     队列大小, 默认 10000
+     * @param threadCount    发布线程数, 默认 1
+     * @param maxBatchSize   每批最大消息数, 默认 100
+     * @param lingerMs       第一条消息入队后最长等待时间, 毫秒, 默认 5
+     * @param offerTimeoutMs 队列已满时 pub 最长等待时间, 毫秒, 超时抛出异常, 默认 0 立即抛出
+     * @throws Exception Exception
+     */
+    public void setAsyncPublish(Integer bufferSize, Integer threadCount, Integer maxBatchSize, Integer lingerMs,
+            Integer offerTimeoutMs) throws Exception {
+        if (bufferSize == null)
+            bufferSize = 10000;
+        if (threadCount == null)
+            threadCount = 1;
+        if (maxBatchSize == null)
+            maxBatchSize = 100;
+        if (lingerMs == null)
+            lingerMs = 5;
+        if (offerTimeoutMs == null)
+            offerTimeoutMs = 0;
+        if (bufferSize < 1)
+            throw new Exception("bufferSize(" + bufferSize + ") is error!");
+        if (threadCount < 1)
+            throw new Exception("threadCount(" + threadCount + ") is error!");
+        if (maxBatchSize < 1)
+            throw new Exception("maxBatchSize(" + maxBatchSize + ") is error!");
+        if (lingerMs < 0)
+            throw new Exception("lingerMs(" + lingerMs + ") is error!");
+        if (offerTimeoutMs < 0)
+            throw new Exception("offerTimeoutMs(" + offerTimeoutMs + ") is error!");
+        synchronized (this.lockCreate) {
+            if (this.asyncPublisher != null)
+                throw new Exception("asyncPublish is enabled!");
+            this.asyncPublisher = new AsyncPublisher(this, this.clientName + "-pub-", bufferSize, threadCount,
+                    maxBatchSize, lingerMs, offerTimeoutMs);
+        }
+    }
+
+    /**
+     * 后台批量发布队列中等待发布的消息数, 未开启时返回 0
+     * 
+     * @return int
+     */
+    public int getAsyncPublishQueueSize() {
+        var ap = this.asyncPublisher;
+        return ap != null ? ap.size() : 0;
+    }
+
+    /**
+     * 借一次通道发布整批消息
+     * 
+     * @param batch 消息
+     * @throws Exception Exception
+     */
+    void publish(List<PubMessage> batch) throws Exception {
+        if (batch.size() == 0)
+            return;
+        var ob = this.outbox;
+        int i = 0;
+        if (ob == null || !this.useOutbox(ob)) {
+            try (var ph = getPubChannel(batch.get(0).routingKey)) {
+                for (; i < batch.size(); i++) {
+                    var m = batch.get(i);
+                    ph.Channel.basicPublish(m.exchange, m.routingKey, m.props, m.body);
+                }
+            } catch (Exception ex) {
+                if (ob == null)
+                    throw ex;
+            }
+        }
+        for (; i < batch.size(); i++) {
+            var m = batch.get(i);
+            ob.append(m.exchange, m.routingKey, m.props, m.body);
+        }
+    }
+
+    /**
+     * 开启本地落盘发布队列, 发布失败或连接被 broker 阻塞时 pub 写入本地分段文件(mmap),
+     * 后台线程在连接恢复后按顺序以确认模式重发, 全部确认的分段删除; 队列非空时新消息也写入, 保证顺序.
+     * 重发为至少一次, 可能重复; pubAsync 不写入. 需在首次发布前调用
+     * 
+     * @param dir         目录, 启动时继续发布目录中未完成的消息
+     * @param segmentSize 分段文件大小, 字节, 默认 64M
+     * @param maxSegments 最大分段数, 超出时 pub 抛出异常, 默认 16
+     * @param retryMs     重发失败重试间隔, 毫秒, 默认 1000
+     * @throws Exception Exception
+     */
+    public void setOutbox(String dir, Integer segmentSize, Integer maxSegments, Integer retryMs) throws Exception {
+        if (isNullOrEmpty(dir))
+            throw new Exception("dir is null!");
+        if (segmentSize == null)
+            segmentSize = 64 * 1024 * 1024;
+        if (maxSegments == null)
+            maxSegments = 16;
+        if (retryMs == null)
+            retryMs = 1000;
+        if (segmentSize < 1024)
+            throw new Exception("segmentSize(" + segmentSize + ") is error!");
+        if (maxSegments < 1)
+            throw new Exception("maxSegments(" + maxSegments + ") is error!");
+        if (retryMs < 1)
+            throw new Exception("retryMs(" + retryMs + ") is error!");
+        synchronized (this.lockCreate) {
+            if (this.outbox != null)
+                throw new Exception("outbox is enabled!");
+            this.outbox = new MQOutbox(this, this.clientName + "-outbox", dir, segmentSize, maxSegments, retryMs);
+        }
+    }
+
+    /**
+     * 开启本地分层时间轮, 延迟不超过 thresholdMs 的 pubDelay/pubDelayMillis 消息保存在进程内,
+     * 到期后直接发布到 routingKey, 不经过 broker 延迟队列; 超过阈值或时间轮已满时仍走 broker 延迟队列.
+     * 未开启持久化时 close 后未到期的消息丢弃. 需在首次发布前调用
+     * 
+     * @param thresholdMs 最大延迟, 毫秒, 默认 60000
+     * @param tickMs      时间精度, 毫秒, 默认 1
+     * @param maxCount    最大消息数, 默认 100000
+     * @param dir         持久化目录(mmap 分段文件), 以确认模式发布, 启动时继续发布目录中未完成的消息, 默认 null 不持久化
+     * @param segmentSize 分段文件大小, 字节, 默认 16M
+     * @param maxSegments 最大分段数, 超出时走 broker 延迟队列, 默认 16
+     * @throws Exception Exception
+     */
+    public void setDelayWheel(Integer thresholdMs, Integer tickMs, Integer maxCount, String dir,
+            Integer segmentSize, Integer maxSegments) throws Exception {
+        if (thresholdMs == null)
+            thresholdMs = 60000;
+        if (tickMs == null)
+            tickMs = 1;
+        if (maxCount == null)
+            maxCount = 100000;
+        if (segmentSize == null)
+            segmentSize = 16 * 1024 * 1024;
+        if (maxSegments == null)
+            maxSegments = 16;
+        if (thresholdMs < 1)
+            throw new Exception("thresholdMs(" + thresholdMs + ") is error!");
+        if (tickMs < 1 || 1000 < tickMs)
+            throw new Exception("tickMs(" + tickMs + ") is error!");
+        if (maxCount < 1)
+            throw new Exception("maxCount(" + maxCount + ") is error!");
+        if (segmentSize < 1024)
+            throw new Exception("segmentSize(" + segmentSize + ") is error!");
+        if (maxSegments < 1)
+            throw new Exception("maxSegments(" + maxSegments + ") is error!");
+        synchronized (this.lockCreate) {
+            if (this.delayWheel != null)
+                throw new Exception("delay wheel is enabled!");
+            this.delayWheel = new MQDelayWheel(this, this.clientName + "-delay", thresholdMs, tickMs, maxCount,
+                    isNullOrEmpty(dir) ? null : dir, segmentSize, maxSegments);
+        }
+    }
+
+    /**
+     * 本地时间轮中未发布的消息数, 未开启时返回 0
+     * 
+     * @return int
+     */
+    public int getDelayWheelSize() {
+        var dw = this.delayWheel;
+        return dw != null ? dw.size() : 0;
+    }
+
+    /**
+     * 本地落盘发布队列中等待发布的消息数, 未开启时返回 0
+     * 
+     * @return long
+     */
+    public long getOutboxSize() {
+        var ob = this.outbox;
+        return ob != null ? ob.size() : 0;
+    }
+
+    /**
+     * 开启统计, 发布按 exchange/routingKey, 订阅按 queue 统计次数与耗时
+     * 
+     * @param jmx     是否注册 JMX MXBean(cn.myafx.rabbitmq:type=MQPool,name={clientName}), 默认 false
+     * @param maxKeys 最大 exchange/routingKey 与 queue 数, 超出后归入 "*", 默认 1000
+     * @throws Exception Exception
+     */
+    public void setMetrics(Boolean jmx, Integer maxKeys) throws Exception {
+        if (jmx == null)
+            jmx = false;
+        if (maxKeys == null)
+            maxKeys = 1000;
+        if (maxKeys < 1)
+            throw new Exception("maxKeys(" + maxKeys + ") is error!");
+        synchronized (this.lockCreate) {
+            if (this.metrics != null)
+                throw new Exception("metrics is enabled!");
+            var m = new MQPoolMetrics(maxKeys);
+            if (jmx) {
+                var server = ManagementFactory.getPlatformMBeanServer();
+                var name = new ObjectName("cn.myafx.rabbitmq:type=MQPool,name=" + ObjectName.quote(this.clientName));
+                if (server.isRegistered(name))
+                    name = new ObjectName("cn.myafx.rabbitmq:type=MQPool,name="
+                            + ObjectName.quote(this.clientName + "-" + System.identityHashCode(this)));
+                server.registerMBean(m, name);
+                this.metricsName = name;
+            }
+            this.metrics = m;
+        }
+    }
+
+    /**
+     * 统计, 未开启时返回 null
+     * 
+     * @return IMQPoolMetrics
+     */
+    @Override
+    public IMQPoolMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    MQPoolMetrics metrics() {
+        return this.metrics;
+    }
+
+    /**
+     * 发布连接被 broker 阻塞(内存/磁盘告警)时 pub 的处理策略, 开启本地落盘发布队列时优先写入落盘队列
+     * 
+     * @param policy      策略, 默认 Block
+     * @param timeoutMs   BlockWithTimeout 最长等待时间, 毫秒, 默认 5000
+     * @param bufferBytes Buffer 缓冲消息体最大字节数, 默认 64M
+     * @throws Exception Exception
+     */
+    public void setPubBlockedPolicy(PubBlockedPolicy policy, Integer timeoutMs, Long bufferBytes)
+            throws Exception {
+        if (policy == null)
+            policy = PubBlockedPolicy.Block;
+        if (timeoutMs == null)
+            timeoutMs = 5000;
+        if (bufferBytes == null)
+            bufferBytes = 64L * 1024 * 1024;
+        if (timeoutMs < 0)
+            throw new Exception("timeoutMs(" + timeoutMs + ") is error!");
+        if (bufferBytes < 1)
+            throw new Exception("bufferBytes(" + bufferBytes + ") is error!");
+        synchronized (this.lockCreate) {
+            if (policy == PubBlockedPolicy.Buffer && this.blockedBuffer == null)
+                this.blockedBuffer = new BlockedBuffer(this, this.clientName + "-blocked", bufferBytes);
+            this.blockedTimeoutMs = timeoutMs;
+            this.blockedPolicy = policy;
+        }
+    }
+
+    /**
+     * 发布连接是否被 broker 阻塞(内存/磁盘告警)
+     * 
+     * @return boolean
+     */
+    @Override
+    public boolean isBlocked() {
+        var pub = this.pubConnections;
+        return pub != null && pub.isBlocked();
+    }
+
+    /**
+     * 发布连接累计被阻塞时间, 包括正在阻塞的时间, 多个连接累加, 毫秒
+     * 
+     * @return long
+     */
+    @Override
+    public long getBlockedMillis() {
+        var pub = this.pubConnections;
+        return pub != null ? TimeUnit.NANOSECONDS.toMillis(pub.getBlockedNanos()) : 0;
+    }
+
+    /**
+     * 阻塞缓冲中的消息体字节数, 未开启时返回 0
+     * 
+     * @return long
+     */
+    public long getBlockedBufferBytes() {
+        var bb = this.blockedBuffer;
+        return bb != null ? bb.getBytes() : 0;
+    }
+
+    boolean awaitUnblocked(long timeoutMs) throws InterruptedException {
+        var pub = this.pubConnections;
+        return pub == null || pub.awaitUnblocked(timeoutMs);
+    }
+
+    /**
+     * 按阻塞策略检查, 需写入阻塞缓冲时返回 true
+     * 
+     * @param canBuffer 是否可写入缓冲, 否则 Buffer 按 BlockWithTimeout 处理
+     * @return boolean
+     */
+    private boolean checkBlocked(boolean canBuffer) throws Exception {
+        var bb = this.blockedBuffer;
+        if (canBuffer && bb != null && !bb.isEmpty())
+            return true;
+        var policy = this.blockedPolicy;
+        if (policy == PubBlockedPolicy.Block || !this.isBlocked())
+            return false;
+        if (policy == PubBlockedPolicy.FailFast)
+            throw new Exception("connection is blocked!");
+        if (policy == PubBlockedPolicy.Buffer && canBuffer && bb != null)
+            return true;
+        if (!this.awaitUnblocked(this.blockedTimeoutMs))
+            throw new Exception("connection is blocked, wait timeout!");
+        return false;
+    }
+
+    private boolean useOutbox(MQOutbox ob) {
+        return !ob.isEmpty() || this.isBlocked();
+    }
+
+    /**
+     * 确认模式发布整批消息, 等待全部确认; 某条发布失败时余下消息不再发布, 整批抛出异常
+     * 
+     * @param batch 消息
+     * @return 全部 ack 返回 true
+     * @throws Exception Exception
+     */
+    boolean publishConfirm(List<PubMessage> batch) throws Exception {
+        var cc = getConfirmChannel();
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        CompletableFuture<Boolean>[] futures = new CompletableFuture[batch.size()];
+        for (int i = 0; i < futures.length; i++) {
+            var m = batch.get(i);
+            futures[i] = cc.publish(m.exchange, m.routingKey, m.props, m.body);
+            // 发布失败(通道关闭、线程中断)时不再继续, 否则中断被吞掉后余下消息会再次阻塞
+            if (futures[i].isCompletedExceptionally()) {
+                futures = Arrays.copyOf(futures, i + 1);
+                break;
+            }
+        }
+        CompletableFuture.allOf(futures).get(30, TimeUnit.SECONDS);
+        for (var f : futures) {
+            if (!f.join())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 发布时压缩消息体, 写入 contentEncoding, 并注册到订阅解压
+     * 
+     * @param compressor 压缩, null 不压缩
+     * @param threshold  消息体大于等于 threshold 字节时压缩, 默认 1024
+     */
+    public void setCompressor(ICompressor compressor, Integer threshold) {
+        if (threshold == null || threshold < 0)
+            threshold = 1024;
+        if (compressor != null)
+            this.registerCompressor(compressor);
+        this.compressThreshold = threshold;
+        this.compressor = compressor;
+    }
+
+    /**
+     * 注册订阅解压, 按消息 contentEncoding 匹配, 默认已注册 gzip, deflate
+     * 
+     * @param compressor 压缩
+     */
+    public void registerCompressor(ICompressor compressor) {
+        if (compressor != null && !isNullOrEmpty(compressor.getEncoding()))
+            this.compressorMap.put(compressor.getEncoding(), compressor);
+    }
+
+    /**
+     * 设置字节序列化, 默认使用构造函数传入的 IJsonMapper
+     * 
+     * @param mapper mapper
+     * @throws Exception Exception
+     */
+    public void setBytesMapper(IBytesMapper mapper) throws Exception {
+        if (mapper == null)
+            throw new Exception("mapper is null!");
+        this.codecRegistry.register(CodecRegistry.JSON, mapper);
+    }
+
+    /**
+     * 注册 contentType 编码器, 发布时按 PubConfig.ContentType 或消息类型选择, 订阅时按消息 contentType 选择,
+     * 例如 application/cbor 可使用 new JacksonBytesMapper(new ObjectMapper(new CBORFactory()))
+     * 
+     * @param contentType contentType
+     * @param mapper      编码器
+     * @throws Exception Exception
+     */
+    public void registerCodec(String contentType, IBytesMapper mapper) throws Exception {
+        if (isNullOrEmpty(contentType))
+            throw new Exception("contentType is null!");
+        if (mapper == null)
+            throw new Exception("mapper is null!");
+        this.codecRegistry.register(contentType, mapper);
+    }
+
+    /**
+     * 设置消息类型发布时默认使用的 contentType, 需先注册该 contentType 编码器
+     * 
+     * @param clazz       消息类型
+     * @param contentType contentType
+     * @throws Exception Exception
+     */
+    public void registerCodec(Class<?> clazz, String contentType) throws Exception {
+        if (clazz == null)
+            throw new Exception("clazz is null!");
+        if (isNullOrEmpty(contentType))
+            throw new Exception("contentType is null!");
+        this.codecRegistry.getCodec(contentType);
+        this.codecRegistry.register(clazz, contentType);
+    }
+
+    /**
+     * 限制同时打开的发布通道数, 达到上限后按先后顺序等待其他线程归还, 默认 0 不限制
+     * 
+     * @param maxOpen 最大发布通道数
+     */
+    public void setPubChannelLimit(int maxOpen) {
+        this.pubChannelLimit = maxOpen;
+        var pools = this.pubChannelPools;
+        if (pools != null) {
+            for (var pcp : pools)
+                pcp.setLimit(maxOpen);
+        }
+    }
+
+    /**
+     * 设置连接数, 需在首次发布/订阅前调用
+     * 
+     * @param pubCount 发布连接数, 默认 1
+     * @param subCount 订阅连接数, 默认 0 与发布共用连接
+     * @param selector 通道分配到连接的策略, 默认 RoundRobin
+     * @throws Exception Exception
+     */
+    public void setConnectionCount(Integer pubCount, Integer subCount, IConnectionSelector selector)
+            throws Exception {
+        if (pubCount == null)
+            pubCount = 1;
+        if (subCount == null)
+            subCount = 0;
+        if (pubCount < 1)
+            throw new Exception("pubCount(" + pubCount + ") is error!");
+        if (subCount < 0)
+            throw new Exception("subCount(" + subCount + ") is error!");
+        if (selector == null)
+            selector = ConnectionSelector.RoundRobin;
+        synchronized (this.lockCreate) {
+            if (this.pubConnections.hasConnection()
+                    || (this.subConnections != null && this.subConnections.hasConnection()))
+                throw new Exception("connection is created!");
+            this.createConnectionGroups(pubCount, subCount, selector);
+        }
+    }
+
+    private void createConnectionGroups(int pubCount, int subCount, IConnectionSelector selector) {
+        String[] names = new String[pubCount];
+        for (int i = 0; i < pubCount; i++)
+            names[i] = pubCount == 1 ? this.clientName : this.clientName + "-pub-" + i;
+        var pubGroup = new ConnectionGroup(this.connectionFactory, names, selector);
+        // 拓扑在发布连接上定义, 断开后 broker 可能已重启, 缓存失效
+        pubGroup.setShutdownHander(this.topology::clear);
+        ConnectionGroup subGroup = null;
+        if (subCount > 0) {
+            names = new String[subCount];
+            for (int i = 0; i < subCount; i++)
+                names[i] = this.clientName + "-sub-" + i;
+            subGroup = new ConnectionGroup(this.connectionFactory, names, selector);
+        }
+        var pools = new PubChannelPool[pubCount];
+        for (int i = 0; i < pubCount; i++) {
+            int index = i;
+            pools[i] = new PubChannelPool(() -> pubGroup.createChannel(index), this.maxPushPool);
+            pools[i].setLimit(this.pubChannelLimit);
+        }
+        this.pubConnections = pubGroup;
+        this.subConnections = subGroup;
+        this.pubChannelPools = pools;
+    }
+
+    /**
+     * 发布通道池统计
+     * 
+     * @return ChannelPoolStats
+     */
+    @Override
+    public ChannelPoolStats getPubChannelPoolStats() {
+        var m = new ChannelPoolStats();
+        var pools = this.pubChannelPools;
+        if (pools == null)
+            return m;
+        for (var pcp : pools) {
+            var item = pcp.getStats();
+            m.Borrows += item.Borrows;
+            m.StripeHits += item.StripeHits;
+            m.OverflowHits += item.OverflowHits;
+            m.Creates += item.Creates;
+            m.Closes += item.Closes;
+            m.Waits += item.Waits;
+            m.WaitNanos += item.WaitNanos;
+            m.Idle += item.Idle;
+            m.InUse += item.InUse;
+        }
+        return m;
+    }
+
+    /**
+     * 交换器/队列定义选项
+     * 
+     * @param cache  是否缓存已定义的拓扑, 相同定义不再发送, 连接断开后清空, 默认 false
+     * @param noWait 是否使用 *NoWait 流水线定义, 每批最后被动定义一次同步等待结果, 默认 false
+     */
+    public void setTopology(Boolean cache, Boolean noWait) {
+        if (cache == null)
+            cache = false;
+        if (noWait == null)
+            noWait = false;
+        this.topology.setOptions(cache, noWait);
+    }
+
+    /**
+     * 清空已定义拓扑缓存, 在 broker 上删除了交换器/队列后需调用
+     */
+    public void clearTopologyCache() {
+        this.topology.clear();
+    }
+
+    /**
+     * 参数化路由key/队列名, 每个模板缓存的格式化结果数, 默认 1000, 需在首次发布前调用
+     * 
+     * @param cacheSize 缓存数, 0 不缓存
+     * @throws Exception Exception
+     */
+    public void setRoutingCacheSize(Integer cacheSize) throws Exception {
+        if (cacheSize == null)
+            cacheSize = 1000;
+        if (cacheSize < 0)
+            throw new Exception("cacheSize(" + cacheSize + ") is error!");
+        this.routingCacheSize = cacheSize;
+        this.routingTemplateMap.clear();
+    }
+
+    /**
+     * 格式化参数化路由key/队列名, 模板编译一次, 结果按参数缓存
+     * 
+     * @param template 模板, {0} {1} ... 为参数, 无占位符时追加 "." + 参数
+     * @param isParam  配置是否允许参数
+     * @param params   参数, null 时返回模板
+     * @return String
+     * @throws Exception Exception
+     */
+    private String formatRouting(String template, boolean isParam, Object[] params) throws Exception {
+        if (params == null)
+            return template;
+        if (!isParam)
+            throw new Exception("template(" + template + ") is not param!");
+        if (params.length == 0)
+            throw new Exception("params is empty!");
+        if (template == null)
+            template = "";
+        var t = this.routingTemplateMap.get(template);
+        if (t == null) {
+            int cacheSize = this.routingCacheSize;
+            t = this.routingTemplateMap.computeIfAbsent(template, k -> RoutingTemplate.compile(k, cacheSize));
+        }
+        return t.format(params);
+    }
+
     /**
      * 判断是否为null or ""
      * 
@@ -63,40 +678,70 @@ public class MQPool implements IMQPool {
     public MQPool(String hostName, Integer port, String userName, String password, String virtualHost,
             Integer maxPushPool,
             Integer networkRecoveryInterval, String clientName, IJsonMapper mapper) throws Exception {
-        if (isNullOrEmpty(hostName))
+        this(createConnectionFactory(hostName, port, userName, password, virtualHost, networkRecoveryInterval),
+                maxPushPool, clientName, mapper);
+    }
+
+    private static ConnectionFactory createConnectionFactory(String hostName, Integer port, String userName,
+            String password, String virtualHost, Integer networkRecoveryInterval) throws Exception {
+        if (hostName == null || hostName.length() == 0)
             throw new Exception("hostName is null!");
         if (port == null)
             port = 5672;
         if (port <= 0 || 65535 <= port)
             throw new Exception("port is error!");
-        if (isNullOrEmpty(userName))
+        if (userName == null || userName.length() == 0)
             throw new Exception("userName is null!");
-        if (mapper == null)
-            throw new Exception("mapper is null!");
         if (virtualHost == null)
             virtualHost = "/";
-        if (maxPushPool == null || maxPushPool <= 0)
-            maxPushPool = 3;
         if (networkRecoveryInterval == null || networkRecoveryInterval <= 0)
             networkRecoveryInterval = 15;
+        var factory = new ConnectionFactory();
+        factory.setHost(hostName);
+        factory.setPort(port);
+        factory.setUsername(userName);
+        factory.setPassword(password);
+        factory.setVirtualHost(virtualHost);
+        factory.setAutomaticRecoveryEnabled(true);
+        factory.setNetworkRecoveryInterval(networkRecoveryInterval * 1000);
+        return factory;
+    }
+
+    /**
+     * mq 应用池, 使用已配置的 ConnectionFactory
+     * 
+     * @param connectionFactory ConnectionFactory
+     * @param maxPushPool       push池大小, 默认 3
+     * @param clientName        clientName
+     * @param mapper            mapper
+     * @throws Exception Exception
+     */
+    public MQPool(ConnectionFactory connectionFactory, Integer maxPushPool, String clientName, IJsonMapper mapper)
+            throws Exception {
+        if (connectionFactory == null)
+            throw new Exception("connectionFactory is null!");
+        if (mapper == null)
+            throw new Exception("mapper is null!");
+        if (maxPushPool == null || maxPushPool <= 0)
+            maxPushPool = 3;
         if (isNullOrEmpty(clientName))
             clientName = "Afx.RabbitMQ";
 
         this.clientName = clientName;
         this.maxPushPool = maxPushPool;
-        this.mapper = mapper;
+        this.codecRegistry = new CodecRegistry(
+                mapper instanceof IBytesMapper b ? b : new JsonMapperAdapter(mapper));
 
-        this.pubChannelQueue = new LinkedList<Channel>();
+        this.confirmChannels = new AtomicReferenceArray<>(maxPushPool);
+        this.confirmChannelIndex = new AtomicInteger();
         this.consumerList = new ArrayList<>();
-        this.connectionFactory = new ConnectionFactory();
-
-        this.connectionFactory.setHost(hostName);
-        this.connectionFactory.setPort(port);
-        this.connectionFactory.setUsername(userName);
-        this.connectionFactory.setPassword(password);
-        this.connectionFactory.setVirtualHost(virtualHost);
-        this.connectionFactory.setAutomaticRecoveryEnabled(true);
-        this.connectionFactory.setNetworkRecoveryInterval(networkRecoveryInterval * 1000);
+        this.compressorMap = new ConcurrentHashMap<>();
+        this.registerCompressor(new GzipCompressor());
+        this.registerCompressor(new DeflateCompressor());
+        this.subChannelMap = new HashMap<>();
+        this.subChannelList = new ArrayList<>();
+        this.connectionFactory = connectionFactory;
+        this.createConnectionGroups(1, 0, ConnectionSelector.RoundRobin);
     }
 
     /**
@@ -107,7 +752,11 @@ public class MQPool implements IMQPool {
      */
     @Override
     public boolean isOpen() {
-        return this.connection != null ? this.connection.isOpen() : false;
+        var pub = this.pubConnections;
+        var sub = this.subConnections;
+        if (pub == null || !pub.isOpen())
+            return false;
+        return sub == null || !sub.hasConnection() || sub.isOpen();
     }
 
     /**
@@ -118,75 +767,134 @@ public class MQPool implements IMQPool {
      */
     @Override
     public int getHeartbeat() {
-        return this.connection != null ? this.connection.getHeartbeat() : 0;
+        var pub = this.pubConnections;
+        var con = pub != null ? pub.peek(0) : null;
+        return con != null ? con.getHeartbeat() : 0;
     }
 
-    private Connection getConnection() throws Exception {
-        if (this.connection != null)
-            return this.connection;
-        synchronized (this.lockCreate) {
-            if (this.connection == null) {
-                this.connection = this.connectionFactory.newConnection(this.clientName);
-            }
+    /**
+     * 获取订阅通道, 需在 lockSubChannel 内调用
+     * 
+     * @param queue                队列, 用于选择连接
+     * @param group                通道分组, null 时创建独占通道
+     * @param channelPrefetchCount 通道共享预取数, 0 不限制
+     * @return Channel
+     */
+    private Channel getSubChannel(String queue, String group, int channelPrefetchCount) throws Exception {
+        Channel ch = null;
+        if (!isNullOrEmpty(group))
+            ch = this.subChannelMap.get(group);
+        if (ch == null) {
+            var connections = this.subConnections != null ? this.subConnections : this.pubConnections;
+            ch = connections.createChannel(connections.select(queue));
+            if (channelPrefetchCount > 0)
+                ch.basicQos(0, channelPrefetchCount, true);
+            this.subChannelList.add(ch);
+            if (!isNullOrEmpty(group))
+                this.subChannelMap.put(group, ch);
         }
-        return this.connection;
+
+        return ch;
+    }
+
+    private PublishChannel getPubChannel(String routingKey) throws Exception {
+        var pools = this.pubChannelPools;
+        if (pools == null)
+            throw new Exception("MQPool is closed!");
+        var pcp = pools[this.pubConnections.select(routingKey)];
+        var metrics = this.metrics;
+        if (metrics == null)
+            return new PublishChannel(pcp, pcp.borrow());
+        long start = System.nanoTime();
+        var lease = pcp.borrow();
+        metrics.channelWait().record(System.nanoTime() - start);
+
+        return new PublishChannel(pcp, lease);
     }
 
-    private Channel getSubChannel() throws Exception {
-        if (this.subChannel != null)
-            return this.subChannel;
-        var con = getConnection();
+    private ConfirmChannel getConfirmChannel() throws Exception {
+        var channels = this.confirmChannels;
+        if (channels == null)
+            throw new Exception("MQPool is closed!");
+        int index = Math.floorMod(this.confirmChannelIndex.getAndIncrement(), channels.length());
+        var cc = channels.get(index);
+        if (cc != null && cc.isOpen())
+            return cc;
+        var connections = this.pubConnections;
         synchronized (this.lockCreate) {
-            if (this.subChannel == null) {
-                this.subChannel = con.createChannel();
+            cc = channels.get(index);
+            if (cc == null || !cc.isOpen()) {
+                cc = new ConfirmChannel(connections.createChannel(index % connections.size()));
+                channels.set(index, cc);
             }
         }
 
-        return this.subChannel;
+        return cc;
     }
 
-    private PublishChannel getPubChannel() throws Exception {
-        Channel ch = null;
-        synchronized (this.lockGetSubChannel) {
-            ch = this.pubChannelQueue.poll();
-            if (ch == null) {
-                var con = getConnection();
-                ch = con.createChannel();
-            }
-        }
+    private AMQP.BasicProperties buildProperties(MapperDto mapper, Integer expire, Boolean persistent,
+            Map<String, Object> headers, PubHandle handle) {
+        // 生产配置持有上次使用的模板组, 不再按 contentType 查找
+        var props = handle != null
+                ? handle.properties(this.propertiesCache, mapper.contentType, mapper.contentEncoding, expire,
+                        persistent)
+                : this.propertiesCache.get(mapper.contentType, mapper.contentEncoding, expire, persistent);
+        if (headers != null)
+            props = props.builder().headers(headers).build();
+        return props;
+    }
 
-        return new PublishChannel(this, ch);
+    private <T> MapperDto serialize(T m, String contentType, PubMetrics pm) throws Exception {
+        if (pm == null)
+            return this.serialize(m, contentType);
+        long start = System.nanoTime();
+        var mapper = this.serialize(m, contentType);
+        pm.serialize.record(System.nanoTime() - start);
+        pm.bytes.add(mapper.body.length);
+        return mapper;
     }
 
-    private <T> MapperDto serialize(T m) throws Exception {
+    <T> MapperDto serialize(T m, String contentType) throws Exception {
         MapperDto result = new MapperDto();
         if (m instanceof byte[] arr) {
-            result.contentType = "application/octet-stream";
+            result.contentType = contentType != null ? contentType : CodecRegistry.OCTET_STREAM;
             result.body = arr;
         } else if (m instanceof String s) {
-            result.contentType = "text/plain";
-            result.body = s.getBytes("utf-8");
+            result.contentType = contentType != null ? contentType : CodecRegistry.TEXT;
+            result.body = s.getBytes(StandardCharsets.UTF_8);
         } else {
-            result.contentType = "application/json";
-            var json = this.mapper.serialize(m);
-            result.body = json.getBytes("utf-8");
+            if (contentType == null)
+                contentType = this.codecRegistry.getContentType(m.getClass());
+            result.contentType = contentType;
+            result.body = this.codecRegistry.getCodec(contentType).serializeBytes(m);
+        }
+        var compressor = this.compressor;
+        if (compressor != null && result.body.length >= this.compressThreshold) {
+            result.body = compressor.compress(result.body);
+            result.contentEncoding = compressor.getEncoding();
         }
 
         return result;
     }
 
     @SuppressWarnings("unchecked")
-    private <T> T deserialize(byte[] buffer, Class<T> clazz) throws Exception {
+    <T> T deserialize(byte[] buffer, String contentType, String contentEncoding, Class<T> clazz)
+            throws Exception {
+        if (contentEncoding != null) {
+            var compressor = this.compressorMap.get(contentEncoding);
+            if (compressor != null)
+                buffer = compressor.decompress(buffer);
+        }
         var t = byte[].class;
         if (t.equals(clazz)) {
             Object o = buffer;
             return (T) o;
         } else if (String.class.equals(clazz)) {
-            Object o = new String(buffer, "utf-8");
+            Object o = new String(buffer, StandardCharsets.UTF_8);
             return (T) o;
         } else {
-            var json = new String(buffer, "utf-8");
-            T m = this.mapper.deserialize(json, clazz);
+            // 未注册的 contentType 按 json 处理
+            T m = this.codecRegistry.findCodec(contentType).deserialize(buffer, 0, buffer.length, clazz);
             return m;
         }
     }
@@ -212,8 +920,10 @@ public class MQPool implements IMQPool {
             durable = true;
         if (autoDelete == null)
             autoDelete = false;
-        try (var ph = this.getPubChannel()) {
-            ph.Channel.exchangeDeclare(exchange, type, durable, autoDelete, arguments);
+        try (var ph = getPubChannel(null)) {
+            var batch = this.topology.begin(ph.Channel);
+            batch.exchange(exchange, type, durable, autoDelete, arguments);
+            batch.commit();
         }
     }
 
@@ -240,10 +950,12 @@ public class MQPool implements IMQPool {
     public void exchangeDeclare(List<ExchangeConfig> configs) throws Exception {
         if (configs == null)
             throw new Exception("configs is null!");
-        try (var ph = getPubChannel()) {
+        try (var ph = getPubChannel(null)) {
+            var batch = this.topology.begin(ph.Channel);
             for (ExchangeConfig item : configs) {
-                ph.Channel.exchangeDeclare(item.Exchange, item.Type, item.Durable, item.AutoDelete, item.Arguments);
+                batch.exchange(item.Exchange, item.Type, item.Durable, item.AutoDelete, item.Arguments);
             }
+            batch.commit();
         }
     }
 
@@ -261,65 +973,149 @@ public class MQPool implements IMQPool {
             throw new Exception("config.Queue is null!");
         if (isNullOrEmpty(config.Exchange))
             throw new Exception("config.Exchange is null!");
-        try (var ph = getPubChannel()) {
-            ph.Channel.queueDeclare(config.Queue, config.Durable, config.Exclusive, config.AutoDelete,
-                    config.QueueArguments);
-            if (config.RoutingKey == null)
-                config.RoutingKey = "";
-            ph.Channel.queueBind(config.Queue, config.Exchange, config.RoutingKey, config.BindArguments);
-            if (!isNullOrEmpty(config.DelayQueue) && config.Queue != config.DelayQueue
-                    && (config.RoutingKey != config.DelayRoutingKey
-                            || (isNullOrEmpty(config.DelayRoutingKey) && isNullOrEmpty(config.RoutingKey)))) {
-                Map<String, Object> dic = new HashMap<String, Object>(2);
-                dic.put("x-dead-letter-exchange", config.Exchange);
-                dic.put("x-dead-letter-routing-key", config.RoutingKey);
-                ph.Channel.queueDeclare(config.DelayQueue, config.Durable, config.Exclusive, config.AutoDelete,
-                        dic);
-                if (config.DelayRoutingKey == null)
-                    config.DelayRoutingKey = "";
-                ph.Channel.queueBind(config.DelayQueue, config.Exchange, config.DelayRoutingKey, null);
-            }
+        try (var ph = getPubChannel(null)) {
+            var batch = this.topology.begin(ph.Channel);
+            batch.queue(config);
+            batch.commit();
         }
     }
 
     /**
-     * 批量定义队列
+     * 定义队列, config.IsQueueParam 时队列名、config.IsRoutingKeyParam 时路由key按参数格式化
      * 
-     * @param queues QueueConfig
+     * @param config QueueConfig
+     * @param params 参数
      * @throws Exception Exception
      */
     @Override
-    public void queueDeclare(List<QueueConfig> queues) throws Exception {
-        if (queues == null)
-            throw new Exception("queues is null!");
-        for (QueueConfig item : queues) {
-            if (item == null)
-                throw new Exception("queues.item is null!");
-            if (isNullOrEmpty(item.Queue))
-                throw new Exception("queues item.Queue is null!");
-            if (isNullOrEmpty(item.Exchange))
-                throw new Exception("queues item.Exchange is null!");
+    public void queueDeclare(QueueConfig config, Object[] params) throws Exception {
+        if (config == null)
+            throw new Exception("config is null!");
+        if (params == null) {
+            this.queueDeclare(config);
+            return;
+        }
+        if (!config.IsQueueParam && !config.IsRoutingKeyParam)
+            throw new Exception("queue(" + config.Queue + ") is not param!");
+        var c = config.copy();
+        if (config.IsQueueParam) {
+            c.Queue = this.formatRouting(config.Queue, true, params);
+            if (!isNullOrEmpty(config.DelayQueue))
+                c.DelayQueue = this.formatRouting(config.DelayQueue, true, params);
+        }
+        if (config.IsRoutingKeyParam) {
+            c.RoutingKey = this.formatRouting(config.RoutingKey, true, params);
+            if (!isNullOrEmpty(config.DelayRoutingKey))
+                c.DelayRoutingKey = this.formatRouting(config.DelayRoutingKey, true, params);
+        }
+        this.queueDeclare(c);
+    }
+
+    /**
+     * 多通道并行定义交换器和队列, 交换器全部完成后再定义队列, 主队列先于其延迟队列, 单个定义失败不影响其他定义
+     * 
+     * @param exchanges   交换器, 可为 null
+     * @param queues      队列, 可为 null
+     * @param parallelism 并行通道数, 默认 4
+     * @return TopologyReport 耗时与失败的定义
+     * @throws Exception Exception
+     */
+    @Override
+    public TopologyReport declareTopology(List<ExchangeConfig> exchanges, List<QueueConfig> queues,
+            Integer parallelism) throws Exception {
+        if (parallelism == null)
+            parallelism = 4;
+        if (parallelism < 1 || 64 < parallelism)
+            throw new Exception("parallelism(" + parallelism + ") is error!");
+        if (exchanges == null)
+            exchanges = List.of();
+        if (queues == null)
+            queues = List.of();
+        for (ExchangeConfig item : exchanges) {
+            if (item == null)
+                throw new Exception("exchanges.item is null!");
+            if (isNullOrEmpty(item.Exchange))
+                throw new Exception("exchanges item.Exchange is null!");
+        }
+        for (QueueConfig item : queues) {
+            if (item == null)
+                throw new Exception("queues.item is null!");
+            if (isNullOrEmpty(item.Queue))
+                throw new Exception("queues item.Queue is null!");
+            if (isNullOrEmpty(item.Exchange))
+                throw new Exception("queues item.Exchange is null!");
         }
-        try (var ph = this.getPubChannel()) {
+        if (this.pubChannelPools == null)
+            throw new Exception("MQPool is closed!");
+        var bootstrap = new TopologyBootstrap(this.pubConnections, this.topology, parallelism,
+                this.clientName + "-topology-");
+        return bootstrap.run(exchanges, queues);
+    }
+
+    /**
+     * 多通道并行定义配置中的交换器和队列
+     * 
+     * @param config      mq配置
+     * @param parallelism 并行通道数, 默认 4
+     * @return TopologyReport 耗时与失败的定义
+     * @throws Exception Exception
+     */
+    @Override
+    public TopologyReport declareTopology(IMQConfig config, Integer parallelism) throws Exception {
+        if (config == null)
+            throw new Exception("config is null!");
+        return this.declareTopology(config.getExchanges(), config.getQueues(), parallelism);
+    }
+
+    /**
+     * 批量定义队列
+     * 
+     * @param queues QueueConfig
+     * @throws Exception Exception
+     */
+    @Override
+    public void queueDeclare(List<QueueConfig> queues) throws Exception {
+        if (queues == null)
+            throw new Exception("queues is null!");
+        for (QueueConfig item : queues) {
+            if (item == null)
+                throw new Exception("queues.item is null!");
+            if (isNullOrEmpty(item.Queue))
+                throw new Exception("queues item.Queue is null!");
+            if (isNullOrEmpty(item.Exchange))
+                throw new Exception("queues item.Exchange is null!");
+        }
+        try (var ph = getPubChannel(null)) {
+            var batch = this.topology.begin(ph.Channel);
             for (QueueConfig config : queues) {
-                ph.Channel.queueDeclare(config.Queue, config.Durable, config.Exclusive, config.AutoDelete,
-                        config.QueueArguments);
-                if (config.RoutingKey == null)
-                    config.RoutingKey = "";
-                ph.Channel.queueBind(config.Queue, config.Exchange, config.RoutingKey, config.BindArguments);
-                if (!isNullOrEmpty(config.DelayQueue) && config.Queue != config.DelayQueue
-                        && (config.RoutingKey != config.DelayRoutingKey
-                                || (isNullOrEmpty(config.DelayRoutingKey) && isNullOrEmpty(config.RoutingKey)))) {
-                    Map<String, Object> dic = new HashMap<String, Object>(2);
-                    dic.put("x-dead-letter-exchange", config.Exchange);
-                    dic.put("x-dead-letter-routing-key", config.RoutingKey);
-                    ph.Channel.queueDeclare(config.DelayQueue, config.Durable, config.Exclusive, config.AutoDelete,
-                            dic);
-                    if (config.DelayRoutingKey == null)
-                        config.DelayRoutingKey = "";
-                    ph.Channel.queueBind(config.DelayQueue, config.Exchange, config.DelayRoutingKey, null);
-                }
+                batch.queue(config);
             }
+            batch.commit();
+        }
+    }
+
+    /**
+     * 解除队列绑定, 同时从已定义拓扑缓存中移除
+     * 
+     * @param queue      队列
+     * @param exchange   交换器
+     * @param routingKey 路由key
+     * @param arguments  绑定参数, 可为 null
+     * @throws Exception Exception
+     */
+    @Override
+    public void queueUnbind(String queue, String exchange, String routingKey, Map<String, Object> arguments)
+            throws Exception {
+        if (isNullOrEmpty(queue))
+            throw new Exception("queue is null!");
+        if (isNullOrEmpty(exchange))
+            throw new Exception("exchange is null!");
+        if (routingKey == null)
+            routingKey = "";
+        try (var ph = getPubChannel(null)) {
+            var batch = this.topology.begin(ph.Channel, false);
+            batch.unbind(queue, exchange, routingKey, arguments);
+            batch.commit();
         }
     }
 
@@ -339,6 +1135,11 @@ public class MQPool implements IMQPool {
     @Override
     public <T> boolean pub(T msg, String routingKey, Integer expire, String exchange, Boolean persistent,
             Map<String, Object> headers) throws Exception {
+        return this.pubMsg(msg, routingKey, expire, exchange, persistent, headers, null, null);
+    }
+
+    private <T> boolean pubMsg(T msg, String routingKey, Integer expire, String exchange, Boolean persistent,
+            Map<String, Object> headers, String contentType, PubHandle handle) throws Exception {
         if (msg == null)
             throw new Exception("msg is null!");
         if (isNullOrEmpty(exchange))
@@ -347,25 +1148,60 @@ public class MQPool implements IMQPool {
             throw new Exception("expire(" + expire + ") is error!");
         if (persistent == null)
             persistent = false;
-        var mapper = serialize(msg);
-        try (var ph = getPubChannel()) {
-            var builder = new AMQP.BasicProperties.Builder();
-            builder.contentType(mapper.contentType);
-            builder.contentEncoding(mapper.contentEncoding);
-            builder.deliveryMode(persistent ? 2 : 1);
-            if (expire != null)
-                builder.expiration(Integer.toString(expire * 1000));
-            if (headers != null)
-                builder.headers(headers);
-            if (routingKey == null)
-                routingKey = "";
-            var props = builder.build();
-            ph.Channel.basicPublish(exchange, routingKey, props, mapper.body);
-        }
+        if (routingKey == null)
+            routingKey = "";
+        var metrics = this.metrics;
+        if (metrics != null)
+            return this.pubMsg(msg, routingKey, expire, exchange, persistent, headers, contentType, handle,
+                    metrics.pub(exchange, routingKey));
+        var mapper = serialize(msg, contentType);
+        var props = buildProperties(mapper, expire, persistent, headers, handle);
+        this.publish(exchange, routingKey, props, mapper.body);
+        return true;
+    }
 
+    private <T> boolean pubMsg(T msg, String routingKey, Integer expire, String exchange, Boolean persistent,
+            Map<String, Object> headers, String contentType, PubHandle handle, PubMetrics pm) throws Exception {
+        long start = System.nanoTime();
+        try {
+            var mapper = serialize(msg, contentType, pm);
+            var props = buildProperties(mapper, expire, persistent, headers, handle);
+            this.publish(exchange, routingKey, props, mapper.body);
+            pm.count.increment();
+        } catch (Exception ex) {
+            pm.errors.increment();
+            throw ex;
+        } finally {
+            pm.publish.record(System.nanoTime() - start);
+        }
         return true;
     }
 
+    private void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws Exception {
+        var ap = this.asyncPublisher;
+        if (ap != null) {
+            ap.enqueue(new PubMessage(exchange, routingKey, props, body));
+            return;
+        }
+        var ob = this.outbox;
+        if (ob != null && this.useOutbox(ob)) {
+            ob.append(exchange, routingKey, props, body);
+            return;
+        }
+        if (ob == null && this.checkBlocked(true)) {
+            this.blockedBuffer.offer(List.of(new PubMessage(exchange, routingKey, props, body)));
+            return;
+        }
+        try (var ph = getPubChannel(routingKey)) {
+            ph.Channel.basicPublish(exchange, routingKey, props, body);
+        } catch (Exception ex) {
+            if (ob == null)
+                throw ex;
+            ob.append(exchange, routingKey, props, body);
+        }
+    }
+
     /**
      * 发布消息
      * 
@@ -381,9 +1217,52 @@ public class MQPool implements IMQPool {
     @Override
     public <T> boolean pub(T msg, PubConfig config, Integer expire, Boolean persistent,
             Map<String, Object> headers) throws Exception {
+        return this.pub(msg, config, null, expire, persistent, headers);
+    }
+
+    /**
+     * 发布消息, config.IsRoutingKeyParam 时 routingKey 按参数格式化
+     * 
+     * @param <T>           T
+     * @param msg           消息
+     * @param config        路由配置
+     * @param routingParams routingKey 参数
+     * @param expire        消息过期时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pub(T msg, PubConfig config, Object[] routingParams, Integer expire, Boolean persistent,
+            Map<String, Object> headers) throws Exception {
         if (config == null)
             throw new Exception("config is null!");
-        return this.pub(msg, config.RoutingKey, expire, config.Exchange, persistent, headers);
+        String routingKey = this.formatRouting(config.RoutingKey, config.IsRoutingKeyParam, routingParams);
+        return this.pubMsg(msg, routingKey, expire, config.Exchange, persistent, headers, config.ContentType, null);
+    }
+
+    /**
+     * 发布消息, 使用不可变生产配置
+     * 
+     * @param <T>           T
+     * @param msg           消息
+     * @param handle        生产配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param expire        消息过期时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pub(T msg, PubHandle handle, Object[] routingParams, Integer expire,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        String routingKey = handle.routingKey(routingParams);
+        return this.pubMsg(msg, routingKey, expire, handle.Exchange, persistent, headers, handle.ContentType,
+                handle);
     }
 
     /**
@@ -402,6 +1281,11 @@ public class MQPool implements IMQPool {
     @Override
     public <T> boolean pub(List<T> msgList, String routingKey, Integer expire, String exchange, Boolean persistent,
             Map<String, Object> headers) throws Exception {
+        return this.pubList(msgList, routingKey, expire, exchange, persistent, headers, null, null);
+    }
+
+    private <T> boolean pubList(List<T> msgList, String routingKey, Integer expire, String exchange,
+            Boolean persistent, Map<String, Object> headers, String contentType, PubHandle handle) throws Exception {
         if (msgList == null)
             throw new Exception("msgList is null!");
         if (msgList.size() == 0)
@@ -412,24 +1296,59 @@ public class MQPool implements IMQPool {
             throw new Exception("expire(" + expire + ") is error!");
         if (persistent == null)
             persistent = false;
-        try (var ph = getPubChannel()) {
+        if (routingKey == null)
+            routingKey = "";
+        var metrics = this.metrics;
+        var pm = metrics != null ? metrics.pub(exchange, routingKey) : null;
+        long start = pm != null ? System.nanoTime() : 0;
+        try {
+            this.pubList(msgList, routingKey, expire, exchange, persistent, headers, contentType, handle, pm);
+            if (pm != null)
+                pm.count.add(msgList.size());
+        } catch (Exception ex) {
+            if (pm != null)
+                pm.errors.increment();
+            throw ex;
+        } finally {
+            if (pm != null)
+                pm.publish.record(System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    private <T> void pubList(List<T> msgList, String routingKey, Integer expire, String exchange,
+            boolean persistent, Map<String, Object> headers, String contentType, PubHandle handle, PubMetrics pm)
+            throws Exception {
+        var ap = this.asyncPublisher;
+        if (ap != null) {
+            for (T msg : msgList) {
+                var mapper = serialize(msg, contentType, pm);
+                var props = buildProperties(mapper, expire, persistent, headers, handle);
+                ap.enqueue(new PubMessage(exchange, routingKey, props, mapper.body));
+            }
+            return;
+        }
+        var ob = this.outbox;
+        if (ob != null || this.checkBlocked(true)) {
+            var batch = new ArrayList<PubMessage>(msgList.size());
+            for (T msg : msgList) {
+                var mapper = serialize(msg, contentType, pm);
+                var props = buildProperties(mapper, expire, persistent, headers, handle);
+                batch.add(new PubMessage(exchange, routingKey, props, mapper.body));
+            }
+            if (ob != null)
+                this.publish(batch);
+            else
+                this.blockedBuffer.offer(batch);
+            return;
+        }
+        try (var ph = getPubChannel(routingKey)) {
             for (T msg : msgList) {
-                var mapper = serialize(msg);
-                var builder = new AMQP.BasicProperties.Builder();
-                builder.contentType(mapper.contentType);
-                builder.contentEncoding(mapper.contentEncoding);
-                builder.deliveryMode(persistent ? 2 : 1);
-                if (expire != null)
-                    builder.expiration(Integer.toString(expire * 1000));
-                if (headers != null)
-                    builder.headers(headers);
-                if (routingKey == null)
-                    routingKey = "";
-                var props = builder.build();
+                var mapper = serialize(msg, contentType, pm);
+                var props = buildProperties(mapper, expire, persistent, headers, handle);
                 ph.Channel.basicPublish(exchange, routingKey, props, mapper.body);
             }
         }
-        return true;
     }
 
     /**
@@ -447,9 +1366,288 @@ public class MQPool implements IMQPool {
     @Override
     public <T> boolean pub(List<T> msgList, PubConfig config, Integer expire, Boolean persistent,
             Map<String, Object> headers) throws Exception {
+        return this.pub(msgList, config, null, expire, persistent, headers);
+    }
+
+    /**
+     * 发布消息, config.IsRoutingKeyParam 时 routingKey 按参数格式化
+     * 
+     * @param <T>           T
+     * @param msgList       消息
+     * @param config        路由配置
+     * @param routingParams routingKey 参数
+     * @param expire        消息过期时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pub(List<T> msgList, PubConfig config, Object[] routingParams, Integer expire,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (config == null)
+            throw new Exception("config is null!");
+        String routingKey = this.formatRouting(config.RoutingKey, config.IsRoutingKeyParam, routingParams);
+        return this.pubList(msgList, routingKey, expire, config.Exchange, persistent, headers, config.ContentType,
+                null);
+    }
+
+    /**
+     * 发布消息, 使用不可变生产配置
+     * 
+     * @param <T>           T
+     * @param msgList       消息
+     * @param handle        生产配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param expire        消息过期时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pub(List<T> msgList, PubHandle handle, Object[] routingParams, Integer expire,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        String routingKey = handle.routingKey(routingParams);
+        return this.pubList(msgList, routingKey, expire, handle.Exchange, persistent, headers, handle.ContentType,
+                handle);
+    }
+
+    /**
+     * 确认模式发布消息, broker 确认(ack)后返回 true, 拒绝(nack)返回 false
+     * 
+     * @param <T>        T
+     * @param msg        消息
+     * @param routingKey routingKey
+     * @param expire     消息过期时间, 秒
+     * @param exchange   exchange， 默认 "amq.direct"
+     * @param persistent 消息是否持久化, 默认 false
+     * @param headers    headers
+     * @throws Exception Exception
+     * @return CompletableFuture
+     */
+    @Override
+    public <T> CompletableFuture<Boolean> pubAsync(T msg, String routingKey, Integer expire, String exchange,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        return this.pubAsyncMsg(msg, routingKey, expire, exchange, persistent, headers, null, null);
+    }
+
+    private <T> CompletableFuture<Boolean> pubAsyncMsg(T msg, String routingKey, Integer expire, String exchange,
+            Boolean persistent, Map<String, Object> headers, String contentType, PubHandle handle) throws Exception {
+        if (msg == null)
+            throw new Exception("msg is null!");
+        if (isNullOrEmpty(exchange))
+            exchange = "amq.direct";
+        if (expire != null && expire < 1)
+            throw new Exception("expire(" + expire + ") is error!");
+        if (persistent == null)
+            persistent = false;
+        if (routingKey == null)
+            routingKey = "";
+        var metrics = this.metrics;
+        var pm = metrics != null ? metrics.pub(exchange, routingKey) : null;
+        long start = pm != null ? System.nanoTime() : 0;
+        var mapper = serialize(msg, contentType, pm);
+        var props = buildProperties(mapper, expire, persistent, headers, handle);
+        this.checkBlocked(false);
+        var cc = getConfirmChannel();
+        var future = cc.publish(exchange, routingKey, props, mapper.body);
+        if (pm != null) {
+            pm.count.increment();
+            pm.publish.record(System.nanoTime() - start);
+        }
+        return future;
+    }
+
+    /**
+     * 确认模式发布消息, broker 确认(ack)后返回 true, 拒绝(nack)返回 false
+     * 
+     * @param <T>        T
+     * @param msg        消息
+     * @param config     路由配置
+     * @param expire     消息过期时间, 秒
+     * @param persistent 消息是否持久化, 默认 false
+     * @param headers    headers
+     * @throws Exception Exception
+     * @return CompletableFuture
+     */
+    @Override
+    public <T> CompletableFuture<Boolean> pubAsync(T msg, PubConfig config, Integer expire, Boolean persistent,
+            Map<String, Object> headers) throws Exception {
+        return this.pubAsync(msg, config, null, expire, persistent, headers);
+    }
+
+    /**
+     * 确认模式发布消息, config.IsRoutingKeyParam 时 routingKey 按参数格式化
+     * 
+     * @param <T>           T
+     * @param msg           消息
+     * @param config        路由配置
+     * @param routingParams routingKey 参数
+     * @param expire        消息过期时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return CompletableFuture
+     */
+    @Override
+    public <T> CompletableFuture<Boolean> pubAsync(T msg, PubConfig config, Object[] routingParams, Integer expire,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
         if (config == null)
             throw new Exception("config is null!");
-        return this.pub(msgList, config.RoutingKey, expire, config.Exchange, persistent, headers);
+        String routingKey = this.formatRouting(config.RoutingKey, config.IsRoutingKeyParam, routingParams);
+        return this.pubAsyncMsg(msg, routingKey, expire, config.Exchange, persistent, headers, config.ContentType,
+                null);
+    }
+
+    /**
+     * 确认模式发布消息, 使用不可变生产配置
+     * 
+     * @param <T>           T
+     * @param msg           消息
+     * @param handle        生产配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param expire        消息过期时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return CompletableFuture
+     */
+    @Override
+    public <T> CompletableFuture<Boolean> pubAsync(T msg, PubHandle handle, Object[] routingParams,
+            Integer expire, Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        String routingKey = handle.routingKey(routingParams);
+        return this.pubAsyncMsg(msg, routingKey, expire, handle.Exchange, persistent, headers, handle.ContentType,
+                handle);
+    }
+
+    /**
+     * 确认模式发布消息, 全部消息被 broker 确认(ack)后返回 true, 任一被拒绝(nack)返回 false
+     * 
+     * @param <T>        T
+     * @param msgList    消息
+     * @param routingKey routingKey
+     * @param expire     消息过期时间, 秒
+     * @param exchange   exchange， 默认 "amq.direct"
+     * @param persistent 消息是否持久化, 默认 false
+     * @param headers    headers
+     * @throws Exception Exception
+     * @return CompletableFuture
+     */
+    @Override
+    public <T> CompletableFuture<Boolean> pubAsync(List<T> msgList, String routingKey, Integer expire,
+            String exchange, Boolean persistent, Map<String, Object> headers) throws Exception {
+        return this.pubAsyncList(msgList, routingKey, expire, exchange, persistent, headers, null, null);
+    }
+
+    private <T> CompletableFuture<Boolean> pubAsyncList(List<T> msgList, String routingKey, Integer expire,
+            String exchange, Boolean persistent, Map<String, Object> headers, String contentType, PubHandle handle)
+            throws Exception {
+        if (msgList == null)
+            throw new Exception("msgList is null!");
+        if (msgList.size() == 0)
+            return CompletableFuture.completedFuture(true);
+        if (isNullOrEmpty(exchange))
+            exchange = "amq.direct";
+        if (expire != null && expire < 1)
+            throw new Exception("expire(" + expire + ") is error!");
+        if (persistent == null)
+            persistent = false;
+        if (routingKey == null)
+            routingKey = "";
+        this.checkBlocked(false);
+        var metrics = this.metrics;
+        var pm = metrics != null ? metrics.pub(exchange, routingKey) : null;
+        long start = pm != null ? System.nanoTime() : 0;
+        var cc = getConfirmChannel();
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        CompletableFuture<Boolean>[] futures = new CompletableFuture[msgList.size()];
+        int i = 0;
+        for (T msg : msgList) {
+            var mapper = serialize(msg, contentType, pm);
+            var props = buildProperties(mapper, expire, persistent, headers, handle);
+            futures[i++] = cc.publish(exchange, routingKey, props, mapper.body);
+        }
+        if (pm != null) {
+            pm.count.add(futures.length);
+            pm.publish.record(System.nanoTime() - start);
+        }
+
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            for (var f : futures) {
+                if (!f.join())
+                    return false;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * 确认模式发布消息, 全部消息被 broker 确认(ack)后返回 true, 任一被拒绝(nack)返回 false
+     * 
+     * @param <T>        T
+     * @param msgList    消息
+     * @param config     路由配置
+     * @param expire     消息过期时间, 秒
+     * @param persistent 消息是否持久化, 默认 false
+     * @param headers    headers
+     * @throws Exception Exception
+     * @return CompletableFuture
+     */
+    @Override
+    public <T> CompletableFuture<Boolean> pubAsync(List<T> msgList, PubConfig config, Integer expire,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        return this.pubAsync(msgList, config, null, expire, persistent, headers);
+    }
+
+    /**
+     * 确认模式发布消息, config.IsRoutingKeyParam 时 routingKey 按参数格式化
+     * 
+     * @param <T>           T
+     * @param msgList       消息
+     * @param config        路由配置
+     * @param routingParams routingKey 参数
+     * @param expire        消息过期时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return CompletableFuture
+     */
+    @Override
+    public <T> CompletableFuture<Boolean> pubAsync(List<T> msgList, PubConfig config, Object[] routingParams,
+            Integer expire, Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (config == null)
+            throw new Exception("config is null!");
+        String routingKey = this.formatRouting(config.RoutingKey, config.IsRoutingKeyParam, routingParams);
+        return this.pubAsyncList(msgList, routingKey, expire, config.Exchange, persistent, headers,
+                config.ContentType, null);
+    }
+
+    /**
+     * 确认模式发布消息, 使用不可变生产配置
+     * 
+     * @param <T>           T
+     * @param msgList       消息
+     * @param handle        生产配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param expire        消息过期时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return CompletableFuture
+     */
+    @Override
+    public <T> CompletableFuture<Boolean> pubAsync(List<T> msgList, PubHandle handle, Object[] routingParams,
+            Integer expire, Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        String routingKey = handle.routingKey(routingParams);
+        return this.pubAsyncList(msgList, routingKey, expire, handle.Exchange, persistent, headers,
+                handle.ContentType, handle);
     }
 
     /**
@@ -489,10 +1687,70 @@ public class MQPool implements IMQPool {
     @Override
     public <T> boolean pubDelay(T msg, PubConfig config, Integer delay, Boolean persistent,
             Map<String, Object> headers) throws Exception {
+        return this.pubDelay(msg, config, null, delay, persistent, headers);
+    }
+
+    /**
+     * 发布延迟消息, config.IsRoutingKeyParam 时 delayRoutingKey 按参数格式化;
+     * config.DelayLevels 大于 0 时按二进制拆分延迟发布到分级延迟队列, DelayQueue 按参数格式化;
+     * 开启本地时间轮且延迟不超过阈值时在进程内到期后直接发布到 routingKey
+     * 
+     * @param <T>           T
+     * @param msg           消息
+     * @param config        路由配置
+     * @param routingParams delayRoutingKey 参数
+     * @param delay         延迟时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pubDelay(T msg, PubConfig config, Object[] routingParams, Integer delay, Boolean persistent,
+            Map<String, Object> headers) throws Exception {
         if (config == null)
             throw new Exception("config is null!");
+        return this.pubDelayMsg(msg, config, null, routingParams, delay, persistent, headers);
+    }
+
+    private <T> boolean pubDelayMsg(T msg, PubConfig config, PubHandle handle, Object[] routingParams, Integer delay,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (delay == null || delay < 1)
+            throw new Exception("delay is error!");
+        if (msg == null)
+            throw new Exception("msg is null!");
+        if (this.pubWheel(List.of(msg), config, handle, routingParams, delay * 1000L, persistent, headers))
+            return true;
+        if (config.DelayLevels > 0) {
+            // 分级延迟, 消息不设置 expiration, 由各级队列 x-message-ttl 过期
+            String delayQueue = this.tierDelayQueue(config, handle, routingParams, delay);
+            return this.pubMsg(msg, DelayTiers.routingKey(config.DelayLevels, delay), null,
+                    DelayTiers.exchange(delayQueue, delay), persistent, headers, config.ContentType, handle);
+        }
+        String routingKey = handle != null ? handle.delayRoutingKey(routingParams)
+                : this.formatRouting(config.DelayRoutingKey, config.IsRoutingKeyParam, routingParams);
+        return this.pubMsg(msg, routingKey, delay, config.Exchange, persistent, headers, config.ContentType, handle);
+    }
 
-        return this.pub(msg, config.DelayRoutingKey, delay, config.Exchange, persistent, headers);
+    /**
+     * 发布延迟消息, 使用不可变生产配置
+     * 
+     * @param <T>           T
+     * @param msg           消息
+     * @param handle        生产配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param delay         延迟时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pubDelay(T msg, PubHandle handle, Object[] routingParams, Integer delay,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        return this.pubDelayMsg(msg, handle.config(), handle, routingParams, delay, persistent, headers);
     }
 
     /**
@@ -536,16 +1794,249 @@ public class MQPool implements IMQPool {
     @Override
     public <T> boolean pubDelay(List<T> msgList, PubConfig config, Integer delay, Boolean persistent,
             Map<String, Object> headers) throws Exception {
+        return this.pubDelay(msgList, config, null, delay, persistent, headers);
+    }
+
+    /**
+     * 发布延迟消息, config.IsRoutingKeyParam 时 delayRoutingKey 按参数格式化;
+     * config.DelayLevels 大于 0 时按二进制拆分延迟发布到分级延迟队列, DelayQueue 按参数格式化;
+     * 开启本地时间轮且延迟不超过阈值时在进程内到期后直接发布到 routingKey
+     * 
+     * @param <T>           T
+     * @param msgList       消息
+     * @param config        路由配置
+     * @param routingParams delayRoutingKey 参数
+     * @param delay         延迟时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pubDelay(List<T> msgList, PubConfig config, Object[] routingParams, Integer delay,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (config == null)
+            throw new Exception("config is null!");
+        return this.pubDelayList(msgList, config, null, routingParams, delay, persistent, headers);
+    }
+
+    private <T> boolean pubDelayList(List<T> msgList, PubConfig config, PubHandle handle, Object[] routingParams,
+            Integer delay, Boolean persistent, Map<String, Object> headers) throws Exception {
         if (msgList == null)
             throw new Exception("msgList is null!");
         if (msgList.size() == 0)
             return true;
-        if (config == null)
-            throw new Exception("config is null!");
         if (delay == null || delay < 1)
             throw new Exception("delay is error!");
+        if (this.pubWheel(msgList, config, handle, routingParams, delay * 1000L, persistent, headers))
+            return true;
+        if (config.DelayLevels > 0) {
+            String delayQueue = this.tierDelayQueue(config, handle, routingParams, delay);
+            return this.pubList(msgList, DelayTiers.routingKey(config.DelayLevels, delay), null,
+                    DelayTiers.exchange(delayQueue, delay), persistent, headers, config.ContentType, handle);
+        }
+        String routingKey = handle != null ? handle.delayRoutingKey(routingParams)
+                : this.formatRouting(config.DelayRoutingKey, config.IsRoutingKeyParam, routingParams);
+        return this.pubList(msgList, routingKey, delay, config.Exchange, persistent, headers, config.ContentType,
+                handle);
+    }
 
-        return this.pub(msgList, config, delay, persistent, headers);
+    /**
+     * 分级延迟队列, config.IsRoutingKeyParam 时按参数格式化
+     * 
+     * @param config        路由配置
+     * @param routingParams 参数
+     * @param delay         延迟时间, 秒
+     * @return String
+     * @throws Exception Exception
+     */
+    private String tierDelayQueue(PubConfig config, PubHandle handle, Object[] routingParams, int delay)
+            throws Exception {
+        DelayTiers.check(config.DelayLevels);
+        if (delay > DelayTiers.maxDelay(config.DelayLevels))
+            throw new Exception("delay(" + delay + ") is error!");
+        String delayQueue = handle != null ? handle.delayQueue(routingParams)
+                : this.formatRouting(config.DelayQueue, config.IsRoutingKeyParam, routingParams);
+        if (isNullOrEmpty(delayQueue))
+            throw new Exception("config.DelayQueue is null!");
+        return delayQueue;
+    }
+
+    /**
+     * 发布延迟消息, 使用不可变生产配置
+     * 
+     * @param <T>           T
+     * @param msgList       消息
+     * @param handle        生产配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param delay         延迟时间, 秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pubDelay(List<T> msgList, PubHandle handle, Object[] routingParams, Integer delay,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        return this.pubDelayList(msgList, handle.config(), handle, routingParams, delay, persistent, headers);
+    }
+
+    /**
+     * 发布毫秒级延迟消息, 开启本地时间轮且延迟不超过阈值时在进程内到期后发布到 routingKey,
+     * 否则按秒(向上取整)走 broker 延迟队列
+     * 
+     * @param <T>           T
+     * @param msg           消息
+     * @param config        路由配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param delayMs       延迟时间, 毫秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pubDelayMillis(T msg, PubConfig config, Object[] routingParams, Long delayMs,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (config == null)
+            throw new Exception("config is null!");
+        return this.pubDelayMillisMsg(msg, config, null, routingParams, delayMs, persistent, headers);
+    }
+
+    private <T> boolean pubDelayMillisMsg(T msg, PubConfig config, PubHandle handle, Object[] routingParams,
+            Long delayMs, Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (msg == null)
+            throw new Exception("msg is null!");
+        if (delayMs == null || delayMs < 1)
+            throw new Exception("delayMs is error!");
+        if (this.pubWheel(List.of(msg), config, handle, routingParams, delayMs, persistent, headers))
+            return true;
+        return this.pubDelayMsg(msg, config, handle, routingParams, toDelaySeconds(delayMs), persistent, headers);
+    }
+
+    /**
+     * 发布毫秒级延迟消息, 使用不可变生产配置
+     * 
+     * @param <T>           T
+     * @param msg           消息
+     * @param handle        生产配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param delayMs       延迟时间, 毫秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pubDelayMillis(T msg, PubHandle handle, Object[] routingParams, Long delayMs,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        return this.pubDelayMillisMsg(msg, handle.config(), handle, routingParams, delayMs, persistent, headers);
+    }
+
+    /**
+     * 发布毫秒级延迟消息, 开启本地时间轮且延迟不超过阈值时在进程内到期后发布到 routingKey,
+     * 否则按秒(向上取整)走 broker 延迟队列
+     * 
+     * @param <T>           T
+     * @param msgList       消息
+     * @param config        路由配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param delayMs       延迟时间, 毫秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pubDelayMillis(List<T> msgList, PubConfig config, Object[] routingParams, Long delayMs,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (config == null)
+            throw new Exception("config is null!");
+        return this.pubDelayMillisList(msgList, config, null, routingParams, delayMs, persistent, headers);
+    }
+
+    private <T> boolean pubDelayMillisList(List<T> msgList, PubConfig config, PubHandle handle,
+            Object[] routingParams, Long delayMs, Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (msgList == null)
+            throw new Exception("msgList is null!");
+        if (msgList.size() == 0)
+            return true;
+        if (delayMs == null || delayMs < 1)
+            throw new Exception("delayMs is error!");
+        if (this.pubWheel(msgList, config, handle, routingParams, delayMs, persistent, headers))
+            return true;
+        return this.pubDelayList(msgList, config, handle, routingParams, toDelaySeconds(delayMs), persistent,
+                headers);
+    }
+
+    /**
+     * 发布毫秒级延迟消息, 使用不可变生产配置
+     * 
+     * @param <T>           T
+     * @param msgList       消息
+     * @param handle        生产配置
+     * @param routingParams routingKey 参数, 可为 null
+     * @param delayMs       延迟时间, 毫秒
+     * @param persistent    消息是否持久化, 默认 false
+     * @param headers       headers
+     * @throws Exception Exception
+     * @return boolean
+     */
+    @Override
+    public <T> boolean pubDelayMillis(List<T> msgList, PubHandle handle, Object[] routingParams, Long delayMs,
+            Boolean persistent, Map<String, Object> headers) throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        return this.pubDelayMillisList(msgList, handle.config(), handle, routingParams, delayMs, persistent,
+                headers);
+    }
+
+    private static Integer toDelaySeconds(long delayMs) throws Exception {
+        long delay = (delayMs + 999) / 1000;
+        if (delay > Integer.MAX_VALUE)
+            throw new Exception("delayMs(" + delayMs + ") is error!");
+        return (int) delay;
+    }
+
+    /**
+     * 加入本地时间轮, 到期后发布到 config.Exchange/config.RoutingKey;
+     * 未开启、超过阈值或时间轮已满时返回 false, 由调用方走 broker 延迟队列
+     * 
+     * @param <T>           T
+     * @param msgList       消息
+     * @param config        路由配置
+     * @param routingParams routingKey 参数
+     * @param delayMs       延迟时间, 毫秒
+     * @param persistent    消息是否持久化
+     * @param headers       headers
+     * @return boolean
+     * @throws Exception Exception
+     */
+    private <T> boolean pubWheel(List<T> msgList, PubConfig config, PubHandle handle, Object[] routingParams,
+            long delayMs, Boolean persistent, Map<String, Object> headers) throws Exception {
+        var wheel = this.delayWheel;
+        if (wheel == null || delayMs > wheel.getThresholdMs())
+            return false;
+        String routingKey = handle != null ? handle.routingKey(routingParams)
+                : this.formatRouting(config.RoutingKey, config.IsRoutingKeyParam, routingParams);
+        if (routingKey == null)
+            routingKey = "";
+        String exchange = isNullOrEmpty(config.Exchange) ? "amq.direct" : config.Exchange;
+        if (persistent == null)
+            persistent = false;
+        var batch = new ArrayList<PubMessage>(msgList.size());
+        for (T msg : msgList) {
+            if (msg == null)
+                throw new Exception("msg is null!");
+            var mapper = serialize(msg, config.ContentType);
+            var props = buildProperties(mapper, null, persistent, headers, handle);
+            batch.add(new PubMessage(exchange, routingKey, props, mapper.body));
+        }
+        return wheel.schedule(batch, delayMs);
     }
 
     /**
@@ -559,137 +2050,373 @@ public class MQPool implements IMQPool {
      */
     @Override
     public <T> void sub(ISubHander<T> hander, String queue, Boolean autoAck) throws Exception {
+        this.sub(hander, queue, autoAck, null);
+    }
+
+    /**
+     * 消费消息, 每个订阅独占一个通道
+     * 
+     * @param <T>           T
+     * @param hander        hander
+     * @param queue         queue
+     * @param autoAck       是否自动确认, 默认 false
+     * @param prefetchCount 预取消息数, 默认 1
+     * @throws Exception Exception
+     */
+    @Override
+    public <T> void sub(ISubHander<T> hander, String queue, Boolean autoAck, Integer prefetchCount)
+            throws Exception {
+        var config = new SubConfig();
+        config.Queue = queue;
+        if (prefetchCount != null)
+            config.PrefetchCount = prefetchCount;
+        this.sub(hander, config, autoAck);
+    }
+
+    /**
+     * 批量订阅独占的 lingerMs 定时线程, 到期批次在该线程处理, lingerMs 为 0 时返回 null
+     */
+    private ScheduledExecutorService createBatchScheduler(SubConfig config) {
+        if (config.BatchLingerMs <= 0)
+            return null;
+        var name = this.clientName + "-batch-" + config.Queue;
+        var scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            var t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        // 关闭后未到期的批次由 broker 重新投递
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return scheduler;
+    }
+
+    /**
+     * 虚拟线程池, java 21 以下返回 null
+     * 
+     * @return ExecutorService
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            var m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    private ExecutorService createSubExecutor(SubConfig config, int prefetchCount) throws Exception {
+        if (config.VirtualThread) {
+            // 虚拟线程不排队, 同时处理的消息数由 prefetch 限制
+            if (prefetchCount == 0)
+                throw new Exception("virtualThread prefetchCount must be greater than 0!");
+            var executor = newVirtualThreadExecutor();
+            if (executor == null)
+                throw new Exception("virtualThread requires java 21+!");
+            return executor;
+        }
+        if (config.Concurrency <= 1)
+            return null;
+        int capacity = config.QueueCapacity > 0 ? config.QueueCapacity : prefetchCount;
+        var index = new AtomicInteger();
+        var name = this.clientName + "-sub-" + config.Queue + "-";
+        return new ThreadPoolExecutor(config.Concurrency, config.Concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), r -> {
+                    var t = new Thread(r, name + index.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 消费消息, 使用固定大小线程池并发处理
+     * 
+     * @param <T>           T
+     * @param hander        hander
+     * @param queue         queue
+     * @param autoAck       是否自动确认, 默认 false
+     * @param prefetchCount 预取消息数, 默认与并发数相同
+     * @param concurrency   并发处理线程数, 默认 1 在消费分发线程中处理
+     * @throws Exception Exception
+     */
+    @Override
+    public <T> void sub(ISubHander<T> hander, String queue, Boolean autoAck, Integer prefetchCount,
+            Integer concurrency) throws Exception {
+        var config = new SubConfig();
+        config.Queue = queue;
+        if (prefetchCount != null)
+            config.PrefetchCount = prefetchCount;
+        if (concurrency != null)
+            config.Concurrency = concurrency;
+        this.sub(hander, config, autoAck);
+    }
+
+    /**
+     * 消费消息
+     * 
+     * @param <T>     T
+     * @param hander  hander
+     * @param config  消费配置
+     * @param autoAck 是否自动确认, 默认 false
+     * @throws Exception Exception
+     */
+    @Override
+    public <T> void sub(ISubHander<T> hander, SubConfig config, Boolean autoAck) throws Exception {
         if (hander == null)
             throw new Exception("hander is null!");
-        if (isNullOrEmpty(queue))
+        if (config == null)
+            throw new Exception("config is null!");
+        if (isNullOrEmpty(config.Queue))
             throw new Exception("queue is null!");
-        var channel = getSubChannel();
+        if (config.PrefetchCount < 0 || 65535 < config.PrefetchCount)
+            throw new Exception("prefetchCount(" + config.PrefetchCount + ") is error!");
+        if (config.ChannelPrefetchCount < 0 || 65535 < config.ChannelPrefetchCount)
+            throw new Exception("channelPrefetchCount(" + config.ChannelPrefetchCount + ") is error!");
+        if (config.Concurrency < 1)
+            throw new Exception("concurrency(" + config.Concurrency + ") is error!");
         if (autoAck == null)
             autoAck = false;
+        // autoAck 时 prefetch 不生效, 虚拟线程数将没有上限
+        if (autoAck && config.VirtualThread)
+            throw new Exception("virtualThread requires autoAck is false!");
+        // 预取数小于并发数时多余的工作线程永远空闲
+        int prefetchCount = Math.max(config.PrefetchCount, config.Concurrency);
         synchronized (this.lockSubChannel) {
-            var consumer = new MQConsumer<T>(channel, this, hander, queue, autoAck, this.subExceptionHander);
+            var channel = getSubChannel(config.Queue, config.ChannelGroup, config.ChannelPrefetchCount);
+            var executor = createSubExecutor(config, prefetchCount);
+            var consumer = new MQConsumer<T>(channel, this, hander, config.Queue, autoAck, this.subExceptionHander,
+                    executor, config.RejectPolicy);
             this.consumerList.add(consumer);
-            channel.basicQos(0, 1, false);
-            channel.basicConsume(queue, autoAck, consumer);
+            // global=false 只作用于之后在该通道上创建的消费者
+            channel.basicQos(0, prefetchCount, false);
+            channel.basicConsume(config.Queue, autoAck, consumer);
         }
     }
 
+    /**
+     * 消费消息, config.IsQueueParam 时队列名按参数格式化
+     * 
+     * @param <T>         T
+     * @param hander      hander
+     * @param config      消费配置
+     * @param queueParams 队列名参数
+     * @param autoAck     是否自动确认, 默认 false
+     * @throws Exception Exception
+     */
+    @Override
+    public <T> void sub(ISubHander<T> hander, SubConfig config, Object[] queueParams, Boolean autoAck)
+            throws Exception {
+        if (config == null)
+            throw new Exception("config is null!");
+        var c = config.copy();
+        c.Queue = this.formatRouting(config.Queue, config.IsQueueParam, queueParams);
+        this.sub(hander, c, autoAck);
+    }
+
+    /**
+     * 消费消息, 使用不可变消费配置, 队列名不加参数时不复制配置
+     * 
+     * @param <T>         T
+     * @param hander      hander
+     * @param handle      消费配置
+     * @param queueParams 队列名参数, 可为 null
+     * @param autoAck     是否自动确认, 默认 false
+     * @throws Exception Exception
+     */
+    @Override
+    public <T> void sub(ISubHander<T> hander, SubHandle handle, Object[] queueParams, Boolean autoAck)
+            throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        if (queueParams == null) {
+            this.sub(hander, handle.config(), autoAck);
+            return;
+        }
+        var c = handle.toSubConfig();
+        c.Queue = handle.queue(queueParams);
+        this.sub(hander, c, autoAck);
+    }
+
+    /**
+     * 批量消费消息, 每个订阅独占一个通道, 整批用一次 multiple ack 确认
+     * 
+     * @param <T>       T
+     * @param hander    hander
+     * @param queue     queue
+     * @param batchSize 每批最大消息数, 默认 100
+     * @param lingerMs  第一条消息到达后最长等待时间, 毫秒, 默认 100
+     * @throws Exception Exception
+     */
+    @Override
+    public <T> void sub(ISubBatchHander<T> hander, String queue, Integer batchSize, Integer lingerMs)
+            throws Exception {
+        var config = new SubConfig();
+        config.Queue = queue;
+        if (batchSize != null)
+            config.BatchSize = batchSize;
+        if (lingerMs != null)
+            config.BatchLingerMs = lingerMs;
+        this.sub(hander, config);
+    }
+
+    /**
+     * 批量消费消息, 每个订阅独占一个通道, 整批用一次 multiple ack 确认
+     * 
+     * @param <T>    T
+     * @param hander hander
+     * @param config 消费配置
+     * @throws Exception Exception
+     */
+    @Override
+    public <T> void sub(ISubBatchHander<T> hander, SubConfig config) throws Exception {
+        if (hander == null)
+            throw new Exception("hander is null!");
+        if (config == null)
+            throw new Exception("config is null!");
+        if (isNullOrEmpty(config.Queue))
+            throw new Exception("queue is null!");
+        if (config.BatchSize < 1 || 65535 < config.BatchSize)
+            throw new Exception("batchSize(" + config.BatchSize + ") is error!");
+        if (config.BatchLingerMs < 0)
+            throw new Exception("batchLingerMs(" + config.BatchLingerMs + ") is error!");
+        // multiple ack 会确认通道上所有更早的消息, 不能与其他消费者共用通道
+        if (!isNullOrEmpty(config.ChannelGroup))
+            throw new Exception("batch sub not support channelGroup!");
+        // 预取数小于批大小时永远攒不满一批
+        int prefetchCount = Math.max(config.PrefetchCount, config.BatchSize);
+        synchronized (this.lockSubChannel) {
+            var channel = getSubChannel(config.Queue, null, 0);
+            var consumer = new MQBatchConsumer<T>(channel, this, hander, config.Queue, this.subExceptionHander,
+                    createBatchScheduler(config), config.BatchSize, config.BatchLingerMs, config.BatchSplitOnFail);
+            this.consumerList.add(consumer);
+            channel.basicQos(0, prefetchCount, false);
+            channel.basicConsume(config.Queue, false, consumer);
+        }
+    }
+
+    /**
+     * 批量消费消息, config.IsQueueParam 时队列名按参数格式化
+     * 
+     * @param <T>         T
+     * @param hander      hander
+     * @param config      消费配置
+     * @param queueParams 队列名参数
+     * @throws Exception Exception
+     */
+    @Override
+    public <T> void sub(ISubBatchHander<T> hander, SubConfig config, Object[] queueParams) throws Exception {
+        if (config == null)
+            throw new Exception("config is null!");
+        var c = config.copy();
+        c.Queue = this.formatRouting(config.Queue, config.IsQueueParam, queueParams);
+        this.sub(hander, c);
+    }
+
+    /**
+     * 批量消费消息, 使用不可变消费配置, 队列名不加参数时不复制配置
+     * 
+     * @param <T>         T
+     * @param hander      hander
+     * @param handle      消费配置
+     * @param queueParams 队列名参数, 可为 null
+     * @throws Exception Exception
+     */
+    @Override
+    public <T> void sub(ISubBatchHander<T> hander, SubHandle handle, Object[] queueParams) throws Exception {
+        if (handle == null)
+            throw new Exception("handle is null!");
+        if (queueParams == null) {
+            this.sub(hander, handle.config());
+            return;
+        }
+        var c = handle.toSubConfig();
+        c.Queue = handle.queue(queueParams);
+        this.sub(hander, c);
+    }
+
     /**
      * close
      */
     @Override
     public void close() throws Exception {
-        if (this.subChannel != null) {
-            try {
-                if (this.subChannel.isOpen())
-                    this.subChannel.close();
-            } catch (Exception ex) {
-            }
+        // 时间轮到期发布依赖后台发布/落盘队列, 先关闭
+        if (this.delayWheel != null)
+            this.delayWheel.close();
+        this.delayWheel = null;
+        if (this.asyncPublisher != null)
+            this.asyncPublisher.close();
+        this.asyncPublisher = null;
+        if (this.blockedBuffer != null)
+            this.blockedBuffer.close();
+        this.blockedBuffer = null;
+        if (this.outbox != null)
+            this.outbox.close();
+        this.outbox = null;
+        if (this.consumerList != null) {
+            for (AutoCloseable c : this.consumerList)
+                c.close();
         }
-        this.subChannel = null;
-        if (this.pubChannelQueue != null) {
-            var ph = this.pubChannelQueue.poll();
-            while (ph != null) {
+        this.consumerList = null;
+        if (this.subChannelList != null) {
+            for (Channel ch : this.subChannelList) {
                 try {
-                    if (ph.isOpen())
-                        ph.close();
+                    if (ch.isOpen())
+                        ch.close();
                 } catch (Exception ex) {
                 }
             }
         }
-        this.pubChannelQueue = null;
-        if (this.connection != null) {
+        this.subChannelList = null;
+        this.subChannelMap = null;
+        if (this.confirmChannels != null) {
+            for (int i = 0; i < this.confirmChannels.length(); i++) {
+                var cc = this.confirmChannels.getAndSet(i, null);
+                if (cc != null)
+                    cc.close();
+            }
+        }
+        this.confirmChannels = null;
+        if (this.pubChannelPools != null) {
+            for (var pcp : this.pubChannelPools)
+                pcp.close();
+        }
+        this.pubChannelPools = null;
+        if (this.subConnections != null)
+            this.subConnections.close();
+        this.subConnections = null;
+        if (this.pubConnections != null)
+            this.pubConnections.close();
+        this.pubConnections = null;
+        if (this.metricsName != null) {
             try {
-                if (this.connection.isOpen())
-                    this.connection.close();
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.metricsName);
             } catch (Exception ex) {
             }
         }
-        this.connection = null;
-
-        if (this.consumerList != null) {
-            for (MQConsumer<?> c : this.consumerList)
-                c.close();
-        }
-        this.consumerList = null;
+        this.metricsName = null;
     }
 
     /**
     * 
     */
     private class PublishChannel implements AutoCloseable {
-        private MQPool pool;
+        private PubChannelPool pool;
+        private PubChannelPool.Lease lease;
         public Channel Channel;
 
-        public PublishChannel(MQPool pool, Channel channel) {
+        public PublishChannel(PubChannelPool pool, PubChannelPool.Lease lease) {
             this.pool = pool;
-            this.Channel = channel;
+            this.lease = lease;
+            this.Channel = lease.Channel;
         }
 
         @Override
         public void close() throws Exception {
-            if (this.Channel != null && this.pool != null && this.pool.pubChannelQueue != null) {
-                if (this.pool.maxPushPool > this.pool.pubChannelQueue.size()) {
-                    synchronized (this.pool.lockGetSubChannel) {
-                        this.pool.pubChannelQueue.add(this.Channel);
-                    }
-                } else {
-                    this.Channel.close();
-                }
-            }
+            if (this.pool != null)
+                this.pool.release(this.lease);
             this.pool = null;
+            this.lease = null;
             this.Channel = null;
         }
 
     }
-
-    private class MQConsumer<T> extends DefaultConsumer implements AutoCloseable {
-        private MQPool pool;
-        private ISubHander<T> subHander;
-        private String queue;
-        private Boolean autoAck;
-        private ISubException exHander;
-
-        public MQConsumer(Channel channel, MQPool pool, ISubHander<T> subHander, String queue,
-                Boolean autoAck, ISubException exHander) {
-            super(channel);
-            this.pool = pool;
-            this.subHander = subHander;
-            this.queue = queue;
-            this.autoAck = autoAck;
-        }
-
-        @Override
-        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
-                throws IOException {
-            boolean handerOk = false;
-            try {
-                T m = this.pool.deserialize(body, this.subHander.getTClass());
-                if (m != null)
-                    handerOk = subHander.hander(m, properties);
-                else
-                    handerOk = true;
-            } catch (Exception ex) {
-                try {
-                    this.exHander.hander(this.queue, ex);
-                } catch (Exception ee) {
-                }
-            }
-
-            if (!this.autoAck) {
-                if (handerOk) {
-                    getChannel().basicAck(envelope.getDeliveryTag(), false);
-                } else {
-                    getChannel().basicNack(envelope.getDeliveryTag(), false, true);
-                }
-            }
-        }
-
-        @Override
-        public void close() throws Exception {
-            this.pool = null;
-            this.subHander = null;
-            this.queue = null;
-        }
-    }
-}
+}
\ No newline at end of file
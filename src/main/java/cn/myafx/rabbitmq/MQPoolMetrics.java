@@ -0,0 +1,175 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MQPool 统计, exchange -> routingKey 与 queue 两级 map 查找, 记录不分配内存;
+ * key 数超过上限后归入 "*"
+ */
+class MQPoolMetrics implements IMQPoolMetrics, MQPoolMetricsMXBean {
+    private static final String OTHER = "*";
+
+    private ConcurrentHashMap<String, ConcurrentHashMap<String, PubMetrics>> pubMap = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, SubMetrics> subMap = new ConcurrentHashMap<>();
+    private AtomicInteger keyCount = new AtomicInteger();
+    private int maxKeys;
+    private LatencyHistogram channelWait = new LatencyHistogram();
+
+    /**
+     * MQPool 统计
+     * 
+     * @param maxKeys 最大 exchange/routingKey 与 queue 数
+     */
+    public MQPoolMetrics(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * 发布统计
+     * 
+     * @param exchange   exchange
+     * @param routingKey routingKey
+     * @return PubMetrics
+     */
+    public PubMetrics pub(String exchange, String routingKey) {
+        var map = this.pubMap.get(exchange);
+        if (map == null)
+            map = this.pubMap.computeIfAbsent(exchange, k -> new ConcurrentHashMap<>());
+        var m = map.get(routingKey);
+        if (m != null)
+            return m;
+        if (this.keyCount.get() >= this.maxKeys)
+            return map.computeIfAbsent(OTHER, k -> new PubMetrics());
+        return map.computeIfAbsent(routingKey, k -> {
+            this.keyCount.incrementAndGet();
+            return new PubMetrics();
+        });
+    }
+
+    /**
+     * 订阅统计
+     * 
+     * @param queue queue
+     * @return SubMetrics
+     */
+    public SubMetrics sub(String queue) {
+        var m = this.subMap.get(queue);
+        if (m != null)
+            return m;
+        if (this.keyCount.get() >= this.maxKeys)
+            return this.subMap.computeIfAbsent(OTHER, k -> new SubMetrics());
+        return this.subMap.computeIfAbsent(queue, k -> {
+            this.keyCount.incrementAndGet();
+            return new SubMetrics();
+        });
+    }
+
+    /**
+     * 借发布通道等待耗时
+     * 
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram channelWait() {
+        return this.channelWait;
+    }
+
+    @Override
+    public MQMetricsSnapshot snapshot() {
+        var m = new MQMetricsSnapshot();
+        m.Pub = new TreeMap<>();
+        for (var e : this.pubMap.entrySet()) {
+            for (var kv : e.getValue().entrySet())
+                m.Pub.put(e.getKey() + "/" + kv.getKey(), kv.getValue().snapshot());
+        }
+        m.Sub = new TreeMap<>();
+        for (var kv : this.subMap.entrySet())
+            m.Sub.put(kv.getKey(), kv.getValue().snapshot());
+        m.ChannelWait = this.channelWait.snapshot();
+        return m;
+    }
+
+    @Override
+    public void reset() {
+        for (var map : this.pubMap.values()) {
+            for (var m : map.values())
+                m.reset();
+        }
+        for (var m : this.subMap.values())
+            m.reset();
+        this.channelWait.reset();
+    }
+
+    @Override
+    public long getPubCount() {
+        long n = 0;
+        for (var map : this.pubMap.values()) {
+            for (var m : map.values())
+                n += m.count.sum();
+        }
+        return n;
+    }
+
+    @Override
+    public long getPubErrors() {
+        long n = 0;
+        for (var map : this.pubMap.values()) {
+            for (var m : map.values())
+                n += m.errors.sum();
+        }
+        return n;
+    }
+
+    @Override
+    public long getSubCount() {
+        long n = 0;
+        for (var m : this.subMap.values())
+            n += m.count.sum();
+        return n;
+    }
+
+    @Override
+    public long getSubErrors() {
+        long n = 0;
+        for (var m : this.subMap.values())
+            n += m.errors.sum();
+        return n;
+    }
+
+    @Override
+    public Map<String, Long> getValues() {
+        var s = this.snapshot();
+        Map<String, Long> values = new TreeMap<>();
+        for (var kv : s.Pub.entrySet()) {
+            String key = "pub." + kv.getKey();
+            var m = kv.getValue();
+            values.put(key + ".count", m.Count);
+            values.put(key + ".errors", m.Errors);
+            values.put(key + ".bytes", m.Bytes);
+            putLatency(values, key + ".publish", m.Publish);
+            putLatency(values, key + ".serialize", m.Serialize);
+        }
+        for (var kv : s.Sub.entrySet()) {
+            String key = "sub." + kv.getKey();
+            var m = kv.getValue();
+            values.put(key + ".count", m.Count);
+            values.put(key + ".acks", m.Acks);
+            values.put(key + ".nacks", m.Nacks);
+            values.put(key + ".rejects", m.Rejects);
+            values.put(key + ".errors", m.Errors);
+            putLatency(values, key + ".deserialize", m.Deserialize);
+            putLatency(values, key + ".hander", m.Hander);
+        }
+        putLatency(values, "channelWait", s.ChannelWait);
+        return values;
+    }
+
+    private static void putLatency(Map<String, Long> values, String key, LatencyStats m) {
+        values.put(key + ".meanMicros", m.getMeanNanos() / 1000);
+        values.put(key + ".p50Micros", m.P50Nanos / 1000);
+        values.put(key + ".p99Micros", m.P99Nanos / 1000);
+        values.put(key + ".p999Micros", m.P999Nanos / 1000);
+        values.put(key + ".maxMicros", m.MaxNanos / 1000);
+    }
+}
@@ -0,0 +1,48 @@
+package cn.myafx.rabbitmq;
+
+import java.util.Map;
+
+/**
+ * MQPool 统计 JMX 接口, ObjectName: cn.myafx.rabbitmq:type=MQPool,name={clientName}
+ */
+public interface MQPoolMetricsMXBean {
+    /**
+     * 发布消息总数
+     * 
+     * @return long
+     */
+    long getPubCount();
+
+    /**
+     * 发布失败总数
+     * 
+     * @return long
+     */
+    long getPubErrors();
+
+    /**
+     * 收到消息总数
+     * 
+     * @return long
+     */
+    long getSubCount();
+
+    /**
+     * 订阅异常总数
+     * 
+     * @return long
+     */
+    long getSubErrors();
+
+    /**
+     * 全部统计, key 如 pub.{exchange}/{routingKey}.count, sub.{queue}.hander.p99Micros
+     * 
+     * @return Map
+     */
+    Map<String, Long> getValues();
+
+    /**
+     * 清零
+     */
+    void reset();
+}
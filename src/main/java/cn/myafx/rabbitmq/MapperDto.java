@@ -9,7 +9,7 @@ public class MapperDto {
      */
     public String contentType;
     /**
-     * utf-8
+     * utf-8, 压缩后为 ICompressor.getEncoding()
      */
     public String contentEncoding = "utf-8";
     /**
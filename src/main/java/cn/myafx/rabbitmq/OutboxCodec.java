@@ -0,0 +1,225 @@
+package cn.myafx.rabbitmq;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.LongString;
+
+/**
+ * 本地落盘消息记录编码, 格式: exchange, routingKey, props, body, 字符串为 int 长度(-1 为 null) + utf8
+ */
+class OutboxCodec {
+    private static final byte T_NULL = 0;
+    private static final byte T_STRING = 1;
+    private static final byte T_INT = 2;
+    private static final byte T_LONG = 3;
+    private static final byte T_BOOLEAN = 4;
+    private static final byte T_DOUBLE = 5;
+    private static final byte T_FLOAT = 6;
+    private static final byte T_SHORT = 7;
+    private static final byte T_BYTE = 8;
+    private static final byte T_BYTES = 9;
+    private static final byte T_DATE = 10;
+    private static final byte T_DECIMAL = 11;
+    private static final byte T_MAP = 12;
+    private static final byte T_LIST = 13;
+
+    private OutboxCodec() {
+    }
+
+    /**
+     * 写入消息, 空间不足抛出 BufferOverflowException
+     *
+     * @param buf        buf
+     * @param exchange   exchange
+     * @param routingKey routingKey
+     * @param props      props
+     * @param body       body
+     */
+    public static void write(ByteBuffer buf, String exchange, String routingKey, AMQP.BasicProperties props,
+            byte[] body) {
+        putString(buf, exchange);
+        putString(buf, routingKey);
+        putString(buf, props.getContentType());
+        putString(buf, props.getContentEncoding());
+        Integer deliveryMode = props.getDeliveryMode();
+        buf.putInt(deliveryMode != null ? deliveryMode : -1);
+        Integer priority = props.getPriority();
+        buf.putInt(priority != null ? priority : -1);
+        putString(buf, props.getExpiration());
+        putString(buf, props.getMessageId());
+        putString(buf, props.getCorrelationId());
+        putString(buf, props.getType());
+        Date timestamp = props.getTimestamp();
+        buf.putLong(timestamp != null ? timestamp.getTime() : Long.MIN_VALUE);
+        var headers = props.getHeaders();
+        if (headers != null)
+            putValue(buf, headers);
+        else
+            buf.put(T_NULL);
+        buf.putInt(body.length);
+        buf.put(body);
+    }
+
+    /**
+     * 读取消息
+     *
+     * @param buf buf
+     * @return PubMessage
+     */
+    public static PubMessage read(ByteBuffer buf) {
+        String exchange = getString(buf);
+        String routingKey = getString(buf);
+        var builder = new AMQP.BasicProperties.Builder();
+        builder.contentType(getString(buf));
+        builder.contentEncoding(getString(buf));
+        int deliveryMode = buf.getInt();
+        if (deliveryMode >= 0)
+            builder.deliveryMode(deliveryMode);
+        int priority = buf.getInt();
+        if (priority >= 0)
+            builder.priority(priority);
+        builder.expiration(getString(buf));
+        builder.messageId(getString(buf));
+        builder.correlationId(getString(buf));
+        builder.type(getString(buf));
+        long timestamp = buf.getLong();
+        if (timestamp != Long.MIN_VALUE)
+            builder.timestamp(new Date(timestamp));
+        @SuppressWarnings("unchecked")
+        var headers = (Map<String, Object>) getValue(buf);
+        builder.headers(headers);
+        byte[] body = new byte[buf.getInt()];
+        buf.get(body);
+
+        return new PubMessage(exchange, routingKey, builder.build(), body);
+    }
+
+    private static void putString(ByteBuffer buf, String s) {
+        if (s == null) {
+            buf.putInt(-1);
+            return;
+        }
+        byte[] arr = s.getBytes(StandardCharsets.UTF_8);
+        buf.putInt(arr.length);
+        buf.put(arr);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0)
+            return null;
+        byte[] arr = new byte[len];
+        buf.get(arr);
+        return new String(arr, StandardCharsets.UTF_8);
+    }
+
+    private static void putValue(ByteBuffer buf, Object v) {
+        if (v == null) {
+            buf.put(T_NULL);
+        } else if (v instanceof String || v instanceof LongString) {
+            buf.put(T_STRING);
+            putString(buf, v.toString());
+        } else if (v instanceof Integer i) {
+            buf.put(T_INT);
+            buf.putInt(i);
+        } else if (v instanceof Long l) {
+            buf.put(T_LONG);
+            buf.putLong(l);
+        } else if (v instanceof Boolean b) {
+            buf.put(T_BOOLEAN);
+            buf.put((byte) (b ? 1 : 0));
+        } else if (v instanceof Double d) {
+            buf.put(T_DOUBLE);
+            buf.putDouble(d);
+        } else if (v instanceof Float f) {
+            buf.put(T_FLOAT);
+            buf.putFloat(f);
+        } else if (v instanceof Short s) {
+            buf.put(T_SHORT);
+            buf.putShort(s);
+        } else if (v instanceof Byte b) {
+            buf.put(T_BYTE);
+            buf.put(b);
+        } else if (v instanceof byte[] arr) {
+            buf.put(T_BYTES);
+            buf.putInt(arr.length);
+            buf.put(arr);
+        } else if (v instanceof Date d) {
+            buf.put(T_DATE);
+            buf.putLong(d.getTime());
+        } else if (v instanceof BigDecimal d) {
+            buf.put(T_DECIMAL);
+            putString(buf, d.toString());
+        } else if (v instanceof Map<?, ?> map) {
+            buf.put(T_MAP);
+            buf.putInt(map.size());
+            for (var kv : map.entrySet()) {
+                putString(buf, String.valueOf(kv.getKey()));
+                putValue(buf, kv.getValue());
+            }
+        } else if (v instanceof List<?> list) {
+            buf.put(T_LIST);
+            buf.putInt(list.size());
+            for (var item : list)
+                putValue(buf, item);
+        } else {
+            buf.put(T_STRING);
+            putString(buf, v.toString());
+        }
+    }
+
+    private static Object getValue(ByteBuffer buf) {
+        byte t = buf.get();
+        switch (t) {
+            case T_NULL:
+                return null;
+            case T_STRING:
+                return getString(buf);
+            case T_INT:
+                return buf.getInt();
+            case T_LONG:
+                return buf.getLong();
+            case T_BOOLEAN:
+                return buf.get() != 0;
+            case T_DOUBLE:
+                return buf.getDouble();
+            case T_FLOAT:
+                return buf.getFloat();
+            case T_SHORT:
+                return buf.getShort();
+            case T_BYTE:
+                return buf.get();
+            case T_BYTES: {
+                byte[] arr = new byte[buf.getInt()];
+                buf.get(arr);
+                return arr;
+            }
+            case T_DATE:
+                return new Date(buf.getLong());
+            case T_DECIMAL:
+                return new BigDecimal(getString(buf));
+            case T_MAP: {
+                int count = buf.getInt();
+                Map<String, Object> map = new HashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    String key = getString(buf);
+                    map.put(key, getValue(buf));
+                }
+                return map;
+            }
+            case T_LIST: {
+                int count = buf.getInt();
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    list.add(getValue(buf));
+                return list;
+            }
+            default:
+                throw new IllegalStateException("outbox record type(" + t + ") is error!");
+        }
+    }
+}
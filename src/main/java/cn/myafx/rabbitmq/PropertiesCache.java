@@ -0,0 +1,118 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * 不可变 BasicProperties 模板缓存, 按 contentType + contentEncoding + expire + persistent 区分
+ */
+class PropertiesCache {
+    /**
+     * 每个 contentType 缓存的不同过期时间上限
+     */
+    private static final int MAX_EXPIRE_SIZE = 256;
+
+    private CopyOnWriteArrayList<Entry> entries = new CopyOnWriteArrayList<>();
+
+    /**
+     * 获取模板
+     * 
+     * @param contentType     contentType
+     * @param contentEncoding contentEncoding
+     * @param expire          消息过期时间, 秒, null 不过期
+     * @param persistent      是否持久化
+     * @return BasicProperties
+     */
+    public AMQP.BasicProperties get(String contentType, String contentEncoding, Integer expire, boolean persistent) {
+        return this.getEntry(contentType, contentEncoding).get(expire, persistent);
+    }
+
+    /**
+     * 获取 contentType + contentEncoding 对应的模板组, 可由调用方持有后直接取模板
+     * 
+     * @param contentType     contentType
+     * @param contentEncoding contentEncoding
+     * @return Entry
+     */
+    Entry getEntry(String contentType, String contentEncoding) {
+        for (var e : this.entries) {
+            if (e.is(contentType, contentEncoding))
+                return e;
+        }
+        synchronized (this) {
+            for (var e : this.entries) {
+                if (e.is(contentType, contentEncoding))
+                    return e;
+            }
+            var e = new Entry(contentType, contentEncoding);
+            this.entries.add(e);
+            return e;
+        }
+    }
+
+    private static AMQP.BasicProperties build(String contentType, String contentEncoding, Integer expire,
+            boolean persistent) {
+        var builder = new AMQP.BasicProperties.Builder();
+        builder.contentType(contentType);
+        builder.contentEncoding(contentEncoding);
+        builder.deliveryMode(persistent ? 2 : 1);
+        if (expire != null)
+            builder.expiration(Integer.toString(expire * 1000));
+        return builder.build();
+    }
+
+    /**
+     * 同一 contentType + contentEncoding 的模板, 按 expire + persistent 区分
+     */
+    static class Entry {
+        private String contentType;
+        private String contentEncoding;
+        // BasicProperties 字段均为 final, 并发下重复创建也不影响结果
+        private AMQP.BasicProperties[] plain = new AMQP.BasicProperties[2];
+        private ConcurrentHashMap<Integer, AMQP.BasicProperties>[] expiring;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Entry(String contentType, String contentEncoding) {
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.expiring = new ConcurrentHashMap[] { new ConcurrentHashMap<>(), new ConcurrentHashMap<>() };
+        }
+
+        /**
+         * 获取模板
+         * 
+         * @param expire     消息过期时间, 秒, null 不过期
+         * @param persistent 是否持久化
+         * @return BasicProperties
+         */
+        AMQP.BasicProperties get(Integer expire, boolean persistent) {
+            int p = persistent ? 1 : 0;
+            if (expire == null) {
+                var props = this.plain[p];
+                if (props == null) {
+                    props = build(this.contentType, this.contentEncoding, null, persistent);
+                    this.plain[p] = props;
+                }
+                return props;
+            }
+            var map = this.expiring[p];
+            var props = map.get(expire);
+            if (props == null) {
+                props = build(this.contentType, this.contentEncoding, expire, persistent);
+                if (map.size() < MAX_EXPIRE_SIZE)
+                    map.putIfAbsent(expire, props);
+            }
+            return props;
+        }
+
+        boolean is(String contentType, String contentEncoding) {
+            return equals(this.contentType, contentType) && equals(this.contentEncoding, contentEncoding);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == b || (a != null && a.equals(b));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * broker 内存/磁盘告警阻塞发布连接(connection.blocked)时 pub 的处理策略
+ */
+public enum PubBlockedPolicy {
+    /**
+     * 在 basicPublish 中阻塞直到解除, 默认
+     */
+    Block,
+    /**
+     * 立即抛出异常
+     */
+    FailFast,
+    /**
+     * 等待解除, 超时抛出异常
+     */
+    BlockWithTimeout,
+    /**
+     * 写入内存缓冲, 解除后按顺序发布, 缓冲字节数超出上限抛出异常
+     */
+    Buffer
+}
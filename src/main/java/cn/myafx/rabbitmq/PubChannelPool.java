@@ -0,0 +1,206 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * 无锁发布通道池, 每个线程优先使用按线程 id 分配的槽位, 槽位被占用时使用共享池
+ */
+class PubChannelPool implements AutoCloseable {
+    private Callable<Channel> factory;
+    private int maxIdle;
+    private AtomicReferenceArray<Channel> stripes;
+    private int mask;
+    private ConcurrentLinkedQueue<Channel> overflow;
+    private int maxOverflow;
+    private AtomicInteger overflowIdle;
+    private volatile Semaphore limit;
+    private volatile boolean closed = false;
+
+    private LongAdder releases = new LongAdder();
+    private LongAdder stripeHits = new LongAdder();
+    private LongAdder overflowHits = new LongAdder();
+    private LongAdder creates = new LongAdder();
+    private LongAdder closes = new LongAdder();
+    private LongAdder waits = new LongAdder();
+    private LongAdder waitNanos = new LongAdder();
+
+    /**
+     * 发布通道池
+     * 
+     * @param factory 创建通道
+     * @param maxIdle 最大空闲通道数
+     */
+    public PubChannelPool(Callable<Channel> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+        int n = Math.min(maxIdle, Runtime.getRuntime().availableProcessors());
+        n = Integer.highestOneBit(Math.max(n, 1));
+        this.stripes = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+        // 槽位也计入空闲上限, 共享池只保留剩余部分
+        this.maxOverflow = Math.max(maxIdle - n, 0);
+        this.overflow = new ConcurrentLinkedQueue<>();
+        this.overflowIdle = new AtomicInteger();
+    }
+
+    /**
+     * 借出的通道及其占用的许可, 归还时释放到借出时的信号量, 修改上限后旧许可不计入新上限
+     */
+    static class Lease {
+        public final Channel Channel;
+        private final Semaphore permit;
+
+        private Lease(Channel channel, Semaphore permit) {
+            this.Channel = channel;
+            this.permit = permit;
+        }
+    }
+
+    /**
+     * 限制同时打开的通道数, 达到上限后按先后顺序等待归还, 0 不限制;
+     * 修改前借出的通道归还到原信号量, 不占用新上限
+     * 
+     * @param maxOpen 最大通道数
+     */
+    public void setLimit(int maxOpen) {
+        this.limit = maxOpen > 0 ? new Semaphore(maxOpen, true) : null;
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & this.mask;
+    }
+
+    /**
+     * 借出通道
+     * 
+     * @return Lease
+     * @throws Exception Exception
+     */
+    public Lease borrow() throws Exception {
+        if (this.closed)
+            throw new Exception("MQPool is closed!");
+        var sem = this.limit;
+        if (sem != null && !sem.tryAcquire()) {
+            this.waits.increment();
+            long start = System.nanoTime();
+            sem.acquire();
+            this.waitNanos.add(System.nanoTime() - start);
+        }
+        try {
+            Channel ch = this.take();
+            if (ch == null) {
+                ch = this.factory.call();
+                this.creates.increment();
+            }
+            return new Lease(ch, sem);
+        } catch (Exception ex) {
+            if (sem != null)
+                sem.release();
+            throw ex;
+        }
+    }
+
+    private Channel take() {
+        int i = this.stripeIndex();
+        Channel ch;
+        // 空闲期间连接断开的通道直接丢弃
+        if (this.stripes.get(i) != null && (ch = this.stripes.getAndSet(i, null)) != null) {
+            if (ch.isOpen()) {
+                this.stripeHits.increment();
+                return ch;
+            }
+        }
+        while ((ch = this.overflow.poll()) != null) {
+            this.overflowIdle.decrementAndGet();
+            if (ch.isOpen()) {
+                this.overflowHits.increment();
+                return ch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 归还通道
+     * 
+     * @param lease 借出的通道
+     */
+    public void release(Lease lease) {
+        this.releases.increment();
+        var ch = lease.Channel;
+        try {
+            if (ch == null)
+                return;
+            if (this.closed) {
+                closeChannel(ch);
+                return;
+            }
+            int i = this.stripeIndex();
+            if (this.stripes.get(i) == null && this.stripes.compareAndSet(i, null, ch))
+                return;
+            if (this.overflowIdle.incrementAndGet() > this.maxOverflow) {
+                this.overflowIdle.decrementAndGet();
+                this.closes.increment();
+                closeChannel(ch);
+                return;
+            }
+            this.overflow.offer(ch);
+        } finally {
+            if (lease.permit != null)
+                lease.permit.release();
+        }
+    }
+
+    private static void closeChannel(Channel ch) {
+        try {
+            if (ch.isOpen())
+                ch.close();
+        } catch (Exception ex) {
+        }
+    }
+
+    /**
+     * 统计
+     * 
+     * @return ChannelPoolStats
+     */
+    public ChannelPoolStats getStats() {
+        var m = new ChannelPoolStats();
+        m.StripeHits = this.stripeHits.sum();
+        m.OverflowHits = this.overflowHits.sum();
+        m.Creates = this.creates.sum();
+        m.Borrows = m.StripeHits + m.OverflowHits + m.Creates;
+        m.Closes = this.closes.sum();
+        m.Waits = this.waits.sum();
+        m.WaitNanos = this.waitNanos.sum();
+        int idle = Math.max(this.overflowIdle.get(), 0);
+        for (int i = 0; i < this.stripes.length(); i++) {
+            if (this.stripes.get(i) != null)
+                idle++;
+        }
+        m.Idle = idle;
+        m.InUse = (int) Math.max(m.Borrows - this.releases.sum(), 0);
+        return m;
+    }
+
+    /**
+     * close
+     */
+    @Override
+    public void close() throws Exception {
+        this.closed = true;
+        for (int i = 0; i < this.stripes.length(); i++) {
+            var ch = this.stripes.getAndSet(i, null);
+            if (ch != null)
+                closeChannel(ch);
+        }
+        Channel ch;
+        while ((ch = this.overflow.poll()) != null)
+            closeChannel(ch);
+        this.overflowIdle.set(0);
+    }
+}
@@ -16,16 +16,29 @@ public class PubConfig {
      * 延迟队列路由key
      */
     public String DelayRoutingKey;
+    /**
+     * 分级延迟队列, DelayLevels 大于 0 时 pubDelay 发布到 {DelayQueue}.{L} 交换器, 与 QueueConfig 一致
+     */
+    public String DelayQueue;
+    /**
+     * 延迟分级数, 默认 0 使用 DelayRoutingKey 单个延迟队列, 与 QueueConfig 一致
+     */
+    public int DelayLevels = 0;
     /**
      * 默认 amq.direct
      */
     public String Exchange = "amq.direct";
 
     /**
-     * 路由key是否加参数
+     * 路由key是否加参数, {0} {1} ... 替换为参数, 无占位符时追加 "." + 参数
      */
     public boolean IsRoutingKeyParam = false;
 
+    /**
+     * 消息 contentType, 默认 null 按消息类型选择(byte[]、String、json)
+     */
+    public String ContentType;
+
     /**
      * 复制
      * 
@@ -37,7 +50,10 @@ public class PubConfig {
         m.Exchange = this.Exchange;
         m.RoutingKey = this.RoutingKey;
         m.DelayRoutingKey = this.DelayRoutingKey;
+        m.DelayQueue = this.DelayQueue;
+        m.DelayLevels = this.DelayLevels;
         m.IsRoutingKeyParam = this.IsRoutingKeyParam;
+        m.ContentType = this.ContentType;
         return m;
     }
 }
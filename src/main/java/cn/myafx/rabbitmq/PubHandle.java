@@ -0,0 +1,160 @@
+package cn.myafx.rabbitmq;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * 不可变生产配置, 加载时解析一次, 可按引用共享, 发布时不再复制;
+ * 参数化路由key/延迟队列模板在创建时编译(每个模板缓存 1000 个格式化结果),
+ * BasicProperties 模板按 contentType 预先取得
+ */
+public final class PubHandle {
+    private static final int ROUTING_CACHE_SIZE = 1000;
+
+    /**
+     * 节点名称
+     */
+    public final String Name;
+    /**
+     * 路由key
+     */
+    public final String RoutingKey;
+    /**
+     * 延迟队列路由key
+     */
+    public final String DelayRoutingKey;
+    /**
+     * 分级延迟队列
+     */
+    public final String DelayQueue;
+    /**
+     * 延迟分级数
+     */
+    public final int DelayLevels;
+    /**
+     * 交换器
+     */
+    public final String Exchange;
+    /**
+     * 路由key是否加参数
+     */
+    public final boolean IsRoutingKeyParam;
+    /**
+     * 消息 contentType
+     */
+    public final String ContentType;
+
+    private final PubConfig config;
+    private final RoutingTemplate routing;
+    private final RoutingTemplate delayRouting;
+    private final RoutingTemplate delayQueue;
+    private volatile PropertiesCache.Entry properties;
+
+    /**
+     * 不可变生产配置
+     *
+     * @param config 生产配置, 复制后使用
+     */
+    public PubHandle(PubConfig config) {
+        this.config = config.copy();
+        this.Name = config.Name;
+        this.RoutingKey = config.RoutingKey;
+        this.DelayRoutingKey = config.DelayRoutingKey;
+        this.DelayQueue = config.DelayQueue;
+        this.DelayLevels = config.DelayLevels;
+        this.Exchange = config.Exchange;
+        this.IsRoutingKeyParam = config.IsRoutingKeyParam;
+        this.ContentType = config.ContentType;
+        if (config.IsRoutingKeyParam) {
+            this.routing = RoutingTemplate.compile(config.RoutingKey, ROUTING_CACHE_SIZE);
+            this.delayRouting = RoutingTemplate.compile(config.DelayRoutingKey, ROUTING_CACHE_SIZE);
+            this.delayQueue = RoutingTemplate.compile(config.DelayQueue, ROUTING_CACHE_SIZE);
+        } else {
+            this.routing = null;
+            this.delayRouting = null;
+            this.delayQueue = null;
+        }
+        if (config.ContentType != null)
+            this.properties = new PropertiesCache.Entry(config.ContentType, "utf-8");
+    }
+
+    /**
+     * 路由key, IsRoutingKeyParam 时按参数格式化
+     *
+     * @param params 参数, null 时返回 RoutingKey
+     * @return String
+     * @throws Exception Exception
+     */
+    String routingKey(Object[] params) throws Exception {
+        return this.format(this.routing, this.RoutingKey, params);
+    }
+
+    /**
+     * 延迟队列路由key, IsRoutingKeyParam 时按参数格式化
+     *
+     * @param params 参数, null 时返回 DelayRoutingKey
+     * @return String
+     * @throws Exception Exception
+     */
+    String delayRoutingKey(Object[] params) throws Exception {
+        return this.format(this.delayRouting, this.DelayRoutingKey, params);
+    }
+
+    /**
+     * 分级延迟队列, IsRoutingKeyParam 时按参数格式化
+     *
+     * @param params 参数, null 时返回 DelayQueue
+     * @return String
+     * @throws Exception Exception
+     */
+    String delayQueue(Object[] params) throws Exception {
+        return this.format(this.delayQueue, this.DelayQueue, params);
+    }
+
+    private String format(RoutingTemplate t, String template, Object[] params) throws Exception {
+        if (params == null)
+            return template;
+        if (t == null)
+            throw new Exception("template(" + template + ") is not param!");
+        if (params.length == 0)
+            throw new Exception("params is empty!");
+        return t.format(params);
+    }
+
+    /**
+     * BasicProperties 模板, contentType/contentEncoding 与上次相同时不再查找
+     *
+     * @param cache           MQPool 模板缓存
+     * @param contentType     contentType
+     * @param contentEncoding contentEncoding
+     * @param expire          消息过期时间, 秒, null 不过期
+     * @param persistent      是否持久化
+     * @return BasicProperties
+     */
+    AMQP.BasicProperties properties(PropertiesCache cache, String contentType, String contentEncoding,
+            Integer expire, boolean persistent) {
+        var e = this.properties;
+        if (e == null || !e.is(contentType, contentEncoding)) {
+            e = cache.getEntry(contentType, contentEncoding);
+            this.properties = e;
+        }
+        return e.get(expire, persistent);
+    }
+
+    /**
+     * 内部配置, 不对外暴露, 保证不被修改
+     *
+     * @return PubConfig
+     */
+    PubConfig config() {
+        return this.config;
+    }
+
+    /**
+     * 复制为可修改的生产配置
+     *
+     * @return PubConfig
+     */
+    public PubConfig toPubConfig() {
+        return this.config.copy();
+    }
+}
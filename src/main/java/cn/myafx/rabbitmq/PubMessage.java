@@ -0,0 +1,40 @@
+package cn.myafx.rabbitmq;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * 已序列化待发布的消息
+ */
+class PubMessage {
+    /**
+     * exchange
+     */
+    public String exchange;
+    /**
+     * routingKey
+     */
+    public String routingKey;
+    /**
+     * props
+     */
+    public AMQP.BasicProperties props;
+    /**
+     * body
+     */
+    public byte[] body;
+
+    /**
+     * PubMessage
+     * 
+     * @param exchange   exchange
+     * @param routingKey routingKey
+     * @param props      props
+     * @param body       body
+     */
+    public PubMessage(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.props = props;
+        this.body = body;
+    }
+}
@@ -0,0 +1,55 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 发布统计(exchange + routingKey)
+ */
+class PubMetrics {
+    /**
+     * 发布消息数
+     */
+    public LongAdder count = new LongAdder();
+    /**
+     * 发布失败数
+     */
+    public LongAdder errors = new LongAdder();
+    /**
+     * 消息体字节数
+     */
+    public LongAdder bytes = new LongAdder();
+    /**
+     * pub 耗时, 从序列化到 basicPublish 返回
+     */
+    public LatencyHistogram publish = new LatencyHistogram();
+    /**
+     * 序列化耗时
+     */
+    public LatencyHistogram serialize = new LatencyHistogram();
+
+    /**
+     * 快照
+     * 
+     * @return PubMetricsStats
+     */
+    public PubMetricsStats snapshot() {
+        var m = new PubMetricsStats();
+        m.Count = this.count.sum();
+        m.Errors = this.errors.sum();
+        m.Bytes = this.bytes.sum();
+        m.Publish = this.publish.snapshot();
+        m.Serialize = this.serialize.snapshot();
+        return m;
+    }
+
+    /**
+     * 清零
+     */
+    public void reset() {
+        this.count.reset();
+        this.errors.reset();
+        this.bytes.reset();
+        this.publish.reset();
+        this.serialize.reset();
+    }
+}
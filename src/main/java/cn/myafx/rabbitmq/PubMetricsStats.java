@@ -0,0 +1,27 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * 发布统计
+ */
+public class PubMetricsStats {
+    /**
+     * 发布消息数
+     */
+    public long Count;
+    /**
+     * 发布失败数
+     */
+    public long Errors;
+    /**
+     * 消息体字节数(压缩后)
+     */
+    public long Bytes;
+    /**
+     * pub 耗时, 从序列化到 basicPublish 返回
+     */
+    public LatencyStats Publish;
+    /**
+     * 序列化耗时
+     */
+    public LatencyStats Serialize;
+}
@@ -23,6 +23,12 @@ public class QueueConfig {
      * 延迟队列路由key
      */
     public String DelayRoutingKey;
+    /**
+     * 延迟分级数, 默认 0 为单个延迟队列(消息 expiration, 队头长延迟会阻塞后面的短延迟);
+     * 1~22 时定义分级延迟交换器/队列 {DelayQueue}.{L}, 第 L 级 x-message-ttl 为 2^L 秒,
+     * 最大延迟 2^DelayLevels-1 秒, DelayQueue 为 x-message-ttl 0 的出口队列, 不使用 DelayRoutingKey
+     */
+    public int DelayLevels = 0;
     /**
      * 队列是否持久化，默认true
      */
@@ -50,11 +56,11 @@ public class QueueConfig {
      */
     public Map<String, Object> BindArguments;
     /**
-     * 路由key是否加参数
+     * 路由key是否加参数, {0} {1} ... 替换为参数, 无占位符时追加 "." + 参数
      */
     public boolean IsRoutingKeyParam = false;
     /**
-     * 队列是否加参数
+     * 队列是否加参数, {0} {1} ... 替换为参数, 无占位符时追加 "." + 参数
      */
     public boolean IsQueueParam = false;
 
@@ -67,8 +73,9 @@ public class QueueConfig {
         var m = new QueueConfig();
         m.Queue = this.Queue;
         m.RoutingKey = this.RoutingKey;
-        m.RoutingKey = this.RoutingKey;
+        m.DelayQueue = this.DelayQueue;
         m.DelayRoutingKey = this.DelayRoutingKey;
+        m.DelayLevels = this.DelayLevels;
         m.Exchange = this.Exchange;
         m.Durable = this.Durable;
         m.AutoDelete = this.AutoDelete;
@@ -0,0 +1,242 @@
+package cn.myafx.rabbitmq;
+
+import java.io.File;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 可热加载的 mq 配置, 监听配置文件变化, 在后台线程解析后原子替换不可变快照,
+ * 读取时不加锁, 只使用当前快照
+ * <p>
+ * 设置 pool 时只定义新增的交换器/队列, 变化的队列重新绑定并解除上一版本的绑定, 定义失败时保留上一版本;
+ * broker 上无法直接修改的交换器/队列参数变化不定义, 见 {@link MQConfigDiff#UnappliedExchanges}/
+ * {@link MQConfigDiff#UnappliedQueues}, 新快照仍生效; 队列名/路由key带参数的队列只定义不解除绑定;
+ * 删除的交换器/队列不会在 broker 上删除, 已有订阅不会自动重新订阅
+ */
+public class ReloadableMQConfig implements IMQConfig {
+    private String xmlFile;
+    private IMQPool pool;
+    private int debounceMs;
+    private AtomicReference<MQConfig> current = new AtomicReference<>();
+    private volatile IMQConfigReloadHander reloadHander;
+    private WatchService watchService;
+    private Thread watchThread;
+    private volatile boolean closed = false;
+    private final Object lockReload = new Object();
+
+    /**
+     * 可热加载的 mq 配置
+     *
+     * @param xmlFile xmlFile
+     * @throws Exception Exception
+     */
+    public ReloadableMQConfig(String xmlFile) throws Exception {
+        this(xmlFile, null, null);
+    }
+
+    /**
+     * 可热加载的 mq 配置
+     *
+     * @param xmlFile    xmlFile
+     * @param pool       变化时定义交换器/队列, 可为 null
+     * @param debounceMs 文件变化后等待毫秒数, 合并连续写入, 默认 200
+     * @throws Exception Exception
+     */
+    public ReloadableMQConfig(String xmlFile, IMQPool pool, Integer debounceMs) throws Exception {
+        if (xmlFile == null || xmlFile.isEmpty())
+            throw new Exception("xmlFile is null!");
+        if (debounceMs == null)
+            debounceMs = 200;
+        if (debounceMs < 0)
+            throw new Exception("debounceMs(" + debounceMs + ") is error!");
+        this.xmlFile = new File(xmlFile).getAbsolutePath();
+        this.pool = pool;
+        this.debounceMs = debounceMs;
+        var config = new MQConfig(this.xmlFile);
+        this.current.set(config);
+
+        var path = Paths.get(this.xmlFile);
+        this.watchService = path.getFileSystem().newWatchService();
+        path.getParent().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watchThread = new Thread(this::watch, "mq-config-watch");
+        this.watchThread.setDaemon(true);
+        this.watchThread.start();
+    }
+
+    /**
+     * 设置重新加载回调
+     *
+     * @param hander 回调
+     */
+    public void setReloadHander(IMQConfigReloadHander hander) {
+        this.reloadHander = hander;
+    }
+
+    private void watch() {
+        var fileName = Paths.get(this.xmlFile).getFileName();
+        while (!this.closed) {
+            WatchKey key;
+            try {
+                key = this.watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                break;
+            }
+            boolean changed = false;
+            for (var event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context()))
+                    changed = true;
+            }
+            key.reset();
+            if (!changed)
+                continue;
+            try {
+                // 合并编辑器/拷贝产生的连续写入
+                while (this.debounceMs > 0) {
+                    key = this.watchService.poll(this.debounceMs, TimeUnit.MILLISECONDS);
+                    if (key == null)
+                        break;
+                    key.pollEvents();
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                break;
+            }
+            if (this.closed)
+                break;
+            try {
+                this.reload();
+            } catch (Exception ex) {
+                // 已通过回调通知
+            }
+        }
+    }
+
+    /**
+     * 立即重新加载, 解析或定义失败时保留上一版本并抛出异常
+     *
+     * @return 与上一版本的差异
+     * @throws Exception Exception
+     */
+    public MQConfigDiff reload() throws Exception {
+        MQConfigDiff diff = null;
+        try {
+            synchronized (this.lockReload) {
+                var config = new MQConfig(this.xmlFile);
+                var old = this.current.get();
+                diff = MQConfigDiff.of(old, config);
+                if (diff.isEmpty())
+                    return diff;
+                if (this.pool != null)
+                    this.apply(old, diff);
+                this.current.set(config);
+            }
+        } catch (Exception ex) {
+            this.onReload(diff, ex);
+            throw ex;
+        }
+        this.onReload(diff, null);
+        return diff;
+    }
+
+    private void apply(MQConfig old, MQConfigDiff diff) throws Exception {
+        // 交换器先于队列, 绑定依赖交换器; 参数变化的交换器重复定义会 PRECONDITION_FAILED
+        if (diff.AddedExchanges.size() > 0)
+            this.pool.exchangeDeclare(diff.AddedExchanges);
+        List<QueueConfig> queues = new ArrayList<>(diff.AddedQueues);
+        List<QueueConfig> changed = new ArrayList<>(diff.ChangedQueues.size());
+        for (var item : diff.ChangedQueues) {
+            if (!diff.UnappliedQueues.contains(item.Queue))
+                changed.add(item);
+        }
+        queues.addAll(changed);
+        if (queues.size() > 0)
+            this.pool.queueDeclare(queues);
+        if (changed.isEmpty())
+            return;
+        // 新绑定生效后解除上一版本的绑定
+        Map<String, QueueConfig> oldQueues = new HashMap<>();
+        for (var item : old.queues())
+            oldQueues.put(item.Queue, item);
+        for (var item : changed) {
+            var prev = oldQueues.get(item.Queue);
+            if (prev == null || prev.IsQueueParam || prev.IsRoutingKeyParam)
+                continue;
+            if (!Objects.equals(prev.Exchange, item.Exchange) || !MQConfigDiff.same(prev.RoutingKey, item.RoutingKey)
+                    || !MQConfigDiff.same(prev.BindArguments, item.BindArguments))
+                this.pool.queueUnbind(prev.Queue, prev.Exchange, prev.RoutingKey, prev.BindArguments);
+            if (TopologyDeclarer.hasDelayQueue(prev) && (!TopologyDeclarer.hasDelayQueue(item)
+                    || !Objects.equals(prev.Exchange, item.Exchange)
+                    || !MQConfigDiff.same(prev.DelayRoutingKey, item.DelayRoutingKey)))
+                this.pool.queueUnbind(prev.DelayQueue, prev.Exchange, prev.DelayRoutingKey, null);
+        }
+    }
+
+    private void onReload(MQConfigDiff diff, Exception ex) {
+        var hander = this.reloadHander;
+        if (hander == null)
+            return;
+        try {
+            hander.hander(diff, ex);
+        } catch (Exception e) {
+        }
+    }
+
+    /**
+     * 当前快照
+     *
+     * @return MQConfig
+     */
+    public MQConfig getCurrent() {
+        return this.current.get();
+    }
+
+    @Override
+    public List<ExchangeConfig> getExchanges() {
+        return this.current.get().getExchanges();
+    }
+
+    @Override
+    public List<QueueConfig> getQueues() {
+        return this.current.get().getQueues();
+    }
+
+    @Override
+    public PubConfig getPubConfig(String name) {
+        return this.current.get().getPubConfig(name);
+    }
+
+    @Override
+    public SubConfig getSubConfig(String name) {
+        return this.current.get().getSubConfig(name);
+    }
+
+    @Override
+    public PubHandle getPubHandle(String name) {
+        return this.current.get().getPubHandle(name);
+    }
+
+    @Override
+    public PubHandle getPubHandle(Class<?> clazz) {
+        return this.current.get().getPubHandle(clazz);
+    }
+
+    @Override
+    public SubHandle getSubHandle(String name) {
+        return this.current.get().getSubHandle(name);
+    }
+
+    /**
+     * close, 停止监听, 最后的快照仍可读取
+     */
+    @Override
+    public void close() throws Exception {
+        if (this.closed)
+            return;
+        this.closed = true;
+        this.watchService.close();
+        this.watchThread.interrupt();
+    }
+}
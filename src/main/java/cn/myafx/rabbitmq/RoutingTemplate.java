@@ -0,0 +1,146 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 参数化路由key/队列名模板, 编译一次, 格式化结果按参数字符串值缓存
+ * <p>
+ * 缓存分两代, 当前代满后整体降为上一代, 命中上一代的结果提升到当前代, 近似 LRU, 总数不超过 maxCache
+ * <p>
+ * 模板中 {0} {1} ... 替换为对应参数, 没有占位符时在模板后追加 "." + 参数(多个参数以 "." 连接)
+ */
+class RoutingTemplate {
+    private String template;
+    private String[] literals;
+    private int[] indexes;
+    private int maxIndex;
+    private int literalLength;
+    private int generationSize;
+    private volatile ConcurrentHashMap<Object, String> cache = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<Object, String> previous = new ConcurrentHashMap<>();
+
+    private RoutingTemplate(String template, int maxCache) {
+        this.template = template;
+        this.generationSize = maxCache / 2;
+        if (maxCache > 0 && this.generationSize == 0)
+            this.generationSize = 1;
+        List<String> literals = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        int start = 0;
+        int i = 0;
+        while (i < template.length()) {
+            if (template.charAt(i) == '{') {
+                int j = i + 1;
+                while (j < template.length() && Character.isDigit(template.charAt(j)))
+                    j++;
+                if (j > i + 1 && j < template.length() && template.charAt(j) == '}' && j - i <= 4) {
+                    literals.add(template.substring(start, i));
+                    indexes.add(Integer.parseInt(template.substring(i + 1, j)));
+                    i = j + 1;
+                    start = i;
+                    continue;
+                }
+            }
+            i++;
+        }
+        literals.add(template.substring(start));
+        this.literals = literals.toArray(new String[0]);
+        this.indexes = new int[indexes.size()];
+        this.maxIndex = -1;
+        for (int k = 0; k < this.indexes.length; k++) {
+            this.indexes[k] = indexes.get(k);
+            this.maxIndex = Math.max(this.maxIndex, this.indexes[k]);
+        }
+        for (var s : this.literals)
+            this.literalLength += s.length();
+    }
+
+    /**
+     * 编译模板
+     *
+     * @param template 模板
+     * @param maxCache 最大缓存数, 0 不缓存
+     * @return RoutingTemplate
+     */
+    public static RoutingTemplate compile(String template, int maxCache) {
+        return new RoutingTemplate(template == null ? "" : template, maxCache);
+    }
+
+    /**
+     * 模板
+     *
+     * @return String
+     */
+    public String getTemplate() {
+        return this.template;
+    }
+
+    /**
+     * 格式化
+     *
+     * @param params 参数
+     * @return String
+     * @throws Exception 参数数量不足或为 null
+     */
+    public String format(Object[] params) throws Exception {
+        for (var p : params) {
+            if (p == null)
+                throw new Exception("template(" + this.template + ") param is null!");
+        }
+        if (params.length <= this.maxIndex)
+            throw new Exception("template(" + this.template + ") params count(" + params.length + ") is error!");
+        // 按参数字符串值缓存, 参数可变或 toString 变化时不会返回旧结果
+        var values = new String[params.length];
+        for (int i = 0; i < params.length; i++)
+            values[i] = String.valueOf(params[i]);
+        if (this.generationSize == 0)
+            return this.build(values);
+        Object key = values.length == 1 ? values[0] : List.of(values);
+        var s = this.cache.get(key);
+        if (s != null)
+            return s;
+        s = this.previous.get(key);
+        if (s == null)
+            s = this.build(values);
+        this.put(key, s);
+        return s;
+    }
+
+    private void put(Object key, String value) {
+        var current = this.cache;
+        if (current.size() >= this.generationSize) {
+            synchronized (this) {
+                if (this.cache == current) {
+                    this.previous = current;
+                    this.cache = new ConcurrentHashMap<>();
+                }
+                current = this.cache;
+            }
+        }
+        current.put(key, value);
+    }
+
+    private String build(String[] values) {
+        var sb = new StringBuilder(this.literalLength + values.length * 16);
+        if (this.indexes.length == 0) {
+            sb.append(this.template);
+            for (var v : values)
+                sb.append('.').append(v);
+            return sb.toString();
+        }
+        for (int i = 0; i < this.indexes.length; i++)
+            sb.append(this.literals[i]).append(values[this.indexes[i]]);
+        sb.append(this.literals[this.indexes.length]);
+        return sb.toString();
+    }
+
+    /**
+     * 当前缓存数
+     *
+     * @return int
+     */
+    int cacheSize() {
+        return this.cache.size() + this.previous.size();
+    }
+}
@@ -13,9 +13,49 @@ public class SubConfig {
      */
     public String Queue;
     /**
-     * 队列是否加参数
+     * 队列是否加参数, {0} {1} ... 替换为参数, 无占位符时追加 "." + 参数
      */
     public boolean IsQueueParam = false;
+    /**
+     * 单个消费者预取消息数(prefetch), 默认 1
+     */
+    public int PrefetchCount = 1;
+    /**
+     * 通道分组, 相同分组的订阅共用一个通道, 默认 null 每个订阅独占一个通道
+     */
+    public String ChannelGroup;
+    /**
+     * 通道内所有消费者共享的预取消息总数, 默认 0 不限制
+     */
+    public int ChannelPrefetchCount = 0;
+    /**
+     * 并发处理线程数, 默认 1 在消费分发线程中处理
+     */
+    public int Concurrency = 1;
+    /**
+     * 并发处理等待队列大小, 默认 0 与预取消息数相同
+     */
+    public int QueueCapacity = 0;
+    /**
+     * 等待队列已满处理策略, 默认 CallerRuns
+     */
+    public SubRejectPolicy RejectPolicy = SubRejectPolicy.CallerRuns;
+    /**
+     * 每条消息使用一个虚拟线程处理(需 java 21+), 并发数由 PrefetchCount 限制, 默认 false
+     */
+    public boolean VirtualThread = false;
+    /**
+     * 批量订阅每批最大消息数, 默认 100
+     */
+    public int BatchSize = 100;
+    /**
+     * 批量订阅第一条消息到达后最长等待时间, 毫秒, 默认 100
+     */
+    public int BatchLingerMs = 100;
+    /**
+     * 批量订阅整批处理失败时是否逐条重试, 默认 false 整批重新入队
+     */
+    public boolean BatchSplitOnFail = false;
 
     /**
      * 复制
@@ -27,6 +67,16 @@ public class SubConfig {
         m.Name = this.Name;
         m.Queue = this.Queue;
         m.IsQueueParam = this.IsQueueParam;
+        m.PrefetchCount = this.PrefetchCount;
+        m.ChannelGroup = this.ChannelGroup;
+        m.ChannelPrefetchCount = this.ChannelPrefetchCount;
+        m.Concurrency = this.Concurrency;
+        m.QueueCapacity = this.QueueCapacity;
+        m.RejectPolicy = this.RejectPolicy;
+        m.VirtualThread = this.VirtualThread;
+        m.BatchSize = this.BatchSize;
+        m.BatchLingerMs = this.BatchLingerMs;
+        m.BatchSplitOnFail = this.BatchSplitOnFail;
         return m;
     }
 }
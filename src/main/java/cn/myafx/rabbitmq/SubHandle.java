@@ -0,0 +1,123 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * 不可变消费配置, 加载时解析一次, 可按引用共享, 订阅时不再复制;
+ * 参数化队列名模板在创建时编译
+ */
+public final class SubHandle {
+    private static final int QUEUE_CACHE_SIZE = 1000;
+
+    /**
+     * 消息名称
+     */
+    public final String Name;
+    /**
+     * 订阅队列
+     */
+    public final String Queue;
+    /**
+     * 队列是否加参数
+     */
+    public final boolean IsQueueParam;
+    /**
+     * 单个消费者预取消息数(prefetch)
+     */
+    public final int PrefetchCount;
+    /**
+     * 通道分组
+     */
+    public final String ChannelGroup;
+    /**
+     * 通道内所有消费者共享的预取消息总数
+     */
+    public final int ChannelPrefetchCount;
+    /**
+     * 并发处理线程数
+     */
+    public final int Concurrency;
+    /**
+     * 并发处理等待队列大小
+     */
+    public final int QueueCapacity;
+    /**
+     * 等待队列已满处理策略
+     */
+    public final SubRejectPolicy RejectPolicy;
+    /**
+     * 每条消息使用一个虚拟线程处理
+     */
+    public final boolean VirtualThread;
+    /**
+     * 批量订阅每批最大消息数
+     */
+    public final int BatchSize;
+    /**
+     * 批量订阅第一条消息到达后最长等待时间, 毫秒
+     */
+    public final int BatchLingerMs;
+    /**
+     * 批量订阅整批处理失败时是否逐条重试
+     */
+    public final boolean BatchSplitOnFail;
+
+    private final SubConfig config;
+    private final RoutingTemplate queue;
+
+    /**
+     * 不可变消费配置
+     *
+     * @param config 消费配置, 复制后使用
+     */
+    public SubHandle(SubConfig config) {
+        this.config = config.copy();
+        this.Name = config.Name;
+        this.Queue = config.Queue;
+        this.IsQueueParam = config.IsQueueParam;
+        this.PrefetchCount = config.PrefetchCount;
+        this.ChannelGroup = config.ChannelGroup;
+        this.ChannelPrefetchCount = config.ChannelPrefetchCount;
+        this.Concurrency = config.Concurrency;
+        this.QueueCapacity = config.QueueCapacity;
+        this.RejectPolicy = config.RejectPolicy;
+        this.VirtualThread = config.VirtualThread;
+        this.BatchSize = config.BatchSize;
+        this.BatchLingerMs = config.BatchLingerMs;
+        this.BatchSplitOnFail = config.BatchSplitOnFail;
+        this.queue = config.IsQueueParam ? RoutingTemplate.compile(config.Queue, QUEUE_CACHE_SIZE) : null;
+    }
+
+    /**
+     * 内部配置, 不对外暴露, 保证不被修改
+     *
+     * @return SubConfig
+     */
+    SubConfig config() {
+        return this.config;
+    }
+
+    /**
+     * 队列名, IsQueueParam 时按参数格式化
+     *
+     * @param params 参数, null 时返回 Queue
+     * @return String
+     * @throws Exception Exception
+     */
+    String queue(Object[] params) throws Exception {
+        if (params == null)
+            return this.Queue;
+        if (this.queue == null)
+            throw new Exception("template(" + this.Queue + ") is not param!");
+        if (params.length == 0)
+            throw new Exception("params is empty!");
+        return this.queue.format(params);
+    }
+
+    /**
+     * 复制为可修改的消费配置
+     *
+     * @return SubConfig
+     */
+    public SubConfig toSubConfig() {
+        return this.config.copy();
+    }
+}
@@ -0,0 +1,67 @@
+package cn.myafx.rabbitmq;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订阅统计(queue)
+ */
+class SubMetrics {
+    /**
+     * 收到消息数
+     */
+    public LongAdder count = new LongAdder();
+    /**
+     * basicAck 数
+     */
+    public LongAdder acks = new LongAdder();
+    /**
+     * basicNack 重新入队数
+     */
+    public LongAdder nacks = new LongAdder();
+    /**
+     * basicReject 数
+     */
+    public LongAdder rejects = new LongAdder();
+    /**
+     * 反序列化或处理异常数
+     */
+    public LongAdder errors = new LongAdder();
+    /**
+     * 反序列化耗时
+     */
+    public LatencyHistogram deserialize = new LatencyHistogram();
+    /**
+     * 处理耗时, 批量订阅为每批耗时
+     */
+    public LatencyHistogram hander = new LatencyHistogram();
+
+    /**
+     * 快照
+     * 
+     * @return SubMetricsStats
+     */
+    public SubMetricsStats snapshot() {
+        var m = new SubMetricsStats();
+        m.Count = this.count.sum();
+        m.Acks = this.acks.sum();
+        m.Nacks = this.nacks.sum();
+        m.Rejects = this.rejects.sum();
+        m.Errors = this.errors.sum();
+        m.Deserialize = this.deserialize.snapshot();
+        m.Hander = this.hander.snapshot();
+        return m;
+    }
+
+    /**
+     * 清零
+     */
+    public void reset() {
+        this.count.reset();
+        this.acks.reset();
+        this.nacks.reset();
+        this.rejects.reset();
+        this.errors.reset();
+        this.deserialize.reset();
+        this.hander.reset();
+    }
+}
@@ -0,0 +1,35 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * 订阅统计
+ */
+public class SubMetricsStats {
+    /**
+     * 收到消息数
+     */
+    public long Count;
+    /**
+     * basicAck 数
+     */
+    public long Acks;
+    /**
+     * basicNack 重新入队数
+     */
+    public long Nacks;
+    /**
+     * basicReject 数
+     */
+    public long Rejects;
+    /**
+     * 反序列化或处理异常数
+     */
+    public long Errors;
+    /**
+     * 反序列化耗时
+     */
+    public LatencyStats Deserialize;
+    /**
+     * 处理耗时, 批量订阅为每批耗时
+     */
+    public LatencyStats Hander;
+}
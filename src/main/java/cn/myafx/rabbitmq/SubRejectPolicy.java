@@ -0,0 +1,19 @@
+package cn.myafx.rabbitmq;
+
+/**
+ * 并发消费时工作队列已满的处理策略
+ */
+public enum SubRejectPolicy {
+    /**
+     * 在消费分发线程中直接处理, 阻塞后续投递(背压), 默认
+     */
+    CallerRuns,
+    /**
+     * basicNack 重新入队
+     */
+    Requeue,
+    /**
+     * basicReject 不重新入队(有死信队列时进入死信队列)
+     */
+    Reject
+}
@@ -0,0 +1,170 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * 并行定义拓扑, 先定义全部交换器再定义队列, 按序号分给多个通道/线程,
+ * 每个 QueueConfig 在同一通道上顺序定义主队列、绑定、延迟队列
+ * <p>
+ * noWait 时每 CHUNK 个定义流水线发送一次, 失败后逐个同步重试以确定失败的定义
+ */
+class TopologyBootstrap {
+    private static final int CHUNK = 100;
+
+    private ConnectionGroup connections;
+    private TopologyDeclarer declarer;
+    private int parallelism;
+    private String name;
+
+    private interface IDeclare<T> {
+        void declare(TopologyDeclarer.Batch batch, T item) throws Exception;
+    }
+
+    /**
+     * 并行定义拓扑
+     *
+     * @param connections 连接组
+     * @param declarer    declarer
+     * @param parallelism 并行通道数
+     * @param name        线程名前缀
+     */
+    public TopologyBootstrap(ConnectionGroup connections, TopologyDeclarer declarer, int parallelism, String name) {
+        this.connections = connections;
+        this.declarer = declarer;
+        this.parallelism = parallelism;
+        this.name = name;
+    }
+
+    /**
+     * 定义
+     *
+     * @param exchanges 交换器
+     * @param queues    队列
+     * @return TopologyReport
+     * @throws Exception Exception
+     */
+    public TopologyReport run(List<ExchangeConfig> exchanges, List<QueueConfig> queues) throws Exception {
+        var report = new TopologyReport();
+        report.Parallelism = this.parallelism;
+        report.ExchangeCount = exchanges.size();
+        report.QueueCount = queues.size();
+        Map<String, String> errors = new ConcurrentHashMap<>();
+        var index = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(this.parallelism, r -> {
+            var t = new Thread(r, this.name + index.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            long start = System.nanoTime();
+            this.phase(executor, exchanges, (batch, item) -> batch.exchange(item.Exchange, item.Type, item.Durable,
+                    item.AutoDelete, item.Arguments), item -> "exchange(" + item.Exchange + ")", errors);
+            long mid = System.nanoTime();
+            // 绑定依赖交换器, 交换器全部完成后再定义队列
+            this.phase(executor, queues, TopologyDeclarer.Batch::queue, item -> "queue(" + item.Queue + ")", errors);
+            long end = System.nanoTime();
+            report.ExchangeMillis = TimeUnit.NANOSECONDS.toMillis(mid - start);
+            report.QueueMillis = TimeUnit.NANOSECONDS.toMillis(end - mid);
+            report.TotalMillis = TimeUnit.NANOSECONDS.toMillis(end - start);
+        } finally {
+            executor.shutdownNow();
+        }
+        // 按配置顺序输出错误
+        for (var item : exchanges) {
+            var key = "exchange(" + item.Exchange + ")";
+            if (errors.containsKey(key))
+                report.Errors.put(key, errors.get(key));
+        }
+        for (var item : queues) {
+            var key = "queue(" + item.Queue + ")";
+            if (errors.containsKey(key))
+                report.Errors.put(key, errors.get(key));
+        }
+        return report;
+    }
+
+    private <T> void phase(ExecutorService executor, List<T> items, IDeclare<T> decl,
+            Function<T, String> key, Map<String, String> errors) throws Exception {
+        if (items.isEmpty())
+            return;
+        int n = Math.min(this.parallelism, items.size());
+        List<Callable<Object>> tasks = new ArrayList<>(n);
+        for (int w = 0; w < n; w++) {
+            List<T> part = new ArrayList<>(items.size() / n + 1);
+            for (int i = w; i < items.size(); i += n)
+                part.add(items.get(i));
+            int worker = w;
+            tasks.add(() -> {
+                this.declare(part, worker, decl, key, errors);
+                return null;
+            });
+        }
+        for (var f : executor.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof Exception e)
+                    throw e;
+                throw ex;
+            }
+        }
+    }
+
+    private <T> void declare(List<T> items, int worker, IDeclare<T> decl, Function<T, String> key,
+            Map<String, String> errors) throws Exception {
+        Channel ch = null;
+        try {
+            for (int from = 0; from < items.size(); from += CHUNK) {
+                var chunk = items.subList(from, Math.min(from + CHUNK, items.size()));
+                if (this.declarer.isNoWait()) {
+                    try {
+                        ch = this.open(ch, worker);
+                        var batch = this.declarer.begin(ch, true);
+                        for (var item : chunk)
+                            decl.declare(batch, item);
+                        batch.commit();
+                        continue;
+                    } catch (Exception ex) {
+                        // 流水线无法确定哪个定义失败, 逐个同步重试
+                    }
+                }
+                for (var item : chunk) {
+                    try {
+                        ch = this.open(ch, worker);
+                        var batch = this.declarer.begin(ch, false);
+                        decl.declare(batch, item);
+                        batch.commit();
+                    } catch (Exception ex) {
+                        errors.put(key.apply(item), message(ex));
+                    }
+                }
+            }
+        } finally {
+            if (ch != null && ch.isOpen()) {
+                try {
+                    ch.close();
+                } catch (Exception ex) {
+                }
+            }
+        }
+    }
+
+    private Channel open(Channel ch, int worker) throws Exception {
+        // 定义失败时 broker 关闭通道
+        if (ch != null && ch.isOpen())
+            return ch;
+        return this.connections.createChannel(worker % this.connections.size());
+    }
+
+    private static String message(Throwable ex) {
+        var e = ex;
+        while (e.getMessage() == null && e.getCause() != null)
+            e = e.getCause();
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+    }
+}
@@ -0,0 +1,306 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * 交换器/队列定义, 已定义的拓扑缓存后跳过相同定义, noWait 时用 *NoWait 方法流水线发送, 最后一次被动定义作为同步屏障
+ */
+class TopologyDeclarer {
+    private volatile boolean cache = false;
+    private volatile boolean noWait = false;
+    private Set<String> declared = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 设置选项
+     *
+     * @param cache  是否缓存已定义的拓扑
+     * @param noWait 是否流水线定义
+     */
+    public void setOptions(boolean cache, boolean noWait) {
+        this.cache = cache;
+        this.noWait = noWait;
+        if (!cache)
+            this.declared.clear();
+    }
+
+    /**
+     * 清空缓存, 连接断开后 broker 上的非持久化拓扑可能已丢失
+     */
+    public void clear() {
+        this.declared.clear();
+    }
+
+    /**
+     * 已缓存的定义数
+     *
+     * @return int
+     */
+    public int size() {
+        return this.declared.size();
+    }
+
+    /**
+     * 开始一批定义
+     *
+     * @param channel channel
+     * @return Batch
+     */
+    public Batch begin(Channel channel) {
+        return new Batch(channel, this.cache, this.noWait);
+    }
+
+    /**
+     * 开始一批定义
+     *
+     * @param channel channel
+     * @param noWait  是否流水线定义
+     * @return Batch
+     */
+    public Batch begin(Channel channel, boolean noWait) {
+        return new Batch(channel, this.cache, noWait);
+    }
+
+    /**
+     * 是否流水线定义
+     *
+     * @return boolean
+     */
+    public boolean isNoWait() {
+        return this.noWait;
+    }
+
+    /**
+     * 是否定义单个延迟队列及其绑定, 与 Batch.queue 一致
+     *
+     * @param config QueueConfig
+     * @return boolean
+     */
+    static boolean hasDelayQueue(QueueConfig config) {
+        String routingKey = config.RoutingKey == null ? "" : config.RoutingKey;
+        return config.DelayLevels <= 0 && !(config.DelayQueue == null || config.DelayQueue.isEmpty())
+                && config.Queue != config.DelayQueue
+                && (routingKey != config.DelayRoutingKey
+                        || ((config.DelayRoutingKey == null || config.DelayRoutingKey.isEmpty())
+                                && routingKey.isEmpty()));
+    }
+
+    private static String argsKey(Map<String, Object> arguments) {
+        return arguments == null || arguments.isEmpty() ? "" : new TreeMap<>(arguments).toString();
+    }
+
+    /**
+     * 一批定义, commit 后才写入缓存
+     */
+    class Batch {
+        private Channel channel;
+        private boolean cache;
+        private boolean noWait;
+        private List<String> pending = new ArrayList<>();
+        private String lastExchange;
+        private String lastQueue;
+
+        private Batch(Channel channel, boolean cache, boolean noWait) {
+            this.channel = channel;
+            this.cache = cache;
+            this.noWait = noWait;
+        }
+
+        private boolean skip(String key) {
+            if (this.cache && declared.contains(key))
+                return true;
+            this.pending.add(key);
+            return false;
+        }
+
+        /**
+         * 定义交换器
+         *
+         * @param exchange   exchange
+         * @param type       type
+         * @param durable    durable
+         * @param autoDelete autoDelete
+         * @param arguments  arguments
+         * @throws Exception Exception
+         */
+        public void exchange(String exchange, String type, boolean durable, boolean autoDelete,
+                Map<String, Object> arguments) throws Exception {
+            if (this.skip("E|" + exchange + "|" + type + "|" + durable + "|" + autoDelete + "|" + argsKey(arguments)))
+                return;
+            if (this.noWait)
+                this.channel.exchangeDeclareNoWait(exchange, type, durable, autoDelete, false, arguments);
+            else
+                this.channel.exchangeDeclare(exchange, type, durable, autoDelete, arguments);
+            this.lastExchange = exchange;
+            this.lastQueue = null;
+        }
+
+        /**
+         * 定义队列
+         *
+         * @param queue      queue
+         * @param durable    durable
+         * @param exclusive  exclusive
+         * @param autoDelete autoDelete
+         * @param arguments  arguments
+         * @throws Exception Exception
+         */
+        public void queue(String queue, boolean durable, boolean exclusive, boolean autoDelete,
+                Map<String, Object> arguments) throws Exception {
+            if (this.skip("Q|" + queue + "|" + durable + "|" + exclusive + "|" + autoDelete + "|"
+                    + argsKey(arguments)))
+                return;
+            if (this.noWait)
+                this.channel.queueDeclareNoWait(queue, durable, exclusive, autoDelete, arguments);
+            else
+                this.channel.queueDeclare(queue, durable, exclusive, autoDelete, arguments);
+            this.lastQueue = queue;
+            this.lastExchange = null;
+        }
+
+        /**
+         * 绑定
+         *
+         * @param queue      queue
+         * @param exchange   exchange
+         * @param routingKey routingKey
+         * @param arguments  arguments
+         * @throws Exception Exception
+         */
+        public void bind(String queue, String exchange, String routingKey, Map<String, Object> arguments)
+                throws Exception {
+            if (this.skip("B|" + queue + "|" + exchange + "|" + routingKey + "|" + argsKey(arguments)))
+                return;
+            if (this.noWait)
+                this.channel.queueBindNoWait(queue, exchange, routingKey, arguments);
+            else
+                this.channel.queueBind(queue, exchange, routingKey, arguments);
+            this.lastQueue = queue;
+            this.lastExchange = null;
+        }
+
+        /**
+         * 解除绑定, 同时从缓存中移除
+         *
+         * @param queue      queue
+         * @param exchange   exchange
+         * @param routingKey routingKey
+         * @param arguments  arguments
+         * @throws Exception Exception
+         */
+        public void unbind(String queue, String exchange, String routingKey, Map<String, Object> arguments)
+                throws Exception {
+            var key = "B|" + queue + "|" + exchange + "|" + routingKey + "|" + argsKey(arguments);
+            declared.remove(key);
+            this.pending.remove(key);
+            this.channel.queueUnbind(queue, exchange, routingKey, arguments);
+        }
+
+        /**
+         * 交换器间绑定
+         *
+         * @param destination 目标交换器
+         * @param source      源交换器
+         * @param routingKey  routingKey
+         * @param arguments   arguments
+         * @throws Exception Exception
+         */
+        public void exchangeBind(String destination, String source, String routingKey, Map<String, Object> arguments)
+                throws Exception {
+            if (this.skip("X|" + destination + "|" + source + "|" + routingKey + "|" + argsKey(arguments)))
+                return;
+            if (this.noWait)
+                this.channel.exchangeBindNoWait(destination, source, routingKey, arguments);
+            else
+                this.channel.exchangeBind(destination, source, routingKey, arguments);
+            this.lastExchange = destination;
+            this.lastQueue = null;
+        }
+
+        /**
+         * 定义队列及延迟队列, 不修改 config
+         *
+         * @param config QueueConfig
+         * @throws Exception Exception
+         */
+        public void queue(QueueConfig config) throws Exception {
+            String routingKey = config.RoutingKey == null ? "" : config.RoutingKey;
+            this.queue(config.Queue, config.Durable, config.Exclusive, config.AutoDelete, config.QueueArguments);
+            this.bind(config.Queue, config.Exchange, routingKey, config.BindArguments);
+            if (config.DelayLevels > 0 && !(config.DelayQueue == null || config.DelayQueue.isEmpty())
+                    && !config.Queue.equals(config.DelayQueue)) {
+                this.tiers(config, routingKey);
+                return;
+            }
+            if (hasDelayQueue(config)) {
+                Map<String, Object> dic = new HashMap<String, Object>(2);
+                dic.put("x-dead-letter-exchange", config.Exchange);
+                dic.put("x-dead-letter-routing-key", routingKey);
+                this.queue(config.DelayQueue, config.Durable, config.Exclusive, config.AutoDelete, dic);
+                this.bind(config.DelayQueue, config.Exchange,
+                        config.DelayRoutingKey == null ? "" : config.DelayRoutingKey, null);
+            }
+        }
+
+        /**
+         * 定义分级延迟交换器/队列, 见 DelayTiers
+         *
+         * @param config     QueueConfig
+         * @param routingKey 目标路由key
+         * @throws Exception Exception
+         */
+        private void tiers(QueueConfig config, String routingKey) throws Exception {
+            DelayTiers.check(config.DelayLevels);
+            String delayQueue = config.DelayQueue;
+            int levels = config.DelayLevels;
+            // 出口队列, 到达即过期, 死信到目标队列
+            Map<String, Object> dic = new HashMap<String, Object>(3);
+            dic.put("x-message-ttl", 0);
+            dic.put("x-dead-letter-exchange", config.Exchange);
+            dic.put("x-dead-letter-routing-key", routingKey);
+            this.queue(delayQueue, config.Durable, config.Exclusive, config.AutoDelete, dic);
+            for (int level = 0; level < levels; level++)
+                this.exchange(DelayTiers.name(delayQueue, level), "topic", config.Durable, false, null);
+            for (int level = 0; level < levels; level++) {
+                String name = DelayTiers.name(delayQueue, level);
+                dic = new HashMap<String, Object>(3);
+                dic.put("x-message-ttl", DelayTiers.ttl(level));
+                if (level > 0) {
+                    dic.put("x-dead-letter-exchange", DelayTiers.name(delayQueue, level - 1));
+                } else {
+                    dic.put("x-dead-letter-exchange", "");
+                    dic.put("x-dead-letter-routing-key", delayQueue);
+                }
+                this.queue(name, config.Durable, config.Exclusive, config.AutoDelete, dic);
+                this.bind(name, name, DelayTiers.pattern(levels, level, true), null);
+                if (level > 0)
+                    this.exchangeBind(DelayTiers.name(delayQueue, level - 1), name,
+                            DelayTiers.pattern(levels, level, false), null);
+                else
+                    this.bind(delayQueue, name, DelayTiers.pattern(levels, level, false), null);
+            }
+        }
+
+        /**
+         * 完成, noWait 时同步等待 broker 处理完之前的定义, 出错时通道已关闭并抛出异常, 成功后写入缓存
+         *
+         * @throws Exception Exception
+         */
+        public void commit() throws Exception {
+            if (this.pending.isEmpty())
+                return;
+            // 同一通道上的命令按顺序处理, 被动定义返回即之前的定义都已成功
+            if (this.noWait) {
+                if (this.lastQueue != null)
+                    this.channel.queueDeclarePassive(this.lastQueue);
+                else if (this.lastExchange != null)
+                    this.channel.exchangeDeclarePassive(this.lastExchange);
+            }
+            if (this.cache)
+                declared.addAll(this.pending);
+            this.pending.clear();
+        }
+    }
+}
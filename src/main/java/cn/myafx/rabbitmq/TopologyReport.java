@@ -0,0 +1,53 @@
+package cn.myafx.rabbitmq;
+
+import java.util.*;
+
+/**
+ * 并行定义拓扑结果
+ */
+public class TopologyReport {
+    /**
+     * 并行通道数
+     */
+    public int Parallelism;
+    /**
+     * 交换器数
+     */
+    public int ExchangeCount;
+    /**
+     * 队列数(不含延迟队列)
+     */
+    public int QueueCount;
+    /**
+     * 定义交换器耗时, 毫秒
+     */
+    public long ExchangeMillis;
+    /**
+     * 定义队列耗时, 毫秒
+     */
+    public long QueueMillis;
+    /**
+     * 总耗时, 毫秒
+     */
+    public long TotalMillis;
+    /**
+     * 失败的定义, key 为 exchange(name) / queue(name)
+     */
+    public Map<String, String> Errors = new LinkedHashMap<>();
+
+    /**
+     * 是否全部成功
+     *
+     * @return boolean
+     */
+    public boolean isSuccess() {
+        return this.Errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "exchanges " + this.ExchangeCount + " in " + this.ExchangeMillis + "ms, queues " + this.QueueCount
+                + " in " + this.QueueMillis + "ms, total " + this.TotalMillis + "ms, parallelism "
+                + this.Parallelism + ", errors " + this.Errors.size();
+    }
+}
@@ -0,0 +1,85 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncPublisherTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        this.factory.close();
+    }
+
+    @Test
+    public void publishesInOrder() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("async.pub"));
+        this.pool.setAsyncPublish(100, 1, 10, 50, null);
+        List<String> got = Collections.synchronizedList(new ArrayList<>());
+        this.pool.sub(LocalTests.hander(got::add), "async.pub", false);
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            sent.add("m" + i);
+            this.pool.pub("m" + i, "async.pub", null, null, null, null);
+        }
+
+        assertTrue(LocalTests.await(() -> got.size() == 25, 5000));
+        assertEquals(sent, got);
+        assertEquals(0, this.pool.getAsyncPublishQueueSize());
+    }
+
+    @Test
+    public void failedBatchIsReportedWithoutOutbox() throws Exception {
+        var failed = new CompletableFuture<Map<String, Object>>();
+        this.pool.setPoolExceptionHander((ex, detail) -> failed.complete(detail));
+        this.pool.setAsyncPublish(100, 1, 10, 50, null);
+        for (int i = 0; i < 3; i++)
+            this.pool.pub("m" + i, "rk", null, "async.missing", null, null);
+
+        var detail = failed.get(5, TimeUnit.SECONDS);
+        assertEquals("async.missing", detail.get("exchange"));
+        assertEquals(3, detail.get("count"));
+    }
+
+    @Test
+    public void failedBatchGoesToOutbox() throws Exception {
+        this.pool.setOutbox(this.folder.newFolder("outbox").getAbsolutePath(), 4096, 4, 50);
+        this.pool.setAsyncPublish(100, 1, 10, 50, null);
+        for (int i = 0; i < 3; i++)
+            this.pool.pub("m" + i, "async.retry", null, "async.later", null, null);
+        assertTrue(LocalTests.await(() -> this.pool.getOutboxSize() == 3, 5000));
+
+        // 阻塞发布期间定义交换器和绑定, 避免落盘队列在绑定前重发
+        this.factory.setBlocked(true);
+        this.pool.exchangeDeclare("async.later", "direct", null, null, null);
+        var queue = LocalTests.queue("async.retry");
+        queue.Exchange = "async.later";
+        this.pool.queueDeclare(queue);
+        this.factory.setBlocked(false);
+        assertTrue(LocalTests.await(() -> this.factory.getMessageCount("async.retry") == 3, 5000));
+        assertEquals(0, this.pool.getOutboxSize());
+    }
+}
@@ -0,0 +1,94 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.BasicProperties;
+
+public class BytesMapperTest {
+    public static class Dto {
+        public String Name;
+        public int Count;
+    }
+
+    private LocalConnectionFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.factory.close();
+    }
+
+    private static Dto roundTrip(MQPool pool, String queue) throws Exception {
+        pool.queueDeclare(LocalTests.queue(queue));
+        var got = new CompletableFuture<Dto>();
+        var contentType = new CompletableFuture<String>();
+        pool.sub(new ISubHander<Dto>() {
+            @Override
+            public boolean hander(Dto m, BasicProperties properties) throws Exception {
+                contentType.complete(properties.getContentType());
+                return got.complete(m);
+            }
+
+            @Override
+            public Class<Dto> getTClass() {
+                return Dto.class;
+            }
+        }, queue, false);
+        var m = new Dto();
+        m.Name = "afx";
+        m.Count = 3;
+        pool.pub(m, queue, null, null, null, null);
+        assertEquals(CodecRegistry.JSON, contentType.get(5, TimeUnit.SECONDS));
+        return got.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void bytesMapperRoundTrip() throws Exception {
+        try (var pool = LocalTests.newPool(this.factory)) {
+            var m = roundTrip(pool, "bytes.q");
+            assertEquals("afx", m.Name);
+            assertEquals(3, m.Count);
+        }
+    }
+
+    @Test
+    public void jsonMapperIsAdapted() throws Exception {
+        try (var pool = new MQPool(this.factory, null, "test", new IJsonMapper() {
+            @Override
+            public <T> String serialize(T m) throws Exception {
+                return JsonUtils.serialize(m);
+            }
+
+            @Override
+            public <T> T deserialize(String json, Class<T> clazz) throws Exception {
+                return JsonUtils.deserialize(json, clazz);
+            }
+        })) {
+            var m = roundTrip(pool, "json.q");
+            assertEquals("afx", m.Name);
+            assertEquals(3, m.Count);
+        }
+    }
+
+    @Test
+    public void rawBytesPassThrough() throws Exception {
+        try (var pool = LocalTests.newPool(this.factory)) {
+            var body = new byte[] { 1, 2, 3 };
+            var dto = pool.serialize(body, null);
+            assertSame(body, dto.body);
+            assertEquals(CodecRegistry.OCTET_STREAM, dto.contentType);
+            assertSame(body, pool.deserialize(body, dto.contentType, null, byte[].class));
+        }
+    }
+}
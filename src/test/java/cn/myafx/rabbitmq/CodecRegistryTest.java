@@ -0,0 +1,155 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.BasicProperties;
+
+public class CodecRegistryTest {
+    public static class Dto {
+        public String Name;
+        public int Count;
+    }
+
+    static final String PIPE = "text/x-pipe";
+
+    /**
+     * Name|Count
+     */
+    static class PipeMapper implements IBytesMapper {
+        @Override
+        public <T> byte[] serializeBytes(T m) throws Exception {
+            var dto = (Dto) m;
+            return (dto.Name + "|" + dto.Count).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public <T> void serialize(T m, OutputStream stream) throws Exception {
+            stream.write(this.serializeBytes(m));
+        }
+
+        @Override
+        public <T> T deserialize(byte[] buffer, int offset, int length, Class<T> clazz) throws Exception {
+            var arr = new String(buffer, offset, length, StandardCharsets.UTF_8).split("\\|");
+            var dto = new Dto();
+            dto.Name = arr[0];
+            dto.Count = Integer.parseInt(arr[1]);
+            return clazz.cast(dto);
+        }
+
+        @Override
+        public <T> T deserialize(InputStream stream, Class<T> clazz) throws Exception {
+            var buffer = stream.readAllBytes();
+            return this.deserialize(buffer, 0, buffer.length, clazz);
+        }
+    }
+
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+        this.pool.registerCodec(PIPE, new PipeMapper());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        this.factory.close();
+    }
+
+    private static Dto dto(String name, int count) {
+        var m = new Dto();
+        m.Name = name;
+        m.Count = count;
+        return m;
+    }
+
+    private CompletableFuture<Dto> sub(String queue, CompletableFuture<String> contentType) throws Exception {
+        this.pool.queueDeclare(LocalTests.queue(queue));
+        var got = new CompletableFuture<Dto>();
+        this.pool.sub(new ISubHander<Dto>() {
+            @Override
+            public boolean hander(Dto m, BasicProperties properties) throws Exception {
+                contentType.complete(properties.getContentType());
+                return got.complete(m);
+            }
+
+            @Override
+            public Class<Dto> getTClass() {
+                return Dto.class;
+            }
+        }, queue, false);
+        return got;
+    }
+
+    @Test
+    public void pubConfigContentTypeSelectsCodec() throws Exception {
+        var contentType = new CompletableFuture<String>();
+        var got = this.sub("codec.config", contentType);
+        var config = new PubConfig();
+        config.RoutingKey = "codec.config";
+        config.ContentType = PIPE;
+        this.pool.pub(dto("afx", 7), config, null, null, null);
+
+        assertEquals(PIPE, contentType.get(5, TimeUnit.SECONDS));
+        var m = got.get(5, TimeUnit.SECONDS);
+        assertEquals("afx", m.Name);
+        assertEquals(7, m.Count);
+    }
+
+    @Test
+    public void typeDefaultContentType() throws Exception {
+        this.pool.registerCodec(Dto.class, PIPE);
+        var body = this.pool.serialize(dto("afx", 2), null);
+        assertEquals(PIPE, body.contentType);
+        assertEquals("afx|2", new String(body.body, StandardCharsets.UTF_8));
+
+        var contentType = new CompletableFuture<String>();
+        var got = this.sub("codec.type", contentType);
+        this.pool.pub(dto("afx", 3), "codec.type", null, null, null, null);
+        assertEquals(PIPE, contentType.get(5, TimeUnit.SECONDS));
+        assertEquals(3, got.get(5, TimeUnit.SECONDS).Count);
+    }
+
+    @Test
+    public void unknownContentTypeFallsBackToJson() throws Exception {
+        var body = this.pool.serialize(dto("afx", 5), null);
+        assertEquals(CodecRegistry.JSON, body.contentType);
+        var m = this.pool.deserialize(body.body, "application/x-unknown", null, Dto.class);
+        assertEquals("afx", m.Name);
+        assertEquals(5, m.Count);
+        m = this.pool.deserialize(body.body, null, null, Dto.class);
+        assertEquals(5, m.Count);
+    }
+
+    @Test(expected = Exception.class)
+    public void typeRequiresRegisteredCodec() throws Exception {
+        this.pool.registerCodec(Dto.class, "application/x-unknown");
+    }
+
+    @Test
+    public void pubDelayListUsesDelayRoutingKey() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("codec.target"));
+        this.pool.queueDeclare(LocalTests.queue("codec.delay"));
+        var config = new PubConfig();
+        config.RoutingKey = "codec.target";
+        config.DelayRoutingKey = "codec.delay";
+        this.pool.pubDelay(List.of("a", "b"), config, 60, null, null);
+
+        assertEquals(2, this.factory.getMessageCount("codec.delay"));
+        assertEquals(0, this.factory.getMessageCount("codec.target"));
+    }
+}
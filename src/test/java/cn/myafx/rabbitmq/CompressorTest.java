@@ -0,0 +1,85 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.BasicProperties;
+
+public class CompressorTest {
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        this.factory.close();
+    }
+
+    private static String text(int length) {
+        var sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            sb.append((char) ('a' + i % 7));
+        return sb.toString();
+    }
+
+    @Test
+    public void gzipAndDeflateRoundTrip() throws Exception {
+        var body = text(4096).getBytes(StandardCharsets.UTF_8);
+        for (var compressor : new ICompressor[] { new GzipCompressor(), new DeflateCompressor() }) {
+            var compressed = compressor.compress(body);
+            assertTrue(compressor.getEncoding(), compressed.length < body.length);
+            assertArrayEquals(body, compressor.decompress(compressed));
+        }
+    }
+
+    @Test
+    public void compressesFromThreshold() throws Exception {
+        this.pool.setCompressor(new GzipCompressor(), 100);
+        var small = this.pool.serialize(text(99), null);
+        assertEquals("utf-8", small.contentEncoding);
+        assertEquals(99, small.body.length);
+
+        var large = this.pool.serialize(text(100), null);
+        assertEquals(GzipCompressor.ENCODING, large.contentEncoding);
+        assertEquals(text(100), this.pool.deserialize(large.body, large.contentType, large.contentEncoding,
+                String.class));
+    }
+
+    @Test
+    public void subscriberDecompresses() throws Exception {
+        this.pool.setCompressor(new DeflateCompressor(), 10);
+        this.pool.queueDeclare(LocalTests.queue("zip.q"));
+        var got = new CompletableFuture<String>();
+        var encoding = new CompletableFuture<String>();
+        this.pool.sub(new ISubHander<String>() {
+            @Override
+            public boolean hander(String m, BasicProperties properties) throws Exception {
+                encoding.complete(properties.getContentEncoding());
+                return got.complete(m);
+            }
+
+            @Override
+            public Class<String> getTClass() {
+                return String.class;
+            }
+        }, "zip.q", false);
+        var m = text(2048);
+        this.pool.pub(m, "zip.q", null, null, null, null);
+
+        assertEquals(m, got.get(5, TimeUnit.SECONDS));
+        assertEquals(new DeflateCompressor().getEncoding(), encoding.get(5, TimeUnit.SECONDS));
+    }
+}
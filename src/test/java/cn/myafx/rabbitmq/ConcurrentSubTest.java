@@ -0,0 +1,91 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentSubTest {
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        this.factory.close();
+    }
+
+    private static SubConfig config(String queue, int concurrency, int prefetchCount) {
+        var config = new SubConfig();
+        config.Queue = queue;
+        config.Concurrency = concurrency;
+        config.PrefetchCount = prefetchCount;
+        return config;
+    }
+
+    @Test
+    public void handlersRunInParallelUpToConcurrency() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("conc.q"));
+        var active = new AtomicInteger();
+        var max = new AtomicInteger();
+        var handled = new AtomicInteger();
+        this.pool.sub(LocalTests.hander(m -> {
+            max.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ex) {
+            }
+            active.decrementAndGet();
+            handled.incrementAndGet();
+            return true;
+        }), config("conc.q", 4, 8), false);
+        for (int i = 0; i < 16; i++)
+            this.pool.pub("m" + i, "conc.q", null, null, null, null);
+
+        assertTrue(LocalTests.await(() -> handled.get() == 16, 5000));
+        assertEquals(4, max.get());
+    }
+
+    @Test
+    public void rejectPolicyDropsWhenWorkQueueFull() throws Exception {
+        this.pool.setMetrics(false, null);
+        this.pool.queueDeclare(LocalTests.queue("conc.reject"));
+        var release = new CountDownLatch(1);
+        var handled = new AtomicInteger();
+        var config = config("conc.reject", 2, 10);
+        config.QueueCapacity = 1;
+        config.RejectPolicy = SubRejectPolicy.Reject;
+        this.pool.sub(LocalTests.hander(m -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+            }
+            handled.incrementAndGet();
+            return true;
+        }), config, false);
+        for (int i = 0; i < 10; i++)
+            this.pool.pub("m" + i, "conc.reject", null, null, null, null);
+
+        // 2 条处理中, 1 条排队, 其余被拒绝丢弃; 等全部投递完再放行, 否则放行后到达的消息会被处理
+        assertTrue(LocalTests.await(() -> {
+            var sub = this.pool.getMetrics().snapshot().Sub.get("conc.reject");
+            return sub != null && sub.Rejects == 7;
+        }, 5000));
+        assertEquals(0, this.factory.getMessageCount("conc.reject"));
+        release.countDown();
+        assertTrue(LocalTests.await(() -> handled.get() == 3, 2000));
+        Thread.sleep(100);
+        assertEquals(3, handled.get());
+    }
+}
@@ -0,0 +1,63 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionShardingTest {
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        this.factory.close();
+    }
+
+    @Test
+    public void pubAndSubUseSeparateShards() throws Exception {
+        this.pool.setConnectionCount(3, 2, ConnectionSelector.RoundRobin);
+        var handled = new AtomicInteger();
+        for (var queue : List.of("shard.a", "shard.b")) {
+            this.pool.queueDeclare(LocalTests.queue(queue));
+            this.pool.sub(LocalTests.hander(m -> handled.incrementAndGet() > 0), queue, false);
+        }
+        for (int i = 0; i < 6; i++)
+            this.pool.pub("m" + i, i % 2 == 0 ? "shard.a" : "shard.b", null, null, null, null);
+
+        assertTrue(LocalTests.await(() -> handled.get() == 6, 5000));
+        var names = this.factory.getConnectionNames();
+        assertEquals(names.toString(), 5, names.size());
+        assertTrue(names.containsAll(List.of("test-pub-0", "test-pub-1", "test-pub-2", "test-sub-0", "test-sub-1")));
+    }
+
+    @Test(expected = Exception.class)
+    public void connectionCountIsFixedAfterFirstUse() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("shard.c"));
+        this.pool.setConnectionCount(2, null, null);
+    }
+
+    @Test
+    public void selectors() {
+        int count = 4;
+        var loads = new AtomicIntegerArray(new int[] { 3, 1, 0, 2 });
+        assertEquals(2, ConnectionSelector.LeastLoaded.select(null, count, loads));
+        int index = ConnectionSelector.KeyHash.select("order.created", count, loads);
+        assertEquals(index, ConnectionSelector.KeyHash.select("order.created", count, loads));
+        assertEquals(0, ConnectionSelector.KeyHash.select(null, count, loads));
+        int first = ConnectionSelector.RoundRobin.select(null, count, loads);
+        assertEquals((first + 1) % count, ConnectionSelector.RoundRobin.select(null, count, loads));
+    }
+}
@@ -0,0 +1,52 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DelayTiersTest {
+
+    @Test
+    public void routingKeyAndExchange() {
+        assertEquals("0.1.0.1", DelayTiers.routingKey(4, 5));
+        assertEquals("dq.2", DelayTiers.exchange("dq", 5));
+        assertEquals("*.1.#", DelayTiers.pattern(3, 1, true));
+        assertEquals(15, DelayTiers.maxDelay(4));
+    }
+
+    @Test
+    public void shortDelayNotBlockedByLongDelay() throws Exception {
+        var factory = new LocalConnectionFactory();
+        try (var pool = LocalTests.newPool(factory)) {
+            var queue = LocalTests.queue("tier.q");
+            queue.DelayQueue = "tier.q.delay";
+            queue.DelayLevels = 3;
+            pool.queueDeclare(queue);
+            var config = new PubConfig();
+            config.RoutingKey = "tier.q";
+            config.DelayQueue = "tier.q.delay";
+            config.DelayLevels = 3;
+
+            List<String> got = Collections.synchronizedList(new ArrayList<>());
+            long start = System.currentTimeMillis();
+            long[] shortAt = new long[1];
+            pool.sub(LocalTests.hander(m -> {
+                if (m.equals("d1"))
+                    shortAt[0] = System.currentTimeMillis() - start;
+                return got.add(m);
+            }), "tier.q", false);
+            pool.pubDelay("d5", config, 5, null, null);
+            pool.pubDelay("d1", config, 1, null, null);
+
+            assertTrue(LocalTests.await(() -> got.size() == 2, 8000));
+            assertEquals(List.of("d1", "d5"), got);
+            assertTrue("d1 arrived after " + shortAt[0] + "ms", shortAt[0] < 2500);
+        } finally {
+            factory.close();
+        }
+    }
+}
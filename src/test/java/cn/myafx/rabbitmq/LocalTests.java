@@ -0,0 +1,75 @@
+package cn.myafx.rabbitmq;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.BasicProperties;
+
+/**
+ * 基于 LocalConnectionFactory 的测试辅助
+ */
+final class LocalTests {
+    private LocalTests() {
+    }
+
+    /**
+     * 使用进程内 broker 的 pool
+     */
+    static MQPool newPool(LocalConnectionFactory factory) throws Exception {
+        return new MQPool(factory, null, "test", new JacksonBytesMapper(new ObjectMapper()));
+    }
+
+    /**
+     * 绑定到 amq.direct, routingKey 与队列同名
+     */
+    static QueueConfig queue(String name) {
+        var config = new QueueConfig();
+        config.Queue = name;
+        config.RoutingKey = name;
+        config.Exchange = "amq.direct";
+        return config;
+    }
+
+    static ISubHander<String> hander(Predicate<String> fn) {
+        return new ISubHander<String>() {
+            @Override
+            public boolean hander(String m, BasicProperties properties) throws Exception {
+                return fn.test(m);
+            }
+
+            @Override
+            public Class<String> getTClass() {
+                return String.class;
+            }
+        };
+    }
+
+    static ISubBatchHander<String> batchHander(Predicate<List<String>> fn) {
+        return new ISubBatchHander<String>() {
+            @Override
+            public boolean hander(List<String> list, List<BasicProperties> properties) throws Exception {
+                return fn.test(list);
+            }
+
+            @Override
+            public Class<String> getTClass() {
+                return String.class;
+            }
+        };
+    }
+
+    /**
+     * 等待条件成立
+     */
+    static boolean await(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MQBatchConsumerTest {
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.pool != null)
+            this.pool.close();
+        this.factory.close();
+    }
+
+    @Test
+    public void multipleAckConfirmsWholeBatch() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("batch.ack"));
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        this.pool.sub(LocalTests.batchHander(list -> sizes.add(list.size())), "batch.ack", 10, 50);
+        for (int i = 0; i < 25; i++)
+            this.pool.pub("m" + i, "batch.ack", null, null, null, null);
+
+        assertTrue(LocalTests.await(() -> sizes.stream().mapToInt(Integer::intValue).sum() == 25, 5000));
+        assertEquals(List.of(10, 10, 5), sizes);
+        // 未确认的消息在通道关闭后重新入队
+        this.pool.close();
+        this.pool = null;
+        assertEquals(0, this.factory.getMessageCount("batch.ack"));
+    }
+
+    @Test
+    public void splitOnFailRetriesOneByOne() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("batch.split"));
+        Set<String> handled = ConcurrentHashMap.newKeySet();
+        var config = new SubConfig();
+        config.Queue = "batch.split";
+        config.BatchSize = 5;
+        config.BatchLingerMs = 50;
+        config.BatchSplitOnFail = true;
+        this.pool.sub(LocalTests.batchHander(list -> {
+            if (list.contains("bad"))
+                return false;
+            handled.addAll(list);
+            return true;
+        }), config);
+        for (var m : List.of("a", "b", "bad", "c", "d"))
+            this.pool.pub(m, "batch.split", null, null, null, null);
+
+        assertTrue(LocalTests.await(() -> handled.size() == 4, 5000));
+        assertEquals(Set.of("a", "b", "c", "d"), handled);
+        this.pool.close();
+        this.pool = null;
+        // 只有失败的一条被 nack 重新入队
+        assertEquals(1, this.factory.getMessageCount("batch.split"));
+    }
+
+    @Test
+    public void slowLingerFlushDoesNotStallOtherSubscriptions() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("batch.slow"));
+        this.pool.queueDeclare(LocalTests.queue("batch.fast"));
+        var release = new CountDownLatch(1);
+        List<Integer> slow = Collections.synchronizedList(new ArrayList<>());
+        this.pool.sub(LocalTests.batchHander(list -> {
+            slow.add(list.size());
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                return false;
+            }
+        }), "batch.slow", 100, 10);
+        var fast = new CountDownLatch(5);
+        this.pool.sub(LocalTests.batchHander(list -> {
+            list.forEach(m -> fast.countDown());
+            return true;
+        }), "batch.fast", 100, 10);
+
+        this.pool.pub("s0", "batch.slow", null, null, null, null);
+        assertTrue(LocalTests.await(() -> slow.size() == 1, 2000));
+        for (int i = 0; i < 5; i++) {
+            this.pool.pub("f" + i, "batch.fast", null, null, null, null);
+            this.pool.pub("s" + (i + 1), "batch.slow", null, null, null, null);
+        }
+        // 慢批次处理期间, 其他订阅按时处理, 本订阅继续攒批
+        assertTrue(fast.await(1, TimeUnit.SECONDS));
+        release.countDown();
+        assertTrue(LocalTests.await(() -> slow.size() == 2, 2000));
+        assertEquals(List.of(1, 5), slow);
+    }
+}
@@ -0,0 +1,137 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class MQConfigTest {
+    private static final String XML = """
+            <?xml version="1.0" encoding="utf-8"?>
+            <xml>
+                <Exchange>
+                    <Key exchange="cfg.ex" type="topic" durable="false" autoDelete="1">
+                        <Arguments key="alternate-exchange" value="cfg.ae" />
+                    </Key>
+                </Exchange>
+                <Queue>
+                    <Key queue="cfg.q" routingKey="cfg.q.{0}" delayQueue="cfg.q.delay"
+                        delayRoutingKey="cfg.q.delay.{0}" exchange="amq.direct" isRoutingKeyParam="true">
+                        <QueueArguments key="x-max-length" value="100" />
+                        <BindArguments key="x-match" value="all" />
+                    </Key>
+                </Queue>
+                <Pub>
+                    <Key name="CfgDto" routingKey="cfg.q.{0}" delayRoutingKey="cfg.q.delay.{0}"
+                        exchange="amq.direct" isRoutingKeyParam="true" contentType="application/json" />
+                </Pub>
+                <Sub>
+                    <Key name="CfgDto" queue="cfg.q" prefetchCount="5" concurrency="2" />
+                    <Key name="CfgParam" queue="cfg.p" isQueueParam="true" />
+                </Sub>
+            </xml>
+            """;
+
+    private static MQConfig load(String xml) throws Exception {
+        return new MQConfig(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void loadsAllSections() throws Exception {
+        try (var config = load(XML)) {
+            var ex = config.getExchanges().get(0);
+            assertEquals("cfg.ex", ex.Exchange);
+            assertEquals("topic", ex.Type);
+            assertFalse(ex.Durable);
+            assertTrue(ex.AutoDelete);
+            assertEquals("cfg.ae", ex.Arguments.get("alternate-exchange"));
+
+            var q = config.getQueues().get(0);
+            assertEquals("cfg.q.{0}", q.RoutingKey);
+            assertTrue(q.IsRoutingKeyParam);
+            assertEquals("100", q.QueueArguments.get("x-max-length"));
+            assertEquals("all", q.BindArguments.get("x-match"));
+
+            var pub = config.getPubConfig("CfgDto");
+            assertEquals("application/json", pub.ContentType);
+            assertTrue(pub.IsRoutingKeyParam);
+            var sub = config.getSubConfig("CfgDto");
+            assertEquals(5, sub.PrefetchCount);
+            assertEquals(2, sub.Concurrency);
+            assertNull(config.getSubConfig("Missing"));
+            assertNull(config.getSubHandle("Missing"));
+        }
+    }
+
+    @Test(expected = Exception.class)
+    public void repeatKeyThrows() throws Exception {
+        load("<xml><Pub><Key name=\"A\" routingKey=\"a\" /><Key name=\"A\" routingKey=\"b\" /></Pub></xml>");
+    }
+
+    @Test
+    public void viewsAndHandlesAreShared() throws Exception {
+        try (var config = load(XML)) {
+            assertSame(config.getExchanges(), config.getExchanges());
+            assertSame(config.getQueues(), config.getQueues());
+            assertSame(config.getPubHandle("CfgDto"), config.getPubHandle("CfgDto"));
+            assertSame(config.getSubHandle("CfgDto"), config.getSubHandle("CfgDto"));
+            try {
+                config.getQueues().clear();
+                fail();
+            } catch (UnsupportedOperationException ex) {
+            }
+
+            // getPubConfig/getSubConfig 返回可修改的副本
+            config.getSubConfig("CfgDto").PrefetchCount = 99;
+            assertEquals(5, config.getSubConfig("CfgDto").PrefetchCount);
+            assertEquals(5, config.getSubHandle("CfgDto").PrefetchCount);
+        }
+    }
+
+    @Test
+    public void pubHandleResolvesRoutingAndProperties() throws Exception {
+        try (var config = load(XML)) {
+            var handle = config.getPubHandle("CfgDto");
+            assertEquals("cfg.q.7", handle.routingKey(new Object[] { 7 }));
+            assertSame(handle.routingKey(new Object[] { 7 }), handle.routingKey(new Object[] { 7 }));
+            assertEquals("cfg.q.delay.7", handle.delayRoutingKey(new Object[] { 7 }));
+            assertEquals("cfg.q.{0}", handle.routingKey(null));
+
+            var cache = new PropertiesCache();
+            var p = handle.properties(cache, "application/json", "utf-8", null, true);
+            assertEquals("application/json", p.getContentType());
+            assertSame(p, handle.properties(cache, "application/json", "utf-8", null, true));
+            assertEquals("text/plain", handle.properties(cache, "text/plain", "utf-8", null, false).getContentType());
+        }
+    }
+
+    @Test
+    public void poolUsesHandles() throws Exception {
+        var factory = new LocalConnectionFactory();
+        try (var config = load(XML); var pool = LocalTests.newPool(factory)) {
+            var queue = LocalTests.queue("cfg.q.7");
+            pool.queueDeclare(queue);
+            pool.pub("m", config.getPubHandle("CfgDto"), new Object[] { 7 }, null, null, null);
+            assertEquals(1, factory.getMessageCount("cfg.q.7"));
+
+            pool.queueDeclare(LocalTests.queue("cfg.p.3"));
+            pool.pub("p", "cfg.p.3", null, null, null, null);
+            var got = new CompletableFuture<String>();
+            pool.sub(LocalTests.hander(got::complete), config.getSubHandle("CfgParam"), new Object[] { 3 }, false);
+            assertEquals("p", got.get(5, TimeUnit.SECONDS));
+
+            try {
+                pool.sub(LocalTests.hander(m -> true), config.getSubHandle("CfgDto"), new Object[] { 3 }, false);
+                fail();
+            } catch (Exception ex) {
+                assertTrue(ex.getMessage().contains("is not param"));
+            }
+        } finally {
+            factory.close();
+        }
+    }
+}
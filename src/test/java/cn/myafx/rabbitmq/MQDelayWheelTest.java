@@ -0,0 +1,76 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MQDelayWheelTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalConnectionFactory factory;
+    private PubConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        try (var pool = LocalTests.newPool(this.factory)) {
+            var queue = LocalTests.queue("wheel.q");
+            queue.DelayQueue = "wheel.q.delay";
+            queue.DelayRoutingKey = "wheel.q.delay";
+            pool.queueDeclare(queue);
+        }
+        this.config = new PubConfig();
+        this.config.RoutingKey = "wheel.q";
+        this.config.DelayRoutingKey = "wheel.q.delay";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.factory.close();
+    }
+
+    @Test
+    public void firesInDelayOrder() throws Exception {
+        try (var pool = LocalTests.newPool(this.factory)) {
+            pool.setDelayWheel(2000, null, null, null, null, null);
+            List<String> got = Collections.synchronizedList(new ArrayList<>());
+            pool.sub(LocalTests.hander(got::add), "wheel.q", false);
+            long start = System.currentTimeMillis();
+            pool.pubDelayMillis("m300", this.config, null, 300L, null, null);
+            pool.pubDelayMillis("m100", this.config, null, 100L, null, null);
+            assertEquals(2, pool.getDelayWheelSize());
+
+            assertTrue(LocalTests.await(() -> got.size() == 2, 2000));
+            assertEquals(List.of("m100", "m300"), got);
+            assertTrue(System.currentTimeMillis() - start < 1000);
+            assertEquals(0, pool.getDelayWheelSize());
+        }
+    }
+
+    @Test
+    public void persistedMessagesReloadAfterRestart() throws Exception {
+        var dir = this.folder.newFolder("wheel").getAbsolutePath();
+        try (var pool = LocalTests.newPool(this.factory)) {
+            pool.setDelayWheel(10000, 10, null, dir, 4096, 4);
+            for (int i = 0; i < 5; i++)
+                pool.pubDelayMillis("p" + i, this.config, null, 1000L, null, null);
+            assertEquals(5, pool.getDelayWheelSize());
+        }
+        assertEquals(0, this.factory.getMessageCount("wheel.q"));
+
+        try (var pool = LocalTests.newPool(this.factory)) {
+            pool.setDelayWheel(10000, 10, null, dir, 4096, 4);
+            assertEquals(5, pool.getDelayWheelSize());
+            assertTrue(LocalTests.await(() -> this.factory.getMessageCount("wheel.q") == 5, 5000));
+        }
+    }
+}
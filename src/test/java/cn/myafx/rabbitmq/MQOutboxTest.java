@@ -0,0 +1,84 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MQOutboxTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalConnectionFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.factory.close();
+    }
+
+    @Test
+    public void replayAfterRestart() throws Exception {
+        var dir = this.folder.newFolder("outbox").getAbsolutePath();
+        try (var pool = LocalTests.newPool(this.factory)) {
+            pool.queueDeclare(LocalTests.queue("outbox.q"));
+            pool.setOutbox(dir, 4096, 4, 100);
+            this.factory.setBlocked(true);
+            for (int i = 0; i < 10; i++)
+                pool.pub("m" + i, "outbox.q", null, null, null, null);
+            assertEquals(10, pool.getOutboxSize());
+            assertEquals(0, this.factory.getMessageCount("outbox.q"));
+        }
+
+        this.factory.setBlocked(false);
+        try (var pool = LocalTests.newPool(this.factory)) {
+            pool.setOutbox(dir, 4096, 4, 100);
+            assertTrue(LocalTests.await(() -> this.factory.getMessageCount("outbox.q") == 10, 5000));
+            assertTrue(LocalTests.await(() -> pool.getOutboxSize() == 0, 5000));
+        }
+    }
+
+    @Test
+    public void interruptedBatchStopsPublishing() throws Exception {
+        try (var pool = LocalTests.newPool(this.factory)) {
+            pool.queueDeclare(LocalTests.queue("outbox.i"));
+            List<PubMessage> batch = new ArrayList<>();
+            for (int i = 0; i < 3; i++)
+                batch.add(new PubMessage("amq.direct", "outbox.i", null, new byte[] { (byte) i }));
+            this.factory.setBlocked(true);
+            var done = new CompletableFuture<Boolean>();
+            var thread = new Thread(() -> {
+                try {
+                    done.complete(pool.publishConfirm(batch));
+                } catch (Exception ex) {
+                    done.completeExceptionally(ex);
+                }
+            });
+            thread.start();
+            Thread.sleep(100);
+            // 中断后余下消息不再发布, 不会阻塞到 broker 解除阻塞
+            thread.interrupt();
+            try {
+                done.get(2, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException ex) {
+            }
+            this.factory.setBlocked(false);
+            thread.join(2000);
+            assertEquals(0, this.factory.getMessageCount("outbox.i"));
+        }
+    }
+}
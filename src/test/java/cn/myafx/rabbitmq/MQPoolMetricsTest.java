@@ -0,0 +1,89 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MQPoolMetricsTest {
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        this.factory.close();
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        assertNull(this.pool.getMetrics());
+        this.pool.setMetrics(null, null);
+        assertNotNull(this.pool.getMetrics());
+    }
+
+    @Test(expected = Exception.class)
+    public void enableTwiceThrows() throws Exception {
+        this.pool.setMetrics(null, null);
+        this.pool.setMetrics(null, null);
+    }
+
+    @Test
+    public void pubAndSubCounts() throws Exception {
+        this.pool.setMetrics(false, null);
+        this.pool.queueDeclare(LocalTests.queue("metrics.q"));
+        var failed = new AtomicBoolean();
+        this.pool.sub(LocalTests.hander(m -> {
+            // 第一次处理 bad 抛出异常, nack 重新投递后确认
+            if (m.equals("bad") && failed.compareAndSet(false, true))
+                throw new IllegalStateException(m);
+            return true;
+        }), "metrics.q", false);
+        for (var m : new String[] { "a", "b", "bad" })
+            this.pool.pub(m, "metrics.q", null, null, null, null);
+
+        assertTrue(LocalTests.await(() -> {
+            var sub = this.pool.getMetrics().snapshot().Sub.get("metrics.q");
+            return sub != null && sub.Acks == 3;
+        }, 5000));
+        var snapshot = this.pool.getMetrics().snapshot();
+        var pub = snapshot.Pub.get("amq.direct/metrics.q");
+        assertEquals(3, pub.Count);
+        assertEquals(0, pub.Errors);
+        assertEquals(5, pub.Bytes);
+        assertEquals(3, pub.Publish.Count);
+        var sub = snapshot.Sub.get("metrics.q");
+        assertEquals(4, sub.Count);
+        assertEquals(1, sub.Nacks);
+        assertEquals(1, sub.Errors);
+        assertEquals(4, sub.Hander.Count);
+
+        this.pool.getMetrics().reset();
+        snapshot = this.pool.getMetrics().snapshot();
+        assertEquals(0, snapshot.Pub.get("amq.direct/metrics.q").Count);
+        assertEquals(0, snapshot.Sub.get("metrics.q").Count);
+    }
+
+    @Test
+    public void keysOverLimitAreMerged() throws Exception {
+        this.pool.setMetrics(false, 2);
+        for (var queue : new String[] { "metrics.a", "metrics.b", "metrics.c", "metrics.d" }) {
+            this.pool.queueDeclare(LocalTests.queue(queue));
+            this.pool.pub("m", queue, null, null, null, null);
+        }
+
+        var pub = this.pool.getMetrics().snapshot().Pub;
+        assertEquals(pub.keySet().toString(), 3, pub.size());
+        assertEquals(1, pub.get("amq.direct/metrics.a").Count);
+        assertEquals(2, pub.get("amq.direct/*").Count);
+    }
+}
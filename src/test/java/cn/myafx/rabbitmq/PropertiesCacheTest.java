@@ -0,0 +1,62 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.BasicProperties;
+
+public class PropertiesCacheTest {
+
+    @Test
+    public void sameKeyReturnsSameInstance() {
+        var cache = new PropertiesCache();
+        var a = cache.get("text/plain", "utf-8", null, true);
+        assertSame(a, cache.get("text/plain", "utf-8", null, true));
+        assertEquals(Integer.valueOf(2), a.getDeliveryMode());
+        assertNull(a.getExpiration());
+
+        var b = cache.get("text/plain", "utf-8", 5, false);
+        assertSame(b, cache.get("text/plain", "utf-8", 5, false));
+        assertEquals("5000", b.getExpiration());
+        assertEquals(Integer.valueOf(1), b.getDeliveryMode());
+        assertNotSame(b, cache.get("text/plain", "utf-8", 5, true));
+        assertNotSame(a, cache.get("application/json", "utf-8", null, true));
+        assertNotSame(a, cache.get("text/plain", "gzip", null, true));
+    }
+
+    @Test
+    public void headersDoNotLeakIntoCachedTemplates() throws Exception {
+        var factory = new LocalConnectionFactory();
+        try (var pool = LocalTests.newPool(factory)) {
+            pool.queueDeclare(LocalTests.queue("props.q"));
+            List<BasicProperties> got = Collections.synchronizedList(new ArrayList<>());
+            pool.sub(new ISubHander<String>() {
+                @Override
+                public boolean hander(String m, BasicProperties properties) throws Exception {
+                    return got.add(properties);
+                }
+
+                @Override
+                public Class<String> getTClass() {
+                    return String.class;
+                }
+            }, "props.q", false);
+            pool.pub("a", "props.q", 60, null, true, Map.of("h", "1"));
+            pool.pub("b", "props.q", 60, null, true, null);
+
+            assertTrue(LocalTests.await(() -> got.size() == 2, 5000));
+            assertEquals("1", got.get(0).getHeaders().get("h").toString());
+            assertTrue(got.get(1).getHeaders() == null || got.get(1).getHeaders().isEmpty());
+            assertEquals("60000", got.get(1).getExpiration());
+            assertEquals(Integer.valueOf(2), got.get(1).getDeliveryMode());
+        } finally {
+            factory.close();
+        }
+    }
+}
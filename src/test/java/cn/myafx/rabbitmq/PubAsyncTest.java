@@ -0,0 +1,55 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PubAsyncTest {
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        this.factory.close();
+    }
+
+    @Test
+    public void ackCompletesTrue() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("async.ack"));
+        assertTrue(this.pool.pubAsync("a", "async.ack", null, null, null, null).get(5, TimeUnit.SECONDS));
+        assertTrue(this.pool.pubAsync(List.of("b", "c"), "async.ack", null, null, null, null)
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(3, this.factory.getMessageCount("async.ack"));
+    }
+
+    @Test
+    public void nackCompletesFalse() throws Exception {
+        var config = LocalTests.queue("async.nack");
+        Map<String, Object> args = new HashMap<>();
+        args.put("x-max-length", 1);
+        args.put("x-overflow", "reject-publish");
+        config.QueueArguments = args;
+        this.pool.queueDeclare(config);
+
+        assertTrue(this.pool.pubAsync("a", "async.nack", null, null, null, null).get(5, TimeUnit.SECONDS));
+        assertFalse(this.pool.pubAsync("b", "async.nack", null, null, null, null).get(5, TimeUnit.SECONDS));
+        // 整批中任一条 nack 时返回 false
+        assertFalse(this.pool.pubAsync(List.of("c", "d"), "async.nack", null, null, null, null)
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(1, this.factory.getMessageCount("async.nack"));
+    }
+}
@@ -0,0 +1,75 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PubBlockedPolicyTest {
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+        this.pool.queueDeclare(LocalTests.queue("blocked.q"));
+        // 先建立发布连接, 再模拟告警
+        this.pool.pub("warm", "blocked.q", null, null, null, null);
+        this.factory.setBlocked(true);
+        assertTrue(LocalTests.await(this.pool::isBlocked, 2000));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.factory.setBlocked(false);
+        this.pool.close();
+        this.factory.close();
+    }
+
+    @Test(expected = Exception.class)
+    public void failFastThrows() throws Exception {
+        this.pool.setPubBlockedPolicy(PubBlockedPolicy.FailFast, null, null);
+        this.pool.pub("m", "blocked.q", null, null, null, null);
+    }
+
+    @Test
+    public void blockWithTimeoutWaits() throws Exception {
+        this.pool.setPubBlockedPolicy(PubBlockedPolicy.BlockWithTimeout, 200, null);
+        long start = System.nanoTime();
+        try {
+            this.pool.pub("m", "blocked.q", null, null, null, null);
+            fail();
+        } catch (Exception ex) {
+            assertTrue((System.nanoTime() - start) / 1_000_000 >= 150);
+        }
+        assertEquals(1, this.factory.getMessageCount("blocked.q"));
+        assertTrue(this.pool.getBlockedMillis() > 0);
+    }
+
+    @Test
+    public void bufferPublishesInOrderAfterUnblocked() throws Exception {
+        this.pool.setPubBlockedPolicy(PubBlockedPolicy.Buffer, null, null);
+        for (int i = 0; i < 5; i++)
+            assertTrue(this.pool.pub("m" + i, "blocked.q", null, null, null, null));
+        assertTrue(this.pool.getBlockedBufferBytes() > 0);
+        assertEquals(1, this.factory.getMessageCount("blocked.q"));
+
+        List<String> got = new CopyOnWriteArrayList<>();
+        this.pool.sub(LocalTests.hander(got::add), "blocked.q", false);
+        this.factory.setBlocked(false);
+        assertTrue(LocalTests.await(() -> got.size() == 6, 5000));
+        assertEquals(List.of("warm", "m0", "m1", "m2", "m3", "m4"), got);
+        assertEquals(0, this.pool.getBlockedBufferBytes());
+    }
+
+    @Test(expected = Exception.class)
+    public void bufferOverflowThrows() throws Exception {
+        this.pool.setPubBlockedPolicy(PubBlockedPolicy.Buffer, null, 8L);
+        this.pool.pub("0123456789", "blocked.q", null, null, null, null);
+    }
+}
@@ -0,0 +1,90 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.Connection;
+
+public class PubChannelPoolTest {
+    private LocalConnectionFactory factory;
+    private Connection connection;
+    private PubChannelPool channelPool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.connection = this.factory.newConnection();
+        this.channelPool = new PubChannelPool(this.connection::createChannel, 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.channelPool.close();
+        this.connection.close();
+        this.factory.close();
+    }
+
+    private CompletableFuture<PubChannelPool.Lease> borrowAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.channelPool.borrow();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+    }
+
+    @Test
+    public void limitBlocksUntilRelease() throws Exception {
+        this.channelPool.setLimit(2);
+        var a = this.channelPool.borrow();
+        var b = this.channelPool.borrow();
+        var c = this.borrowAsync();
+        Thread.sleep(200);
+        assertFalse(c.isDone());
+
+        this.channelPool.release(a);
+        var lease = c.get(5, TimeUnit.SECONDS);
+        assertNotNull(lease.Channel);
+        this.channelPool.release(b);
+        this.channelPool.release(lease);
+    }
+
+    @Test
+    public void releaseAfterSetLimitDoesNotExceedNewLimit() throws Exception {
+        this.channelPool.setLimit(1);
+        var a = this.channelPool.borrow();
+        this.channelPool.setLimit(1);
+        var b = this.channelPool.borrow();
+        // a 归还到旧信号量, 新上限仍被 b 占用
+        this.channelPool.release(a);
+        var c = this.borrowAsync();
+        Thread.sleep(200);
+        assertFalse(c.isDone());
+
+        this.channelPool.release(b);
+        this.channelPool.release(c.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void releasedChannelIsReused() throws Exception {
+        var a = this.channelPool.borrow();
+        this.channelPool.release(a);
+        var b = this.channelPool.borrow();
+        assertSame(a.Channel, b.Channel);
+        b.Channel.close();
+        this.channelPool.release(b);
+        // 已关闭的通道不再借出
+        var c = this.channelPool.borrow();
+        assertNotSame(b.Channel, c.Channel);
+        assertTrue(c.Channel.isOpen());
+        this.channelPool.release(c);
+        assertEquals(2, this.channelPool.getStats().Creates);
+    }
+}
@@ -0,0 +1,94 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReloadableMQConfigTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+        this.file = this.folder.newFile("mq-config.xml");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        this.factory.close();
+    }
+
+    /**
+     * 防抖时间足够长, 测试中只由 reload() 加载
+     */
+    private ReloadableMQConfig open() throws Exception {
+        return new ReloadableMQConfig(this.file.getPath(), this.pool, 60000);
+    }
+
+    private void write(String routingKey, boolean durable) throws Exception {
+        Files.writeString(this.file.toPath(), "<?xml version=\"1.0\" encoding=\"utf-8\"?><xml>"
+                + "<Exchange><Key exchange=\"amq.direct\" type=\"direct\" durable=\"true\" autoDelete=\"false\" />"
+                + "</Exchange><Queue>"
+                + "<Key queue=\"r.delay\" delayQueue=\"r.delay.d\" durable=\"true\" exclusive=\"false\""
+                + " autoDelete=\"false\" exchange=\"amq.direct\" />"
+                + "<Key queue=\"r.q\" routingKey=\"" + routingKey + "\" durable=\"" + durable + "\""
+                + " exclusive=\"false\" autoDelete=\"false\" exchange=\"amq.direct\" />"
+                + "</Queue><Pub></Pub><Sub></Sub></xml>");
+    }
+
+    @Test
+    public void unchangedFileHasEmptyDiff() throws Exception {
+        this.write("r.q", true);
+        try (var config = this.open()) {
+            this.pool.queueDeclare(config.getQueues());
+            this.pool.queueDeclare(config.getCurrent().queues());
+            var diff = config.reload();
+            assertTrue(diff.toString(), diff.isEmpty());
+            assertNull(config.getCurrent().queues().get(0).RoutingKey);
+        }
+    }
+
+    @Test
+    public void routingKeyChangeUnbindsOldBinding() throws Exception {
+        this.write("r.q", true);
+        try (var config = this.open()) {
+            this.pool.queueDeclare(config.getQueues());
+            this.write("r.q.new", true);
+            var diff = config.reload();
+            assertEquals(1, diff.ChangedQueues.size());
+            assertTrue(diff.UnappliedQueues.isEmpty());
+
+            this.pool.pub("old", "r.q", null, null, null, null);
+            this.pool.pub("new", "r.q.new", null, null, null, null);
+            assertEquals(1, this.factory.getMessageCount("r.q"));
+        }
+    }
+
+    @Test
+    public void queueArgumentChangeIsReportedNotApplied() throws Exception {
+        this.write("r.q", true);
+        try (var config = this.open()) {
+            this.pool.queueDeclare(config.getQueues());
+            this.write("r.q", false);
+            var diff = config.reload();
+            assertEquals(List.of("r.q"), diff.UnappliedQueues);
+            assertFalse(config.getCurrent().queues().get(1).Durable);
+            assertTrue(config.reload().isEmpty());
+        }
+    }
+}
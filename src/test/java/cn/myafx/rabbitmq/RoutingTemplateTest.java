@@ -0,0 +1,103 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RoutingTemplateTest {
+
+    @Test
+    public void placeholders() throws Exception {
+        var t = RoutingTemplate.compile("order.{1}.{0}", 10);
+        assertEquals("order.paid.42", t.format(new Object[] { 42, "paid" }));
+        assertEquals("order.{x}", RoutingTemplate.compile("order.{x}", 10).format(new Object[] {}));
+    }
+
+    @Test
+    public void appendWithoutPlaceholder() throws Exception {
+        var t = RoutingTemplate.compile("order", 10);
+        assertEquals("order.1", t.format(new Object[] { 1 }));
+        assertEquals("order.1.a", t.format(new Object[] { 1, "a" }));
+    }
+
+    @Test
+    public void sameValueIsCached() throws Exception {
+        var t = RoutingTemplate.compile("order.{0}", 10);
+        var a = t.format(new Object[] { "paid" });
+        assertSame(a, t.format(new Object[] { new String("paid") }));
+        // 多参数按各参数值组合, 不与拼接后相同的单参数混淆
+        assertEquals("order.a", t.format(new Object[] { "a", "b" }));
+        assertEquals("order.a\0b", t.format(new Object[] { "a\0b" }));
+    }
+
+    @Test
+    public void mutableParamIsNotStale() throws Exception {
+        var t = RoutingTemplate.compile("order.{0}", 10);
+        var p = new StringBuilder("a");
+        assertEquals("order.a", t.format(new Object[] { p }));
+        p.append("b");
+        assertEquals("order.ab", t.format(new Object[] { p }));
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        var t = RoutingTemplate.compile("order.{0}", 10);
+        var hot = t.format(new Object[] { "hot" });
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("order." + i, t.format(new Object[] { i }));
+            assertSame(hot, t.format(new Object[] { "hot" }));
+            assertTrue(t.cacheSize() <= 10);
+        }
+
+        var none = RoutingTemplate.compile("order.{0}", 0);
+        assertEquals("order.1", none.format(new Object[] { 1 }));
+        assertEquals(0, none.cacheSize());
+    }
+
+    @Test(expected = Exception.class)
+    public void nullParamThrows() throws Exception {
+        RoutingTemplate.compile("order.{0}", 10).format(new Object[] { null });
+    }
+
+    @Test(expected = Exception.class)
+    public void missingParamThrows() throws Exception {
+        RoutingTemplate.compile("order.{0}.{1}", 10).format(new Object[] { 1 });
+    }
+
+    @Test
+    public void poolFormatsQueueAndRoutingKey() throws Exception {
+        var factory = new LocalConnectionFactory();
+        try (var pool = LocalTests.newPool(factory)) {
+            var queue = LocalTests.queue("route.{0}");
+            queue.RoutingKey = "route.key.{0}";
+            queue.IsQueueParam = true;
+            queue.IsRoutingKeyParam = true;
+            pool.queueDeclare(queue, new Object[] { 7 });
+
+            var pub = new PubConfig();
+            pub.RoutingKey = "route.key.{0}";
+            pub.IsRoutingKeyParam = true;
+            pool.pub("m", pub, new Object[] { 7 }, null, null, null);
+            assertEquals(1, factory.getMessageCount("route.7"));
+
+            var sub = new SubConfig();
+            sub.Queue = "route";
+            sub.IsQueueParam = true;
+            var got = new CompletableFuture<String>();
+            pool.sub(LocalTests.hander(got::complete), sub, new Object[] { 7 }, false);
+            assertEquals("m", got.get(5, TimeUnit.SECONDS));
+
+            try {
+                pool.pub("m", new PubConfig(), new Object[] { 7 }, null, null, null);
+                fail();
+            } catch (Exception ex) {
+                assertTrue(ex.getMessage().contains("is not param"));
+            }
+        } finally {
+            factory.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SubChannelTest {
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.release.countDown();
+        this.pool.close();
+        this.factory.close();
+    }
+
+    private boolean block(String m) {
+        try {
+            return this.release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            return false;
+        }
+    }
+
+    @Test
+    public void prefetchLimitsUnackedMessages() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("sub.prefetch"));
+        for (int i = 0; i < 10; i++)
+            this.pool.pub("m" + i, "sub.prefetch", null, null, null, null);
+        var handled = new AtomicInteger();
+        this.pool.sub(LocalTests.hander(m -> this.block(m) && handled.incrementAndGet() > 0), "sub.prefetch", false,
+                3);
+
+        // 预取 3 条, 其余留在队列中
+        assertTrue(LocalTests.await(() -> this.factory.getMessageCount("sub.prefetch") == 7, 2000));
+        Thread.sleep(100);
+        assertEquals(7, this.factory.getMessageCount("sub.prefetch"));
+
+        this.release.countDown();
+        assertTrue(LocalTests.await(() -> handled.get() == 10, 5000));
+        assertEquals(0, this.factory.getMessageCount("sub.prefetch"));
+    }
+
+    @Test
+    public void blockedSubscriptionDoesNotStallOthers() throws Exception {
+        this.pool.queueDeclare(LocalTests.queue("sub.slow"));
+        this.pool.queueDeclare(LocalTests.queue("sub.fast"));
+        this.pool.sub(LocalTests.hander(this::block), "sub.slow", false);
+        var fast = new CountDownLatch(5);
+        this.pool.sub(LocalTests.hander(m -> {
+            fast.countDown();
+            return true;
+        }), "sub.fast", false);
+
+        this.pool.pub("s", "sub.slow", null, null, null, null);
+        for (int i = 0; i < 5; i++)
+            this.pool.pub("f" + i, "sub.fast", null, null, null, null);
+        assertTrue(fast.await(2, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,85 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TopologyBootstrapTest {
+    private LocalConnectionFactory factory;
+    private MQPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.pool = LocalTests.newPool(this.factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        this.factory.close();
+    }
+
+    private static List<ExchangeConfig> exchanges(int count) {
+        List<ExchangeConfig> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            var config = new ExchangeConfig();
+            config.Exchange = "boot.ex" + i;
+            list.add(config);
+        }
+        return list;
+    }
+
+    private static List<QueueConfig> queues(int count, int exchanges) {
+        List<QueueConfig> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            var config = LocalTests.queue("boot.q" + i);
+            config.Exchange = "boot.ex" + (i % exchanges);
+            list.add(config);
+        }
+        return list;
+    }
+
+    @Test
+    public void declaresAllInParallel() throws Exception {
+        var queues = queues(40, 8);
+        var report = this.pool.declareTopology(exchanges(8), queues, 4);
+
+        assertTrue(report.toString(), report.isSuccess());
+        assertEquals(4, report.Parallelism);
+        assertEquals(8, report.ExchangeCount);
+        assertEquals(40, report.QueueCount);
+        for (var q : queues)
+            assertEquals(q.Queue, 0, this.factory.getMessageCount(q.Queue));
+        this.pool.pub("m", "boot.q9", null, "boot.ex1", null, null);
+        assertEquals(1, this.factory.getMessageCount("boot.q9"));
+    }
+
+    @Test
+    public void errorsAreReportedPerItem() throws Exception {
+        this.pool.setTopology(null, true);
+        var queues = queues(20, 4);
+        var bad = LocalTests.queue("boot.bad");
+        bad.Exchange = "boot.missing";
+        queues.add(7, bad);
+        var report = this.pool.declareTopology(exchanges(4), queues, 3);
+
+        assertFalse(report.isSuccess());
+        assertEquals(List.of("queue(boot.bad)"), new ArrayList<>(report.Errors.keySet()));
+        // 出错通道关闭后其余定义继续完成
+        for (var q : queues) {
+            if (q != bad)
+                assertEquals(q.Queue, 0, this.factory.getMessageCount(q.Queue));
+        }
+    }
+
+    @Test(expected = Exception.class)
+    public void parallelismIsChecked() throws Exception {
+        this.pool.declareTopology(exchanges(1), null, 0);
+    }
+}
@@ -0,0 +1,129 @@
+package cn.myafx.rabbitmq;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+public class TopologyDeclarerTest {
+    private LocalConnectionFactory factory;
+    private Connection connection;
+    private List<String> calls = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = new LocalConnectionFactory();
+        this.connection = this.factory.newConnection();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.connection.close();
+        this.factory.close();
+    }
+
+    /**
+     * 记录 *Declare* / *Bind* 调用的通道
+     */
+    private Channel channel() throws Exception {
+        var channel = this.connection.createChannel();
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] { Channel.class },
+                (proxy, method, args) -> {
+                    var name = method.getName();
+                    if (name.contains("Declare") || name.contains("Bind"))
+                        this.calls.add(name);
+                    try {
+                        return method.invoke(channel, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+    }
+
+    private static void declare(TopologyDeclarer.Batch batch, String queue, String exchange) throws Exception {
+        batch.exchange(exchange, "direct", true, false, null);
+        batch.queue(queue, true, false, false, null);
+        batch.bind(queue, exchange, queue, null);
+        batch.commit();
+    }
+
+    @Test
+    public void cacheSkipsDeclared() throws Exception {
+        var declarer = new TopologyDeclarer();
+        declarer.setOptions(true, false);
+        var channel = this.channel();
+        declare(declarer.begin(channel), "topo.q", "topo.ex");
+        assertEquals(List.of("exchangeDeclare", "queueDeclare", "queueBind"), this.calls);
+        assertEquals(3, declarer.size());
+
+        this.calls.clear();
+        declare(declarer.begin(channel), "topo.q", "topo.ex");
+        assertEquals(List.of(), this.calls);
+
+        declarer.clear();
+        declare(declarer.begin(channel), "topo.q", "topo.ex");
+        assertEquals(3, this.calls.size());
+    }
+
+    @Test
+    public void noWaitPipelinesWithPassiveBarrier() throws Exception {
+        var declarer = new TopologyDeclarer();
+        declarer.setOptions(false, true);
+        declare(declarer.begin(this.channel()), "topo.nowait", "topo.nowait.ex");
+        assertEquals(List.of("exchangeDeclareNoWait", "queueDeclareNoWait", "queueBindNoWait", "queueDeclarePassive"),
+                this.calls);
+        assertEquals(0, this.factory.getMessageCount("topo.nowait"));
+        assertEquals(0, declarer.size());
+    }
+
+    @Test
+    public void noWaitErrorIsNotCached() throws Exception {
+        var declarer = new TopologyDeclarer();
+        declarer.setOptions(true, true);
+        var batch = declarer.begin(this.channel());
+        batch.queue("topo.err", true, false, false, null);
+        try {
+            // 进程内 broker 在 bind 时即抛出, 真实 broker 由 commit 的被动定义抛出
+            batch.bind("topo.err", "topo.missing", "topo.err", null);
+            batch.commit();
+            fail();
+        } catch (Exception ex) {
+        }
+        // 失败的批次不写入缓存
+        assertEquals(0, declarer.size());
+    }
+
+    @Test
+    public void poolUsesTopologyOptions() throws Exception {
+        try (var pool = LocalTests.newPool(this.factory)) {
+            pool.setTopology(true, true);
+            pool.exchangeDeclare("topo.pool", "direct", null, null, null);
+            var queue = LocalTests.queue("topo.pool.q");
+            queue.Exchange = "topo.pool";
+            pool.queueDeclare(queue);
+            pool.queueDeclare(queue);
+            pool.pub("m", "topo.pool.q", null, "topo.pool", null, null);
+            assertEquals(1, this.factory.getMessageCount("topo.pool.q"));
+
+            try {
+                var missing = LocalTests.queue("topo.pool.err");
+                missing.Exchange = "topo.pool.missing";
+                pool.queueDeclare(missing);
+                fail();
+            } catch (Exception ex) {
+            }
+            // 出错后通道已关闭, 后续定义使用新通道
+            pool.queueDeclare(LocalTests.queue("topo.pool.next"));
+            assertEquals(0, this.factory.getMessageCount("topo.pool.next"));
+        }
+    }
+}